@@ -317,6 +317,11 @@ public class FileManager implements ChunkListener, FileDelegable {
 //					total : (index + 1) * ChunkDialect.CHUNK_SIZE;
 //		}
 	}
+
+	@Override
+	public void onFailure(String target, ChunkDialect chunkDialect) {
+		Logger.w(FileManager.class, "Send chunk failed: " + chunkDialect.getSign() + " to " + target);
+	}
 	
 	public void onSendProgress(FileMessage fileMessage, long processed, long total)
 	{
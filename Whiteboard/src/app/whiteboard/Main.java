@@ -1,6 +1,7 @@
 package app.whiteboard;
 
 import net.cellcloud.cell.Cell;
+import net.cellcloud.common.DisconnectPolicy;
 import net.cellcloud.core.Nucleus;
 import net.cellcloud.core.NucleusConfig;
 import net.cellcloud.exception.SingletonException;
@@ -19,6 +20,16 @@ public final class Main {
 			config.talk.block = 20480;
 			
 			config.talk.port = 7010;
+			// 启用多 Reactor 模式
+			config.talk.multiReactor = true;
+			// 断开不再读取数据的客户端，避免服务器为其缓存所有笔画数据
+			config.talk.lowWatermark = 2 * 1024 * 1024;
+			config.talk.highWatermark = 8 * 1024 * 1024;
+			config.talk.backpressurePolicy = new DisconnectPolicy();
+			// 同一客户端的笔画按顺序处理
+			config.talk.orderedDispatch = true;
+			// 笔画元数据为重复度很高的 JSON ，与支持压缩的客户端协商压缩
+			config.talk.compression = true;
 
 			// 实例化内核
 			Nucleus nucleus = Nucleus.createInstance(config);
@@ -45,6 +45,9 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import net.cellcloud.Version;
 import net.cellcloud.cell.log.FileLogger;
+import net.cellcloud.common.DisconnectPolicy;
+import net.cellcloud.common.DropNewPolicy;
+import net.cellcloud.common.DropOldestPolicy;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.LogManager;
 import net.cellcloud.common.Logger;
@@ -298,6 +301,70 @@ public final class Application {
 							config.talk.maxConnections = Integer.parseInt(nl.item(0).getTextContent());
 							Logger.i(this.getClass(), "nucleus.talk.connections = " + config.talk.maxConnections);
 						}
+						// workers
+						nl = elTalk.getElementsByTagName("workers");
+						if (nl.getLength() > 0) {
+							config.talk.workerNum = Integer.parseInt(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.workers = " + config.talk.workerNum);
+						}
+						// multi-reactor
+						nl = elTalk.getElementsByTagName("multireactor");
+						if (nl.getLength() > 0) {
+							config.talk.multiReactor = Boolean.parseBoolean(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.multireactor = " + config.talk.multiReactor);
+						}
+						// write watermarks
+						nl = elTalk.getElementsByTagName("lowwatermark");
+						if (nl.getLength() > 0) {
+							config.talk.lowWatermark = Long.parseLong(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.lowwatermark = " + config.talk.lowWatermark);
+						}
+						nl = elTalk.getElementsByTagName("highwatermark");
+						if (nl.getLength() > 0) {
+							config.talk.highWatermark = Long.parseLong(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.highwatermark = " + config.talk.highWatermark);
+						}
+						// backpressure policy
+						nl = elTalk.getElementsByTagName("backpressure");
+						if (nl.getLength() > 0) {
+							String policy = nl.item(0).getTextContent().trim();
+							if (policy.equalsIgnoreCase("drop-oldest")) {
+								config.talk.backpressurePolicy = new DropOldestPolicy();
+							}
+							else if (policy.equalsIgnoreCase("drop-new")) {
+								config.talk.backpressurePolicy = new DropNewPolicy();
+							}
+							else if (policy.equalsIgnoreCase("disconnect")) {
+								config.talk.backpressurePolicy = new DisconnectPolicy();
+							}
+							else {
+								Logger.w(this.getClass(), "Unknown backpressure policy: " + policy);
+							}
+							Logger.i(this.getClass(), "nucleus.talk.backpressure = " + policy);
+						}
+						// ordered dispatch
+						nl = elTalk.getElementsByTagName("ordereddispatch");
+						if (nl.getLength() > 0) {
+							config.talk.orderedDispatch = Boolean.parseBoolean(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.ordereddispatch = " + config.talk.orderedDispatch);
+						}
+						// compression
+						nl = elTalk.getElementsByTagName("compression");
+						if (nl.getLength() > 0) {
+							config.talk.compression = Boolean.parseBoolean(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.compression = " + config.talk.compression);
+						}
+						nl = elTalk.getElementsByTagName("compressionthreshold");
+						if (nl.getLength() > 0) {
+							config.talk.compressionThreshold = Integer.parseInt(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.compressionthreshold = " + config.talk.compressionThreshold);
+						}
+						// binary primitive
+						nl = elTalk.getElementsByTagName("binaryprimitive");
+						if (nl.getLength() > 0) {
+							config.talk.binaryPrimitive = Boolean.parseBoolean(nl.item(0).getTextContent());
+							Logger.i(this.getClass(), "nucleus.talk.binaryprimitive = " + config.talk.binaryPrimitive);
+						}
 						// http
 						nl = elTalk.getElementsByTagName("http");
 						if (nl.getLength() > 0) {
@@ -0,0 +1,42 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+/** 背压策略。
+ * 
+ * 会话待发送数据超过高水位时，由背压策略决定如何处理新消息。
+ * 
+ * @author Jiangwei Xu
+ */
+public interface BackpressurePolicy {
+
+	/** 处理超过高水位的新消息。
+	 * 策略可以通过 {@link WriteQueue#dropFirst()} 丢弃旧消息，
+	 * 通过 {@link WriteQueue#append(Message)} 将新消息加入队列。
+	 * @return 返回新消息是否被接受。
+	 */
+	public boolean overflow(Session session, WriteQueue queue, Message message);
+}
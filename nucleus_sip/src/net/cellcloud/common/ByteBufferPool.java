@@ -0,0 +1,251 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 直接内存缓存池。
+ * 
+ * 缓存按 2 的幂划分尺寸级别，每个级别从整块分配的直接内存（Slab）中切分，
+ * 归还的缓存进入对应级别的空闲列表以供复用。超过最大级别的缓存不进行池化。
+ * 空闲列表保留的字节数有上限，超过上限时归还的缓存不再保留，由垃圾回收释放。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ByteBufferPool {
+
+	private static final ByteBufferPool instance = new ByteBufferPool();
+
+	// 最小级别 1 KB
+	private static final int MIN_SHIFT = 10;
+	// 最大级别 256 KB ，更大的缓存直接分配，不占用池
+	private static final int MAX_SHIFT = 18;
+	// Slab 大小
+	private static final int SLAB_SIZE = 256 * 1024;
+
+	// 各级别的空闲列表
+	private List<ConcurrentLinkedQueue<ByteBuffer>> freeLists;
+	// 各级别已切分的缓存数量
+	private AtomicInteger[] chunkCounts;
+	// 各级别已借出的缓存数量
+	private AtomicInteger[] borrowedCounts;
+
+	// 已分配的直接内存字节数
+	private AtomicLong reservedBytes;
+	// 未池化的借出次数
+	private AtomicLong unpooledTimes;
+
+	// 空闲列表保留的字节数及其上限
+	private AtomicLong idleBytes;
+	private volatile long maxIdleBytes = 32L * 1024 * 1024;
+
+	private ByteBufferPool() {
+		int levels = MAX_SHIFT - MIN_SHIFT + 1;
+		this.freeLists = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(levels);
+		this.chunkCounts = new AtomicInteger[levels];
+		this.borrowedCounts = new AtomicInteger[levels];
+		for (int i = 0; i < levels; ++i) {
+			this.freeLists.add(new ConcurrentLinkedQueue<ByteBuffer>());
+			this.chunkCounts[i] = new AtomicInteger(0);
+			this.borrowedCounts[i] = new AtomicInteger(0);
+		}
+
+		this.reservedBytes = new AtomicLong(0);
+		this.unpooledTimes = new AtomicLong(0);
+		this.idleBytes = new AtomicLong(0);
+	}
+
+	/** 返回缓存池实例。
+	 */
+	public static ByteBufferPool getInstance() {
+		return instance;
+	}
+
+	/** 借出容量不小于指定大小的缓存。
+	 * 借出的缓存已清空，其容量为所属级别的大小。
+	 */
+	public ByteBuffer borrow(int capacity) {
+		int level = levelOf(capacity);
+		if (level < 0) {
+			// 超过最大级别，不进行池化
+			this.unpooledTimes.incrementAndGet();
+			return ByteBuffer.allocateDirect(capacity);
+		}
+
+		ConcurrentLinkedQueue<ByteBuffer> list = this.freeLists.get(level);
+		ByteBuffer buf = list.poll();
+		while (null == buf) {
+			this.allocateSlab(level);
+			buf = list.poll();
+		}
+		this.idleBytes.addAndGet(-chunkSize(level));
+
+		this.borrowedCounts[level].incrementAndGet();
+
+		buf.clear();
+		return buf;
+	}
+
+	/** 归还缓存。
+	 * 非本池分配的缓存将被忽略。
+	 */
+	public void giveBack(ByteBuffer buf) {
+		if (null == buf || !buf.isDirect()) {
+			return;
+		}
+
+		int capacity = buf.capacity();
+		int level = levelOf(capacity);
+		if (level < 0 || chunkSize(level) != capacity) {
+			return;
+		}
+
+		this.borrowedCounts[level].decrementAndGet();
+
+		if (this.idleBytes.addAndGet(capacity) > this.maxIdleBytes) {
+			// 超过保留上限，丢弃缓存，Slab 的所有切片都被丢弃后由垃圾回收释放
+			this.idleBytes.addAndGet(-capacity);
+			this.chunkCounts[level].decrementAndGet();
+			this.reservedBytes.addAndGet(-capacity);
+			return;
+		}
+
+		buf.clear();
+		this.freeLists.get(level).offer(buf);
+	}
+
+	/** 设置空闲列表保留的最大字节数。
+	 */
+	public void setMaxIdleBytes(long bytes) {
+		this.maxIdleBytes = Math.max(0, bytes);
+	}
+
+	/** 返回空闲列表保留的最大字节数。
+	 */
+	public long getMaxIdleBytes() {
+		return this.maxIdleBytes;
+	}
+
+	/** 返回空闲列表保留的字节数。
+	 */
+	public long getIdleBytes() {
+		return this.idleBytes.get();
+	}
+
+	/** 返回级别数量。
+	 */
+	public int numLevels() {
+		return this.freeLists.size();
+	}
+
+	/** 返回指定级别的缓存大小。
+	 */
+	public int getChunkSize(int level) {
+		return chunkSize(level);
+	}
+
+	/** 返回指定级别已切分的缓存数量。
+	 */
+	public int getChunkCount(int level) {
+		return this.chunkCounts[level].get();
+	}
+
+	/** 返回指定级别已借出的缓存数量。
+	 */
+	public int getBorrowedCount(int level) {
+		return this.borrowedCounts[level].get();
+	}
+
+	/** 返回已分配且未被丢弃的直接内存字节数。
+	 */
+	public long getReservedBytes() {
+		return this.reservedBytes.get();
+	}
+
+	/** 返回已借出的字节数。
+	 */
+	public long getBorrowedBytes() {
+		long bytes = 0;
+		for (int i = 0; i < this.borrowedCounts.length; ++i) {
+			bytes += (long) this.borrowedCounts[i].get() * chunkSize(i);
+		}
+		return bytes;
+	}
+
+	/** 返回未池化的借出次数。
+	 */
+	public long getUnpooledTimes() {
+		return this.unpooledTimes.get();
+	}
+
+	/** 分配新的 Slab 并切分到指定级别的空闲列表。
+	 */
+	private synchronized void allocateSlab(int level) {
+		ConcurrentLinkedQueue<ByteBuffer> list = this.freeLists.get(level);
+		if (!list.isEmpty()) {
+			return;
+		}
+
+		int chunk = chunkSize(level);
+		int size = Math.max(SLAB_SIZE, chunk);
+		ByteBuffer slab = ByteBuffer.allocateDirect(size);
+
+		int count = 0;
+		for (int pos = 0; pos + chunk <= size; pos += chunk) {
+			slab.limit(pos + chunk);
+			slab.position(pos);
+			list.offer(slab.slice());
+			++count;
+		}
+
+		this.chunkCounts[level].addAndGet(count);
+		this.reservedBytes.addAndGet(size);
+		this.idleBytes.addAndGet((long) count * chunk);
+	}
+
+	private static int chunkSize(int level) {
+		return 1 << (level + MIN_SHIFT);
+	}
+
+	/** 返回能容纳指定大小的级别，超过最大级别返回 -1 。
+	 */
+	private static int levelOf(int capacity) {
+		int level = 0;
+		while (chunkSize(level) < capacity) {
+			++level;
+			if (level + MIN_SHIFT > MAX_SHIFT) {
+				return -1;
+			}
+		}
+		return level;
+	}
+}
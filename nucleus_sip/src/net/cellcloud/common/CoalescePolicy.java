@@ -0,0 +1,63 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+/** 合并消息的背压策略。
+ * 
+ * 新消息取代队列中可被取代的最近一条消息，例如同一对象的状态更新只保留最新值。
+ * 没有可被取代的消息时交给后备策略处理。
+ * 
+ * @author Jiangwei Xu
+ */
+public abstract class CoalescePolicy implements BackpressurePolicy {
+
+	private BackpressurePolicy fallback;
+
+	/** 构造函数。后备策略为丢弃新消息。
+	 */
+	public CoalescePolicy() {
+		this.fallback = new DropNewPolicy();
+	}
+
+	/** 构造函数。
+	 */
+	public CoalescePolicy(BackpressurePolicy fallback) {
+		this.fallback = fallback;
+	}
+
+	/** 判断新消息是否可以取代队列中的消息。
+	 */
+	protected abstract boolean supersedes(Message message, Message queued);
+
+	@Override
+	public boolean overflow(Session session, WriteQueue queue, Message message) {
+		if (queue.coalesce(this, message)) {
+			return true;
+		}
+
+		return this.fallback.overflow(session, queue, message);
+	}
+}
@@ -0,0 +1,258 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** 连接器共享事件循环组。
+ * 
+ * 所有 NonblockingConnector 复用固定数量的选择器线程，连接超时由定时器驱动。
+ * 句柄回调在回调线程池中执行，事件循环线程不执行句柄代码。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ConnectorEventLoopGroup {
+
+	private static ConnectorEventLoopGroup instance = null;
+
+	private EventLoop[] loops;
+	// 轮询分配事件循环的游标
+	private AtomicInteger cursor = new AtomicInteger(0);
+
+	// 连接超时定时器
+	private ScheduledExecutorService timer;
+
+	// 句柄回调线程池
+	private ExecutorService callbackExecutor;
+
+	private ConnectorEventLoopGroup(int num) {
+		this.loops = new EventLoop[num];
+		for (int i = 0; i < num; ++i) {
+			this.loops[i] = new EventLoop(i);
+			this.loops[i].start();
+		}
+
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ConnectorEventLoopGroup-Timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.callbackExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ConnectorEventLoopGroup-Callback-" + this.count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/** 返回单例。首次调用时按处理器数量创建事件循环线程。
+	 */
+	public synchronized static ConnectorEventLoopGroup getInstance() {
+		if (null == ConnectorEventLoopGroup.instance) {
+			int num = Math.max(1, Runtime.getRuntime().availableProcessors());
+			ConnectorEventLoopGroup.instance = new ConnectorEventLoopGroup(num);
+		}
+		return ConnectorEventLoopGroup.instance;
+	}
+
+	/** 返回事件循环线程数量。
+	 */
+	public int getLoopNum() {
+		return this.loops.length;
+	}
+
+	/** 按轮询方式分配一个事件循环。
+	 */
+	protected EventLoop next() {
+		int index = (this.cursor.getAndIncrement() & Integer.MAX_VALUE) % this.loops.length;
+		return this.loops[index];
+	}
+
+	/** 延迟执行定时任务。
+	 */
+	protected ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return this.timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/** 在回调线程池中执行句柄回调。
+	 */
+	protected void dispatch(Runnable callback) {
+		this.callbackExecutor.execute(callback);
+	}
+
+	/** 事件循环线程。
+	 * 
+	 * 选择器上的注册及兴趣集变更均以任务方式提交到本线程执行。
+	 */
+	protected final class EventLoop extends Thread {
+
+		// 选择失败后等待的最长时间
+		private static final long MAX_BACKOFF = 1000;
+
+		private volatile Selector selector;
+
+		// 待执行任务队列
+		private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		private EventLoop(int index) {
+			this.setName("ConnectorEventLoop-" + index);
+			this.setDaemon(true);
+
+			try {
+				this.selector = Selector.open();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/** 返回本循环的选择器。仅允许在本线程内注册通道。
+		 */
+		protected Selector selector() {
+			return this.selector;
+		}
+
+		/** 提交任务到本线程执行。
+		 */
+		protected void execute(Runnable task) {
+			this.tasks.offer(task);
+
+			if (Thread.currentThread() != this) {
+				this.selector.wakeup();
+			}
+		}
+
+		@Override
+		public void run() {
+			long backoff = 0;
+
+			while (true) {
+				try {
+					this.selector.select();
+					backoff = 0;
+				} catch (IOException e) {
+					Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.WARNING);
+
+					// 重建选择器，并退避等待，避免选择器持续失败时空转
+					this.rebuildSelector();
+					backoff = (backoff == 0) ? 10 : Math.min(backoff * 2, MAX_BACKOFF);
+					try {
+						Thread.sleep(backoff);
+					} catch (InterruptedException ie) {
+						// Nothing
+					}
+					continue;
+				} catch (ClosedSelectorException e) {
+					break;
+				}
+
+				// 处理就绪事件
+				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+
+					NonblockingConnector connector = (NonblockingConnector) key.attachment();
+					try {
+						connector.process(key);
+					} catch (CancelledKeyException e) {
+						// Nothing
+					} catch (Exception e) {
+						Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.WARNING);
+					}
+				}
+
+				// 执行任务
+				Runnable task = null;
+				while (null != (task = this.tasks.poll())) {
+					try {
+						task.run();
+					} catch (Exception e) {
+						Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.WARNING);
+					}
+				}
+			}
+		}
+
+		/** 创建新的选择器，将有效的通道迁移到新选择器后关闭旧选择器。
+		 */
+		private void rebuildSelector() {
+			Selector oldSelector = this.selector;
+			Selector newSelector = null;
+			try {
+				newSelector = Selector.open();
+			} catch (IOException e) {
+				Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.WARNING);
+				return;
+			}
+
+			for (SelectionKey key : oldSelector.keys()) {
+				if (!key.isValid()) {
+					continue;
+				}
+
+				try {
+					int ops = key.interestOps();
+					Object attachment = key.attachment();
+					key.cancel();
+					SelectionKey newKey = key.channel().register(newSelector, ops, attachment);
+					((NonblockingConnector) attachment).rebind(newKey);
+				} catch (Exception e) {
+					Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.WARNING);
+				}
+			}
+
+			this.selector = newSelector;
+
+			try {
+				oldSelector.close();
+			} catch (IOException e) {
+				Logger.log(ConnectorEventLoopGroup.class, e, LogLevel.DEBUG);
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/** 载荷压缩器。
+ * 
+ * 使用池化的 Deflater/Inflater 实例及预置字典压缩载荷数据，并统计压缩比及耗时。
+ * 预置字典的校验值记录在压缩数据头中，解压时据此选择字典。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class DeflateCompressor {
+
+	/** 默认的压缩阈值，小于该长度的数据不压缩。 */
+	public static final int DEFAULT_THRESHOLD = 256;
+
+	/** 默认预置字典，包含原语文本格式及 JSON 的常见片段。 */
+	public static final byte[] DEFAULT_DICTIONARY = ("{\"name\":\"\",\"type\":\"\",\"value\":\"\",\"literal\":\"\","
+			+ "\"version\":\"1.0\",\"stuffs\":[],\"dialect\":{},\"tracker\":\"\",true,false,null,"
+			+ ":xml}:json}:bool}:double}:float}:ulong}:long}:uint}:int}"
+			+ "[Action@{att=:string}{adv=:string}{com=:string}{obj=:string}{pre=:string}[01.00]{sub=:string}")
+			.getBytes(Charset.forName("UTF-8"));
+
+	private final static DeflateCompressor instance = new DeflateCompressor();
+
+	private int level = Deflater.BEST_SPEED;
+	private byte[] dictionary = DEFAULT_DICTIONARY;
+
+	// 实例池
+	private ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+	private AtomicInteger numDeflaters = new AtomicInteger(0);
+	private AtomicInteger numInflaters = new AtomicInteger(0);
+	private int maxPooled;
+
+	// 统计计数
+	private AtomicLong compressTimes = new AtomicLong(0);
+	private AtomicLong skippedTimes = new AtomicLong(0);
+	private AtomicLong decompressTimes = new AtomicLong(0);
+	private AtomicLong inputBytes = new AtomicLong(0);
+	private AtomicLong outputBytes = new AtomicLong(0);
+	private AtomicLong compressNanos = new AtomicLong(0);
+	private AtomicLong decompressNanos = new AtomicLong(0);
+
+	private DeflateCompressor() {
+		this.maxPooled = Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	/** 返回单例。
+	 */
+	public static DeflateCompressor getInstance() {
+		return DeflateCompressor.instance;
+	}
+
+	/** 设置压缩级别。
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+
+		// 丢弃已池化的实例
+		Deflater deflater = null;
+		while (null != (deflater = this.deflaters.poll())) {
+			this.numDeflaters.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+	/** 压缩数据。
+	 * @return 压缩后的数据，如果压缩后数据没有变小返回 null 。
+	 */
+	public byte[] compress(byte[] data, int offset, int length) {
+		long start = System.nanoTime();
+
+		Deflater deflater = this.deflaters.poll();
+		if (null == deflater) {
+			deflater = new Deflater(this.level);
+		}
+		else {
+			this.numDeflaters.decrementAndGet();
+		}
+
+		byte[] result = null;
+		try {
+			deflater.setDictionary(this.dictionary);
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+
+			// 输出不超过输入长度，超过时放弃压缩
+			byte[] out = new byte[length];
+			int n = 0;
+			while (!deflater.finished() && n < out.length) {
+				n += deflater.deflate(out, n, out.length - n);
+			}
+
+			if (deflater.finished() && n < length) {
+				result = new byte[n];
+				System.arraycopy(out, 0, result, 0, n);
+			}
+		} finally {
+			deflater.reset();
+			this.giveBack(deflater);
+		}
+
+		if (null != result) {
+			this.compressTimes.incrementAndGet();
+			this.inputBytes.addAndGet(length);
+			this.outputBytes.addAndGet(result.length);
+		}
+		else {
+			this.skippedTimes.incrementAndGet();
+		}
+		this.compressNanos.addAndGet(System.nanoTime() - start);
+
+		return result;
+	}
+
+	/** 解压数据。解压后的数据长度不超过 {@link MessageService#DEFAULT_MAX_FRAME_LENGTH} 。
+	 * @return 数据格式错误或者解压后的数据超过长度上限时返回 null 。
+	 */
+	public byte[] decompress(byte[] data, int offset, int length) {
+		return this.decompress(data, offset, length, MessageService.DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/** 解压数据。
+	 * @param maxLength 解压后的数据长度上限。
+	 * @return 数据格式错误或者解压后的数据超过长度上限时返回 null 。
+	 */
+	public byte[] decompress(byte[] data, int offset, int length, int maxLength) {
+		long start = System.nanoTime();
+
+		Inflater inflater = this.inflaters.poll();
+		if (null == inflater) {
+			inflater = new Inflater();
+		}
+		else {
+			this.numInflaters.decrementAndGet();
+		}
+
+		byte[] result = null;
+		try {
+			inflater.setInput(data, offset, length);
+
+			// 输出缓存按需扩大，但不超过长度上限
+			byte[] out = new byte[(int) Math.min(Math.max((long) length * 4, 64), maxLength)];
+			int n = 0;
+			while (!inflater.finished()) {
+				if (n == out.length) {
+					if (out.length >= maxLength) {
+						// 已达到长度上限，仍有数据输出时放弃解压
+						if (inflater.inflate(new byte[1]) > 0) {
+							Logger.w(DeflateCompressor.class, "Inflated data exceeds the max length " + maxLength);
+							return null;
+						}
+						if (inflater.needsDictionary()) {
+							inflater.setDictionary(this.dictionary);
+						}
+						else if (!inflater.finished() && inflater.needsInput()) {
+							// 数据不完整
+							return null;
+						}
+						continue;
+					}
+
+					byte[] larger = new byte[(int) Math.min((long) out.length * 2, maxLength)];
+					System.arraycopy(out, 0, larger, 0, n);
+					out = larger;
+				}
+
+				int m = inflater.inflate(out, n, out.length - n);
+				if (m == 0) {
+					if (inflater.needsDictionary()) {
+						inflater.setDictionary(this.dictionary);
+					}
+					else if (inflater.needsInput()) {
+						// 数据不完整
+						return null;
+					}
+				}
+				n += m;
+			}
+
+			if (n == out.length) {
+				result = out;
+			}
+			else {
+				result = new byte[n];
+				System.arraycopy(out, 0, result, 0, n);
+			}
+		} catch (DataFormatException e) {
+			Logger.log(DeflateCompressor.class, e, LogLevel.WARNING);
+			return null;
+		} catch (IllegalArgumentException e) {
+			// 字典校验值不匹配
+			Logger.log(DeflateCompressor.class, e, LogLevel.WARNING);
+			return null;
+		} finally {
+			inflater.reset();
+			this.giveBack(inflater);
+		}
+
+		this.decompressTimes.incrementAndGet();
+		this.decompressNanos.addAndGet(System.nanoTime() - start);
+
+		return result;
+	}
+
+	private void giveBack(Deflater deflater) {
+		if (this.numDeflaters.incrementAndGet() <= this.maxPooled) {
+			this.deflaters.offer(deflater);
+		}
+		else {
+			this.numDeflaters.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+	private void giveBack(Inflater inflater) {
+		if (this.numInflaters.incrementAndGet() <= this.maxPooled) {
+			this.inflaters.offer(inflater);
+		}
+		else {
+			this.numInflaters.decrementAndGet();
+			inflater.end();
+		}
+	}
+
+	/** 返回压缩次数。
+	 */
+	public long getCompressTimes() {
+		return this.compressTimes.get();
+	}
+
+	/** 返回因压缩无收益而放弃的次数。
+	 */
+	public long getSkippedTimes() {
+		return this.skippedTimes.get();
+	}
+
+	/** 返回解压次数。
+	 */
+	public long getDecompressTimes() {
+		return this.decompressTimes.get();
+	}
+
+	/** 返回已压缩的原始数据字节数。
+	 */
+	public long getInputBytes() {
+		return this.inputBytes.get();
+	}
+
+	/** 返回压缩后的数据字节数。
+	 */
+	public long getOutputBytes() {
+		return this.outputBytes.get();
+	}
+
+	/** 返回压缩比，即压缩后字节数与原始字节数之比。
+	 */
+	public double getCompressionRatio() {
+		long input = this.inputBytes.get();
+		return (input == 0) ? 1.0 : (double) this.outputBytes.get() / (double) input;
+	}
+
+	/** 返回压缩累计耗时，单位：纳秒。包括放弃压缩的调用。
+	 */
+	public long getCompressNanos() {
+		return this.compressNanos.get();
+	}
+
+	/** 返回解压累计耗时，单位：纳秒。
+	 */
+	public long getDecompressNanos() {
+		return this.decompressNanos.get();
+	}
+}
@@ -0,0 +1,46 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+/** 断开慢速消费者的背压策略。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class DisconnectPolicy implements BackpressurePolicy {
+
+	@Override
+	public boolean overflow(Session session, WriteQueue queue, Message message) {
+		Logger.w(DisconnectPolicy.class, "Session (" + session.getId() + ") exceeds high watermark "
+				+ queue.getHighWatermark() + " bytes, close it");
+
+		MessageService service = session.getService();
+		if (service instanceof MessageAcceptor) {
+			((MessageAcceptor) service).close(session);
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+/** 丢弃最早消息的背压策略。
+ * 
+ * 丢弃队列中最早的消息直到新消息不超过高水位。已在发送中的数据不会被丢弃。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class DropOldestPolicy implements BackpressurePolicy {
+
+	@Override
+	public boolean overflow(Session session, WriteQueue queue, Message message) {
+		while (queue.getPendingBytes() + message.length() > queue.getHighWatermark()) {
+			if (null == queue.dropFirst()) {
+				break;
+			}
+		}
+
+		if (queue.getPendingBytes() + message.length() > queue.getHighWatermark()) {
+			// 发送中的数据已达到高水位
+			return false;
+		}
+
+		queue.append(message);
+		return true;
+	}
+}
@@ -63,12 +63,12 @@ public class Message {
 	/** 返回 UTF-8 字符集编码的字符串形式的消息数据。
 	 */
 	public String getAsString() {
-		return new String(this.data, Charset.forName("UTF-8"));
+		return new String(this.get(), Charset.forName("UTF-8"));
 	}
 
 	/** 返回指定字符集的消息数据的字符串形式。
 	 */
 	public String getAsString(String charsetName) {
-		return new String(this.data, Charset.forName(charsetName));
+		return new String(this.get(), Charset.forName(charsetName));
 	}
 }
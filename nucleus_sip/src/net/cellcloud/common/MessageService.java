@@ -26,17 +26,39 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 /** 消息服务。
  * 
  * @author Jiangwei Xu
  */
 public abstract class MessageService {
 
+	/// 使用数据掩码分隔消息
+	public static final int FRAMING_MARK = 0;
+	/// 使用长度前缀分隔消息
+	public static final int FRAMING_LENGTH = 1;
+
+	/// 长度前缀帧的帧头标识，首字节与数据掩码不同以便逐帧识别
+	protected static final byte[] LENGTH_FRAME_MARK = {0x4C, 0x46, 0x10, 0x04};
+	/// 长度前缀帧的帧头长度：帧头标识及 4 字节大端整数长度
+	protected static final int LENGTH_FRAME_HEADER = 8;
+
+	/// 默认的最大帧长度，单位：字节
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+	// 长度前缀帧的解析结果
+	private static final int FRAME_NONE = 0;
+	private static final int FRAME_DONE = 1;
+	private static final int FRAME_ILLEGAL = -1;
+
 	protected MessageHandler handler;
 	protected MessageInterceptor interceptor;
 	private byte[] headMark;
 	private byte[] tailMark;
 	private int maxConnectNum;
+	private int maxFrameLength;
 
 	public MessageService() {
 		this.handler = null;
@@ -44,6 +66,7 @@ public abstract class MessageService {
 		this.headMark = null;
 		this.tailMark = null;
 		this.maxConnectNum = 32;
+		this.maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
 	}
 
 	/** 返回消息句柄。
@@ -108,8 +131,177 @@ public abstract class MessageService {
 		return this.maxConnectNum;
 	}
 
-	/** 写入消息数据。 */
-	public abstract void write(Session session, Message message);
+	/** 设置最大帧长度。帧数据超过该长度时关闭会话。
+	 */
+	public void setMaxFrameLength(int length) {
+		this.maxFrameLength = length;
+	}
+
+	/** 返回最大帧长度。
+	 */
+	public int getMaxFrameLength() {
+		return this.maxFrameLength;
+	}
+
+	/** 生成长度前缀帧的帧头。
+	 */
+	protected static ByteBuffer createLengthFrameHeader(int length) {
+		ByteBuffer header = ByteBuffer.allocate(LENGTH_FRAME_HEADER);
+		header.put(LENGTH_FRAME_MARK);
+		header.putInt(length);
+		header.flip();
+		return header;
+	}
+
+	/** 从读缓存中解析数据帧。
+	 * 没有残留数据时直接从读缓存解析长度前缀帧，否则将数据写入会话的环形缓存，
+	 * 按数据掩码迭代提取。每个数据帧仅分配一次输出数组。
+	 * 仅在会话协商接受长度前缀帧后才识别长度前缀帧。
+	 * @return 如果数据帧非法或者超过最大帧长度返回 false ，调用者应关闭会话。
+	 */
+	protected boolean decodeFrames(Session session, ByteBuffer buf, List<byte[]> out) {
+		RingBuffer ring = session.ring;
+
+		if (ring.isEmpty()) {
+			int result = this.decodeLengthFrames(session, buf, out);
+			if (result != FRAME_NONE) {
+				return (result == FRAME_DONE);
+			}
+		}
+
+		ring.write(buf);
+
+		while (!ring.isEmpty()) {
+			if (ring.get(0) == LENGTH_FRAME_MARK[0] && session.isLengthFramingAccepted()) {
+				// 对端已切换为长度前缀帧，将残留数据交给长度前缀帧解析
+				byte[] rest = new byte[ring.size()];
+				ring.read(rest, 0, rest.length);
+				ByteBuffer restBuf = ByteBuffer.wrap(rest);
+				int result = this.decodeLengthFrames(session, restBuf, out);
+				if (result != FRAME_NONE) {
+					return (result == FRAME_DONE);
+				}
+
+				ring.write(restBuf);
+				continue;
+			}
+
+			if (ring.size() < this.headMark.length) {
+				// 等待后续数据
+				break;
+			}
+
+			if (!ring.matches(this.headMark, 0)) {
+				// 丢弃头标签之前的无效数据
+				int pos = ring.indexOf(this.headMark, 1);
+				if (pos < 0) {
+					ring.skip(ring.size() - this.headMark.length + 1);
+					break;
+				}
+
+				ring.skip(pos);
+				continue;
+			}
+
+			int tailPos = ring.indexOf(this.tailMark, Math.max(this.headMark.length, session.markScanOffset));
+			if (tailPos < 0) {
+				if (ring.size() - this.headMark.length > this.maxFrameLength) {
+					Logger.w(this.getClass(), "Frame exceeds the max length " + this.maxFrameLength);
+					return false;
+				}
+
+				// 没有尾标签，记录已扫描位置后等待后续数据
+				session.markScanOffset = Math.max(this.headMark.length, ring.size() - this.tailMark.length + 1);
+				break;
+			}
+
+			session.markScanOffset = 0;
+
+			byte[] data = new byte[tailPos - this.headMark.length];
+			ring.skip(this.headMark.length);
+			ring.read(data, 0, data.length);
+			ring.skip(this.tailMark.length);
+			out.add(data);
+		}
+
+		return true;
+	}
+
+	/** 从读缓存中解析长度前缀帧。
+	 * 帧数据直接从读缓存复制到输出数组，不进行掩码扫描。不完整的帧保存在 Session 中，
+	 * 在后续数据到达时继续填充。
+	 * @return 如果缓存的剩余数据不是长度前缀帧返回 {@link #FRAME_NONE} ，剩余数据保持未读状态；
+	 * 如果帧头非法或者帧长度超过最大帧长度返回 {@link #FRAME_ILLEGAL} 。
+	 */
+	private int decodeLengthFrames(Session session, ByteBuffer buf, List<byte[]> out) {
+		while (buf.hasRemaining()) {
+			if (null != session.frame) {
+				// 继续填充未完整的帧
+				int n = Math.min(buf.remaining(), session.frame.length - session.frameCursor);
+				buf.get(session.frame, session.frameCursor, n);
+				session.frameCursor += n;
+				if (session.frameCursor == session.frame.length) {
+					out.add(session.frame);
+					session.frame = null;
+					session.frameCursor = 0;
+				}
+				continue;
+			}
+
+			if (session.frameHeaderCursor == 0) {
+				if (buf.get(buf.position()) != LENGTH_FRAME_MARK[0]
+					|| !session.isLengthFramingAccepted()) {
+					// 不是长度前缀帧
+					return FRAME_NONE;
+				}
+
+				if (buf.remaining() >= LENGTH_FRAME_HEADER) {
+					// 帧头完整，直接读取
+					buf.get(session.frameHeader);
+				}
+				else {
+					// 帧头不完整，等待后续数据
+					session.frameHeaderCursor = buf.remaining();
+					buf.get(session.frameHeader, 0, session.frameHeaderCursor);
+					return FRAME_DONE;
+				}
+			}
+			else {
+				int n = Math.min(buf.remaining(), LENGTH_FRAME_HEADER - session.frameHeaderCursor);
+				buf.get(session.frameHeader, session.frameHeaderCursor, n);
+				session.frameHeaderCursor += n;
+				if (session.frameHeaderCursor < LENGTH_FRAME_HEADER) {
+					return FRAME_DONE;
+				}
+				session.frameHeaderCursor = 0;
+			}
+
+			// 校验帧头并读取长度
+			ByteBuffer header = ByteBuffer.wrap(session.frameHeader);
+			int length = header.getInt(LENGTH_FRAME_MARK.length);
+			if (header.getInt(0) != ByteBuffer.wrap(LENGTH_FRAME_MARK).getInt(0)
+				|| length < 0 || length > this.maxFrameLength) {
+				Logger.w(this.getClass(), "Illegal length frame header, length: " + length);
+				buf.position(buf.limit());
+				return FRAME_ILLEGAL;
+			}
+
+			if (length == 0) {
+				out.add(new byte[0]);
+			}
+			else {
+				session.frame = new byte[length];
+				session.frameCursor = 0;
+			}
+		}
+
+		return FRAME_DONE;
+	}
+
+	/** 写入消息数据。
+	 * @return 返回消息是否被接受发送。
+	 */
+	public abstract boolean write(Session session, Message message);
 
 	/** 读取消息数据。 */
 	public abstract void read(Message message, Session session);
@@ -29,14 +29,15 @@ package net.cellcloud.common;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 /** 非阻塞网络接收器。
@@ -60,15 +61,31 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 	private NonblockingAcceptorWorker[] workers;
 	private int workerNum;
 
-	// 存储 Session 的 Map
-	private ConcurrentHashMap<Integer, NonblockingAcceptorSession> sessions;
+	// 是否使用多 Reactor 模式
+	private boolean multiReactor;
+
+	// 会话待发送数据的低水位和高水位
+	private long lowWatermark;
+	private long highWatermark;
+	// 会话超过高水位时的背压策略
+	private BackpressurePolicy backpressurePolicy;
+
+	// 存储 Session 的 Map ，Key 为 Session ID
+	private ConcurrentHashMap<Long, NonblockingAcceptorSession> sessions;
+
+	// 需在选择器线程执行的任务队列
+	private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
 
 	public NonblockingAcceptor() {
 		this.spinning = false;
 		this.running = false;
-		this.sessions = new ConcurrentHashMap<Integer, NonblockingAcceptorSession>();
+		this.sessions = new ConcurrentHashMap<Long, NonblockingAcceptorSession>();
 		// 默认 8 线程
 		this.workerNum = 8;
+		this.multiReactor = false;
+		this.lowWatermark = 0;
+		this.highWatermark = 0;
+		this.backpressurePolicy = null;
 	}
 
 	@Override
@@ -83,7 +100,19 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			// 创建工作线程
 			this.workers = new NonblockingAcceptorWorker[this.workerNum];
 			for (int i = 0; i < this.workerNum; ++i) {
-				this.workers[i] = new NonblockingAcceptorWorker(this);
+				if (this.multiReactor) {
+					// 每个工作线程持有独立的选择器
+					try {
+						this.workers[i] = new NonblockingAcceptorWorker(this, Selector.open());
+					} catch (IOException e) {
+						Logger.log(NonblockingAcceptor.class, e, LogLevel.ERROR);
+						this.workers = null;
+						return false;
+					}
+				}
+				else {
+					this.workers[i] = new NonblockingAcceptorWorker(this);
+				}
 			}
 		}
 
@@ -139,6 +168,9 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 					loopDispatch();
 				} catch (IOException ioe) {
 					Logger.log(NonblockingAcceptor.class, ioe, LogLevel.WARNING);
+				} catch (ClosedSelectorException e) {
+					// 解绑时关闭了选择器
+					Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 				} catch (CancelledKeyException e) {
 					if (spinning)
 						Logger.log(NonblockingAcceptor.class, e, LogLevel.ERROR);
@@ -250,30 +282,32 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 
 	@Override
 	public void close(Session session) {
-		Iterator<NonblockingAcceptorSession> iter = this.sessions.values().iterator();
-		while (iter.hasNext()) {
-			NonblockingAcceptorSession nas = iter.next();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				try {
-					nas.socket.close();
-				} catch (IOException e) {
-					Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
-				}
-				break;
-			}
+		NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+		if (null == nas || null == nas.socket) {
+			return;
+		}
+
+		try {
+			nas.socket.close();
+		} catch (IOException e) {
+			Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 		}
 	}
 
 	@Override
-	public void write(Session session, Message message) {
-		Iterator<NonblockingAcceptorSession> iter = this.sessions.values().iterator();
-		while (iter.hasNext()) {
-			NonblockingAcceptorSession nas = iter.next();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				nas.addMessage(message);
-				break;
-			}
+	public boolean write(Session session, Message message) {
+		NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+		if (null == nas) {
+			return false;
 		}
+
+		if (!nas.addMessage(message)) {
+			return false;
+		}
+
+		// 通知工作器进行发送
+		nas.worker.pushSendSession(nas);
+		return true;
 	}
 
 	@Override
@@ -306,6 +340,53 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		return this.workerNum;
 	}
 
+	/** 设置是否使用多 Reactor 模式。
+	 * 多 Reactor 模式下句柄线程仅接收连接，每个工作器使用独立的选择器处理其 Session 的读写。
+	 * @note 在 bind 之前设置才能生效。
+	 */
+	public void setMultiReactor(boolean value) {
+		this.multiReactor = value;
+	}
+	/** 返回是否使用多 Reactor 模式。
+	 */
+	public boolean isMultiReactor() {
+		return this.multiReactor;
+	}
+
+	/** 设置新会话的待发送数据低水位和高水位，单位：字节。
+	 * 高水位为 0 时不限制待发送数据。
+	 */
+	public void setWriteWatermarks(long low, long high) {
+		if (high > 0 && low > high) {
+			throw new IllegalArgumentException("Low watermark " + low + " is greater than high watermark " + high);
+		}
+
+		this.lowWatermark = low;
+		this.highWatermark = high;
+	}
+	/** 返回待发送数据低水位。
+	 */
+	public long getLowWatermark() {
+		return this.lowWatermark;
+	}
+	/** 返回待发送数据高水位。
+	 */
+	public long getHighWatermark() {
+		return this.highWatermark;
+	}
+
+	/** 设置新会话超过高水位时的背压策略。
+	 * 未设置策略时丢弃超过高水位的新消息。
+	 */
+	public void setBackpressurePolicy(BackpressurePolicy policy) {
+		this.backpressurePolicy = policy;
+	}
+	/** 返回背压策略。
+	 */
+	public BackpressurePolicy getBackpressurePolicy() {
+		return this.backpressurePolicy;
+	}
+
 	/** 设置 Block 数据块大小。
 	 * @param size
 	 */
@@ -333,19 +414,7 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			return;
 		}
 
-		boolean exist = false;
-
-		Iterator<Map.Entry<Integer, NonblockingAcceptorSession>> iter = this.sessions.entrySet().iterator();
-		while (iter.hasNext()) {
-			Map.Entry<Integer, NonblockingAcceptorSession> entry = iter.next();
-			Integer hashCode = entry.getKey();
-			NonblockingAcceptorSession nas = entry.getValue();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				this.sessions.remove(hashCode);
-				exist = true;
-				break;
-			}
-		}
+		boolean exist = (null != this.sessions.remove(session.getId()));
 
 		if (exist) {
 			this.fireSessionDestroyed(session);
@@ -405,6 +474,31 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		}
 	}
 
+	/** 提交任务到选择器线程执行。
+	 * 单 Reactor 模式下工作器通过此方法修改 SelectionKey 的关注事件。
+	 */
+	protected void execute(Runnable task) {
+		this.tasks.offer(task);
+
+		if (Thread.currentThread() != this.handleThread) {
+			this.selector.wakeup();
+		}
+	}
+
+	/** 执行队列中的任务。 */
+	private void runTasks() {
+		Runnable task = null;
+		while (null != (task = this.tasks.poll())) {
+			try {
+				task.run();
+			} catch (CancelledKeyException e) {
+				// Nothing
+			} catch (Exception e) {
+				Logger.log(NonblockingAcceptor.class, e, LogLevel.WARNING);
+			}
+		}
+	}
+
 	/** 事件循环。 */
 	private void loopDispatch() throws IOException, Exception {
 		while (this.spinning) {
@@ -417,7 +511,12 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 				continue;
 			}
 
-			if (this.selector.select() > 0) {
+			int num = this.selector.select();
+
+			// 执行工作器提交的任务
+			this.runTasks();
+
+			if (num > 0) {
 				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
 				while (it.hasNext()) {
 					SelectionKey key = (SelectionKey) it.next();
@@ -445,12 +544,6 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 					}
 				} // # while
 			} // # if
-
-//			Thread.yield();
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {
-			}
 		} // # while
 	}
 
@@ -469,7 +562,6 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			}
 
 			clientChannel.configureBlocking(false);
-			clientChannel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 
 			// 创建 Session
 			InetSocketAddress address = new InetSocketAddress(clientChannel.socket().getInetAddress().getHostAddress(),
@@ -477,19 +569,37 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			NonblockingAcceptorSession session = new NonblockingAcceptorSession(this, address, this.block);
 			// 设置 Socket
 			session.socket = clientChannel.socket();
+			// 设置背压参数
+			session.getWriteQueue().setWatermarks(this.lowWatermark, this.highWatermark);
+			session.getWriteQueue().setPolicy(this.backpressurePolicy);
 
 			// 为 Session 选择工作线程
 			int index = (int)(session.getId() % this.workerNum);
 			session.worker = this.workers[index];
 
 			// 记录
-			this.sessions.put(clientChannel.socket().hashCode(), session);
+			this.sessions.put(session.getId(), session);
 
-			// 回调事件
-			this.fireSessionCreated(session);
+			if (this.multiReactor) {
+				// 回调事件，先于注册执行，保证工作器读到数据前 Session 已打开
+				this.fireSessionCreated(session);
+				this.fireSessionOpened(session);
 
-			// 回调事件
-			this.fireSessionOpened(session);
+				// 由工作器的选择器处理读写
+				session.worker.registerSession(session);
+			}
+			else {
+				// 将 Session 附加到 SelectionKey
+				// 写事件仅在有未写完的数据时由工作器关注
+				session.selectionKey = clientChannel.register(this.selector,
+						SelectionKey.OP_READ, session);
+
+				// 回调事件
+				this.fireSessionCreated(session);
+
+				// 回调事件
+				this.fireSessionOpened(session);
+			}
 		} catch (IOException e) {
 			// Nothing
 		} catch (Exception e) {
@@ -505,7 +615,7 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			return;
 		}
 
-		NonblockingAcceptorSession session = this.sessions.get(channel.socket().hashCode());
+		NonblockingAcceptorSession session = (NonblockingAcceptorSession) key.attachment();
 		if (null == session) {
 			if (Logger.isDebugLevel()) {
 				Logger.d(NonblockingAcceptor.class, "Not found session");
@@ -513,12 +623,17 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			return;
 		}
 
-		// 推入 Worker
-		session.selectionKey = key;
-		session.worker.pushReceiveSession(session);
+		if (!session.scheduleReceive()) {
+			// 接收任务已在工作器队列中
+			return;
+		}
 
+		// 取消读事件关注，由工作器在接收结束后重新关注
 		if (key.isValid())
-			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+		// 推入 Worker
+		session.worker.pushReceiveSession(session);
 	}
 
 	/** 处理 Write */
@@ -529,7 +644,7 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			return;
 		}
 
-		NonblockingAcceptorSession session = this.sessions.get(channel.socket().hashCode());
+		NonblockingAcceptorSession session = (NonblockingAcceptorSession) key.attachment();
 		if (null == session) {
 			if (Logger.isDebugLevel()) {
 				Logger.d(NonblockingAcceptor.class, "Not found session");
@@ -537,11 +652,11 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			return;
 		}
 
+		// 取消写事件关注，由工作器在数据未写完时重新关注
+		if (key.isValid())
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
 		// 推入 Worker
-		session.selectionKey = key;
 		session.worker.pushSendSession(session);
-
-		if (key.isValid())
-			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
 	}
 }
@@ -30,7 +30,8 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** 非阻塞网络接收器会话。
  * 
@@ -38,11 +39,22 @@ import java.util.LinkedList;
  */
 public class NonblockingAcceptorSession extends Session {
 
-	private ByteBuffer readBuffer;
-	private ByteBuffer writeBuffer;
+	// 读缓存大小
+	private int block;
+	// 读缓存，仅在读数据期间从缓存池借出
+	private ByteBuffer readBuffer = null;
 
-	// 待发送消息列表
-	private LinkedList<Message> messages = new LinkedList<Message>();
+	// 待发送消息队列
+	private WriteQueue writeQueue = new WriteQueue(0, 0, null);
+
+	// 正在发送的数据片段，仅由所属工作线程访问
+	private ArrayDeque<ByteBuffer> outBuffers = new ArrayDeque<ByteBuffer>();
+	// 正在发送的消息
+	private ArrayDeque<Message> outMessages = new ArrayDeque<Message>();
+	// 正在发送的消息对应的最后一个数据片段
+	private ArrayDeque<ByteBuffer> outLastBuffers = new ArrayDeque<ByteBuffer>();
+	// 从缓存池借出的数据片段，写完后归还
+	private ArrayDeque<ByteBuffer> outPooledBuffers = new ArrayDeque<ByteBuffer>();
 
 	protected SelectionKey selectionKey = null;
 	protected Socket socket = null;
@@ -50,40 +62,205 @@ public class NonblockingAcceptorSession extends Session {
 	// 所属的工作线程
 	protected NonblockingAcceptorWorker worker = null;
 
+	// 是否已加入工作器的接收任务队列
+	private AtomicBoolean receiveScheduled = new AtomicBoolean(false);
+	// 是否已加入工作器的发送任务队列
+	private AtomicBoolean sendScheduled = new AtomicBoolean(false);
+
 	/** 构造函数。
 	 */
 	public NonblockingAcceptorSession(MessageService service,
 			InetSocketAddress address, int block) {
 		super(service, address);
-		this.readBuffer = ByteBuffer.allocate(block);
-		this.writeBuffer = ByteBuffer.allocate(block);
+		this.block = block;
 	}
 
-	/** 返回读缓存。 */
-	public ByteBuffer getReadBuffer() {
+	/** 从缓存池借出读缓存。 */
+	protected ByteBuffer borrowReadBuffer() {
+		if (null == this.readBuffer) {
+			this.readBuffer = ByteBufferPool.getInstance().borrow(this.block);
+		}
 		return this.readBuffer;
 	}
 
-	/** 返回写缓存。 */
-	public ByteBuffer getWriteBuffer() {
-		return this.writeBuffer;
+	/** 向缓存池归还读缓存。 */
+	protected void returnReadBuffer() {
+		if (null != this.readBuffer) {
+			ByteBufferPool.getInstance().giveBack(this.readBuffer);
+			this.readBuffer = null;
+		}
 	}
 
-	protected void addMessage(Message message) {
-		synchronized (this.messages) {
-			this.messages.add(message);
-		}
+	/** 标记接收任务已加入队列。
+	 * @return 如果接收任务已在队列中返回 false 。
+	 */
+	protected boolean scheduleReceive() {
+		return this.receiveScheduled.compareAndSet(false, true);
+	}
+
+	/** 清除接收任务标记。
+	 */
+	protected void unscheduleReceive() {
+		this.receiveScheduled.set(false);
+	}
+
+	/** 标记发送任务已加入队列。
+	 * @return 如果发送任务已在队列中返回 false 。
+	 */
+	protected boolean scheduleSend() {
+		return this.sendScheduled.compareAndSet(false, true);
+	}
+
+	/** 清除发送任务标记。
+	 */
+	protected void unscheduleSend() {
+		this.sendScheduled.set(false);
+	}
+
+	/** 返回待发送消息队列。
+	 */
+	public WriteQueue getWriteQueue() {
+		return this.writeQueue;
+	}
+
+	/** 返回待发送数据是否低于高水位。
+	 */
+	@Override
+	public boolean isWritable() {
+		return this.writeQueue.isWritable();
+	}
+
+	protected boolean addMessage(Message message) {
+		return this.writeQueue.offer(this, message);
 	}
 
 	protected boolean isMessageEmpty() {
-		synchronized (this.messages) {
-			return this.messages.isEmpty();
-		}
+		return this.writeQueue.isEmpty();
 	}
 
 	protected Message pollMessage() {
-		synchronized (this.messages) {
-			return this.messages.poll();
+		return this.writeQueue.poll();
+	}
+
+	/** 将待发送消息转为数据片段。
+	 * 数据片段直接引用消息数据及掩码，不进行复制。
+	 * 数据包消息的包头写入从缓存池借出的缓存，子段数据直接引用。
+	 */
+	protected void stageMessages(byte[] headMark, byte[] tailMark) {
+		// 对端支持时使用长度前缀帧替代数据掩码
+		boolean lengthFraming = (null != headMark && this.getFraming() == MessageService.FRAMING_LENGTH);
+
+		Message message = null;
+		while (null != (message = this.pollMessage())) {
+			if (lengthFraming) {
+				this.outBuffers.addLast(MessageService.createLengthFrameHeader(message.length()));
+			}
+			else if (null != headMark) {
+				this.outBuffers.addLast(ByteBuffer.wrap(headMark));
+			}
+
+			ByteBuffer last = null;
+			if (message instanceof PacketMessage) {
+				last = this.stagePacket(((PacketMessage) message).getPacket());
+			}
+			else {
+				last = ByteBuffer.wrap(message.get());
+				this.outBuffers.addLast(last);
+			}
+
+			if (!lengthFraming && null != tailMark) {
+				last = ByteBuffer.wrap(tailMark);
+				this.outBuffers.addLast(last);
+			}
+
+			this.outMessages.addLast(message);
+			this.outLastBuffers.addLast(last);
+		}
+	}
+
+	/** 将数据包转为数据片段。
+	 * @return 返回最后一个数据片段。
+	 */
+	private ByteBuffer stagePacket(Packet packet) {
+		ByteBuffer header = ByteBufferPool.getInstance().borrow(packet.getHeaderLength());
+		packet.writeHeaderTo(header);
+		header.flip();
+		this.outBuffers.addLast(header);
+		this.outPooledBuffers.addLast(header);
+
+		ByteBuffer last = header;
+		int ssNum = packet.getSubsegmentCount();
+		if (ssNum > 0) {
+			for (int i = 0; i < ssNum; ++i) {
+				int length = packet.getSubsegmentLength(i);
+				if (length > 0) {
+					last = ByteBuffer.wrap(packet.getSubsegmentArray(i), packet.getSubsegmentOffset(i), length);
+					this.outBuffers.addLast(last);
+				}
+			}
+		}
+		else if (null != packet.getBody() && packet.getBody().length > 0) {
+			last = ByteBuffer.wrap(packet.getBody());
+			this.outBuffers.addLast(last);
+		}
+
+		return last;
+	}
+
+	/** 返回是否有未写完的数据片段。
+	 */
+	protected boolean hasPendingBuffers() {
+		return !this.outBuffers.isEmpty();
+	}
+
+	/** 将未写完的数据片段填入数组，用于聚集写。
+	 * @return 返回填入的片段数量。
+	 */
+	protected int gatherBuffers(ByteBuffer[] array) {
+		int count = 0;
+		for (ByteBuffer buf : this.outBuffers) {
+			if (count == array.length) {
+				break;
+			}
+			array[count++] = buf;
+		}
+		return count;
+	}
+
+	/** 移除已写完的数据片段，并返回一条已完整写出的消息。
+	 * @return 如果没有已完整写出的消息返回 null 。
+	 */
+	protected Message pollSentMessage() {
+		while (!this.outBuffers.isEmpty() && !this.outBuffers.peekFirst().hasRemaining()) {
+			ByteBuffer buf = this.outBuffers.pollFirst();
+			if (buf == this.outPooledBuffers.peekFirst()) {
+				this.outPooledBuffers.pollFirst();
+				ByteBufferPool.getInstance().giveBack(buf);
+			}
+			if (buf == this.outLastBuffers.peekFirst()) {
+				this.outLastBuffers.pollFirst();
+				Message message = this.outMessages.pollFirst();
+				this.writeQueue.sent(message);
+				return message;
+			}
 		}
+		return null;
+	}
+
+	/** 丢弃所有未写完的数据片段。
+	 */
+	protected void clearPendingBuffers() {
+		for (Message message : this.outMessages) {
+			this.writeQueue.sent(message);
+		}
+
+		for (ByteBuffer buf : this.outPooledBuffers) {
+			ByteBufferPool.getInstance().giveBack(buf);
+		}
+
+		this.outBuffers.clear();
+		this.outPooledBuffers.clear();
+		this.outMessages.clear();
+		this.outLastBuffers.clear();
 	}
 }
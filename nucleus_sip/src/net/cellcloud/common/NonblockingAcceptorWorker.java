@@ -28,9 +28,15 @@ package net.cellcloud.common;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.Vector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 /** 非阻塞网络接收器工作线程。
@@ -41,6 +47,8 @@ public final class NonblockingAcceptorWorker extends Thread {
 
 	// 控制线程生命周期的条件变量
 	private byte[] mutex = new byte[0];
+	// 单 Reactor 模式下线程是否正在等待任务
+	private volatile boolean waiting = false;
 	// 是否处于自旋
 	private boolean spinning = false;
 	// 是否正在工作
@@ -48,13 +56,31 @@ public final class NonblockingAcceptorWorker extends Thread {
 
 	private NonblockingAcceptor acceptor;
 
-	// 需要执行接收数据任务的 Session 列表
-	private Vector<NonblockingAcceptorSession> receiveSessions = new Vector<NonblockingAcceptorSession>();
-	// 需要执行发送数据任务的 Session 列表
-	private Vector<NonblockingAcceptorSession> sendSessions = new Vector<NonblockingAcceptorSession>();
+	// 多 Reactor 模式下工作器独占的选择器
+	private Selector selector = null;
+
+	// 需要执行接收数据任务的 Session 队列，每个 Session 至多出现一次
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> receiveSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+	// 需要执行发送数据任务的 Session 队列，每个 Session 至多出现一次
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> sendSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+	// 等待注册到选择器的 Session 队列
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> registerSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+
+	// 聚集写使用的片段数组
+	private ByteBuffer[] gatherArray = new ByteBuffer[64];
+	// 解析数据帧使用的输出列表
+	private ArrayList<byte[]> frames = new ArrayList<byte[]>();
 
 	public NonblockingAcceptorWorker(NonblockingAcceptor acceptor) {
+		this(acceptor, null);
+	}
+
+	/** 构造函数。
+	 * 指定选择器时工作器以多 Reactor 模式运行，由该选择器分发其所属 Session 的读写事件。
+	 */
+	public NonblockingAcceptorWorker(NonblockingAcceptor acceptor, Selector selector) {
 		this.acceptor = acceptor;
+		this.selector = selector;
 		this.setName("NonblockingAcceptorWorker@" + this.toString());
 	}
 
@@ -62,11 +88,112 @@ public final class NonblockingAcceptorWorker extends Thread {
 	public void run() {
 		this.working = true;
 		this.spinning = true;
+
+		if (null != this.selector) {
+			this.loopSelect();
+
+			try {
+				this.selector.close();
+			} catch (IOException e) {
+				Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+			}
+		}
+		else {
+			this.loopQueue();
+		}
+
+		this.working = false;
+	}
+
+	/** 多 Reactor 模式的事件循环。
+	 */
+	private void loopSelect() {
+		while (this.spinning) {
+			try {
+				this.selector.select();
+			} catch (IOException e) {
+				Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
+				break;
+			} catch (ClosedSelectorException e) {
+				break;
+			}
+
+			if (!this.spinning) {
+				break;
+			}
+
+			// 注册新接入的 Session
+			this.registerPendingSessions();
+
+			Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				NonblockingAcceptorSession session = (NonblockingAcceptorSession) key.attachment();
+				try {
+					if (key.isValid() && key.isReadable() && null != session.socket) {
+						processReceive(session);
+					}
+					if (key.isValid() && key.isWritable() && null != session.socket) {
+						// 继续写出未写完的数据
+						processSend(session);
+					}
+				} catch (CancelledKeyException e) {
+					// Nothing
+				} catch (Exception e) {
+					Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
+				}
+			}
+
+			// 执行发送数据任务
+			NonblockingAcceptorSession session = null;
+			while (null != (session = this.sendSessions.poll())) {
+				session.unscheduleSend();
+				try {
+					if (null != session.socket && null != session.selectionKey) {
+						processSend(session);
+					}
+				} catch (Exception e) {
+					Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
+				}
+			}
+		}
+	}
+
+	/** 将等待注册的 Session 注册到选择器。
+	 */
+	private void registerPendingSessions() {
+		NonblockingAcceptorSession session = null;
+		while (null != (session = this.registerSessions.poll())) {
+			if (null == session.socket) {
+				continue;
+			}
+
+			SocketChannel channel = session.socket.getChannel();
+			try {
+				session.selectionKey = channel.register(this.selector, SelectionKey.OP_READ, session);
+			} catch (ClosedChannelException e) {
+				this.acceptor.eraseSession(session);
+				continue;
+			}
+
+			// 注册前已写入的消息
+			if (!session.isMessageEmpty() && session.scheduleSend()) {
+				this.sendSessions.offer(session);
+			}
+		}
+	}
+
+	/** 单 Reactor 模式的任务循环。
+	 */
+	private void loopQueue() {
 		NonblockingAcceptorSession session = null;
 
 		while (this.spinning) {
 			// 如果没有任务，则线程 wait
 			synchronized (this.mutex) {
+				this.waiting = true;
 				if (this.receiveSessions.isEmpty()
 					&& this.sendSessions.isEmpty()
 					&& this.spinning) {
@@ -76,37 +203,69 @@ public final class NonblockingAcceptorWorker extends Thread {
 						Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
 					}
 				}
+				this.waiting = false;
 			}
 
-			try {
-				if (!this.receiveSessions.isEmpty()) {
-					// 执行接收数据任务，并移除已执行的 Session
-					session = this.receiveSessions.remove(0);
+			// 执行接收数据任务
+			while (null != (session = this.receiveSessions.poll())) {
+				try {
 					if (null != session.socket) {
 						processReceive(session);
 					}
+				} catch (Exception e) {
+					Logger.log(this.getClass(), e, LogLevel.WARNING);
+				} finally {
+					this.finishReceive(session);
 				}
+			}
 
-				if (!this.sendSessions.isEmpty()) {
-					// 执行发送数据任务，并移除已执行的 Session
-					session = this.sendSessions.remove(0);
+			// 执行发送数据任务
+			while (null != (session = this.sendSessions.poll())) {
+				session.unscheduleSend();
+				try {
 					if (null != session.socket) {
 						processSend(session);
 					}
+				} catch (Exception e) {
+					Logger.log(this.getClass(), e, LogLevel.WARNING);
 				}
-			} catch (Exception e) {
-				Logger.log(this.getClass(), e, LogLevel.WARNING);
 			}
+		}
+	}
 
-			// 让步
-//			Thread.yield();
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {
-			}
+	/** 接收任务结束，清除任务标记并重新关注读事件。
+	 * SelectionKey 属于接收器的选择器，交由接收器线程修改关注事件。
+	 */
+	private void finishReceive(NonblockingAcceptorSession session) {
+		session.unscheduleReceive();
+
+		final SelectionKey key = session.selectionKey;
+		if (null == key) {
+			return;
 		}
 
-		this.working = false;
+		this.acceptor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+					}
+				} catch (CancelledKeyException e) {
+					// Nothing
+				}
+			}
+		});
+	}
+
+	/** 唤醒等待任务的线程。
+	 */
+	private void notifyWorker() {
+		if (this.waiting) {
+			synchronized (this.mutex) {
+				this.mutex.notify();
+			}
+		}
 	}
 
 	/** 停止自旋
@@ -118,6 +277,10 @@ public final class NonblockingAcceptorWorker extends Thread {
 			this.mutex.notifyAll();
 		}
 
+		if (null != this.selector) {
+			this.selector.wakeup();
+		}
+
 		if (blockingCheck) {
 			while (this.working) {
 				try {
@@ -148,52 +311,61 @@ public final class NonblockingAcceptorWorker extends Thread {
 	}
 
 	/** 添加执行接收数据的 Session 。
+	 * 调用者需先通过 {@link NonblockingAcceptorSession#scheduleReceive()} 标记任务，
+	 * 工作器在接收结束后清除标记。
 	 */
 	protected void pushReceiveSession(NonblockingAcceptorSession session) {
 		if (!this.spinning) {
+			session.unscheduleReceive();
 			return;
 		}
 
-		this.receiveSessions.add(session);
-
-		synchronized (this.mutex) {
-			this.mutex.notifyAll();
-		}
+		this.receiveSessions.offer(session);
+		this.notifyWorker();
 	}
 
 	/** 添加执行发送数据的 Session 。
+	 * 已在发送任务队列中的 Session 不再重复添加。
 	 */
 	protected void pushSendSession(NonblockingAcceptorSession session) {
 		if (!this.spinning) {
 			return;
 		}
 
-		if (session.isMessageEmpty()) {
+		if (!session.scheduleSend()) {
+			// 已在队列中，工作器执行任务时会发送全部待发送消息
 			return;
 		}
 
-		this.sendSessions.add(session);
+		this.sendSessions.offer(session);
 
-		synchronized (this.mutex) {
-			this.mutex.notifyAll();
+		if (null != this.selector) {
+			this.selector.wakeup();
+			return;
 		}
+
+		this.notifyWorker();
+	}
+
+	/** 添加需要注册到工作器选择器的 Session 。
+	 */
+	protected void registerSession(NonblockingAcceptorSession session) {
+		this.registerSessions.offer(session);
+		this.selector.wakeup();
+	}
+
+	/** 返回工作器是否持有独立的选择器。
+	 */
+	protected boolean isMultiReactor() {
+		return (null != this.selector);
 	}
 
 	/** 从所有列表中移除指定的 Session 。
 	 */
 	private void removeSession(NonblockingAcceptorSession session) {
-		try {
-			boolean exist = this.receiveSessions.remove(session);
-			while (exist) {
-				exist = this.receiveSessions.remove(session);
-			}
-
-			exist = this.sendSessions.remove(session);
-			while (exist) {
-				exist = this.sendSessions.remove(session);
-			}
-		} catch (Exception e) {
-			Logger.log(this.getClass(), e, LogLevel.WARNING);
+		// 每个 Session 在队列中至多出现一次
+		if (this.sendSessions.remove(session)) {
+			session.unscheduleSend();
 		}
 	}
 
@@ -206,11 +378,11 @@ public final class NonblockingAcceptorWorker extends Thread {
 			return;
 		}
 
-		// 获取 Session 的读缓存。
-		ByteBuffer buf = session.getReadBuffer();
+		// 从缓存池借出读缓存，读取结束后归还
+		ByteBuffer buf = session.borrowReadBuffer();
 		int read = 0;
-		do {
-			synchronized (buf) {
+		try {
+			do {
 				try {
 					if (channel.isOpen())
 						read = channel.read(buf);
@@ -267,276 +439,161 @@ public final class NonblockingAcceptorWorker extends Thread {
 
 				buf.flip();
 
-				byte[] array = new byte[read];
-				buf.get(array);
-
 				// 解析数据
-				parse(session, array);
+				if (!parse(session, buf)) {
+					Logger.w(this.getClass(), "Illegal frame from " + session.getAddress() + ", closes the session");
+
+					if (null != session.socket) {
+						this.acceptor.fireSessionClosed(session);
+					}
+
+					try {
+						if (channel.isOpen())
+							channel.close();
+					} catch (IOException ioe) {
+						Logger.log(NonblockingAcceptorWorker.class, ioe, LogLevel.DEBUG);
+					}
+
+					// 移除 Session
+					this.acceptor.eraseSession(session);
+					this.removeSession(session);
+
+					session.selectionKey.cancel();
+
+					return;
+				}
 
 				buf.clear();
-			}
-		} while (read > 0);
+			} while (read > 0);
+		} finally {
+			session.returnReadBuffer();
+		}
 	}
 
 	/** 处理发送。
+	 * 使用聚集写输出数据片段，未写完的数据在下一次写事件时继续写出。
 	 */
 	private void processSend(NonblockingAcceptorSession session) {
-		SocketChannel channel = (SocketChannel) session.selectionKey.channel();
+		SelectionKey key = session.selectionKey;
+		SocketChannel channel = (SocketChannel) key.channel();
 
 		if (!channel.isConnected()) {
 			return;
 		}
 
-		if (!session.isMessageEmpty()) {
-			// 有消息，进行发送
-
-			Message message = null;
-
-			// 获取 Session 的写缓存
-			ByteBuffer buf = session.getWriteBuffer();
-			synchronized (buf) {
-				while (!session.isMessageEmpty()) {
-					message = session.pollMessage();
-					if (null == message) {
-						break;
-					}
-
-					// 根据是否有数据掩码组装数据包
-					if (this.acceptor.existDataMark()) {
-						byte[] data = message.get();
-						byte[] head = this.acceptor.getHeadMark();
-						byte[] tail = this.acceptor.getTailMark();
-						byte[] pd = new byte[data.length + head.length + tail.length];
-						System.arraycopy(head, 0, pd, 0, head.length);
-						System.arraycopy(data, 0, pd, head.length, data.length);
-						System.arraycopy(tail, 0, pd, head.length + data.length, tail.length);
-						buf.put(pd);
-					}
-					else {
-						buf.put(message.get());
-					}
+		// 根据是否有数据掩码组装数据片段
+		if (this.acceptor.existDataMark()) {
+			session.stageMessages(this.acceptor.getHeadMark(), this.acceptor.getTailMark());
+		}
+		else {
+			session.stageMessages(null, null);
+		}
 
-					buf.flip();
+		while (session.hasPendingBuffers()) {
+			int count = session.gatherBuffers(this.gatherArray);
 
-					try {
-						channel.write(buf);
-					} catch (IOException e) {
-						Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
-					}
+			long written = 0;
+			try {
+				written = channel.write(this.gatherArray, 0, count);
+			} catch (IOException e) {
+				Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
+				// 连接已不可写，由读事件处理关闭
+				session.clearPendingBuffers();
+			} finally {
+				for (int i = 0; i < count; ++i) {
+					this.gatherArray[i] = null;
+				}
+			}
 
-					buf.clear();
+			// 回调事件
+			Message message = null;
+			while (null != (message = session.pollSentMessage())) {
+				this.acceptor.fireMessageSent(session, message);
+			}
 
-					// 回调事件
-					this.acceptor.fireMessageSent(session, message);
-				}
-			} //# synchronized
+			if (written == 0) {
+				// 发送缓冲区已满
+				break;
+			}
 		}
+
+		// 仅在有未写完的数据时关注写事件
+		this.updateWriteInterest(key, session.hasPendingBuffers());
 	}
 
-	private void parse(NonblockingAcceptorSession session, byte[] data) {
-		// 拦截器返回 true 则该数据被拦截，不再进行数据解析。
-		if (this.acceptor.fireIntercepted(session, data)) {
+	/** 更新 SelectionKey 的写事件关注。
+	 * 单 Reactor 模式下 SelectionKey 属于接收器的选择器，交由接收器线程修改。
+	 */
+	private void updateWriteInterest(final SelectionKey key, final boolean write) {
+		if (key.selector() != this.selector) {
+			this.acceptor.execute(new Runnable() {
+				@Override
+				public void run() {
+					applyWriteInterest(key, write);
+				}
+			});
 			return;
 		}
 
-		// 根据数据标志获取数据
-		if (this.acceptor.existDataMark()) {
-			ArrayList<byte[]> out = new ArrayList<byte[]>(2);
-			// 进行递归提取
-			this.extract(out, session, data);
+		this.applyWriteInterest(key, write);
+	}
 
-			if (!out.isEmpty()) {
-				for (byte[] bytes : out) {
-					Message message = new Message(bytes);
-					this.acceptor.fireMessageReceived(session, message);
-				}
+	/** 在选择器线程内设置写事件关注。
+	 */
+	private void applyWriteInterest(SelectionKey key, boolean write) {
+		try {
+			if (!key.isValid()) {
+				return;
+			}
 
-				out.clear();
+			int ops = key.interestOps();
+			int newOps = write ? (ops | SelectionKey.OP_WRITE) : (ops & ~SelectionKey.OP_WRITE);
+			if (ops != newOps) {
+				key.interestOps(newOps);
 			}
-			out = null;
-		}
-		else {
-			Message message = new Message(data);
-			this.acceptor.fireMessageReceived(session, message);
+		} catch (CancelledKeyException e) {
+			// Nothing
 		}
 	}
 
-	/** 解析数据格式。
-	 * @deprecated
+	/** 解析数据。
+	 * @return 如果数据帧非法返回 false 。
 	 */
-	protected void parseData(NonblockingAcceptorSession session, byte[] data) {
-		// 拦截器返回 true 则该数据被拦截，不再进行数据解析。
-		if (this.acceptor.fireIntercepted(session, data)) {
-			return;
+	private boolean parse(NonblockingAcceptorSession session, ByteBuffer buf) {
+		if (null != this.acceptor.getInterceptor()) {
+			byte[] data = new byte[buf.remaining()];
+			buf.get(data);
+
+			// 拦截器返回 true 则该数据被拦截，不再进行数据解析。
+			if (this.acceptor.fireIntercepted(session, data)) {
+				return true;
+			}
+
+			buf = ByteBuffer.wrap(data);
 		}
 
 		// 根据数据标志获取数据
 		if (this.acceptor.existDataMark()) {
-			byte[] headMark = this.acceptor.getHeadMark();
-			byte[] tailMark = this.acceptor.getTailMark();
-
-			int cursor = 0;
-			int length = data.length;
-			boolean head = false;
-			boolean tail = false;
-			byte[] buf = new byte[this.acceptor.block];
-			int bufIndex = 0;
-
-			while (cursor < length) {
-				head = true;
-				tail = true;
-
-				byte b = data[cursor];
-
-				// 判断是否是头标识
-				if (b == headMark[0]) {
-					for (int i = 1, len = headMark.length; i < len; ++i) {
-						if (data[cursor + i] != headMark[i]) {
-							head = false;
-							break;
-						}
-					}
-				}
-				else {
-					head = false;
-				}
+			ArrayList<byte[]> out = this.frames;
+			boolean legal = this.acceptor.decodeFrames(session, buf, out);
 
-				// 判断是否是尾标识
-				if (b == tailMark[0]) {
-					for (int i = 1, len = tailMark.length; i < len; ++i) {
-						if (data[cursor + i] != tailMark[i]) {
-							tail = false;
-							break;
-						}
-					}
-				}
-				else {
-					tail = false;
-				}
-
-				if (head) {
-					// 遇到头标识，开始记录数据
-					cursor += headMark.length;
-					bufIndex = 0;
-					buf[bufIndex] = data[cursor];
-				}
-				else if (tail) {
-					// 遇到尾标识，提取 buf 内数据
-					byte[] pdata = new byte[bufIndex + 1];
-					System.arraycopy(buf, 0, pdata, 0, bufIndex + 1);
-					Message message = new Message(pdata);
+			if (!out.isEmpty()) {
+				for (int i = 0, size = out.size(); i < size; ++i) {
+					Message message = new Message(out.get(i));
 					this.acceptor.fireMessageReceived(session, message);
-
-					cursor += tailMark.length;
-					// 后面要移动到下一个字节因此这里先减1
-					cursor -= 1;
-				}
-				else {
-					++bufIndex;
-					buf[bufIndex] = b;
 				}
 
-				// 下一个字节
-				++cursor;
+				out.clear();
 			}
 
-			buf = null;
+			return legal;
 		}
 		else {
+			byte[] data = new byte[buf.remaining()];
+			buf.get(data);
 			Message message = new Message(data);
 			this.acceptor.fireMessageReceived(session, message);
+			return true;
 		}
 	}
-
-	/**
-	 * 数据提取并输出。
-	 */
-	private void extract(final ArrayList<byte[]> out, final NonblockingAcceptorSession session, final byte[] data) {
-		final byte[] headMark = this.acceptor.getHeadMark();
-		final byte[] tailMark = this.acceptor.getTailMark();
-
-		// 当数据小于标签长度时直接缓存
-		if (data.length < headMark.length) {
-			System.arraycopy(data, 0, session.cache, session.cacheCursor, data.length);
-			session.cacheCursor += data.length;
-			return;
-		}
-
-		byte[] real = data;
-		if (session.cacheCursor > 0) {
-			real = new byte[session.cacheCursor + data.length];
-			System.arraycopy(session.cache, 0, real, 0, session.cacheCursor);
-			System.arraycopy(data, 0, real, session.cacheCursor, data.length);
-			session.cacheCursor = 0;
-		}
-
-		int index = 0;
-		int len = real.length;
-		int headPos = -1;
-		int tailPos = -1;
-
-		if (compareBytes(headMark, 0, real, index, headMark.length)) {
-			// 有头标签
-			index += headMark.length;
-			// 记录数据位置头
-			headPos = index;
-			// 判断是否有尾标签
-			while (index < len) {
-				if (real[index] == tailMark[0]) {
-					if (compareBytes(tailMark, 0, real, index, tailMark.length)) {
-						// 找到尾标签
-						tailPos = index;
-						break;
-					}
-					else {
-						++index;
-					}
-				}
-				else {
-					++index;
-				}
-			}
-
-			if (headPos > 0 && tailPos > 0) {
-				byte[] outBytes = new byte[tailPos - headPos];
-				System.arraycopy(real, headPos, outBytes, 0, tailPos - headPos);
-				out.add(outBytes);
-
-				int newLen = len - tailPos - tailMark.length;
-				if (newLen > 0) {
-					byte[] newBytes = new byte[newLen];
-					System.arraycopy(real, tailPos + tailMark.length, newBytes, 0, newLen);
-
-					// 递归
-					extract(out, session, newBytes);
-				}
-			}
-			else {
-				// 没有尾标签
-				// 仅进行缓存
-				if (len + session.cacheCursor > session.cacheSize) {
-					// 缓存扩容
-					session.resetCacheSize(len + session.cacheCursor);
-				}
-
-				System.arraycopy(real, 0, session.cache, session.cacheCursor, len);
-				session.cacheCursor += len;
-			}
-
-			return;
-		}
-
-		byte[] newBytes = new byte[len - headMark.length];
-		System.arraycopy(real, headMark.length, newBytes, 0, newBytes.length);
-		extract(out, session, newBytes);
-	}
-
-	private boolean compareBytes(byte[] b1, int offsetB1, byte[] b2, int offsetB2, int length) {
-		for (int i = 0; i < length; ++i) {
-			if (b1[offsetB1 + i] != b2[offsetB2 + i]) {
-				return false;
-			}
-		}
-		return true;
-	}
 }
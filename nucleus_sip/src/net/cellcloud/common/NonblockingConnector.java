@@ -31,15 +31,19 @@ import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Set;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /** 非阻塞式网络连接器。
+ * 
+ * 连接器不再独占线程，通道的读写事件由 ConnectorEventLoopGroup 的共享事件循环分发。
+ * 事件循环线程内触发的句柄回调提交到回调线程池按顺序执行，句柄阻塞不会影响其他连接器。
+ * 待执行的回调过多时暂停读取，回调积压降低后恢复。
  * 
  * @author Jiangwei Xu
  */
@@ -50,27 +54,58 @@ public class NonblockingConnector extends MessageService implements MessageConne
 
 	private InetSocketAddress address;
 	private long connectTimeout;
-	private SocketChannel channel;
-	private Selector selector;
-
-	private Session session;
-
-	private Thread handleThread;
-	private boolean spinning = false;
-	private boolean running = false;
-
-	private ByteBuffer readBuffer;
-	private ByteBuffer writeBuffer;
-	// 待发送消息列表
-	private Vector<Message> messages;
+	private volatile SocketChannel channel;
+
+	// 所属的事件循环
+	private ConnectorEventLoopGroup.EventLoop eventLoop;
+	// 以下字段仅由事件循环线程访问
+	private SelectionKey selectionKey;
+	// 连接超时定时任务
+	private ScheduledFuture<?> timeoutFuture;
+
+	private volatile Session session;
+
+	// 待发送消息队列
+	private ConcurrentLinkedQueue<Message> messages;
+	// 未写完的数据及其对应的消息，仅由事件循环线程访问
+	private ByteBuffer pendingBuffer;
+	private Message pendingMessage;
+	// 是否已提交写任务
+	private AtomicBoolean flushScheduled;
+
+	// 解析数据帧使用的输出列表
+	private ArrayList<byte[]> frames;
+
+	// 暂停读取的回调积压数量
+	private static final int CALLBACK_HIGH_WATERMARK = 1024;
+	// 恢复读取的回调积压数量
+	private static final int CALLBACK_LOW_WATERMARK = 256;
+
+	// 待执行的句柄回调
+	private ConcurrentLinkedQueue<Runnable> callbacks = new ConcurrentLinkedQueue<Runnable>();
+	private AtomicInteger callbackDepth = new AtomicInteger(0);
+	// 是否已提交到回调线程池
+	private AtomicBoolean dispatching = new AtomicBoolean(false);
+	// 是否因回调积压暂停读取
+	private AtomicBoolean readPaused = new AtomicBoolean(false);
+	private final Runnable callbackRunner = new Runnable() {
+		@Override
+		public void run() {
+			runCallbacks();
+		}
+	};
 
-	private boolean closed = false;
+	// 会话关闭及销毁事件是否已通知
+	private AtomicBoolean closed;
+	private AtomicBoolean destroyed;
 
 	public NonblockingConnector() {
 		this.connectTimeout = 10000;
-		this.readBuffer = ByteBuffer.allocate(this.block);
-		this.writeBuffer = ByteBuffer.allocate(this.block);
-		this.messages = new Vector<Message>();
+		this.messages = new ConcurrentLinkedQueue<Message>();
+		this.flushScheduled = new AtomicBoolean(false);
+		this.frames = new ArrayList<byte[]>();
+		this.closed = new AtomicBoolean(false);
+		this.destroyed = new AtomicBoolean(false);
 	}
 
 	/** 返回连接地址。
@@ -86,59 +121,35 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			return true;
 		}
 
-		if (this.running && null != this.channel) {
-			this.spinning = false;
-
+		if (null != this.channel) {
+			// 放弃尚未完成的连接，通道关闭后其选择键随之失效
 			try {
-				if (this.channel.isOpen()) {
-					this.channel.close();
-				}
-
-				if (null != this.selector) {
-					this.selector.close();
-				}
+				this.channel.close();
 			} catch (IOException e) {
 				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 			}
-
-			while (this.running) {
-				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-					break;
-				}
-			}
 		}
 
 		// 状态初始化
-		this.readBuffer.clear();
-		this.writeBuffer.clear();
 		this.messages.clear();
 		this.address = address;
 
+		SocketChannel channel = null;
 		try {
-			this.channel = SocketChannel.open();
-			this.channel.configureBlocking(false);
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
 
 			// 配置
 			// 以下为 JDK7 的代码
-			this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
-			this.channel.setOption(StandardSocketOptions.SO_RCVBUF, this.block + 512);
-			this.channel.setOption(StandardSocketOptions.SO_SNDBUF, this.block + 512);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, this.block + 512);
+			channel.setOption(StandardSocketOptions.SO_SNDBUF, this.block + 512);
 			// 以下为 JDK6 的代码
 			/*
-			this.channel.socket().setKeepAlive(true);
-			this.channel.socket().setReceiveBufferSize(this.block + 512);
-			this.channel.socket().setSendBufferSize(this.block + 512);
+			channel.socket().setKeepAlive(true);
+			channel.socket().setReceiveBufferSize(this.block + 512);
+			channel.socket().setSendBufferSize(this.block + 512);
 			*/
-
-			this.selector = Selector.open();
-			// 注册事件
-			this.channel.register(this.selector, SelectionKey.OP_CONNECT);
-
-			// 连接
-			this.channel.connect(this.address);
 		} catch (IOException e) {
 			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 
@@ -146,19 +157,12 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			this.fireErrorOccurred(MessageErrorCode.SOCKET_FAILED);
 
 			try {
-				if (null != this.channel) {
-					this.channel.close();
+				if (null != channel) {
+					channel.close();
 				}
 			} catch (Exception ce) {
 				// Nothing
 			}
-			try {
-				if (null != this.selector) {
-					this.selector.close();
-				}
-			} catch (Exception se) {
-				// Nothing
-			}
 
 			return false;
 		} catch (Exception e) {
@@ -168,90 +172,58 @@ public class NonblockingConnector extends MessageService implements MessageConne
 
 		// 创建 Session
 		this.session = new Session(this, this.address);
+		this.closed.set(false);
+		this.destroyed.set(false);
+		this.flushScheduled.set(false);
 
-		this.handleThread = new Thread() {
+		this.channel = channel;
+		if (null == this.eventLoop) {
+			this.eventLoop = ConnectorEventLoopGroup.getInstance().next();
+		}
+
+		// 在事件循环线程内注册并发起连接
+		final SocketChannel target = channel;
+		this.eventLoop.execute(new Runnable() {
 			@Override
 			public void run() {
-				running = true;
-
-				// 通知 Session 创建。
-				fireSessionCreated();
-
-				try {
-					loopDispatch();
-				} catch (Exception e) {
-					spinning = false;
-					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-				}
-
-				// 通知 Session 销毁。
-				fireSessionDestroyed();
-
-				running = false;
-
-				try {
-					if (null != selector && selector.isOpen())
-						selector.close();
-					if (null != channel && channel.isOpen())
-						channel.close();
-				} catch (IOException e) {
-					// Nothing
-				}
+				doRegister(target);
 			}
-		};
-		this.handleThread.setName(new StringBuilder("NonblockingConnector[").append(this.handleThread).append("]@")
-			.append(this.address.getAddress().getHostAddress()).append(":").append(this.address.getPort()).toString());
-		// 启动线程
-		this.handleThread.start();
+		});
 
 		return true;
 	}
 
 	@Override
 	public void disconnect() {
-		this.spinning = false;
-
-		if (null != this.channel) {
-			if (this.channel.isConnected()) {
-				fireSessionClosed();
-			}
-
-			try {
-				if (this.channel.isOpen()) {
-					this.channel.close();
-				}
-			} catch (Exception e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
+		final SocketChannel channel = this.channel;
+		if (null == channel) {
+			return;
+		}
 
-			try {
-				this.channel.socket().close();
-			} catch (Exception e) {
-				//Logger.logException(e, LogLevel.DEBUG);
-			}
+		if (channel.isConnected()) {
+			fireSessionClosed();
 		}
 
-		if (null != this.selector && this.selector.isOpen()) {
-			try {
-				this.selector.wakeup();
-				this.selector.close();
-			} catch (Exception e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+		try {
+			if (channel.isOpen()) {
+				channel.close();
 			}
+		} catch (Exception e) {
+			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 		}
 
-		int count = 0;
-		while (this.running) {
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
+		fireSessionDestroyed();
 
-			if (++count >= 300) {
-				this.handleThread.interrupt();
-				this.running = false;
-			}
+		if (null != this.eventLoop) {
+			// 由事件循环线程回收选择键及写缓存
+			this.eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (channel == NonblockingConnector.this.channel) {
+						closeChannel(channel);
+					}
+				}
+			});
 		}
 	}
 
@@ -271,8 +243,6 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		}
 
 		this.block = size;
-		this.readBuffer = ByteBuffer.allocate(this.block);
-		this.writeBuffer = ByteBuffer.allocate(this.block);
 
 		if (null != this.channel) {
 			try {
@@ -299,13 +269,29 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		return this.session;
 	}
 
-	public void write(Message message) {
-		this.write(null, message);
+	public boolean write(Message message) {
+		return this.write(null, message);
 	}
 
 	@Override
-	public void write(Session session, Message message) {
-		this.messages.add(message);
+	public boolean write(Session session, Message message) {
+		this.messages.offer(message);
+
+		if (this.isConnected() && this.flushScheduled.compareAndSet(false, true)) {
+			this.eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					flushScheduled.set(false);
+
+					SelectionKey key = selectionKey;
+					if (null != key && key.isValid() && key.channel() == channel) {
+						send(key);
+					}
+				}
+			});
+		}
+
+		return true;
 	}
 
 	@Override
@@ -314,94 +300,263 @@ public class NonblockingConnector extends MessageService implements MessageConne
 	}
 
 	private void fireSessionCreated() {
-		if (null != this.handler) {
-			this.handler.sessionCreated(this.session);
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			final Session session = this.session;
+			this.dispatch(new Runnable() {
+				@Override
+				public void run() {
+					handler.sessionCreated(session);
+				}
+			});
 		}
 	}
 	private void fireSessionOpened() {
-		if (null != this.handler) {
-			this.closed = false;
-			this.handler.sessionOpened(this.session);
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			final Session session = this.session;
+			this.dispatch(new Runnable() {
+				@Override
+				public void run() {
+					handler.sessionOpened(session);
+				}
+			});
 		}
 	}
 	private void fireSessionClosed() {
-		if (null != this.handler) {
-			if (!this.closed) {
-				this.closed = true;
-				this.handler.sessionClosed(this.session);
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			if (this.closed.compareAndSet(false, true)) {
+				final Session session = this.session;
+				this.dispatch(new Runnable() {
+					@Override
+					public void run() {
+						handler.sessionClosed(session);
+					}
+				});
 			}
 		}
 	}
 	private void fireSessionDestroyed() {
-		if (null != this.handler) {
-			this.handler.sessionDestroyed(this.session);
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			if (this.destroyed.compareAndSet(false, true)) {
+				final Session session = this.session;
+				this.dispatch(new Runnable() {
+					@Override
+					public void run() {
+						handler.sessionDestroyed(session);
+					}
+				});
+			}
 		}
 	}
-	private void fireErrorOccurred(int errorCode) {
-		if (null != this.handler) {
-			this.handler.errorOccurred(errorCode, this.session);
+	private void fireErrorOccurred(final int errorCode) {
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			final Session session = this.session;
+			this.dispatch(new Runnable() {
+				@Override
+				public void run() {
+					handler.errorOccurred(errorCode, session);
+				}
+			});
+		}
+	}
+	private void fireMessageReceived(final Message message) {
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			final Session session = this.session;
+			this.dispatch(new Runnable() {
+				@Override
+				public void run() {
+					handler.messageReceived(session, message);
+				}
+			});
+		}
+	}
+	private void fireMessageSent(final Message message) {
+		final MessageHandler handler = this.handler;
+		if (null != handler) {
+			final Session session = this.session;
+			this.dispatch(new Runnable() {
+				@Override
+				public void run() {
+					handler.messageSent(session, message);
+				}
+			});
 		}
 	}
 
-	/** 事件循环。 */
-	private void loopDispatch() throws Exception {
-		// 自旋
-		this.spinning = true;
+	/** 分发句柄回调。
+	 * 事件循环线程内的回调提交到回调线程池按顺序执行，其他线程内的回调直接执行。
+	 */
+	private void dispatch(Runnable callback) {
+		if (Thread.currentThread() != this.eventLoop) {
+			callback.run();
+			return;
+		}
 
-		while (this.spinning) {
-			if (!this.selector.isOpen()) {
-				try {
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-				}
-				continue;
-			}
+		this.callbacks.offer(callback);
+		this.callbackDepth.incrementAndGet();
 
-			if (this.selector.select(this.channel.isConnected() ? 0 : this.connectTimeout) > 0) {
-				Set<SelectionKey> keys = this.selector.selectedKeys();
-				Iterator<SelectionKey> it = keys.iterator();
-				while (it.hasNext()) {
-					SelectionKey key = (SelectionKey) it.next();
-					it.remove();
-
-					// 当前通道选择器产生连接已经准备就绪事件，并且客户端套接字通道尚未连接到服务端套接字通道
-					if (key.isConnectable()) {
-						if (!this.doConnect(key)) {
-							this.spinning = false;
-							return;
-						}
-						else {
-							// 连接成功，打开 Session
-							fireSessionOpened();
-						}
-					}
-					if (key.isReadable()) {
-						receive(key);
+		if (this.dispatching.compareAndSet(false, true)) {
+			ConnectorEventLoopGroup.getInstance().dispatch(this.callbackRunner);
+		}
+	}
+
+	/** 在回调线程池中按顺序执行句柄回调。
+	 */
+	private void runCallbacks() {
+		boolean completed = false;
+		try {
+			do {
+				Runnable callback = null;
+				while (null != (callback = this.callbacks.poll())) {
+					int depth = this.callbackDepth.decrementAndGet();
+					try {
+						callback.run();
+					} catch (Exception e) {
+						Logger.log(NonblockingConnector.class, e, LogLevel.WARNING);
 					}
-					if (key.isWritable()) {
-						send(key);
+
+					if (depth <= CALLBACK_LOW_WATERMARK && this.readPaused.get()) {
+						this.resumeRead();
 					}
-				} //# while
+				}
 
-				if (!this.spinning) {
-					break;
+				this.dispatching.set(false);
+
+				// 清除标记后再次检查，避免遗漏清除前提交的回调
+			} while (!this.callbacks.isEmpty() && this.dispatching.compareAndSet(false, true));
+
+			completed = true;
+		} finally {
+			if (!completed) {
+				// 回调抛出 Error ，由新线程继续执行剩余回调
+				this.dispatching.set(false);
+				if (!this.callbacks.isEmpty() && this.dispatching.compareAndSet(false, true)) {
+					ConnectorEventLoopGroup.getInstance().dispatch(this.callbackRunner);
 				}
+			}
+		}
+	}
 
-				Thread.yield();
+	/** 在事件循环线程内恢复读取。
+	 */
+	private void resumeRead() {
+		final ConnectorEventLoopGroup.EventLoop loop = this.eventLoop;
+		if (null == loop) {
+			return;
+		}
 
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (!readPaused.compareAndSet(true, false)) {
+					return;
 				}
+
+				SelectionKey key = selectionKey;
+				if (null != key && key.isValid()) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+				}
+			}
+		});
+	}
+
+	/** 选择器重建后更新选择键。由事件循环线程调用。
+	 */
+	protected void rebind(SelectionKey key) {
+		if (key.channel() == this.channel) {
+			this.selectionKey = key;
+		}
+	}
+
+	/** 在事件循环线程内注册通道并发起连接。
+	 */
+	private void doRegister(final SocketChannel channel) {
+		if (channel != this.channel || !channel.isOpen()) {
+			return;
+		}
+
+		// 丢弃上一个连接未写完的数据
+		if (null != this.pendingBuffer) {
+			ByteBufferPool.getInstance().giveBack(this.pendingBuffer);
+			this.pendingBuffer = null;
+			this.pendingMessage = null;
+		}
+		if (null != this.timeoutFuture) {
+			this.timeoutFuture.cancel(false);
+			this.timeoutFuture = null;
+		}
+
+		// 通知 Session 创建。
+		fireSessionCreated();
+
+		try {
+			this.selectionKey = channel.register(this.eventLoop.selector(), SelectionKey.OP_CONNECT, this);
+
+			if (channel.connect(this.address)) {
+				// 立即完成连接
+				this.doConnect(this.selectionKey);
+				return;
+			}
+		} catch (IOException e) {
+			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+
+			this.closeChannel(channel);
+
+			fireErrorOccurred(MessageErrorCode.SOCKET_FAILED);
+			fireSessionDestroyed();
+			return;
+		}
+
+		// 由定时器检查连接超时
+		this.timeoutFuture = ConnectorEventLoopGroup.getInstance().schedule(new Runnable() {
+			@Override
+			public void run() {
+				eventLoop.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (channel == NonblockingConnector.this.channel && !channel.isConnected()
+							&& channel.isOpen()) {
+							Logger.d(NonblockingConnector.class, "Connect timeout: " + address.getAddress().getHostAddress()
+									+ ":" + address.getPort());
+
+							closeChannel(channel);
+
+							fireErrorOccurred(MessageErrorCode.CONNECT_TIMEOUT);
+							fireSessionDestroyed();
+						}
+					}
+				});
 			}
-		} // # while
+		}, this.connectTimeout);
+	}
 
-		// 关闭会话
-		this.fireSessionClosed();
+	/** 处理选择键就绪事件。由事件循环线程调用。
+	 */
+	protected void process(SelectionKey key) {
+		if (key.channel() != this.channel) {
+			// 已废弃的通道
+			key.cancel();
+			return;
+		}
+
+		// 当前通道选择器产生连接已经准备就绪事件，并且客户端套接字通道尚未连接到服务端套接字通道
+		if (key.isConnectable()) {
+			this.doConnect(key);
+		}
+		if (key.isValid() && key.isReadable()) {
+			this.receive(key);
+		}
+		if (key.isValid() && key.isWritable()) {
+			this.send(key);
+		}
 	}
 
-	private boolean doConnect(SelectionKey key) {
+	private void doConnect(SelectionKey key) {
 		// 获取创建通道选择器事件键的套接字通道
 		SocketChannel channel = (SocketChannel) key.channel();
 
@@ -409,29 +564,64 @@ public class NonblockingConnector extends MessageService implements MessageConne
         // 完成套接字通道的连接过程。
 		if (channel.isConnectionPending()) {
 			try {
-				channel.finishConnect();
+				if (!channel.finishConnect()) {
+					return;
+				}
 			} catch (IOException e) {
 				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 
-				try {
-					this.channel.close();
-					this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				}
+				this.closeChannel(channel);
 
 				// 连接失败
 				fireErrorOccurred(MessageErrorCode.CONNECT_TIMEOUT);
-				return false;
+				fireSessionDestroyed();
+				return;
 			}
 		}
 
+		if (null != this.timeoutFuture) {
+			this.timeoutFuture.cancel(false);
+			this.timeoutFuture = null;
+		}
+
 		if (key.isValid()) {
-			key.interestOps(key.interestOps() & ~SelectionKey.OP_CONNECT);
-			key.interestOps(key.interestOps() | SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			this.readPaused.set(false);
+			key.interestOps(SelectionKey.OP_READ);
 		}
 
-		return true;
+		// 连接成功，打开 Session
+		fireSessionOpened();
+
+		// 发送连接建立前写入的消息
+		if (key.isValid() && !this.messages.isEmpty()) {
+			this.send(key);
+		}
+	}
+
+	/** 关闭通道并回收资源。由事件循环线程调用。
+	 */
+	private void closeChannel(SocketChannel channel) {
+		if (null != this.selectionKey && this.selectionKey.channel() == channel) {
+			this.selectionKey.cancel();
+			this.selectionKey = null;
+		}
+
+		if (null != this.timeoutFuture) {
+			this.timeoutFuture.cancel(false);
+			this.timeoutFuture = null;
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+		}
+
+		if (null != this.pendingBuffer) {
+			ByteBufferPool.getInstance().giveBack(this.pendingBuffer);
+			this.pendingBuffer = null;
+			this.pendingMessage = null;
+		}
 	}
 
 	private void receive(SelectionKey key) {
@@ -441,316 +631,190 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			return;
 		}
 
+		// 从缓存池借出读缓存，读取结束后归还
+		ByteBuffer readBuffer = ByteBufferPool.getInstance().borrow(this.block);
 		int read = 0;
-		do {
-			try {
-				read = channel.read(this.readBuffer);
-			} catch (IOException e) {
-//				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-
-				fireSessionClosed();
-
+		try {
+			do {
 				try {
-					if (null != this.channel)
-						this.channel.close();
-					if (null != this.selector)
-						this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				}
+					read = channel.read(readBuffer);
+				} catch (IOException e) {
+//					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 
-				// 不能继续进行数据接收
-				this.spinning = false;
+					fireSessionClosed();
+					this.closeChannel(channel);
+					fireSessionDestroyed();
 
-				return;
-			}
+					// 不能继续进行数据接收
+					return;
+				}
 
-			if (read == 0) {
-				break;
-			}
-			else if (read == -1) {
-				fireSessionClosed();
+				if (read == 0) {
+					break;
+				}
+				else if (read == -1) {
+					fireSessionClosed();
+					this.closeChannel(channel);
+					fireSessionDestroyed();
 
-				try {
-					this.channel.close();
-					this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
+					// 不能继续进行数据接收
+					return;
 				}
 
-				// 不能继续进行数据接收
-				this.spinning = false;
+				readBuffer.flip();
 
-				return;
-			}
+				if (!process(readBuffer)) {
+					Logger.w(NonblockingConnector.class, "Illegal frame from " + this.address + ", closes the connection");
 
-			this.readBuffer.flip();
+					fireSessionClosed();
+					this.closeChannel(channel);
+					fireSessionDestroyed();
 
-			byte[] array = new byte[read];
-			this.readBuffer.get(array);
+					// 不能继续进行数据接收
+					return;
+				}
 
-			process(array);
+				readBuffer.clear();
 
-			this.readBuffer.clear();
-		} while (read > 0);
+				if (this.callbackDepth.get() >= CALLBACK_HIGH_WATERMARK) {
+					// 回调积压，暂停读取直到积压降低
+					this.readPaused.set(true);
+					if (key.isValid()) {
+						key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+					}
 
-		if (key.isValid()) {
-			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+					if (this.callbackDepth.get() <= CALLBACK_LOW_WATERMARK) {
+						// 暂停期间积压已降低
+						this.resumeRead();
+					}
+					break;
+				}
+			} while (read > 0);
+		} finally {
+			ByteBufferPool.getInstance().giveBack(readBuffer);
 		}
 	}
 
+	/** 写出待发送消息。数据未能全部写出时保留剩余部分并关注写事件。
+	 */
 	private void send(SelectionKey key) {
 		SocketChannel channel = (SocketChannel) key.channel();
 
 		if (!channel.isConnected()) {
-			fireSessionClosed();
 			return;
 		}
 
 		try {
-			if (!this.messages.isEmpty()) {
-				// 有消息，进行发送
-
-				Message message = null;
-				for (int i = 0, len = this.messages.size(); i < len; ++i) {
-					message = this.messages.remove(0);
-
-					if (this.existDataMark()) {
-						byte[] data = message.get();
-						byte[] head = this.getHeadMark();
-						byte[] tail = this.getTailMark();
-						byte[] pd = new byte[data.length + head.length + tail.length];
-						System.arraycopy(head, 0, pd, 0, head.length);
-						System.arraycopy(data, 0, pd, head.length, data.length);
-						System.arraycopy(tail, 0, pd, head.length + data.length, tail.length);
-						this.writeBuffer.put(pd);
-					}
-					else {
-						this.writeBuffer.put(message.get());
+			while (true) {
+				if (null == this.pendingBuffer) {
+					Message message = this.messages.poll();
+					if (null == message) {
+						break;
 					}
 
-					this.writeBuffer.flip();
-
-					channel.write(this.writeBuffer);
+					this.pendingMessage = message;
+					this.pendingBuffer = this.encode(message);
+				}
 
-					this.writeBuffer.clear();
+				channel.write(this.pendingBuffer);
 
-					if (null != this.handler) {
-						this.handler.messageSent(this.session, message);
-					}
+				if (this.pendingBuffer.hasRemaining()) {
+					// 发送缓冲区已满，等待可写事件
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return;
 				}
+
+				ByteBufferPool.getInstance().giveBack(this.pendingBuffer);
+				this.pendingBuffer = null;
+
+				Message message = this.pendingMessage;
+				this.pendingMessage = null;
+				fireMessageSent(message);
 			}
 		} catch (IOException e) {
 			Logger.log(NonblockingConnector.class, e, LogLevel.WARNING);
+
+			fireSessionClosed();
+			this.closeChannel(channel);
+			fireSessionDestroyed();
+			return;
 		}
 
 		if (key.isValid()) {
-			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
 		}
 	}
 
-	private void process(byte[] data) {
-		// 根据数据标志获取数据
-		if (this.existDataMark()) {
-			LinkedList<byte[]> out = new LinkedList<byte[]>();
-			// 数据递归提取
-			this.extract(out, data);
-
-			if (!out.isEmpty()) {
-				for (byte[] bytes : out) {
-					Message message = new Message(bytes);
-					if (null != this.handler) {
-						this.handler.messageReceived(this.session, message);
-					}
-				}
+	/** 按帧格式编码消息，返回从缓存池借出的缓存。
+	 */
+	private ByteBuffer encode(Message message) {
+		boolean lengthFraming = this.existDataMark()
+				&& this.session.getFraming() == FRAMING_LENGTH;
+		int dataLength = message.length();
+		int length = dataLength;
+		if (lengthFraming) {
+			length += LENGTH_FRAME_HEADER;
+		}
+		else if (this.existDataMark()) {
+			length += this.getHeadMark().length + this.getTailMark().length;
+		}
 
-				out.clear();
-			}
-			out = null;
+		ByteBuffer buffer = ByteBufferPool.getInstance().borrow(length);
+		if (lengthFraming) {
+			buffer.put(LENGTH_FRAME_MARK);
+			buffer.putInt(dataLength);
+			this.putData(buffer, message);
+		}
+		else if (this.existDataMark()) {
+			buffer.put(this.getHeadMark());
+			this.putData(buffer, message);
+			buffer.put(this.getTailMark());
 		}
 		else {
-			Message message = new Message(data);
-			if (null != this.handler) {
-				this.handler.messageReceived(this.session, message);
-			}
+			this.putData(buffer, message);
 		}
+
+		buffer.flip();
+		return buffer;
 	}
 
-	/**
-	 * @deprecated
+	/** 写入消息数据。数据包消息直接编码到缓存。
 	 */
-	protected void processData(byte[] data) {
-		// 根据数据标志获取数据
-		if (this.existDataMark()) {
-			byte[] headMark = this.getHeadMark();
-			byte[] tailMark = this.getTailMark();
-
-			int cursor = 0;
-			int length = data.length;
-			boolean head = false;
-			boolean tail = false;
-			byte[] buf = new byte[this.block];
-			int bufIndex = 0;
-
-			while (cursor < length) {
-				head = true;
-				tail = true;
-
-				byte b = data[cursor];
-
-				// 判断是否是头标识
-				if (b == headMark[0]) {
-					for (int i = 1, len = headMark.length; i < len; ++i) {
-						if (data[cursor + i] != headMark[i]) {
-							head = false;
-							break;
-						}
-					}
-				}
-				else {
-					head = false;
-				}
-
-				// 判断是否是尾标识
-				if (b == tailMark[0]) {
-					for (int i = 1, len = tailMark.length; i < len; ++i) {
-						if (data[cursor + i] != tailMark[i]) {
-							tail = false;
-							break;
-						}
-					}
-				}
-				else {
-					tail = false;
-				}
-
-				if (head) {
-					// 遇到头标识，开始记录数据
-					cursor += headMark.length;
-					bufIndex = 0;
-					buf[bufIndex] = data[cursor];
-				}
-				else if (tail) {
-					// 遇到尾标识，提取 buf 内数据
-					byte[] pdata = new byte[bufIndex + 1];
-					System.arraycopy(buf, 0, pdata, 0, bufIndex + 1);
-					Message message = new Message(pdata);
-					if (null != this.handler) {
-						this.handler.messageReceived(this.session, message);
-					}
-
-					cursor += tailMark.length;
-					// 后面要移动到下一个字节因此这里先减1
-					cursor -= 1;
-				}
-				else {
-					++bufIndex;
-					buf[bufIndex] = b;
-				}
-
-				// 下一个字节
-				++cursor;
-			}
-
-			buf = null;
+	private void putData(ByteBuffer buffer, Message message) {
+		if (message instanceof PacketMessage) {
+			((PacketMessage) message).getPacket().writeTo(buffer);
 		}
 		else {
-			Message message = new Message(data);
-			if (null != this.handler) {
-				this.handler.messageReceived(this.session, message);
-			}
+			buffer.put(message.get());
 		}
 	}
 
-	/**
-	 * 数据提取并输出。
+	/** 解析数据。
+	 * @return 如果数据帧非法返回 false 。
 	 */
-	private void extract(final LinkedList<byte[]> out, final byte[] data) {
-		final byte[] headMark = this.getHeadMark();
-		final byte[] tailMark = this.getTailMark();
-
-		// 当数据小于标签长度时直接缓存
-		if (data.length < headMark.length) {
-			System.arraycopy(data, 0, this.session.cache, this.session.cacheCursor, data.length);
-			this.session.cacheCursor += data.length;
-			return;
-		}
-
-		byte[] real = data;
-		if (this.session.cacheCursor > 0) {
-			real = new byte[this.session.cacheCursor + data.length];
-			System.arraycopy(this.session.cache, 0, real, 0, this.session.cacheCursor);
-			System.arraycopy(data, 0, real, this.session.cacheCursor, data.length);
-			this.session.cacheCursor = 0;
-		}
-
-		int index = 0;
-		int len = real.length;
-		int headPos = -1;
-		int tailPos = -1;
-
-		if (compareBytes(headMark, 0, real, index, headMark.length)) {
-			// 有头标签
-			index += headMark.length;
-			// 记录数据位置头
-			headPos = index;
-			// 判断是否有尾标签
-			while (index < len) {
-				if (real[index] == tailMark[0]) {
-					if (compareBytes(tailMark, 0, real, index, tailMark.length)) {
-						// 找到尾标签
-						tailPos = index;
-						break;
-					}
-					else {
-						++index;
-					}
-				}
-				else {
-					++index;
-				}
-			}
-
-			if (headPos > 0 && tailPos > 0) {
-				byte[] outBytes = new byte[tailPos - headPos];
-				System.arraycopy(real, headPos, outBytes, 0, tailPos - headPos);
-				out.add(outBytes);
-
-				int newLen = len - tailPos - tailMark.length;
-				if (newLen > 0) {
-					byte[] newBytes = new byte[newLen];
-					System.arraycopy(real, tailPos + tailMark.length, newBytes, 0, newLen);
+	private boolean process(ByteBuffer buf) {
+		// 根据数据标志获取数据
+		if (this.existDataMark()) {
+			ArrayList<byte[]> out = this.frames;
+			boolean legal = this.decodeFrames(this.session, buf, out);
 
-					// 递归
-					extract(out, newBytes);
-				}
-			}
-			else {
-				// 没有尾标签
-				// 仅进行缓存
-				if (len + this.session.cacheCursor > this.session.cacheSize) {
-					// 缓存扩容
-					this.session.resetCacheSize(len + this.session.cacheCursor);
+			if (!out.isEmpty()) {
+				for (int i = 0, size = out.size(); i < size; ++i) {
+					Message message = new Message(out.get(i));
+					fireMessageReceived(message);
 				}
 
-				System.arraycopy(real, 0, this.session.cache, this.session.cacheCursor, len);
-				this.session.cacheCursor += len;
+				out.clear();
 			}
 
-			return;
+			return legal;
 		}
-
-		byte[] newBytes = new byte[len - headMark.length];
-		System.arraycopy(real, headMark.length, newBytes, 0, newBytes.length);
-		extract(out, newBytes);
-	}
-
-	private boolean compareBytes(byte[] b1, int offsetB1, byte[] b2, int offsetB2, int length) {
-		for (int i = 0; i < length; ++i) {
-			if (b1[offsetB1 + i] != b2[offsetB2 + i]) {
-				return false;
-			}
+		else {
+			byte[] data = new byte[buf.remaining()];
+			buf.get(data);
+			Message message = new Message(data);
+			fireMessageReceived(message);
+			return true;
 		}
-		return true;
 	}
 }
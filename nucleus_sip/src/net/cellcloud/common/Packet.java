@@ -26,6 +26,7 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 
@@ -48,6 +49,8 @@ import java.util.ArrayList;
 	[DAT] - {!} 由 LEN 决定，最大 262144 bytes。<br />
 	Packet 提供了对 DAT 段的动态定义能力。
 	依次 DAT 段数据可以进行二次分解，分解为任意长度的子数据段。
+	解包时子段仅记录其在源数据中的位置，可通过 getSubsegmentBuffer 等方法直接访问，
+	调用 getSubsegment 时才复制数据。
 	DAT 段数据格式如下：<br />
 	SMN | SML{1} | ... | SML{n} | SMD{1} | ... | SMD{n} <br />
 	个数据字段说明如下： <br />
@@ -57,6 +60,15 @@ import java.util.ArrayList;
 	[SML] - 8 <br />
 	[SMD] - {!} 由 SML 决定 <br />
 	SML 和 SMD 数据一致，且由 SMN 决定。
+	<br /><br />
+	主版本号不小于 2 时使用二进制格式（v2），VER 段仍为十进制字符以便识别版本，
+	其余数值字段均为大端字节序的 32 位整数：<br />
+	[SEN] - 4 <br />
+	[LEN] - 4 <br />
+	[SMN] - 4 ，值为 -1 时表示其后为未分段的包体数据 <br />
+	[SML] - 4 <br />
+	文本格式（v1）与二进制格式的解码同时保留，旧版本客户端仍可正常通信。
+	二进制格式仅在 CHECK 握手时双方均声明支持后用于对话包。
 */
 public final class Packet {
 	
@@ -67,6 +79,17 @@ public final class Packet {
 	protected static final int PSL_SUBSEGMENT_NUM = 4;
 	protected static final int PSL_SUBSEGMENT_LENGTH = 8;
 
+	/** 使用二进制格式的最小主版本号。 */
+	public static final int VERSION_MAJOR_BINARY = 2;
+
+	protected static final int PSL_BIN_SN = 4;
+	protected static final int PSL_BIN_BODY_LENGTH = 4;
+	protected static final int PSL_BIN_SUBSEGMENT_NUM = 4;
+	protected static final int PSL_BIN_SUBSEGMENT_LENGTH = 4;
+
+	// 二进制格式下表示未分段包体的子段数量
+	private static final int BIN_RAW_BODY = -1;
+
 	private byte[] tag;
 	private int sn;
 	private int major;
@@ -75,6 +98,12 @@ public final class Packet {
 	private byte[] body;
 	private ArrayList<byte[]> subsegments;
 
+	// 解包时引用的源数据，子段在首次获取时才复制
+	private byte[] source = null;
+	// 各子段在源数据中的偏移及长度
+	private int[] offsets = null;
+	private int[] lengths = null;
+
 	/** 构造函数。
 	 */
 	public Packet(byte[] tag, int sn) {
@@ -159,12 +188,48 @@ public final class Packet {
 	}
 
 	/** 获取子段。
+	 * 解包得到的子段在首次获取时从源数据复制。
 	 */
 	public byte[] getSubsegment(int index) {
 		if (index < 0 || index >= this.subsegments.size())
 			return null;
 
-		return this.subsegments.get(index);
+		byte[] subsegment = this.subsegments.get(index);
+		if (null == subsegment) {
+			subsegment = new byte[this.lengths[index]];
+			System.arraycopy(this.source, this.offsets[index], subsegment, 0, subsegment.length);
+			this.subsegments.set(index, subsegment);
+		}
+
+		return subsegment;
+	}
+
+	/** 返回子段所在的数组，不复制数据。
+	 * 子段数据位于该数组的 {@link #getSubsegmentOffset(int)} 处，长度为 {@link #getSubsegmentLength(int)} 。
+	 */
+	public byte[] getSubsegmentArray(int index) {
+		byte[] subsegment = this.subsegments.get(index);
+		return (null != subsegment) ? subsegment : this.source;
+	}
+
+	/** 返回子段在 {@link #getSubsegmentArray(int)} 中的偏移。
+	 */
+	public int getSubsegmentOffset(int index) {
+		return (null != this.subsegments.get(index)) ? 0 : this.offsets[index];
+	}
+
+	/** 返回子段长度。
+	 */
+	public int getSubsegmentLength(int index) {
+		byte[] subsegment = this.subsegments.get(index);
+		return (null != subsegment) ? subsegment.length : this.lengths[index];
+	}
+
+	/** 返回子段数据的只读视图，不复制数据。
+	 */
+	public ByteBuffer getSubsegmentBuffer(int index) {
+		return ByteBuffer.wrap(this.getSubsegmentArray(index), this.getSubsegmentOffset(index),
+				this.getSubsegmentLength(index)).slice().asReadOnlyBuffer();
 	}
 
 	/** 返回子段数量。
@@ -173,126 +238,171 @@ public final class Packet {
 		return this.subsegments.size();
 	}
 
+	/** 返回包体长度。
+	 */
 	public int getBodyLength() {
 		int len = 0;
+		boolean binary = (this.major >= VERSION_MAJOR_BINARY);
 
 		if (!this.subsegments.isEmpty()) {
-			len += PSL_SUBSEGMENT_NUM;
+			len += (binary ? PSL_BIN_SUBSEGMENT_NUM : PSL_SUBSEGMENT_NUM);
 
 			int size = this.subsegments.size();
-			len += (size * PSL_SUBSEGMENT_LENGTH);
+			len += (size * (binary ? PSL_BIN_SUBSEGMENT_LENGTH : PSL_SUBSEGMENT_LENGTH));
 
 			for (int i = 0; i < size; ++i) {
-				len += this.subsegments.get(i).length;
+				len += this.getSubsegmentLength(i);
 			}
 		}
 		else if (null != this.body) {
-			len = this.body.length;
+			len = this.body.length + (binary ? PSL_BIN_SUBSEGMENT_NUM : 0);
 		}
 
 		return len;
 	}
 
-	/** 打包。 */
-	public static byte[] pack(Packet packet) {
-		int ssNum = packet.getSubsegmentCount();
-
-		// 计算总长度
-		int bodyLength = (ssNum == 0 ? (null != packet.body ? packet.body.length : 0) : PSL_SUBSEGMENT_NUM + (ssNum * PSL_SUBSEGMENT_LENGTH));
-		int totalLength = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH + bodyLength;
-		for (int i = 0; i < ssNum; ++i) {
-			totalLength += packet.getSubsegment(i).length;
-			bodyLength += packet.getSubsegment(i).length;
+	/** 返回包头长度，包含子段数量及各子段长度字段，不包含子段数据。
+	 */
+	public int getHeaderLength() {
+		int ssNum = this.subsegments.size();
+
+		if (this.major >= VERSION_MAJOR_BINARY) {
+			int len = PSL_TAG + PSL_VERSION + PSL_BIN_SN + PSL_BIN_BODY_LENGTH;
+			if (ssNum > 0) {
+				len += PSL_BIN_SUBSEGMENT_NUM + ssNum * PSL_BIN_SUBSEGMENT_LENGTH;
+			}
+			else if (null != this.body) {
+				len += PSL_BIN_SUBSEGMENT_NUM;
+			}
+			return len;
 		}
+		else {
+			int len = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH;
+			if (ssNum > 0) {
+				len += PSL_SUBSEGMENT_NUM + ssNum * PSL_SUBSEGMENT_LENGTH;
+			}
+			return len;
+		}
+	}
+
+	/** 返回编码后的数据包总长度。
+	 */
+	public int encodedLength() {
+		return PSL_TAG + PSL_VERSION
+				+ (this.major >= VERSION_MAJOR_BINARY ? PSL_BIN_SN + PSL_BIN_BODY_LENGTH : PSL_SN + PSL_BODY_LENGTH)
+				+ this.getBodyLength();
+	}
 
-		byte[] data = new byte[totalLength];
+	/** 将包头写入缓存。
+	 * 包头之后依次为各子段数据（或未分段的包体数据），由调用者追加，以便直接引用子段数据而不复制。
+	 */
+	public void writeHeaderTo(ByteBuffer buf) {
+		int ssNum = this.subsegments.size();
+		int bodyLength = this.getBodyLength();
 
 		// 填写 Tag
-		System.arraycopy(packet.getTag(), 0, data, 0, PSL_TAG);
+		buf.put(this.tag, 0, PSL_TAG);
 
 		// 填写 Version
-		String sMinor = fastFormatNumber(packet.getMinorVersion(), 2);
-		String sMajor = fastFormatNumber(packet.getMajorVersion(), 2);
-		System.arraycopy(sMinor.getBytes(), 0, data, PSL_TAG, 2);
-		System.arraycopy(sMajor.getBytes(), 0, data, PSL_TAG + 2, 2);
-
-		// 填写 SN
-		String sVersion = fastFormatNumber(packet.getSequenceNumber(), PSL_SN);
-		System.arraycopy(sVersion.getBytes(), 0, data, PSL_TAG + PSL_VERSION, PSL_SN);
-
-		// 填写 Body 段长度
-		String sLength = fastFormatNumber(bodyLength, PSL_BODY_LENGTH);
-		System.arraycopy(sLength.getBytes(), 0, data, PSL_TAG + PSL_VERSION + PSL_SN, PSL_BODY_LENGTH);
-
-		// 填写 Body 子段
-		if (bodyLength > 0) {
-			if (null == packet.body) {
-				// 子段格式打包
-
-				String sSubNum = fastFormatNumber(ssNum, PSL_SUBSEGMENT_NUM);
-				System.arraycopy(sSubNum.getBytes(), 0, data, PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH, PSL_SUBSEGMENT_NUM);
-	
-				int begin = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH + PSL_SUBSEGMENT_NUM;
-	
-				// 填充各子段长度
+		putDigits(buf, this.minor, 2);
+		putDigits(buf, this.major, 2);
+
+		if (this.major >= VERSION_MAJOR_BINARY) {
+			// 填写 SN 及 Body 段长度
+			buf.putInt(this.sn);
+			buf.putInt(bodyLength);
+
+			if (ssNum > 0) {
+				// 填写子段数量及各子段长度
+				buf.putInt(ssNum);
 				for (int i = 0; i < ssNum; ++i) {
-					int length = packet.getSubsegment(i).length;
-					String sLen = fastFormatNumber(length, PSL_SUBSEGMENT_LENGTH);
-					System.arraycopy(sLen.getBytes(), 0, data, begin, PSL_SUBSEGMENT_LENGTH);
-					begin += PSL_SUBSEGMENT_LENGTH;
+					buf.putInt(this.getSubsegmentLength(i));
 				}
-	
-				// 填充各子段数据
+			}
+			else if (null != this.body) {
+				buf.putInt(BIN_RAW_BODY);
+			}
+		}
+		else {
+			// 填写 SN 及 Body 段长度
+			putDigits(buf, this.sn, PSL_SN);
+			putDigits(buf, bodyLength, PSL_BODY_LENGTH);
+
+			if (ssNum > 0) {
+				// 填写子段数量及各子段长度
+				putDigits(buf, ssNum, PSL_SUBSEGMENT_NUM);
 				for (int i = 0; i < ssNum; ++i) {
-					byte[] subData = packet.getSubsegment(i);
-					System.arraycopy(subData, 0, data, begin, subData.length);
-					begin += subData.length;
+					putDigits(buf, this.getSubsegmentLength(i), PSL_SUBSEGMENT_LENGTH);
 				}
 			}
-			else {
-				System.arraycopy(packet.body, 0, data, PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH, packet.body.length);
+		}
+	}
+
+	/** 将完整数据包写入缓存。缓存剩余空间不能小于 {@link #encodedLength()} 。
+	 */
+	public void writeTo(ByteBuffer buf) {
+		this.writeHeaderTo(buf);
+
+		int ssNum = this.subsegments.size();
+		if (ssNum > 0) {
+			for (int i = 0; i < ssNum; ++i) {
+				buf.put(this.getSubsegmentArray(i), this.getSubsegmentOffset(i), this.getSubsegmentLength(i));
 			}
 		}
+		else if (null != this.body) {
+			buf.put(this.body);
+		}
+	}
 
+	/** 打包。 */
+	public static byte[] pack(Packet packet) {
+		byte[] data = new byte[packet.encodedLength()];
+		packet.writeTo(ByteBuffer.wrap(data));
 		return data;
 	}
 
 	/** 解包。 */
 	public static Packet unpack(byte[] data) {
 		int datalen = data.length;
-		if (datalen < PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH) {
+		if (datalen < PSL_TAG + PSL_VERSION + PSL_BIN_SN + PSL_BIN_BODY_LENGTH) {
 			return null;
 		}
 
-		// 解析 Tag
-		byte[] bTag = new byte[PSL_TAG];
-		System.arraycopy(data, 0, bTag, 0, PSL_TAG);
-
 		// 解析 Version
-		byte[] bMinor = new byte[2];
-		byte[] bMajor = new byte[2];
-		System.arraycopy(data, PSL_TAG, bMinor, 0, 2);
-		System.arraycopy(data, PSL_TAG + 2, bMajor, 0, 2);
 		int minor = 0;
 		int major = 0;
 		try {
-			minor = Integer.parseInt(new String(bMinor));
-			major = Integer.parseInt(new String(bMajor));
+			minor = parseDigits(data, PSL_TAG, 2);
+			major = parseDigits(data, PSL_TAG + 2, 2);
 		} catch (NumberFormatException e) {
 			Logger.log(Packet.class, e, LogLevel.ERROR);
 			return null;
 		}
 
-		// 解析 SN
-		byte[] bSN = new byte[PSL_SN];
-		System.arraycopy(data, PSL_TAG + PSL_VERSION, bSN, 0, PSL_SN);
-		int sn = Integer.parseInt(new String(bSN));
+		if (major >= VERSION_MAJOR_BINARY) {
+			return unpackBinary(data, major, minor);
+		}
 
-		// 解析 Body 段长度
-		byte[] bBodyLength = new byte[PSL_BODY_LENGTH];
-		System.arraycopy(data, PSL_TAG + PSL_VERSION + PSL_SN,
-				bBodyLength, 0, PSL_BODY_LENGTH);
-		int bodyLength = Integer.parseInt(new String(bBodyLength));
+		if (datalen < PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH) {
+			return null;
+		}
+
+		// 解析 Tag
+		byte[] bTag = new byte[PSL_TAG];
+		System.arraycopy(data, 0, bTag, 0, PSL_TAG);
+
+		int sn = 0;
+		int bodyLength = 0;
+		try {
+			// 解析 SN
+			sn = parseDigits(data, PSL_TAG + PSL_VERSION, PSL_SN);
+
+			// 解析 Body 段长度
+			bodyLength = parseDigits(data, PSL_TAG + PSL_VERSION + PSL_SN, PSL_BODY_LENGTH);
+		} catch (NumberFormatException e) {
+			Logger.log(Packet.class, e, LogLevel.ERROR);
+			return null;
+		}
 
 		// 创建实例
 		Packet packet = new Packet(bTag, sn, major, minor);
@@ -301,16 +411,20 @@ public final class Packet {
 			// 确认有 BODY 段，校验 BODY 段长度
 			if ((datalen - (PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH)) != bodyLength) {
 				Logger.w(Packet.class, "Packet length exception : bytes-length=" + datalen + " body-length=" + bodyLength);
+				bodyLength = datalen - (PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH);
 			}
 
 			int begin = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH;
+			if (bodyLength < PSL_SUBSEGMENT_NUM) {
+				byte[] body = new byte[bodyLength];
+				System.arraycopy(data, begin, body, 0, bodyLength);
+				packet.setBody(body);
+				return packet;
+			}
 
 			// 判断是否符合子段分割形式
-			byte[] bSubNum = new byte[PSL_SUBSEGMENT_NUM];
-			System.arraycopy(data, begin, bSubNum, 0, PSL_SUBSEGMENT_NUM);
-			// 判断是否是数字
 			for (int i = 0; i < PSL_SUBSEGMENT_NUM; ++i) {
-				if (false == Character.isDigit(bSubNum[i])) {
+				if (false == Character.isDigit(data[begin + i])) {
 					// 不是数字，直接使用 Body
 					byte[] body = new byte[bodyLength];
 					System.arraycopy(data, begin, body, 0, bodyLength);
@@ -320,85 +434,164 @@ public final class Packet {
 			}
 
 			// 解析子段数量
-			int subNum = Integer.parseInt(new String(bSubNum));
-			bSubNum = null;
-
-			int[] subsegmentLengthArray = new int[subNum];
-			begin += PSL_SUBSEGMENT_NUM;
+			int subNum = parseDigits(data, begin, PSL_SUBSEGMENT_NUM);
 
-			// 解析子段长度
-			for (int i = 0; i < subNum; ++i) {
-				byte[] bSubLength = new byte[PSL_SUBSEGMENT_LENGTH];
-				System.arraycopy(data, begin, bSubLength, 0, PSL_SUBSEGMENT_LENGTH);
-				subsegmentLengthArray[i] = Integer.parseInt(new String(bSubLength));
-				begin += PSL_SUBSEGMENT_LENGTH;
-				bSubLength = null;
+			// 在计算偏移及分配数组之前校验子段数量
+			int lengthBegin = begin + PSL_SUBSEGMENT_NUM;
+			if (subNum > (datalen - lengthBegin) / PSL_SUBSEGMENT_LENGTH) {
+				Logger.w(Packet.class, "Packet subsegment exception : subsegment-num=" + subNum);
+				return null;
 			}
 
-			// 解析子段数据
+			begin = lengthBegin + subNum * PSL_SUBSEGMENT_LENGTH;
+			packet.attachSource(data, subNum);
+
+			// 解析子段长度，记录子段位置
 			for (int i = 0; i < subNum; ++i) {
-				int length = subsegmentLengthArray[i];
-				byte[] subsegment = new byte[length];
-				System.arraycopy(data, begin, subsegment, 0, length);
-				begin += length;
+				int length = 0;
+				try {
+					length = parseDigits(data, lengthBegin, PSL_SUBSEGMENT_LENGTH);
+				} catch (NumberFormatException e) {
+					Logger.w(Packet.class, "Packet subsegment exception : " + e.getMessage());
+					return null;
+				}
+				lengthBegin += PSL_SUBSEGMENT_LENGTH;
 
-				// 添加子段
-				packet.appendSubsegment(subsegment);
+				if (length > datalen - begin) {
+					Logger.w(Packet.class, "Packet subsegment exception : subsegment-length=" + length);
+					return null;
+				}
+
+				packet.offsets[i] = begin;
+				packet.lengths[i] = length;
+				begin += length;
 			}
 		}
 
 		return packet;
 	}
 
-	private static String fastFormatNumber(int number, int limit) {
-		switch (limit) {
-		case 2:
-			if (number < 10) {
-				return "0" + number;
-			}
-			else {
-				return Integer.toString(number);
-			}
-		case 4:
-			if (number < 10) {
-				return "000" + number;
-			}
-			else if (number >= 10 && number < 100) {
-				return "00" + number;
-			}
-			else if (number >= 100 && number < 1000) {
-				return "0" + number;
-			}
-			else {
-				return Integer.toString(number);
-			}
-		case 8:
-			if (number < 10) {
-				return "0000000" + number;
-			}
-			else if (number >= 10 && number < 100) {
-				return "000000" + number;
-			}
-			else if (number >= 100 && number < 1000) {
-				return "00000" + number;
-			}
-			else if (number >= 1000 && number < 10000) {
-				return "0000" + number;
-			}
-			else if (number >= 10000 && number < 100000) {
-				return "000" + number;
+	/** 按二进制格式解包。 */
+	private static Packet unpackBinary(byte[] data, int major, int minor) {
+		int datalen = data.length;
+
+		// 解析 Tag
+		byte[] bTag = new byte[PSL_TAG];
+		System.arraycopy(data, 0, bTag, 0, PSL_TAG);
+
+		int begin = PSL_TAG + PSL_VERSION;
+
+		// 解析 SN
+		int sn = readInt(data, begin);
+		begin += PSL_BIN_SN;
+
+		// 解析 Body 段长度
+		int bodyLength = readInt(data, begin);
+		begin += PSL_BIN_BODY_LENGTH;
+
+		if (bodyLength < 0 || datalen - begin < bodyLength) {
+			Logger.w(Packet.class, "Packet length exception : bytes-length=" + datalen + " body-length=" + bodyLength);
+			return null;
+		}
+
+		// 创建实例
+		Packet packet = new Packet(bTag, sn, major, minor);
+
+		int end = begin + bodyLength;
+
+		if (end - begin < PSL_BIN_SUBSEGMENT_NUM) {
+			return packet;
+		}
+
+		int subNum = readInt(data, begin);
+		begin += PSL_BIN_SUBSEGMENT_NUM;
+
+		if (subNum == BIN_RAW_BODY) {
+			byte[] body = new byte[end - begin];
+			System.arraycopy(data, begin, body, 0, body.length);
+			packet.setBody(body);
+			return packet;
+		}
+
+		// 在计算偏移及分配数组之前校验子段数量
+		if (subNum < 0 || subNum > (end - begin) / PSL_BIN_SUBSEGMENT_LENGTH) {
+			Logger.w(Packet.class, "Packet subsegment exception : subsegment-num=" + subNum);
+			return null;
+		}
+
+		int lengthBegin = begin;
+		begin += subNum * PSL_BIN_SUBSEGMENT_LENGTH;
+
+		packet.attachSource(data, subNum);
+
+		// 解析子段长度，记录子段位置
+		for (int i = 0; i < subNum; ++i) {
+			int length = readInt(data, lengthBegin);
+			lengthBegin += PSL_BIN_SUBSEGMENT_LENGTH;
+
+			if (length < 0 || length > end - begin) {
+				Logger.w(Packet.class, "Packet subsegment exception : subsegment-length=" + length);
+				return null;
 			}
-			else if (number >= 100000 && number < 1000000) {
-				return "00" + number;
+
+			packet.offsets[i] = begin;
+			packet.lengths[i] = length;
+			begin += length;
+		}
+
+		return packet;
+	}
+
+	/** 引用源数据，预留指定数量的未复制子段。
+	 */
+	private void attachSource(byte[] data, int subNum) {
+		this.source = data;
+		this.offsets = new int[subNum];
+		this.lengths = new int[subNum];
+		for (int i = 0; i < subNum; ++i) {
+			this.subsegments.add(null);
+		}
+	}
+
+	/** 以固定宽度的十进制 ASCII 字符写入数字，高位补零。
+	 */
+	private static void putDigits(ByteBuffer buf, int number, int width) {
+		int pos = buf.position();
+		if (buf.hasArray()) {
+			byte[] array = buf.array();
+			int offset = buf.arrayOffset();
+			for (int i = offset + pos + width - 1; i >= offset + pos; --i) {
+				array[i] = (byte) ('0' + (number % 10));
+				number /= 10;
 			}
-			else if (number >= 1000000 && number < 10000000) {
-				return "0" + number;
+		}
+		else {
+			for (int i = pos + width - 1; i >= pos; --i) {
+				buf.put(i, (byte) ('0' + (number % 10)));
+				number /= 10;
 			}
-			else {
-				return Integer.toString(number);
+		}
+		buf.position(pos + width);
+	}
+
+	/** 解析固定宽度的十进制 ASCII 数字。
+	 */
+	private static int parseDigits(byte[] src, int offset, int width) {
+		int number = 0;
+		for (int i = offset, end = offset + width; i < end; ++i) {
+			int d = src[i] - '0';
+			if (d < 0 || d > 9) {
+				throw new NumberFormatException("For input string: \"" + new String(src, offset, width) + "\"");
 			}
-		default:
-			return Integer.toString(number);
+			number = number * 10 + d;
 		}
+		return number;
+	}
+
+	/** 以大端字节序读取 int 。
+	 */
+	private static int readInt(byte[] src, int offset) {
+		return ((src[offset] & 0xFF) << 24) | ((src[offset + 1] & 0xFF) << 16)
+				| ((src[offset + 2] & 0xFF) << 8) | (src[offset + 3] & 0xFF);
 	}
 }
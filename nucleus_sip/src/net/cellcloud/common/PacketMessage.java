@@ -0,0 +1,72 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+
+/** 以数据包为内容的消息。
+ * 
+ * 消息持有未编码的数据包，发送时包头直接写入发送缓存，子段数据以引用方式追加，
+ * 仅在调用 {@link #get()} 时才生成完整的字节数组。
+ * 
+ * @author Jiangwei Xu
+ */
+public class PacketMessage extends Message {
+
+	private Packet packet;
+	private byte[] data;
+
+	/** 构造函数。
+	 */
+	public PacketMessage(Packet packet) {
+		super((byte[]) null);
+		this.packet = packet;
+		this.data = null;
+	}
+
+	/** 返回数据包。
+	 */
+	public Packet getPacket() {
+		return this.packet;
+	}
+
+	/** 返回消息数据。首次调用时打包数据包。
+	 */
+	@Override
+	public byte[] get() {
+		if (null == this.data) {
+			this.data = Packet.pack(this.packet);
+		}
+		return this.data;
+	}
+
+	/** 消息数据长度。
+	 */
+	@Override
+	public int length() {
+		return (null != this.data) ? this.data.length : this.packet.encodedLength();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+
+/** 可扩容的环形字节缓存。
+ * 
+ * 用于会话接收数据的暂存。数据写入时仅在容量不足时扩容，读取时按需分两段复制，
+ * 稳定运行时不产生额外的内存分配。缓存数组在首次写入时才分配。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class RingBuffer {
+
+	private final int initialCapacity;
+
+	private byte[] buffer;
+	// 容量掩码，容量总是 2 的幂
+	private int mask;
+	// 读位置
+	private int head;
+	// 数据长度
+	private int size;
+
+	public RingBuffer(int initialCapacity) {
+		int capacity = 16;
+		while (capacity < initialCapacity) {
+			capacity <<= 1;
+		}
+		this.initialCapacity = capacity;
+		this.buffer = null;
+		this.mask = 0;
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/** 返回数据长度。
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/** 返回是否没有数据。
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/** 返回当前容量。
+	 */
+	public int capacity() {
+		return (null != this.buffer) ? this.buffer.length : 0;
+	}
+
+	/** 写入缓存中的全部剩余数据。
+	 */
+	public void write(ByteBuffer src) {
+		int length = src.remaining();
+		if (length == 0) {
+			return;
+		}
+
+		this.ensureCapacity(this.size + length);
+
+		int tail = (this.head + this.size) & this.mask;
+		int first = Math.min(length, this.buffer.length - tail);
+		src.get(this.buffer, tail, first);
+		if (first < length) {
+			// 回绕到数组头部
+			src.get(this.buffer, 0, length - first);
+		}
+
+		this.size += length;
+	}
+
+	/** 返回指定偏移位置的字节。
+	 */
+	public byte get(int offset) {
+		return this.buffer[(this.head + offset) & this.mask];
+	}
+
+	/** 判断指定偏移位置的数据是否与标记相同。
+	 */
+	public boolean matches(byte[] mark, int offset) {
+		if (offset + mark.length > this.size) {
+			return false;
+		}
+
+		for (int i = 0; i < mark.length; ++i) {
+			if (this.buffer[(this.head + offset + i) & this.mask] != mark[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** 从指定偏移位置开始查找标记。
+	 * @return 返回标记的偏移位置，如果未找到返回 -1 。
+	 */
+	public int indexOf(byte[] mark, int fromOffset) {
+		byte first = mark[0];
+		for (int i = fromOffset, last = this.size - mark.length; i <= last; ++i) {
+			if (this.buffer[(this.head + i) & this.mask] == first && this.matches(mark, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** 读取数据到数组。
+	 */
+	public void read(byte[] dst, int offset, int length) {
+		if (length > this.size) {
+			throw new IndexOutOfBoundsException("Length " + length + " exceeds size " + this.size);
+		}
+
+		int first = Math.min(length, this.buffer.length - this.head);
+		System.arraycopy(this.buffer, this.head, dst, offset, first);
+		if (first < length) {
+			// 数据跨越数组尾部
+			System.arraycopy(this.buffer, 0, dst, offset + first, length - first);
+		}
+
+		this.skip(length);
+	}
+
+	/** 跳过指定长度的数据。
+	 */
+	public void skip(int length) {
+		if (length > this.size) {
+			throw new IndexOutOfBoundsException("Length " + length + " exceeds size " + this.size);
+		}
+
+		this.size -= length;
+		this.head = (this.size == 0) ? 0 : ((this.head + length) & this.mask);
+	}
+
+	/** 清空数据。
+	 */
+	public void clear() {
+		this.head = 0;
+		this.size = 0;
+	}
+
+	private void ensureCapacity(int required) {
+		if (null == this.buffer) {
+			int capacity = this.initialCapacity;
+			while (capacity < required) {
+				capacity <<= 1;
+			}
+			this.buffer = new byte[capacity];
+			this.mask = capacity - 1;
+			return;
+		}
+
+		if (required <= this.buffer.length) {
+			return;
+		}
+
+		int capacity = this.buffer.length;
+		while (capacity < required) {
+			capacity <<= 1;
+		}
+
+		// 扩容时将数据整理到数组头部
+		byte[] newBuffer = new byte[capacity];
+		int length = this.size;
+		this.read(newBuffer, 0, length);
+		this.buffer = newBuffer;
+		this.mask = capacity - 1;
+		this.head = 0;
+		this.size = length;
+	}
+}
@@ -41,9 +41,27 @@ public class Session {
 	private MessageService service;
 	private InetSocketAddress address;
 
-	protected byte[] cache;
-	protected int cacheSize;
-	protected int cacheCursor;
+	// 数据掩码帧的接收缓存
+	protected RingBuffer ring;
+	// 查找尾标签的起始偏移，避免重复扫描已接收的数据
+	protected int markScanOffset;
+
+	// 发送消息使用的帧格式
+	private volatile int framing;
+	// 是否接受对端发送的长度前缀帧
+	private volatile boolean lengthFramingAccepted = false;
+	// 是否压缩发送的载荷数据
+	private volatile boolean compressionEnabled = false;
+	// 是否使用二进制编码发送的载荷数据
+	private volatile boolean binaryEncodingEnabled = false;
+	// 发送数据包使用的主版本号
+	private volatile int packetVersion = 1;
+
+	// 长度前缀帧的解析状态
+	protected byte[] frameHeader;
+	protected int frameHeaderCursor;
+	protected byte[] frame;
+	protected int frameCursor;
 
 	public Session(MessageService service, InetSocketAddress address) {
 		this.id = Math.abs(Utils.randomLong());
@@ -51,9 +69,14 @@ public class Session {
 		this.service = service;
 		this.address = address;
 
-		this.cacheSize = 2048;
-		this.cache = new byte[this.cacheSize];
-		this.cacheCursor = 0;
+		this.ring = new RingBuffer(2048);
+		this.markScanOffset = 0;
+
+		this.framing = MessageService.FRAMING_MARK;
+		this.frameHeader = new byte[MessageService.LENGTH_FRAME_HEADER];
+		this.frameHeaderCursor = 0;
+		this.frame = null;
+		this.frameCursor = 0;
 	}
 
 	public Session(long id, MessageService service, InetSocketAddress address) {
@@ -62,9 +85,14 @@ public class Session {
 		this.service = service;
 		this.address = address;
 
-		this.cacheSize = 2048;
-		this.cache = new byte[this.cacheSize];
-		this.cacheCursor = 0;
+		this.ring = new RingBuffer(2048);
+		this.markScanOffset = 0;
+
+		this.framing = MessageService.FRAMING_MARK;
+		this.frameHeader = new byte[MessageService.LENGTH_FRAME_HEADER];
+		this.frameHeaderCursor = 0;
+		this.frame = null;
+		this.frameCursor = 0;
 	}
 
 	/** 返回会话 ID 。
@@ -92,27 +120,83 @@ public class Session {
 		return this.address;
 	}
 
-	/** 向该会话写消息。
+	/** 返回发送消息使用的帧格式。
 	 */
-	public void write(Message message) {
-		this.service.write(this, message);
+	public int getFraming() {
+		return this.framing;
 	}
 
-	protected void resetCacheSize(int newSize) {
-		if (newSize <= this.cacheSize) {
-			return;
-		}
+	/** 设置发送消息使用的帧格式。
+	 * 仅在对端确认支持长度前缀帧后才能设置为 {@link MessageService#FRAMING_LENGTH} 。
+	 * 接收时仅在 {@link #setLengthFramingAccepted(boolean)} 后按帧头识别长度前缀帧。
+	 */
+	public void setFraming(int framing) {
+		this.framing = framing;
+	}
 
-		this.cacheSize = newSize;
+	/** 返回是否接受对端发送的长度前缀帧。
+	 */
+	public boolean isLengthFramingAccepted() {
+		return this.lengthFramingAccepted;
+	}
 
-		if (this.cacheCursor > 0) {
-			byte[] cur = new byte[this.cacheCursor];
-			System.arraycopy(this.cache, 0, cur, 0, this.cacheCursor);
-			this.cache = new byte[newSize];
-			System.arraycopy(cur, 0, this.cache, 0, this.cacheCursor);
-		}
-		else {
-			this.cache = new byte[newSize];
-		}
+	/** 设置是否接受对端发送的长度前缀帧。
+	 * 仅在协商长度前缀帧时设置，未接受时长度前缀帧的数据按无效数据丢弃。
+	 */
+	public void setLengthFramingAccepted(boolean accepted) {
+		this.lengthFramingAccepted = accepted;
+	}
+
+	/** 返回是否压缩发送的载荷数据。
+	 */
+	public boolean isCompressionEnabled() {
+		return this.compressionEnabled;
+	}
+
+	/** 设置是否压缩发送的载荷数据。
+	 * 仅在对端确认支持压缩后才能启用，由上层协议协商。
+	 */
+	public void setCompressionEnabled(boolean enabled) {
+		this.compressionEnabled = enabled;
+	}
+
+	/** 返回是否使用二进制编码发送的载荷数据。
+	 */
+	public boolean isBinaryEncodingEnabled() {
+		return this.binaryEncodingEnabled;
+	}
+
+	/** 设置是否使用二进制编码发送的载荷数据。
+	 * 仅在对端确认支持二进制编码后才能启用，由上层协议协商。
+	 */
+	public void setBinaryEncodingEnabled(boolean enabled) {
+		this.binaryEncodingEnabled = enabled;
+	}
+
+	/** 返回发送数据包使用的主版本号。
+	 */
+	public int getPacketVersion() {
+		return this.packetVersion;
+	}
+
+	/** 设置发送数据包使用的主版本号。
+	 * 仅在对端确认支持二进制格式数据包后才能设置为 {@link Packet#VERSION_MAJOR_BINARY} ，由上层协议协商。
+	 */
+	public void setPacketVersion(int major) {
+		this.packetVersion = major;
+	}
+
+	/** 返回会话是否可写。
+	 * 待发送数据超过高水位时会话不可写，新消息由背压策略处理。
+	 */
+	public boolean isWritable() {
+		return true;
+	}
+
+	/** 向该会话写消息。
+	 * @return 返回消息是否被接受发送。
+	 */
+	public boolean write(Message message) {
+		return this.service.write(this, message);
 	}
 }
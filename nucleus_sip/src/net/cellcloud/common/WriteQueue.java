@@ -0,0 +1,221 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.common;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/** 会话的待发送消息队列。
+ * 
+ * 统计尚未写出的字节数，包括已转为数据片段但未写完的消息。待发送字节数超过高水位时，
+ * 会话变为不可写，新消息交给背压策略处理；待发送字节数回落到低水位以下时恢复可写。
+ * 高水位为 0 时不限制队列长度。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class WriteQueue {
+
+	// 尚未转为数据片段的消息
+	private LinkedList<Message> messages = new LinkedList<Message>();
+	// 待发送字节数
+	private long pendingBytes = 0;
+
+	private long lowWatermark;
+	private long highWatermark;
+	private boolean writable = true;
+
+	private BackpressurePolicy policy;
+
+	// 被丢弃的消息数量
+	private long droppedCount = 0;
+
+	public WriteQueue(long lowWatermark, long highWatermark, BackpressurePolicy policy) {
+		this.setWatermarks(lowWatermark, highWatermark);
+		this.policy = policy;
+	}
+
+	/** 设置低水位和高水位。
+	 */
+	public synchronized void setWatermarks(long lowWatermark, long highWatermark) {
+		if (highWatermark > 0 && lowWatermark > highWatermark) {
+			throw new IllegalArgumentException("Low watermark " + lowWatermark
+					+ " is greater than high watermark " + highWatermark);
+		}
+
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+		this.updateWritable();
+	}
+
+	/** 返回低水位。
+	 */
+	public synchronized long getLowWatermark() {
+		return this.lowWatermark;
+	}
+
+	/** 返回高水位。
+	 */
+	public synchronized long getHighWatermark() {
+		return this.highWatermark;
+	}
+
+	/** 设置背压策略。
+	 */
+	public synchronized void setPolicy(BackpressurePolicy policy) {
+		this.policy = policy;
+	}
+
+	/** 返回背压策略。
+	 */
+	public synchronized BackpressurePolicy getPolicy() {
+		return this.policy;
+	}
+
+	/** 返回是否可写。
+	 */
+	public synchronized boolean isWritable() {
+		return this.writable;
+	}
+
+	/** 返回队列中尚未转为数据片段的消息数量。
+	 */
+	public synchronized int size() {
+		return this.messages.size();
+	}
+
+	/** 返回是否没有尚未转为数据片段的消息。
+	 */
+	public synchronized boolean isEmpty() {
+		return this.messages.isEmpty();
+	}
+
+	/** 返回待发送字节数。
+	 */
+	public synchronized long getPendingBytes() {
+		return this.pendingBytes;
+	}
+
+	/** 返回被丢弃的消息数量。
+	 */
+	public synchronized long getDroppedCount() {
+		return this.droppedCount;
+	}
+
+	/** 添加消息。超过高水位时由背压策略处理。
+	 * @return 返回消息是否被接受。
+	 */
+	public synchronized boolean offer(Session session, Message message) {
+		if (this.highWatermark > 0 && this.pendingBytes + message.length() > this.highWatermark) {
+			this.writable = false;
+
+			if (null == this.policy || !this.policy.overflow(session, this, message)) {
+				++this.droppedCount;
+				return false;
+			}
+
+			return true;
+		}
+
+		this.append(message);
+		return true;
+	}
+
+	/** 不检查水位，直接将消息添加到队列尾部。供背压策略使用。
+	 */
+	public synchronized void append(Message message) {
+		this.messages.addLast(message);
+		this.pendingBytes += message.length();
+		this.updateWritable();
+	}
+
+	/** 丢弃队列中最早的消息。供背压策略使用。
+	 * @return 返回被丢弃的消息，如果队列为空返回 null 。
+	 */
+	public synchronized Message dropFirst() {
+		Message message = this.messages.pollFirst();
+		if (null != message) {
+			this.pendingBytes -= message.length();
+			++this.droppedCount;
+			this.updateWritable();
+		}
+		return message;
+	}
+
+	/** 使用新消息替换队列中由合并策略判定可被取代的最近一条消息。
+	 * @return 如果没有可被取代的消息返回 false 。
+	 */
+	protected synchronized boolean coalesce(CoalescePolicy policy, Message message) {
+		ListIterator<Message> iter = this.messages.listIterator(this.messages.size());
+		while (iter.hasPrevious()) {
+			Message queued = iter.previous();
+			if (policy.supersedes(message, queued)) {
+				iter.set(message);
+				this.pendingBytes += message.length() - queued.length();
+				++this.droppedCount;
+				this.updateWritable();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** 取出消息用于发送，已取出消息的字节数在写出后扣除。
+	 */
+	protected synchronized Message poll() {
+		return this.messages.pollFirst();
+	}
+
+	/** 扣除已写出消息的字节数。
+	 */
+	protected synchronized void sent(Message message) {
+		this.pendingBytes -= message.length();
+		this.updateWritable();
+	}
+
+	/** 清空队列。
+	 */
+	protected synchronized void clear() {
+		Iterator<Message> iter = this.messages.iterator();
+		while (iter.hasNext()) {
+			this.pendingBytes -= iter.next().length();
+		}
+		this.messages.clear();
+		this.updateWritable();
+	}
+
+	private void updateWritable() {
+		if (this.highWatermark <= 0) {
+			this.writable = true;
+		}
+		else if (this.pendingBytes > this.highWatermark) {
+			this.writable = false;
+		}
+		else if (this.pendingBytes <= this.lowWatermark) {
+			this.writable = true;
+		}
+	}
+}
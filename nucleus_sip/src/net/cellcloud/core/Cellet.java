@@ -74,14 +74,23 @@ public abstract class Cellet extends AbstractCellet {
 	}
 
 	/** 发送原语到消费端进行会话。
+	 * @return 返回原语是否被接受发送。消费端待发送数据超过高水位时，原语可能被背压策略丢弃。
 	 */
-	public void talk(final String targetTag, final Primitive primitive) {
-		TalkService.getInstance().notice(targetTag, primitive, this, this.sandbox);
+	public boolean talk(final String targetTag, final Primitive primitive) {
+		return TalkService.getInstance().notice(targetTag, primitive, this, this.sandbox);
 	}
 	/** 发送方言到消费端进行会话。
+	 * @return 返回方言是否被接受发送。
 	 */
-	public void talk(final String targetTag, final Dialect dialect) {
-		TalkService.getInstance().notice(targetTag, dialect, this, this.sandbox);
+	public boolean talk(final String targetTag, final Dialect dialect) {
+		return TalkService.getInstance().notice(targetTag, dialect, this, this.sandbox);
+	}
+
+	/** 返回消费端当前是否可写。
+	 * 消费端待发送数据超过高水位时不可写，待发送数据回落到低水位以下后恢复可写。
+	 */
+	public boolean isWritable(final String targetTag) {
+		return TalkService.getInstance().isWritable(targetTag);
 	}
 
 	/**
@@ -137,4 +146,13 @@ public abstract class Cellet extends AbstractCellet {
 	public void resumed(final String tag) {
 		// Nothing
 	}
+
+	/** 当方言发送失败时回调此方法，例如块数据重传次数超过上限。
+	 * 
+	 * @param tag 对端的内核标签。
+	 * @param dialect 发送失败的方言。
+	 */
+	public void failed(final String tag, final Dialect dialect) {
+		// Nothing
+	}
 }
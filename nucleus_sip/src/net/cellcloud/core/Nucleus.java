@@ -212,6 +212,21 @@ public final class Nucleus {
 				this.talkService.setBlockSize(this.config.talk.block);
 				// 设置最大连接数
 				this.talkService.setMaxConnections(this.config.talk.maxConnections);
+				// 设置网络工作线程数
+				this.talkService.setWorkerNum(this.config.talk.workerNum);
+				// 设置是否启用多 Reactor 模式
+				this.talkService.setMultiReactor(this.config.talk.multiReactor);
+				// 设置会话待发送数据水位及背压策略
+				this.talkService.setWriteWatermarks(this.config.talk.lowWatermark, this.config.talk.highWatermark);
+				this.talkService.setBackpressurePolicy(this.config.talk.backpressurePolicy);
+				// 设置是否按会话顺序执行数据包
+				this.talkService.setOrderedDispatch(this.config.talk.orderedDispatch);
+				// 设置是否协商压缩对话数据
+				this.talkService.setCompression(this.config.talk.compression, this.config.talk.compressionThreshold);
+				// 设置是否协商二进制格式原语
+				this.talkService.setBinaryPrimitiveEnabled(this.config.talk.binaryPrimitive);
+				// 设置单条消息的最大长度
+				this.talkService.setMaxPayload(this.config.talk.maxPayload);
 				// 设置是否启用 HTTP 服务
 				this.talkService.httpEnabled(this.config.talk.httpEnabled);
 				// 设置 HTTP 端口号
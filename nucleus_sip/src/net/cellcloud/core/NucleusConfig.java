@@ -29,6 +29,8 @@ package net.cellcloud.core;
 import java.net.InetSocketAddress;
 import java.util.List;
 
+import net.cellcloud.common.BackpressurePolicy;
+
 /** 内核参数配置描述。
  * 
  * @author Jiangwei Xu
@@ -111,6 +113,36 @@ public final class NucleusConfig {
 		/// 最大连接数
 		public int maxConnections = 2000;
 
+		/// 网络工作线程数
+		public int workerNum = 8;
+
+		/// 是否启用多 Reactor 模式，每个工作线程使用独立的选择器处理读写
+		public boolean multiReactor = false;
+
+		/// 每个会话待发送数据的低水位，单位：字节
+		public long lowWatermark = 0;
+
+		/// 每个会话待发送数据的高水位，单位：字节，为 0 时不限制
+		public long highWatermark = 0;
+
+		/// 会话待发送数据超过高水位时的背压策略，为 null 时丢弃新消息
+		public BackpressurePolicy backpressurePolicy = null;
+
+		/// 是否按会话顺序执行收到的数据包
+		public boolean orderedDispatch = false;
+
+		/// 是否允许与对端协商压缩对话数据
+		public boolean compression = false;
+
+		/// 压缩阈值，小于该长度的原语数据不压缩，单位：字节
+		public int compressionThreshold = 256;
+
+		/// 是否允许与对端协商二进制格式原语
+		public boolean binaryPrimitive = true;
+
+		/// 单条消息的最大长度，包括数据帧及解压后的数据，单位：字节
+		public int maxPayload = 8 * 1024 * 1024;
+
 		/// 是否使用 HTTP 服务
 		public boolean httpEnabled = true;
 
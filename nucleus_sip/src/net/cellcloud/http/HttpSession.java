@@ -110,8 +110,8 @@ public class HttpSession extends Session {
 	}
 
 	@Override
-	public final void write(Message message) {
-		this.queue.offer(message);
+	public final boolean write(Message message) {
+		return this.queue.offer(message);
 	}
 
 	/**
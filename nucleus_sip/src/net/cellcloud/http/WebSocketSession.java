@@ -56,9 +56,9 @@ public class WebSocketSession extends Session {
 	}
 
 	@Override
-	public void write(Message message) {
+	public boolean write(Message message) {
 		if (!this.rawSession.isOpen()) {
-			return;
+			return false;
 		}
 
 		try {
@@ -73,6 +73,9 @@ public class WebSocketSession extends Session {
 			}
 		} catch (Exception e) {
 			Logger.log(this.getClass(), e, LogLevel.ERROR);
+			return false;
 		}
+
+		return true;
 	}
 }
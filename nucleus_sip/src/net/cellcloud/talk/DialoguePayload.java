@@ -0,0 +1,201 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cellcloud.common.DeflateCompressor;
+import net.cellcloud.common.Logger;
+import net.cellcloud.common.MessageService;
+import net.cellcloud.common.Packet;
+import net.cellcloud.common.Session;
+import net.cellcloud.talk.stuff.PrimitiveSerializer;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+/** 对话包原语数据的编码、压缩与解压。
+ * 
+ * 会话协商启用二进制格式后，原语按二进制格式序列化；
+ * 会话协商启用压缩后，超过阈值的原语数据被压缩。
+ * 两者均以包的副版本号标记位区分。
+ * 
+ * @author Jiangwei Xu
+ */
+final class DialoguePayload {
+
+	// 序列化数据缓存命中计数
+	private static final AtomicLong cacheHits = new AtomicLong(0);
+	private static final AtomicLong cacheMisses = new AtomicLong(0);
+
+	private DialoguePayload() {
+	}
+
+	/** 序列化原语并追加为数据子段，按会话协商结果选择格式及是否压缩。
+	 * 
+	 * 序列化及压缩结果缓存在原语上，同一原语发送给多个目标时只序列化一次。
+	 */
+	protected static void appendPrimitive(Packet packet, Primitive primitive, Session session, int threshold) {
+		boolean binary = (null != session && session.isBinaryEncodingEnabled());
+		int minor = binary ? TalkDefinition.MINOR_VERSION_BINARY : 0;
+
+		byte[] data = primitive.getSerializedCache(minor);
+		if (null == data) {
+			if (binary) {
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				PrimitiveSerializer.writeBinary(stream, primitive, true);
+				data = stream.toByteArray();
+			}
+			else {
+				data = PrimitiveSerializer.write(primitive);
+			}
+			primitive.setSerializedCache(minor, data);
+			cacheMisses.incrementAndGet();
+		}
+		else {
+			cacheHits.incrementAndGet();
+		}
+
+		if (null != session && session.isCompressionEnabled() && data.length >= threshold) {
+			int deflatedMinor = minor | TalkDefinition.MINOR_VERSION_DEFLATED;
+			byte[] compressed = primitive.getSerializedCache(deflatedMinor);
+			if (null == compressed) {
+				compressed = DeflateCompressor.getInstance().compress(data, 0, data.length);
+				// 压缩无收益时缓存原数据，避免对后续目标重复尝试压缩
+				primitive.setSerializedCache(deflatedMinor, (null != compressed) ? compressed : data);
+			}
+
+			if (null != compressed && compressed != data) {
+				minor = deflatedMinor;
+				data = compressed;
+			}
+		}
+
+		packet.setVersion(packet.getMajorVersion(), minor);
+		// 缓存数据在多个数据包间共享，数据包不修改子段数据
+		packet.appendSubsegment(data);
+	}
+
+	/** 将原语的二进制数据作为附件追加到数据包末尾的子段，附件不进行编码和压缩。
+	 * 
+	 * 仅在会话启用二进制格式时存在附件，须在数据包的其他子段追加完成后调用。
+	 */
+	protected static void appendAttachments(Packet packet, Primitive primitive, Session session) {
+		if (null == session || !session.isBinaryEncodingEnabled()) {
+			return;
+		}
+
+		ArrayList<byte[]> attachments = new ArrayList<byte[]>(1);
+		if (PrimitiveSerializer.collectAttachments(primitive, attachments) > 0) {
+			for (int i = 0, size = attachments.size(); i < size; ++i) {
+				packet.appendSubsegment(attachments.get(i));
+			}
+		}
+	}
+
+	/** 返回原语的 JSON 格式序列化数据，同一原语发送给多个目标时只序列化一次。
+	 */
+	protected static String primitiveJSON(Primitive primitive) throws JSONException {
+		String json = primitive.getSerializedJSON();
+		if (null == json) {
+			JSONStringer writer = new JSONStringer();
+			PrimitiveSerializer.write(writer, primitive);
+			json = writer.toString();
+			primitive.setSerializedJSON(json);
+			cacheMisses.incrementAndGet();
+		}
+		else {
+			cacheHits.incrementAndGet();
+		}
+		return json;
+	}
+
+	/** 返回序列化数据缓存命中次数。
+	 */
+	protected static long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/** 返回序列化数据缓存未命中次数。
+	 */
+	protected static long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/** 从数据子段读取原语，必要时进行解压。
+	 * @return 解压失败时返回 false 。
+	 */
+	protected static boolean readPrimitive(Packet packet, int index, Primitive primitive) {
+		byte[] data = packet.getSubsegmentArray(index);
+		int offset = packet.getSubsegmentOffset(index);
+		int length = packet.getSubsegmentLength(index);
+
+		if ((packet.getMinorVersion() & TalkDefinition.MINOR_VERSION_DEFLATED) != 0) {
+			// 解压后的数据不超过单条消息的最大长度
+			TalkService service = TalkService.getInstance();
+			int maxLength = (null != service) ? service.getMaxPayload() : MessageService.DEFAULT_MAX_FRAME_LENGTH;
+			data = DeflateCompressor.getInstance().decompress(data, offset, length, maxLength);
+			if (null == data) {
+				Logger.w(DialoguePayload.class, "Decompress primitive data failed");
+				return false;
+			}
+			offset = 0;
+			length = data.length;
+		}
+
+		// 未压缩时直接引用包数据，不复制子段
+		ByteArrayInputStream stream = new ByteArrayInputStream(data, offset, length);
+
+		if ((packet.getMinorVersion() & TalkDefinition.MINOR_VERSION_BINARY) != 0) {
+			// 附件位于数据包末尾的子段
+			byte[][] attachments = null;
+			int num = PrimitiveSerializer.getAttachmentCount(data, offset, length);
+			if (num > 0) {
+				int first = packet.getSubsegmentCount() - num;
+				if (first <= index) {
+					Logger.w(DialoguePayload.class, "Primitive attachment subsegments missing");
+					return false;
+				}
+
+				attachments = new byte[num][];
+				for (int i = 0; i < num; ++i) {
+					attachments[i] = packet.getSubsegment(first + i);
+				}
+			}
+
+			PrimitiveSerializer.readBinary(primitive, stream, attachments);
+		}
+		else {
+			primitive.read(stream);
+		}
+
+		return true;
+	}
+}
@@ -26,7 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -117,13 +116,9 @@ public final class HttpDialogueHandler extends AbstractJSONHandler implements Ca
 							// 获取 cellet identifier
 							byte[] identifier = packet.getSubsegment(1);
 
-							// 将包数据转为输入流进行反序列化
-							byte[] primData = packet.getSubsegment(0);
-							ByteArrayInputStream stream = new ByteArrayInputStream(primData);
-
 							// 反序列化
 							Primitive prim = new Primitive(Nucleus.getInstance().getTagAsString());
-							prim.read(stream);
+							DialoguePayload.readPrimitive(packet, 0, prim);
 
 							// 添加到数组
 							identifiers.add(Utils.bytes2String(identifier));
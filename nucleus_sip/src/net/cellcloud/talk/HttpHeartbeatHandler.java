@@ -26,7 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Queue;
@@ -93,13 +92,9 @@ public final class HttpHeartbeatHandler extends AbstractJSONHandler implements C
 					// 解包
 					Packet packet = Packet.unpack(message.get());
 					if (null != packet) {
-						// 将包数据转为输入流进行反序列化
-						byte[] primData = packet.getSubsegment(0);
-						ByteArrayInputStream stream = new ByteArrayInputStream(primData);
-
 						// 反序列化
 						Primitive prim = new Primitive(Nucleus.getInstance().getTagAsString());
-						prim.read(stream);
+						DialoguePayload.readPrimitive(packet, 0, prim);
 
 						// 添加到数组
 						identifiers.add(Utils.bytes2String(packet.getSubsegment(1)));
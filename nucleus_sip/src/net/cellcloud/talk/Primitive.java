@@ -60,6 +60,11 @@ public class Primitive {
 
 	private Cellet cellet;
 
+	// 序列化数据缓存，按对话包副版本号标记位索引，原语修改时失效
+	private byte[][] serializedCache;
+	// JSON 格式序列化数据缓存
+	private String serializedJSON;
+
 	/** 构造函数。 */
 	public Primitive() {
 		this.ownerTag = null;
@@ -133,6 +138,7 @@ public class Primitive {
 	/** 设置关联方言。
 	 */
 	public void capture(Dialect dialect) {
+		this.invalidateCache();
 		this.dialect = dialect;
 		this.dialect.setOwnerTag(this.ownerTag);
 		this.dialect.setCelletIdentifier(this.celletIdentifier);
@@ -141,6 +147,7 @@ public class Primitive {
 	/** 提交主语。
 	*/
 	public void commit(SubjectStuff subject) {
+		this.invalidateCache();
 		if (null == this.subjectList)
 			this.subjectList = new ArrayList<SubjectStuff>();
 		this.subjectList.add(subject);
@@ -149,6 +156,7 @@ public class Primitive {
 	/** 提交谓语。
 	 */
 	public void commit(PredicateStuff predicate) {
+		this.invalidateCache();
 		if (null == this.predicateList)
 			this.predicateList = new ArrayList<PredicateStuff>();
 		this.predicateList.add(predicate);
@@ -157,6 +165,7 @@ public class Primitive {
 	/** 提交宾语。
 	 */
 	public void commit(ObjectiveStuff objective) {
+		this.invalidateCache();
 		if (null == this.objectiveList)
 			this.objectiveList = new ArrayList<ObjectiveStuff>();
 		this.objectiveList.add(objective);
@@ -165,6 +174,7 @@ public class Primitive {
 	/** 提交定语。
 	 */
 	public void commit(AttributiveStuff attributive) {
+		this.invalidateCache();
 		if (null == this.attributiveList)
 			this.attributiveList = new ArrayList<AttributiveStuff>();
 		this.attributiveList.add(attributive);
@@ -173,6 +183,7 @@ public class Primitive {
 	/** 提交状语。
 	 */
 	public void commit(AdverbialStuff adverbial) {
+		this.invalidateCache();
 		if (null == this.adverbialList)
 			this.adverbialList = new ArrayList<AdverbialStuff>();
 		this.adverbialList.add(adverbial);
@@ -181,6 +192,7 @@ public class Primitive {
 	/** 提交补语。
 	 */
 	public void commit(ComplementStuff complement) {
+		this.invalidateCache();
 		if (null == this.complementList)
 			this.complementList = new ArrayList<ComplementStuff>();
 		this.complementList.add(complement);
@@ -265,6 +277,8 @@ public class Primitive {
 	/** 清空所有语素。
 	 */
 	public void clearStuffs() {
+		this.invalidateCache();
+
 		if (null != this.subjectList)
 			this.subjectList.clear();
 
@@ -284,6 +298,43 @@ public class Primitive {
 			this.complementList.clear();
 	}
 
+	/** 返回指定格式的序列化数据缓存。
+	 * @param flags 对话包副版本号标记位。
+	 */
+	protected synchronized byte[] getSerializedCache(int flags) {
+		return (null != this.serializedCache) ? this.serializedCache[flags] : null;
+	}
+
+	/** 缓存指定格式的序列化数据。
+	 * @param flags 对话包副版本号标记位。
+	 */
+	protected synchronized void setSerializedCache(int flags, byte[] data) {
+		if (null == this.serializedCache) {
+			this.serializedCache = new byte[TalkDefinition.MINOR_VERSION_DEFLATED
+					+ TalkDefinition.MINOR_VERSION_BINARY + 1][];
+		}
+		this.serializedCache[flags] = data;
+	}
+
+	/** 返回 JSON 格式的序列化数据缓存。
+	 */
+	protected synchronized String getSerializedJSON() {
+		return this.serializedJSON;
+	}
+
+	/** 缓存 JSON 格式的序列化数据。
+	 */
+	protected synchronized void setSerializedJSON(String json) {
+		this.serializedJSON = json;
+	}
+
+	/** 原语修改时清空序列化数据缓存。
+	 */
+	private synchronized void invalidateCache() {
+		this.serializedCache = null;
+		this.serializedJSON = null;
+	}
+
 	/** 将原语数据写入序列化流。
 	*/
 	public ByteArrayOutputStream write() {
@@ -30,6 +30,7 @@ import java.nio.charset.Charset;
 
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
+import net.cellcloud.common.MessageService;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
 import net.cellcloud.core.Nucleus;
@@ -80,18 +81,56 @@ public final class ServerCheckCommand extends ServerCommand {
 			log.append(" checkin.");
 			this.service.acceptSession(this.session, Utils.bytes2String(tag));
 
-			// 包格式：成功码|内核标签
+			// 包格式：成功码|内核标签|能力标识
+
+			// 客户端声明支持长度前缀帧时进行确认，旧版本客户端继续使用数据掩码
+			boolean lengthFraming = TalkDefinition.isLengthFramingSupported(this.packet, 2);
+			// 服务启用压缩且客户端声明支持时进行确认
+			boolean deflate = this.service.isCompressionEnabled()
+					&& TalkDefinition.hasCapability(this.packet, 2, TalkDefinition.CAP_DEFLATE);
+			// 服务启用二进制格式原语且客户端声明支持时进行确认
+			boolean binaryPrimitive = this.service.isBinaryPrimitiveEnabled()
+					&& TalkDefinition.hasCapability(this.packet, 2, TalkDefinition.CAP_BINARY_PRIMITIVE);
+			// 客户端声明支持二进制格式数据包时进行确认
+			boolean binaryPacket = TalkDefinition.hasCapability(this.packet, 2, TalkDefinition.CAP_BINARY_PACKET);
+
+			if (lengthFraming) {
+				// 在发送确认之前接受长度前缀帧，客户端收到确认后即可切换
+				this.session.setLengthFramingAccepted(true);
+			}
 
 			// 数据打包
 			Packet packet = new Packet(TalkDefinition.TPT_CHECK, 2, 1, 0);
 			packet.appendSubsegment(TalkDefinition.SC_SUCCESS);
 			packet.appendSubsegment(Nucleus.getInstance().getTagAsString().getBytes());
+			if (lengthFraming) {
+				packet.appendSubsegment(TalkDefinition.CAP_LENGTH_FRAMING);
+			}
+			if (deflate) {
+				packet.appendSubsegment(TalkDefinition.CAP_DEFLATE);
+			}
+			if (binaryPrimitive) {
+				packet.appendSubsegment(TalkDefinition.CAP_BINARY_PRIMITIVE);
+			}
+			if (binaryPacket) {
+				packet.appendSubsegment(TalkDefinition.CAP_BINARY_PACKET);
+			}
 
 			byte[] data = Packet.pack(packet);
 			if (null != data) {
 				Message message = new Message(data);
 				this.session.write(message);
 			}
+
+			if (lengthFraming) {
+				// 之后发送的数据使用长度前缀帧，客户端按帧头自动识别
+				this.session.setFraming(MessageService.FRAMING_LENGTH);
+			}
+			this.session.setCompressionEnabled(deflate);
+			this.session.setBinaryEncodingEnabled(binaryPrimitive);
+			if (binaryPacket) {
+				this.session.setPacketVersion(Packet.VERSION_MAJOR_BINARY);
+			}
 		}
 		else {
 			log.append(" checkout.");
@@ -26,8 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
-
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
@@ -50,24 +48,24 @@ public final class ServerDialogueCommand extends ServerCommand {
 
 	@Override
 	public void execute() {
-		// 包格式：序列化的原语|源标签
+		// 包格式：序列化的原语|源标签|Cellet[|附件...]
 
 		if (this.packet.getSubsegmentCount() < 2) {
 			Logger.e(ServerDialogueCommand.class, "Dialogue packet format error");
 			return;
 		}
 
-		byte[] priData = this.packet.getSubsegment(0);
-		ByteArrayInputStream stream = new ByteArrayInputStream(priData);
-
-		byte[] tagData = this.packet.getSubsegment(1);
-		String speakerTag = Utils.bytes2String(tagData);
+		String speakerTag = Utils.bytes2String(this.packet.getSubsegmentArray(1),
+				this.packet.getSubsegmentOffset(1), this.packet.getSubsegmentLength(1));
 
 		byte[] identifierData = this.packet.getSubsegment(2);
 
-		// 反序列化原语
+		// 反序列化原语，未压缩时直接引用包数据，不复制子段
 		Primitive primitive = new Primitive(speakerTag);
-		primitive.read(stream);
+		if (!DialoguePayload.readPrimitive(this.packet, 0, primitive)) {
+			Logger.e(ServerDialogueCommand.class, "Dialogue packet decompress error");
+			return;
+		}
 
 		this.service.processDialogue(this.session, speakerTag, Utils.bytes2String(identifierData), primitive);
 	}
@@ -26,8 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +35,7 @@ import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
 import net.cellcloud.common.NonblockingConnector;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketMessage;
 import net.cellcloud.common.Session;
 import net.cellcloud.core.Nucleus;
 import net.cellcloud.util.Utils;
@@ -238,18 +237,18 @@ public class Speaker implements Speakable {
 			return false;
 		}
 
-		// 序列化原语
-		ByteArrayOutputStream stream = primitive.write();
+		Session session = this.connector.getSession();
 
-		// 封装数据包
-		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, 1, 0);
-		packet.appendSubsegment(stream.toByteArray());
+		// 封装数据包，按会话协商结果选择包格式并序列化原语
+		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, session.getPacketVersion(), 0);
+		DialoguePayload.appendPrimitive(packet, primitive, session,
+				TalkService.getInstance().getCompressionThreshold());
 		packet.appendSubsegment(this.nucleusTag);
 		packet.appendSubsegment(Utils.string2Bytes(identifier));
+		DialoguePayload.appendAttachments(packet, primitive, session);
 
-		// 发送数据
-		byte[] data = Packet.pack(packet);
-		Message message = new Message(data);
+		// 发送数据，数据包在发送时直接编码到发送缓存
+		Message message = new PacketMessage(packet);
 		this.connector.write(message);
 
 		return true;
@@ -381,10 +380,18 @@ public class Speaker implements Speakable {
 		// 解密
 		byte[] plaintext = Cryptology.getInstance().simpleDecrypt(ciphertext, key);
 
-		// 发送响应数据
+		// 发送响应数据，包格式：原文|标签|能力标识
 		Packet response = new Packet(TalkDefinition.TPT_CHECK, 2, 1, 0);
 		response.appendSubsegment(plaintext);
 		response.appendSubsegment(this.nucleusTag);
+		response.appendSubsegment(TalkDefinition.CAP_LENGTH_FRAMING);
+		response.appendSubsegment(TalkDefinition.CAP_DEFLATE);
+		response.appendSubsegment(TalkDefinition.CAP_BINARY_PRIMITIVE);
+		response.appendSubsegment(TalkDefinition.CAP_BINARY_PACKET);
+
+		// 已声明支持长度前缀帧，服务器确认后发送的数据可能使用长度前缀帧
+		session.setLengthFramingAccepted(true);
+
 		// 数据打包
 		byte[] data = Packet.pack(response);
 		Message message = new Message(data);
@@ -501,16 +508,17 @@ public class Speaker implements Speakable {
 	}
 
 	protected void doDialogue(Packet packet, Session session) {
-		// 包格式：序列化的原语|Cellet
+		// 包格式：序列化的原语|Cellet[|附件...]
 
-		byte[] pridata = packet.getSubsegment(0);
-		ByteArrayInputStream stream = new ByteArrayInputStream(pridata);
-		String celletIdentifier = Utils.bytes2String(packet.getSubsegment(1));
+		String celletIdentifier = Utils.bytes2String(packet.getSubsegmentArray(1),
+				packet.getSubsegmentOffset(1), packet.getSubsegmentLength(1));
 
-		// 反序列化原语
+		// 反序列化原语，未压缩时直接引用包数据，不复制子段
 		Primitive primitive = new Primitive(this.remoteTag);
 		primitive.setCelletIdentifier(celletIdentifier);
-		primitive.read(stream);
+		if (!DialoguePayload.readPrimitive(packet, 0, primitive)) {
+			return;
+		}
 
 		this.fireDialogue(celletIdentifier, primitive);
 	}
@@ -536,14 +544,14 @@ public class Speaker implements Speakable {
 		// 包格式：目的标签|时间戳|原语序列|Cellet
 
 		long timestamp = Long.parseLong(Utils.bytes2String(packet.getSubsegment(1)));
-		byte[] pridata = packet.getSubsegment(2);
-		ByteArrayInputStream stream = new ByteArrayInputStream(pridata);
 		String celletIdentifier = Utils.bytes2String(packet.getSubsegment(3));
 
 		// 反序列化原语
 		Primitive primitive = new Primitive(this.remoteTag);
 		primitive.setCelletIdentifier(celletIdentifier);
-		primitive.read(stream);
+		if (!DialoguePayload.readPrimitive(packet, 2, primitive)) {
+			return;
+		}
 
 		this.fireResumed(timestamp, primitive);
 	}
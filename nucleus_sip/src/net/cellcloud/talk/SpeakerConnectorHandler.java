@@ -30,6 +30,7 @@ import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
 import net.cellcloud.common.MessageErrorCode;
 import net.cellcloud.common.MessageHandler;
+import net.cellcloud.common.MessageService;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
 import net.cellcloud.util.Utils;
@@ -156,6 +157,22 @@ public final class SpeakerConnectorHandler implements MessageHandler {
 			byte[] rtag = packet.getSubsegment(1);
 			this.speaker.recordTag(Utils.bytes2String(rtag));
 
+			// 服务器确认支持长度前缀帧，后续数据使用长度前缀帧发送
+			if (TalkDefinition.isLengthFramingSupported(packet, 2)) {
+				session.setFraming(MessageService.FRAMING_LENGTH);
+			}
+
+			// 服务器确认支持压缩，后续对话数据按阈值压缩
+			session.setCompressionEnabled(TalkDefinition.hasCapability(packet, 2, TalkDefinition.CAP_DEFLATE));
+
+			// 服务器确认支持二进制格式原语，后续对话数据使用二进制格式
+			session.setBinaryEncodingEnabled(TalkDefinition.hasCapability(packet, 2, TalkDefinition.CAP_BINARY_PRIMITIVE));
+
+			// 服务器确认支持二进制格式数据包，后续对话数据包使用二进制格式
+			if (TalkDefinition.hasCapability(packet, 2, TalkDefinition.CAP_BINARY_PACKET)) {
+				session.setPacketVersion(Packet.VERSION_MAJOR_BINARY);
+			}
+
 			// 请求 Cellet
 			this.speaker.requestCellets(session);
 		}
@@ -35,6 +35,7 @@ import net.cellcloud.common.Message;
 import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
+import net.cellcloud.util.LaneExecutor;
 
 /** Talk 服务句柄。
  * 
@@ -79,12 +80,23 @@ public final class TalkAcceptorHandler implements MessageHandler {
 		byte[] data = message.get();
 		final Packet packet = Packet.unpack(data);
 		if (null != packet) {
-			this.talkService.executor.execute(new Runnable() {
+			Runnable task = new Runnable() {
 				@Override
 				public void run() {
 					interpret(session, packet);
 				}
-			});
+			};
+
+			LaneExecutor laneExecutor = this.talkService.laneExecutor;
+			if (null != laneExecutor) {
+				// 同一会话的数据包按顺序执行
+				if (!laneExecutor.execute(session.getId(), task)) {
+					Logger.w(this.getClass(), "Talk service is stopping, discards packet from " + session.getAddress());
+				}
+			}
+			else {
+				this.talkService.executor.execute(task);
+			}
 		}
 	}
 
@@ -26,6 +26,10 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
+import java.util.Arrays;
+
+import net.cellcloud.common.Packet;
+
 /** Talk 服务器网络包定义。
  * 
  * @author Jiangwei Xu
@@ -67,6 +71,37 @@ public final class TalkDefinition {
 	protected static final byte[] SC_FAILURE = {'0', '0', '0', '1'};
 	protected static final byte[] SC_FAILURE_NOCELLET = {'0', '0', '1', '0'};
 
+	// 能力标识：支持长度前缀帧
+	protected static final byte[] CAP_LENGTH_FRAMING = {'L', 'F', 'R', 'M'};
+	// 能力标识：支持载荷压缩
+	protected static final byte[] CAP_DEFLATE = {'D', 'F', 'L', 'T'};
+	// 能力标识：支持二进制格式原语
+	protected static final byte[] CAP_BINARY_PRIMITIVE = {'B', 'P', 'R', 'M'};
+	// 能力标识：支持二进制格式数据包
+	protected static final byte[] CAP_BINARY_PACKET = {'B', 'P', 'K', 'T'};
+
+	// 对话包副版本号标记位：原语数据已压缩
+	protected static final int MINOR_VERSION_DEFLATED = 1;
+	// 对话包副版本号标记位：原语数据为二进制格式
+	protected static final int MINOR_VERSION_BINARY = 2;
+
+
+	/** 判断 CHECK 包是否声明支持长度前缀帧。
+	 */
+	public static boolean isLengthFramingSupported(Packet packet, int index) {
+		return hasCapability(packet, index, CAP_LENGTH_FRAMING);
+	}
+
+	/** 判断 CHECK 包从指定子段开始的能力标识中是否包含指定能力。
+	 */
+	public static boolean hasCapability(Packet packet, int index, byte[] capability) {
+		for (int i = index, count = packet.getSubsegmentCount(); i < count; ++i) {
+			if (Arrays.equals(packet.getSubsegment(i), capability)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
 	/** 判断是否是 INTERROGATE 包。
 	 */
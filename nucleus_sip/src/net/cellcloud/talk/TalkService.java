@@ -26,7 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -40,12 +39,16 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 
+import net.cellcloud.common.BackpressurePolicy;
 import net.cellcloud.common.Cryptology;
+import net.cellcloud.common.DeflateCompressor;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
+import net.cellcloud.common.MessageService;
 import net.cellcloud.common.NonblockingAcceptor;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketMessage;
 import net.cellcloud.common.Service;
 import net.cellcloud.common.Session;
 import net.cellcloud.core.Cellet;
@@ -67,10 +70,13 @@ import net.cellcloud.talk.dialect.Dialect;
 import net.cellcloud.talk.dialect.DialectEnumerator;
 import net.cellcloud.talk.stuff.PrimitiveSerializer;
 import net.cellcloud.util.CachedQueueExecutor;
+import net.cellcloud.util.LaneExecutor;
 import net.cellcloud.util.Utils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONString;
+import org.json.JSONStringer;
 
 /** 会话服务。
  *
@@ -83,6 +89,21 @@ public final class TalkService implements Service, SpeakerDelegate {
 	private int port;
 	private int block;
 	private int maxConnections;
+	private int workerNum;
+	private boolean multiReactor;
+	private long lowWatermark;
+	private long highWatermark;
+	private BackpressurePolicy backpressurePolicy;
+	// 是否按会话顺序执行收到的数据包
+	private boolean orderedDispatch;
+	// 是否允许与对端协商压缩对话数据
+	private boolean compressionEnabled;
+	// 压缩阈值，小于该长度的原语数据不压缩
+	private int compressionThreshold;
+	// 是否允许与对端协商二进制格式原语
+	private boolean binaryPrimitiveEnabled;
+	// 单条消息的最大长度
+	private int maxPayload;
 
 	private long sessionTimeout;
 
@@ -103,6 +124,8 @@ public final class TalkService implements Service, SpeakerDelegate {
 
 	// 线程执行器
 	protected ExecutorService executor;
+	// 按会话分道的执行器，仅在顺序执行模式下使用
+	protected LaneExecutor laneExecutor;
 
 	/// 待检验 Session
 	private ConcurrentHashMap<Long, Certificate> unidentifiedSessions;
@@ -141,6 +164,16 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.port = 7000;
 			this.block = 16384;
 			this.maxConnections = 1000;
+			this.workerNum = 8;
+			this.multiReactor = false;
+			this.lowWatermark = 0;
+			this.highWatermark = 0;
+			this.backpressurePolicy = null;
+			this.orderedDispatch = false;
+			this.compressionEnabled = false;
+			this.compressionThreshold = DeflateCompressor.DEFAULT_THRESHOLD;
+			this.binaryPrimitiveEnabled = true;
+			this.maxPayload = MessageService.DEFAULT_MAX_FRAME_LENGTH;
 
 			this.httpEnabled = true;
 			this.httpPort = 7070;
@@ -195,10 +228,20 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.tagList = new ConcurrentSkipListSet<String>();
 		}
 
+		if (this.orderedDispatch && null == this.laneExecutor) {
+			// 创建分道执行器，分道数量与网络工作线程数相同
+			this.laneExecutor = new LaneExecutor(this.workerNum);
+		}
+
 		if (null == this.acceptor) {
 			// 创建网络适配器
 			this.acceptor = new NonblockingAcceptor();
 			this.acceptor.setBlockSize(this.block);
+			this.acceptor.setWorkerNum(this.workerNum);
+			this.acceptor.setMultiReactor(this.multiReactor);
+			this.acceptor.setWriteWatermarks(this.lowWatermark, this.highWatermark);
+			this.acceptor.setBackpressurePolicy(this.backpressurePolicy);
+			this.acceptor.setMaxFrameLength(this.maxPayload);
 
 			// 定义包标识
 			byte[] head = {0x20, 0x10, 0x11, 0x10};
@@ -240,6 +283,11 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.executor.shutdown();
 		}
 
+		if (null != this.laneExecutor) {
+			this.laneExecutor.shutdown();
+			this.laneExecutor = null;
+		}
+
 		if (this.httpEnabled && null != HttpService.getInstance()) {
 			HttpService.getInstance().removeCapsule(this.httpPort);
 		}
@@ -321,6 +369,139 @@ public final class TalkService implements Service, SpeakerDelegate {
 		this.maxConnections = num;
 	}
 
+	/**
+	 * 设置网络工作线程数。
+	 * @param num 指定工作线程数。
+	 */
+	public void setWorkerNum(int num) {
+		if (null != this.acceptor && this.acceptor.isRunning()) {
+			throw new InvalidException("Can't set the number of workers in talk service after the start");
+		}
+
+		this.workerNum = num;
+	}
+
+	/**
+	 * 设置是否启用多 Reactor 模式。
+	 * @param value 指定是否启用。
+	 */
+	public void setMultiReactor(boolean value) {
+		if (null != this.acceptor && this.acceptor.isRunning()) {
+			throw new InvalidException("Can't set the multi-reactor mode in talk service after the start");
+		}
+
+		this.multiReactor = value;
+	}
+
+	/**
+	 * 设置每个会话待发送数据的低水位和高水位，单位：字节。
+	 * 高水位为 0 时不限制待发送数据。
+	 * @param low 指定低水位。
+	 * @param high 指定高水位。
+	 */
+	public void setWriteWatermarks(long low, long high) {
+		if (null != this.acceptor && this.acceptor.isRunning()) {
+			throw new InvalidException("Can't set the write watermarks in talk service after the start");
+		}
+
+		this.lowWatermark = low;
+		this.highWatermark = high;
+	}
+
+	/**
+	 * 设置会话待发送数据超过高水位时的背压策略。
+	 * @param policy 指定策略。
+	 */
+	public void setBackpressurePolicy(BackpressurePolicy policy) {
+		if (null != this.acceptor && this.acceptor.isRunning()) {
+			throw new InvalidException("Can't set the backpressure policy in talk service after the start");
+		}
+
+		this.backpressurePolicy = policy;
+	}
+
+	/**
+	 * 设置是否按会话顺序执行收到的数据包。
+	 * 启用后同一会话的数据包在同一分道内串行执行，不同会话的数据包并行执行。
+	 * @param value 指定是否启用。
+	 */
+	public void setOrderedDispatch(boolean value) {
+		if (null != this.acceptor && this.acceptor.isRunning()) {
+			throw new InvalidException("Can't set the ordered dispatch in talk service after the start");
+		}
+
+		this.orderedDispatch = value;
+	}
+
+	/**
+	 * 设置是否允许与对端协商压缩对话数据。
+	 * 仅在 CHECK 握手时双方均声明支持压缩的会话上生效。
+	 * @param enabled 指定是否启用。
+	 * @param threshold 指定压缩阈值，小于该长度的原语数据不压缩。
+	 */
+	public void setCompression(boolean enabled, int threshold) {
+		this.compressionEnabled = enabled;
+		this.compressionThreshold = threshold;
+	}
+
+	/** 返回是否允许协商压缩对话数据。
+	 */
+	public boolean isCompressionEnabled() {
+		return this.compressionEnabled;
+	}
+
+	/** 返回压缩阈值。
+	 */
+	public int getCompressionThreshold() {
+		return this.compressionThreshold;
+	}
+
+	/**
+	 * 设置是否允许与对端协商二进制格式原语。
+	 * 仅在 CHECK 握手时双方均声明支持二进制格式的会话上生效，其他会话继续使用文本格式。
+	 * @param enabled 指定是否启用。
+	 */
+	public void setBinaryPrimitiveEnabled(boolean enabled) {
+		this.binaryPrimitiveEnabled = enabled;
+	}
+
+	/** 返回是否允许协商二进制格式原语。
+	 */
+	public boolean isBinaryPrimitiveEnabled() {
+		return this.binaryPrimitiveEnabled;
+	}
+
+	/**
+	 * 设置单条消息的最大长度。
+	 * 超过该长度的数据帧将导致会话被关闭。
+	 * @param length 指定最大长度，单位：字节。
+	 */
+	public void setMaxPayload(int length) {
+		this.maxPayload = length;
+		if (null != this.acceptor) {
+			this.acceptor.setMaxFrameLength(length);
+		}
+	}
+
+	/** 返回单条消息的最大长度。
+	 */
+	public int getMaxPayload() {
+		return this.maxPayload;
+	}
+
+	/** 返回原语序列化数据缓存的命中次数。
+	 * 同一原语或方言发送给多个目标时，除首次外均命中缓存。
+	 */
+	public long getPrimitiveCacheHits() {
+		return DialoguePayload.getCacheHits();
+	}
+
+	/** 返回原语序列化数据缓存的未命中次数，即实际序列化次数。
+	 */
+	public long getPrimitiveCacheMisses() {
+		return DialoguePayload.getCacheMisses();
+	}
+
 	/** 设置是否激活 HTTP 服务。
 	 */
 	public void httpEnabled(boolean enabled) {
@@ -485,9 +666,10 @@ public final class TalkService implements Service, SpeakerDelegate {
 
 				Session session = context.getLastSession();
 				if (null != session) {
-					message = this.packetDialogue(cellet, primitive, (session instanceof WebSocketSession));
-					if (null != message) {
-						session.write(message);
+					message = this.packetDialogue(cellet, primitive, session);
+					if (null != message && !session.write(message)) {
+						// 消息未被接受发送，例如待发送数据超过高水位
+						message = null;
 					}
 				}
 				else {
@@ -499,11 +681,24 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return (null != message);
 	}
 
+	/** 返回指定标签的对端当前是否可写。
+	 * 对端待发送数据超过高水位时不可写，新的原语将由背压策略处理。
+	 */
+	public boolean isWritable(final String targetTag) {
+		TalkSessionContext context = this.tagContexts.get(targetTag);
+		if (null == context) {
+			return false;
+		}
+
+		Session session = context.getLastSession();
+		return (null != session && session.isWritable());
+	}
+
 	/** 通知对端 Speaker 方言。
 	 */
 	public boolean notice(final String targetTag, final Dialect dialect,
 			final Cellet cellet, final CelletSandbox sandbox) {
-		Primitive primitive = dialect.translate();
+		Primitive primitive = dialect.getTranslation();
 		if (null != primitive) {
 			return this.notice(targetTag, primitive, cellet, sandbox);
 		}
@@ -711,7 +906,7 @@ public final class TalkService implements Service, SpeakerDelegate {
 		if (null == this.speakerMap && null == this.httpSpeakerMap)
 			return false;
 
-		Primitive primitive = dialect.translate();
+		Primitive primitive = dialect.getTranslation();
 		if (null != primitive) {
 			return this.talk(identifier, primitive);
 		}
@@ -761,6 +956,13 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return this.executor;
 	}
 
+	/** 返回按会话分道的执行器，未启用顺序执行模式时返回 null 。
+	 * 可通过 {@link LaneExecutor#getQueueDepths()} 查看各分道的积压任务数量。
+	 */
+	public LaneExecutor getLaneExecutor() {
+		return this.laneExecutor;
+	}
+
 	/** 启动 HTTP 服务。
 	 */
 	private void startHttpService() {
@@ -1503,14 +1705,11 @@ public final class TalkService implements Service, SpeakerDelegate {
 	private Message packetResume(String targetTag, Long timestamp, Primitive primitive) {
 		// 包格式：目的标签|时间戳|原语序列
 
-		// 序列化原语
-		ByteArrayOutputStream stream = primitive.write();
-
 		// 封装数据包
 		Packet packet = new Packet(TalkDefinition.TPT_RESUME, 6, 1, 0);
 		packet.appendSubsegment(Utils.string2Bytes(targetTag));
 		packet.appendSubsegment(Utils.string2Bytes(timestamp.toString()));
-		packet.appendSubsegment(stream.toByteArray());
+		packet.appendSubsegment(PrimitiveSerializer.write(primitive));
 
 		// 打包数据
 		byte[] data = Packet.pack(packet);
@@ -1520,21 +1719,26 @@ public final class TalkService implements Service, SpeakerDelegate {
 
 	/** 打包对话原语。
 	 */
-	private Message packetDialogue(Cellet cellet, Primitive primitive, boolean jsonFormat) {
+	private Message packetDialogue(Cellet cellet, Primitive primitive, Session session) {
+		boolean jsonFormat = (session instanceof WebSocketSession);
 		Message message = null;
 
 		if (jsonFormat) {
 			try {
-				JSONObject primJson = new JSONObject();
-				PrimitiveSerializer.write(primJson, primitive);
-
-				JSONObject packet = new JSONObject();
-				packet.put(HttpDialogueHandler.Primitive, primJson);
-				packet.put(HttpDialogueHandler.Identifier, cellet.getFeature().getIdentifier());
-
-				JSONObject data = new JSONObject();
-				data.put(WebSocketMessageHandler.TALK_PACKET_TAG, WebSocketMessageHandler.TPT_DIALOGUE);
-				data.put(WebSocketMessageHandler.TALK_PACKET, packet);
+				// 原语的 JSON 数据只序列化一次，由写入器直接输出到数据包
+				final String primJson = DialoguePayload.primitiveJSON(primitive);
+
+				JSONStringer data = new JSONStringer();
+				data.object().key(WebSocketMessageHandler.TALK_PACKET_TAG).value(WebSocketMessageHandler.TPT_DIALOGUE)
+					.key(WebSocketMessageHandler.TALK_PACKET).object()
+					.key(HttpDialogueHandler.Primitive).value(new JSONString() {
+						@Override
+						public String toJSONString() {
+							return primJson;
+						}
+					})
+					.key(HttpDialogueHandler.Identifier).value(cellet.getFeature().getIdentifier())
+					.endObject().endObject();
 
 				// 创建 message
 				message = new Message(data.toString());
@@ -1543,19 +1747,16 @@ public final class TalkService implements Service, SpeakerDelegate {
 			}
 		}
 		else {
-			// 包格式：原语序列|Cellet
-
-			// 序列化原语
-			ByteArrayOutputStream stream = primitive.write();
+			// 包格式：原语序列|Cellet[|附件...]
 
-			// 封装数据包
-			Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, 1, 0);
-			packet.appendSubsegment(stream.toByteArray());
+			// 封装数据包，按会话协商结果选择包格式并序列化原语
+			Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, session.getPacketVersion(), 0);
+			DialoguePayload.appendPrimitive(packet, primitive, session, this.compressionThreshold);
 			packet.appendSubsegment(Utils.string2Bytes(cellet.getFeature().getIdentifier()));
+			DialoguePayload.appendAttachments(packet, primitive, session);
 
-			// 打包数据
-			byte[] data = Packet.pack(packet);
-			message = new Message(data);
+			// 数据包在发送时直接编码到发送缓存
+			message = new PacketMessage(packet);
 		}
 
 		return message;
@@ -38,6 +38,7 @@ import net.cellcloud.talk.stuff.PrimitiveSerializer;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * 
@@ -86,21 +87,55 @@ public class WebSocketMessageHandler implements MessageHandler {
 	@Override
 	public void messageReceived(Session session, Message message) {
 		try {
-			JSONObject data = new JSONObject(message.getAsString());
-			String packetTag = data.getString(TALK_PACKET_TAG);
+			// 流式解析数据包外层结构，对话原语直接从解析器读取，不构建中间 JSON 对象
+			JSONTokener tokener = new JSONTokener(message.getAsString());
+			if (tokener.nextClean() != '{') {
+				throw tokener.syntaxError("A talk packet must begin with '{'");
+			}
+
+			String packetTag = null;
+			JSONObject packet = null;
+			String key = null;
+			while (null != (key = PrimitiveSerializer.nextKey(tokener))) {
+				if (key.equals(TALK_PACKET_TAG)) {
+					packetTag = tokener.nextValue().toString();
+				}
+				else if (key.equals(TALK_PACKET)) {
+					if (null != packetTag && packetTag.equals(TPT_DIALOGUE)) {
+						// 由任务继续读取对话数据
+						this.processDialogue(tokener, session);
+						return;
+					}
+
+					Object value = tokener.nextValue();
+					if (value instanceof JSONObject) {
+						packet = (JSONObject) value;
+					}
+				}
+				else {
+					tokener.nextValue();
+				}
+			}
+
 			if (null != packetTag) {
 				if (packetTag.equals(TPT_DIALOGUE)) {
-					this.processDialogue(data.getJSONObject(TALK_PACKET), session);
+					if (null != packet) {
+						this.processDialogue(packet, session);
+					}
 				}
 				else if (packetTag.equals(TPT_HEARTBEAT)) {
 					// 更新心跳
 					this.service.updateSessionHeartbeat(session);
 				}
 				else if (packetTag.equals(TPT_REQUEST)) {
-					this.processRequest(data.getJSONObject(TALK_PACKET), session);
+					if (null != packet) {
+						this.processRequest(packet, session);
+					}
 				}
 				else if (packetTag.equals(TPT_CHECK)) {
-					this.processCheck(data.getJSONObject(TALK_PACKET), session);
+					if (null != packet) {
+						this.processCheck(packet, session);
+					}
 				}
 				else {
 					Logger.w(this.getClass(), "Unknown TPT: " + packetTag);
@@ -126,7 +161,16 @@ public class WebSocketMessageHandler implements MessageHandler {
 
 	private void processDialogue(final JSONObject data, final Session session) {
 		// 异步执行任务
-		this.service.executor.execute(this.borrowTask(data, session));
+		Task task = this.borrowTask(session);
+		task.data = data;
+		this.service.executor.execute(task);
+	}
+
+	private void processDialogue(final JSONTokener tokener, final Session session) {
+		// 异步执行任务
+		Task task = this.borrowTask(session);
+		task.tokener = tokener;
+		this.service.executor.execute(task);
 	}
 
 	private void processCheck(JSONObject data, Session session) {
@@ -220,7 +264,7 @@ public class WebSocketMessageHandler implements MessageHandler {
 		}
 	}
 
-	private Task borrowTask(final JSONObject data, final Session session) {
+	private Task borrowTask(final Session session) {
 		Task task = null;
 
 		synchronized (this.taskList) {
@@ -232,13 +276,13 @@ public class WebSocketMessageHandler implements MessageHandler {
 			}
 		}
 
-		task.data = data;
 		task.session = session;
 		return task;
 	}
 
 	private void returnTask(Task task) {
 		task.data = null;
+		task.tokener = null;
 		task.session = null;
 
 		synchronized (this.taskList) {
@@ -252,6 +296,7 @@ public class WebSocketMessageHandler implements MessageHandler {
 	 */
 	protected class Task implements Runnable {
 		protected JSONObject data;
+		protected JSONTokener tokener;
 		protected Session session;
 
 		protected Task() {
@@ -260,14 +305,19 @@ public class WebSocketMessageHandler implements MessageHandler {
 		@Override
 		public void run() {
 			try {
-				String speakerTag = this.data.getString(HttpDialogueHandler.Tag);
-				String celletIdentifier = this.data.getString(HttpDialogueHandler.Identifier);
-				JSONObject primitiveJSON = this.data.getJSONObject(HttpDialogueHandler.Primitive);
-				// 解析原语
-				Primitive primitive = new Primitive(speakerTag);
-				PrimitiveSerializer.read(primitive, primitiveJSON);
-				// 处理原语
-				service.processDialogue(this.session, speakerTag, celletIdentifier, primitive);
+				if (null != this.tokener) {
+					this.readDialogue();
+				}
+				else {
+					String speakerTag = this.data.getString(HttpDialogueHandler.Tag);
+					String celletIdentifier = this.data.getString(HttpDialogueHandler.Identifier);
+					JSONObject primitiveJSON = this.data.getJSONObject(HttpDialogueHandler.Primitive);
+					// 解析原语
+					Primitive primitive = new Primitive(speakerTag);
+					PrimitiveSerializer.read(primitive, primitiveJSON);
+					// 处理原语
+					service.processDialogue(this.session, speakerTag, celletIdentifier, primitive);
+				}
 			} catch (JSONException e) {
 				Logger.log(this.getClass(), e, LogLevel.ERROR);
 			}
@@ -275,5 +325,60 @@ public class WebSocketMessageHandler implements MessageHandler {
 			// 归还任务
 			returnTask(this);
 		}
+
+		/** 从解析器流式读取对话数据包。
+		 * 原语在标签之后到达时直接读取，否则暂存为 JSON 对象待标签读取后解析。
+		 */
+		private void readDialogue() throws JSONException {
+			// {"tag": tag, "identifier": identifier, "primitive": primitive}
+			if (this.tokener.nextClean() != '{') {
+				throw this.tokener.syntaxError("A dialogue packet must begin with '{'");
+			}
+
+			String speakerTag = null;
+			String celletIdentifier = null;
+			Primitive primitive = null;
+			JSONObject primitiveJSON = null;
+
+			String key = null;
+			while (null != (key = PrimitiveSerializer.nextKey(this.tokener))) {
+				if (key.equals(HttpDialogueHandler.Tag)) {
+					speakerTag = this.tokener.nextValue().toString();
+				}
+				else if (key.equals(HttpDialogueHandler.Identifier)) {
+					celletIdentifier = this.tokener.nextValue().toString();
+				}
+				else if (key.equals(HttpDialogueHandler.Primitive)) {
+					if (null != speakerTag) {
+						primitive = new Primitive(speakerTag);
+						PrimitiveSerializer.read(primitive, this.tokener);
+					}
+					else {
+						Object value = this.tokener.nextValue();
+						if (value instanceof JSONObject) {
+							primitiveJSON = (JSONObject) value;
+						}
+					}
+				}
+				else {
+					this.tokener.nextValue();
+				}
+			}
+
+			if (null == speakerTag || null == celletIdentifier) {
+				throw new JSONException("Dialogue packet format error.");
+			}
+
+			if (null == primitive) {
+				if (null == primitiveJSON) {
+					throw new JSONException("Dialogue packet format error.");
+				}
+				primitive = new Primitive(speakerTag);
+				PrimitiveSerializer.read(primitive, primitiveJSON);
+			}
+
+			// 处理原语
+			service.processDialogue(this.session, speakerTag, celletIdentifier, primitive);
+		}
 	}
 }
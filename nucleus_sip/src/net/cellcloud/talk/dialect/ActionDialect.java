@@ -26,7 +26,8 @@ THE SOFTWARE.
 
 package net.cellcloud.talk.dialect;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import net.cellcloud.talk.Primitive;
@@ -46,8 +47,10 @@ public class ActionDialect extends Dialect {
 	public final static String DIALECT_NAME = "ActionDialect";
 
 	private String action;
-	private LinkedList<String> nameList;
-	private LinkedList<ObjectiveStuff> valueList;
+	// 已发布的参数表，发布后不再修改，读取无需加锁
+	private volatile ParamTable params;
+	// 待发布的参数表，追加参数时原地写入，读取时一次性发布
+	private volatile ParamTable pending;
 
 	private Object customContext;
 
@@ -56,8 +59,7 @@ public class ActionDialect extends Dialect {
 	 */
 	public ActionDialect() {
 		super(ActionDialect.DIALECT_NAME);
-		this.nameList = new LinkedList<String>();
-		this.valueList = new LinkedList<ObjectiveStuff>();
+		this.params = ParamTable.EMPTY;
 	}
 
 	/**
@@ -66,8 +68,7 @@ public class ActionDialect extends Dialect {
 	 */
 	public ActionDialect(String tracker) {
 		super(ActionDialect.DIALECT_NAME, tracker);
-		this.nameList = new LinkedList<String>();
-		this.valueList = new LinkedList<ObjectiveStuff>();
+		this.params = ParamTable.EMPTY;
 	}
 
 	/**
@@ -78,8 +79,7 @@ public class ActionDialect extends Dialect {
 	public ActionDialect(String tracker, String action) {
 		super(ActionDialect.DIALECT_NAME, tracker);
 		this.action = action;
-		this.nameList = new LinkedList<String>();
-		this.valueList = new LinkedList<ObjectiveStuff>();
+		this.params = ParamTable.EMPTY;
 	}
 
 	/** 设置自定义上下文。
@@ -94,6 +94,14 @@ public class ActionDialect extends Dialect {
 		return this.customContext;
 	}
 
+	/** 方言的所有修改均使翻译缓存失效，翻译结果可缓存。
+	 * 子类可能含有未跟踪修改的数据，需自行声明。
+	 */
+	@Override
+	protected boolean isTranslationCacheable() {
+		return this.getClass() == ActionDialect.class;
+	}
+
 	@Override
 	public Primitive translate() {
 		if (null == this.action || this.action.isEmpty()) {
@@ -102,14 +110,13 @@ public class ActionDialect extends Dialect {
 
 		Primitive primitive = new Primitive(this);
 
-		synchronized (this) {
-			for (int i = 0, size = this.nameList.size(); i < size; ++i) {
-				SubjectStuff nameStuff = new SubjectStuff(this.nameList.get(i));
-				ObjectiveStuff valueStuff = this.valueList.get(i);
+		ParamTable table = this.table();
+		for (int i = 0; i < table.size; ++i) {
+			SubjectStuff nameStuff = new SubjectStuff(table.names[i]);
+			ObjectiveStuff valueStuff = table.values[i];
 
-				primitive.commit(nameStuff);
-				primitive.commit(valueStuff);
-			}
+			primitive.commit(nameStuff);
+			primitive.commit(valueStuff);
 		}
 
 		PredicateStuff actionStuff = new PredicateStuff(this.action);
@@ -120,16 +127,19 @@ public class ActionDialect extends Dialect {
 
 	@Override
 	public void build(Primitive primitive) {
+		this.invalidateTranslation();
 		this.action = primitive.predicates().get(0).getValueAsString();
 
 		if (null != primitive.subjects()) {
 			List<SubjectStuff> names = primitive.subjects();
 			List<ObjectiveStuff> values = primitive.objectives();
 			synchronized (this) {
+				// 一次性预留参数表空间
+				ParamTable table = this.writable(names.size());
 				for (int i = 0, size = names.size(); i < size; ++i) {
-					this.nameList.add(names.get(i).getValueAsString());
-					this.valueList.add(values.get(i));
+					table.put(names.get(i).getValueAsString(), values.get(i));
 				}
+				this.pending = table;
 			}
 		}
 	}
@@ -138,6 +148,7 @@ public class ActionDialect extends Dialect {
 	 */
 	public void setAction(final String action) {
 		this.action = action;
+		this.invalidateTranslation();
 	}
 
 	/** 返回动作名。
@@ -149,121 +160,207 @@ public class ActionDialect extends Dialect {
 	/** 添加动作参数键值对。
 	 */
 	public void appendParam(final String name, final String value) {
-		synchronized (this) {
-			this.nameList.add(name);
-			this.valueList.add(new ObjectiveStuff(value));
-		}
+		this.appendParam(name, new ObjectiveStuff(value));
 	}
 	/** 添加动作参数键值对。
 	 */
 	public void appendParam(final String name, final int value) {
-		synchronized (this) {
-			this.nameList.add(name);
-			this.valueList.add(new ObjectiveStuff(value));
-		}
+		this.appendParam(name, new ObjectiveStuff(value));
 	}
 	/** 添加动作参数键值对。
 	 */
 	public void appendParam(final String name, final long value) {
-		synchronized (this) {
-			this.nameList.add(name);
-			this.valueList.add(new ObjectiveStuff(value));
-		}
+		this.appendParam(name, new ObjectiveStuff(value));
 	}
 	/** 添加动作参数键值对。
 	 */
 	public void appendParam(final String name, final boolean value) {
-		synchronized (this) {
-			this.nameList.add(name);
-			this.valueList.add(new ObjectiveStuff(value));
-		}
+		this.appendParam(name, new ObjectiveStuff(value));
 	}
 	/** 添加动作参数键值对。
 	 */
 	public void appendParam(final String name, final JSONObject value) {
-		synchronized (this) {
-			this.nameList.add(name);
-			this.valueList.add(new ObjectiveStuff(value));
-		}
+		this.appendParam(name, new ObjectiveStuff(value));
 	}
 
 	/** 返回指定名称的参数值。
 	 */
 	public String getParamAsString(final String name) {
-		synchronized (this) {
-			int index = this.nameList.indexOf(name);
-			if (index >= 0)
-				return this.valueList.get(index).getValueAsString();
-		}
-
-		return null;
+		ObjectiveStuff value = this.table().get(name);
+		return (null != value) ? value.getValueAsString() : null;
 	}
 	/** 返回指定名称的参数值。
 	 */
 	public int getParamAsInt(final String name) {
-		synchronized (this) {
-			int index = this.nameList.indexOf(name);
-			if (index >= 0)
-				return this.valueList.get(index).getValueAsInt();
-		}
-
-		return 0;
+		ObjectiveStuff value = this.table().get(name);
+		return (null != value) ? value.getValueAsInt() : 0;
 	}
 	/** 返回指定名称的参数值。
 	 */
 	public long getParamAsLong(final String name) {
-		synchronized (this) {
-			int index = this.nameList.indexOf(name);
-			if (index >= 0)
-				return this.valueList.get(index).getValueAsLong();
-		}
-
-		return 0;
+		ObjectiveStuff value = this.table().get(name);
+		return (null != value) ? value.getValueAsLong() : 0;
 	}
 	/** 返回指定名称的参数值。
 	 */
 	public boolean getParamAsBoolean(final String name) {
-		synchronized (this) {
-			int index = this.nameList.indexOf(name);
-			if (index >= 0)
-				return this.valueList.get(index).getValueAsBool();
-		}
-
-		return false;
+		ObjectiveStuff value = this.table().get(name);
+		return (null != value) ? value.getValueAsBool() : false;
 	}
 	/** 返回指定名称的参数值。
 	 * @throws JSONException 
 	 */
 	public JSONObject getParamAsJSON(final String name) throws JSONException {
-		synchronized (this) {
-			int index = this.nameList.indexOf(name);
-			if (index >= 0)
-				return this.valueList.get(index).getValueAsJSON();
-		}
-
-		return null;
+		ObjectiveStuff value = this.table().get(name);
+		return (null != value) ? value.getValueAsJSON() : null;
 	}
 
 	/** 判断指定名称的参数是否存在。
 	 */
 	public boolean existParam(final String name) {
-		synchronized (this) {
-			return this.nameList.contains(name);
-		}
+		return (null != this.table().get(name));
 	}
 
 	/** 返回所有参数名。
 	 */
 	public List<String> getParamNames() {
-		return this.nameList;
+		ParamTable table = this.table();
+		return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(table.names, table.size)));
+	}
+
+	private void appendParam(final String name, final ObjectiveStuff value) {
+		synchronized (this) {
+			ParamTable table = this.writable(1);
+			table.put(name, value);
+			this.pending = table;
+		}
+		this.invalidateTranslation();
+	}
+
+	/** 返回可写入指定数量参数的待发布参数表，需持有锁调用。
+	 * 待发布的参数表容量按倍数增长，连续追加参数时不复制参数表。
+	 */
+	private ParamTable writable(int count) {
+		ParamTable table = this.pending;
+		if (null == table) {
+			table = this.params;
+		}
+		else if (table.size + count <= table.names.length) {
+			return table;
+		}
+		return table.grow(Math.max(count, Math.max(table.size, 4)));
+	}
+
+	/** 返回已发布的参数表，存在待发布的参数时先发布。
+	 */
+	private ParamTable table() {
+		if (null == this.pending) {
+			return this.params;
+		}
+
+		synchronized (this) {
+			ParamTable table = this.pending;
+			if (null != table) {
+				// 先发布参数表再清空待发布表，无锁读取时总能看到最新的参数
+				this.params = table;
+				this.pending = null;
+			}
+			return this.params;
+		}
 	}
 
 	/** 执行动作委派（异步）。
+	 * @return 动作被执行器拒绝（例如等待执行的动作已满或执行器已关闭）时返回 false ，委派不会被执行。
 	 */
-	public void act(ActionDelegate delegate) {
+	public boolean act(ActionDelegate delegate) {
 		ActionDialectFactory factory = (ActionDialectFactory) DialectEnumerator.getInstance().getFactory(ActionDialect.DIALECT_NAME);
 		if (null != factory) {
-			factory.doAction(this, delegate);
+			return factory.doAction(this, delegate);
+		}
+		return false;
+	}
+
+	/** 参数表。
+	 * 按插入顺序保存参数，使用开放寻址哈希索引参数名。
+	 * 参数表发布后不再修改，发布后追加参数时复制新表。
+	 */
+	private static final class ParamTable {
+
+		private final static ParamTable EMPTY = new ParamTable(0);
+
+		private final String[] names;
+		private final ObjectiveStuff[] values;
+		private final int[] hashes;
+		// 槽位保存参数序号加 1 ，0 表示空槽
+		private final int[] slots;
+		private int size;
+
+		private ParamTable(int capacity) {
+			this.names = new String[capacity];
+			this.values = new ObjectiveStuff[capacity];
+			this.hashes = new int[capacity];
+			// 装载因子不超过 0.5
+			int n = 2;
+			while (n < capacity * 2) {
+				n <<= 1;
+			}
+			this.slots = new int[n];
+			this.size = 0;
+		}
+
+		/** 复制当前参数表并预留指定数量的空间。
+		 */
+		private ParamTable grow(int count) {
+			ParamTable table = new ParamTable(this.size + count);
+			for (int i = 0; i < this.size; ++i) {
+				table.put(this.names[i], this.values[i]);
+			}
+			return table;
+		}
+
+		/** 添加参数。同名参数只索引第一个。
+		 */
+		private void put(String name, ObjectiveStuff value) {
+			int index = this.size++;
+			int hash = hash(name);
+			this.names[index] = name;
+			this.values[index] = value;
+			this.hashes[index] = hash;
+
+			int mask = this.slots.length - 1;
+			int slot = hash & mask;
+			while (this.slots[slot] != 0) {
+				int i = this.slots[slot] - 1;
+				if (this.hashes[i] == hash && this.names[i].equals(name)) {
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			this.slots[slot] = index + 1;
+		}
+
+		private ObjectiveStuff get(String name) {
+			if (this.size == 0 || null == name) {
+				return null;
+			}
+
+			int hash = hash(name);
+			int mask = this.slots.length - 1;
+			int slot = hash & mask;
+			int i;
+			while ((i = this.slots[slot]) != 0) {
+				--i;
+				if (this.hashes[i] == hash && this.names[i].equals(name)) {
+					return this.values[i];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private static int hash(String name) {
+			int h = name.hashCode();
+			return h ^ (h >>> 16);
 		}
 	}
 }
@@ -26,11 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk.dialect;
 
-import java.util.LinkedList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-
 import net.cellcloud.core.Cellet;
 
 /** 动作方言工厂。
@@ -41,18 +36,35 @@ public final class ActionDialectFactory extends DialectFactory {
 
 	private DialectMetaData metaData;
 
-	private ExecutorService executor;
-	private int maxThreadCount;
-	private AtomicInteger threadCount;
-	private LinkedList<ActionDialect> dialects;
-	private LinkedList<ActionDelegate> delegates;
+	private volatile ActionExecutor executor;
 
 	public ActionDialectFactory() {
 		this.metaData = new DialectMetaData(ActionDialect.DIALECT_NAME, "Action Dialect");
-		this.maxThreadCount = 32;
-		this.threadCount = new AtomicInteger(0);
-		this.dialects = new LinkedList<ActionDialect>();
-		this.delegates = new LinkedList<ActionDelegate>();
+	}
+
+	/** 设置动作执行器。未设置时使用默认的分道动作执行器。
+	 */
+	public synchronized void setExecutor(ActionExecutor executor) {
+		if (null != this.executor && this.executor != executor) {
+			this.executor.shutdown();
+		}
+		this.executor = executor;
+	}
+
+	/** 返回动作执行器。
+	 */
+	public ActionExecutor getExecutor() {
+		ActionExecutor current = this.executor;
+		if (null == current) {
+			synchronized (this) {
+				current = this.executor;
+				if (null == current) {
+					current = new LaneActionExecutor(32, 10000, LaneActionExecutor.RejectionPolicy.DISCARD);
+					this.executor = current;
+				}
+			}
+		}
+		return current;
 	}
 
 	@Override
@@ -67,14 +79,11 @@ public final class ActionDialectFactory extends DialectFactory {
 
 	@Override
 	public void shutdown() {
-		synchronized (this.metaData) {
-			this.dialects.clear();
-			this.delegates.clear();
-		}
-
-		if (null != this.executor) {
-			this.executor.shutdown();
-			this.executor = null;
+		synchronized (this) {
+			if (null != this.executor) {
+				this.executor.shutdown();
+				this.executor = null;
+			}
 		}
 	}
 
@@ -99,45 +108,9 @@ public final class ActionDialectFactory extends DialectFactory {
 	}
 
 	/** 执行动作。
+	 * @return 动作被执行器拒绝时返回 false 。
 	 */
-	protected void doAction(final ActionDialect dialect, final ActionDelegate delegate) {
-		if (null == this.executor) {
-			this.executor = Executors.newCachedThreadPool();
-		}
-
-		synchronized (this.metaData) {
-			this.dialects.add(dialect);
-			this.delegates.add(delegate);
-		}
-
-		if (this.threadCount.get() < this.maxThreadCount) {
-			// 线程数量未达到最大线程数，启动新线程
-
-			this.executor.execute(new Runnable() {
-				@Override
-				public void run() {
-					threadCount.incrementAndGet();
-
-					while (!dialects.isEmpty()) {
-						ActionDelegate adg = null;
-						ActionDialect adl = null;
-						synchronized (metaData) {
-							if (dialects.isEmpty()) {
-								break;
-							}
-							adg = delegates.remove(0);
-							adl = dialects.remove(0);
-						}
-
-						// Do action
-						if (null != adg) {
-							adg.doAction(adl);
-						}
-					}
-
-					threadCount.decrementAndGet();
-				}
-			});
-		}
+	protected boolean doAction(final ActionDialect dialect, final ActionDelegate delegate) {
+		return this.getExecutor().execute(dialect, delegate);
 	}
 }
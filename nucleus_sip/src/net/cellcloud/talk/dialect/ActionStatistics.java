@@ -0,0 +1,117 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 动作执行统计。
+ * 
+ * 按动作名记录执行次数、排队等待时间和执行时间，时间单位为纳秒。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ActionStatistics {
+
+	private final String action;
+
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong totalWaitTime = new AtomicLong(0);
+	private final AtomicLong maxWaitTime = new AtomicLong(0);
+	private final AtomicLong totalExecutionTime = new AtomicLong(0);
+	private final AtomicLong maxExecutionTime = new AtomicLong(0);
+
+	protected ActionStatistics(String action) {
+		this.action = action;
+	}
+
+	/** 记录一次执行。
+	 */
+	protected void record(long waitTime, long executionTime) {
+		this.count.incrementAndGet();
+		this.totalWaitTime.addAndGet(waitTime);
+		this.totalExecutionTime.addAndGet(executionTime);
+		updateMax(this.maxWaitTime, waitTime);
+		updateMax(this.maxExecutionTime, executionTime);
+	}
+
+	/** 返回动作名。
+	 */
+	public String getAction() {
+		return this.action;
+	}
+
+	/** 返回执行次数。
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/** 返回累计排队等待时间。
+	 */
+	public long getTotalWaitTime() {
+		return this.totalWaitTime.get();
+	}
+
+	/** 返回最长排队等待时间。
+	 */
+	public long getMaxWaitTime() {
+		return this.maxWaitTime.get();
+	}
+
+	/** 返回平均排队等待时间。
+	 */
+	public long getAverageWaitTime() {
+		long n = this.count.get();
+		return (n > 0) ? this.totalWaitTime.get() / n : 0;
+	}
+
+	/** 返回累计执行时间。
+	 */
+	public long getTotalExecutionTime() {
+		return this.totalExecutionTime.get();
+	}
+
+	/** 返回最长执行时间。
+	 */
+	public long getMaxExecutionTime() {
+		return this.maxExecutionTime.get();
+	}
+
+	/** 返回平均执行时间。
+	 */
+	public long getAverageExecutionTime() {
+		long n = this.count.get();
+		return (n > 0) ? this.totalExecutionTime.get() / n : 0;
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+}
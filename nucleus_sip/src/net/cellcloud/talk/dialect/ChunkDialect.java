@@ -26,11 +26,8 @@ THE SOFTWARE.
 
 package net.cellcloud.talk.dialect;
 
-import java.io.IOException;
 import java.util.List;
 
-import net.cellcloud.common.Base64;
-import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.talk.Primitive;
 import net.cellcloud.talk.stuff.PredicateStuff;
@@ -59,6 +56,8 @@ public class ChunkDialect extends Dialect {
 	protected boolean infectant = false;
 
 	private ChunkListener listener;
+	// 进度是否已回调，每个块只回调一次进度
+	private boolean progressFired = false;
 
 	private int readIndex = 0;
 
@@ -97,6 +96,7 @@ public class ChunkDialect extends Dialect {
 		this.chunkIndex = chunkIndex;
 		this.chunkNum = chunkNum;
 		this.ack = true;
+		this.invalidateTranslation();
 	}
 
 	public String getSign() {
@@ -124,12 +124,35 @@ public class ChunkDialect extends Dialect {
 	}
 
 	protected void fireProgress(String target) {
-		if (null != this.listener) {
-			this.listener.onProgress(target, this);
-			this.listener = null;
+		ChunkListener listener = null;
+		synchronized (this) {
+			if (this.progressFired) {
+				return;
+			}
+			this.progressFired = true;
+			listener = this.listener;
+		}
+
+		if (null != listener) {
+			listener.onProgress(target, this);
 		}
 	}
 
+	protected void fireFailure(String target) {
+		ChunkListener listener = this.listener;
+		if (null != listener) {
+			listener.onFailure(target, this);
+		}
+	}
+
+	/** 方言的所有修改均使翻译缓存失效，翻译结果可缓存。
+	 * 子类可能含有未跟踪修改的数据，需自行声明。
+	 */
+	@Override
+	protected boolean isTranslationCacheable() {
+		return this.getClass() == ChunkDialect.class;
+	}
+
 	@Override
 	public Primitive translate() {
 		Primitive primitive = new Primitive(this);
@@ -144,7 +167,8 @@ public class ChunkDialect extends Dialect {
 			primitive.commit(new SubjectStuff(this.sign));
 			primitive.commit(new SubjectStuff(this.chunkIndex));
 			primitive.commit(new SubjectStuff(this.chunkNum));
-			primitive.commit(new SubjectStuff(Base64.encodeBytes(this.data)));
+			// 数据以二进制形式提交，二进制格式的会话中作为附件直接传输，文本格式中按 Base64 编码
+			primitive.commit(new SubjectStuff(this.data));
 			primitive.commit(new SubjectStuff(this.length));
 			primitive.commit(new SubjectStuff(this.totalLength));
 		}
@@ -154,6 +178,7 @@ public class ChunkDialect extends Dialect {
 
 	@Override
 	public void build(Primitive primitive) {
+		this.invalidateTranslation();
 		this.ack = primitive.predicates().get(0).getValueAsBool();
 
 		if (this.ack) {
@@ -167,10 +192,10 @@ public class ChunkDialect extends Dialect {
 			this.sign = list.get(0).getValueAsString();
 			this.chunkIndex = list.get(1).getValueAsInt();
 			this.chunkNum = list.get(2).getValueAsInt();
-			try {
-				this.data = Base64.decode(list.get(3).getValueAsString());
-			} catch (IOException e) {
-				Logger.log(ChunkDialect.class, e, LogLevel.ERROR);
+			// 直接引用附件数据，文本格式的数据进行 Base64 解码
+			this.data = list.get(3).getValueAsBytes();
+			if (null == this.data) {
+				Logger.e(ChunkDialect.class, "Chunk data decode failed: " + this.sign);
 			}
 			this.length = list.get(4).getValueAsInt();
 			this.totalLength = list.get(5).getValueAsLong();
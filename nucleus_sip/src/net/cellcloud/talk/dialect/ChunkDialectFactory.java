@@ -26,37 +26,89 @@ THE SOFTWARE.
 
 package net.cellcloud.talk.dialect;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.core.Cellet;
 import net.cellcloud.talk.TalkService;
 
 /** 块数据传输方言工厂。
+ * 
+ * Cellet 发送的块数据通过滑动窗口传输：窗口内的块连续发送，收到块确认后窗口向前滑动。
+ * 窗口大小按确认情况自适应调整，超时未确认的块按测量的往返时间重传。
+ * 最大窗口设置为 1 时退化为停等方式传输。
+ * 
+ * 接收的块数据按索引重组，总长度超过阈值的数据写入临时文件，内存中只保留索引。
+ * 总长度、块数量或块长度不符或超过限制的块被丢弃；缓存占用的内存或磁盘超过上限时清理最早接收的数据。
  * 
  * @author Jiangwei Xu
  *
  */
 public class ChunkDialectFactory extends DialectFactory {
 
+	// 初始窗口块数
+	private final static int INITIAL_WINDOW = 4;
+	// 重传超时时间范围，单位：毫秒
+	private final static long MIN_RTO = 200;
+	private final static long MAX_RTO = 10000;
+	// 超时检查间隔，单位：毫秒
+	private final static long CHECK_INTERVAL = 50;
+
 	private DialectMetaData metaData;
 
 	private ConcurrentHashMap<String, Cache> cacheMap;
 
-	private ConcurrentHashMap<String, Queue> queueMap;
+	private ConcurrentHashMap<String, Window> windowMap;
 
-	private long cacheMemorySize = 0;
+	// 最大窗口块数
+	private int maxWindow = 64;
+	// 最大窗口字节数
+	private long maxWindowBytes = 512 * 1024;
+	// 单个块的最大重传次数，超过后放弃传输
+	private int maxRetransmission = 8;
+
+	// 重传检查定时器
+	private ScheduledExecutorService timer;
+
+	// 接收缓存占用的内存及磁盘大小
+	private AtomicLong cacheMemorySize = new AtomicLong(0);
+	private AtomicLong cacheDiskSize = new AtomicLong(0);
 	private final long clearThreshold = 100 * 1024 * 1024;
-	private Object mutex = new Object();
-	private boolean clearRunning = false;
+	// 接收缓存占用的磁盘大小上限，超过后清理最早的缓存
+	private long maxCacheDiskSize = 1024L * 1024 * 1024;
+	// 单次传输的最大总长度
+	private long maxTransferSize = 256L * 1024 * 1024;
+	private AtomicBoolean clearRunning = new AtomicBoolean(false);
+
+	// 总长度超过该值的块数据写入临时文件
+	private long spillThreshold = 256 * 1024;
+	// 临时文件目录，为 null 时使用系统临时目录
+	private File spillDirectory = null;
 
 	public ChunkDialectFactory() {
 		this.metaData = new DialectMetaData(ChunkDialect.DIALECT_NAME, "Chunk Dialect");
 		this.cacheMap = new ConcurrentHashMap<String, Cache>();
-		this.queueMap = new ConcurrentHashMap<String, Queue>();
+		this.windowMap = new ConcurrentHashMap<String, Window>();
 	}
 
 	@Override
@@ -71,8 +123,109 @@ public class ChunkDialectFactory extends DialectFactory {
 
 	@Override
 	public void shutdown() {
+		for (Cache cache : this.cacheMap.values()) {
+			cache.clearAll();
+		}
 		this.cacheMap.clear();
-		this.cacheMemorySize = 0;
+		this.windowMap.clear();
+
+		synchronized (this.windowMap) {
+			if (null != this.timer) {
+				this.timer.shutdown();
+				this.timer = null;
+			}
+		}
+	}
+
+	/** 设置写入临时文件的块数据总长度阈值。
+	 */
+	public void setSpillThreshold(long bytes) {
+		this.spillThreshold = bytes;
+	}
+
+	/** 返回写入临时文件的块数据总长度阈值。
+	 */
+	public long getSpillThreshold() {
+		return this.spillThreshold;
+	}
+
+	/** 设置临时文件目录。
+	 */
+	public void setSpillDirectory(File directory) {
+		this.spillDirectory = directory;
+	}
+
+	/** 返回接收缓存占用的内存大小。
+	 */
+	public long getCacheMemorySize() {
+		return this.cacheMemorySize.get();
+	}
+
+	/** 返回接收缓存占用的磁盘大小。
+	 */
+	public long getCacheDiskSize() {
+		return this.cacheDiskSize.get();
+	}
+
+	/** 设置接收缓存占用的磁盘大小上限。
+	 */
+	public void setMaxCacheDiskSize(long bytes) {
+		this.maxCacheDiskSize = bytes;
+	}
+
+	/** 返回接收缓存占用的磁盘大小上限。
+	 */
+	public long getMaxCacheDiskSize() {
+		return this.maxCacheDiskSize;
+	}
+
+	/** 设置单次传输的最大总长度，总长度超过该值的块数据不被接收。
+	 */
+	public void setMaxTransferSize(long bytes) {
+		this.maxTransferSize = bytes;
+	}
+
+	/** 返回单次传输的最大总长度。
+	 */
+	public long getMaxTransferSize() {
+		return this.maxTransferSize;
+	}
+
+	/** 设置最大窗口块数。设置为 1 时使用停等方式传输。
+	 */
+	public void setMaxWindow(int chunks) {
+		this.maxWindow = Math.max(1, chunks);
+	}
+
+	/** 返回最大窗口块数。
+	 */
+	public int getMaxWindow() {
+		return this.maxWindow;
+	}
+
+	/** 设置最大窗口字节数。
+	 */
+	public void setMaxWindowBytes(long bytes) {
+		this.maxWindowBytes = Math.max(ChunkDialect.CHUNK_SIZE, bytes);
+	}
+
+	/** 返回最大窗口字节数。
+	 */
+	public long getMaxWindowBytes() {
+		return this.maxWindowBytes;
+	}
+
+	/** 设置单个块的最大重传次数，超过后放弃传输并回调失败。
+	 */
+	public void setMaxRetransmission(int times) {
+		// 重传次数按字节记录
+		this.maxRetransmission = Math.min(Byte.MAX_VALUE, Math.max(0, times));
+	}
+
+	/** 返回单个块的最大重传次数。
+	 */
+	public int getMaxRetransmission() {
+		return this.maxRetransmission;
 	}
 
 	@Override
@@ -89,29 +242,40 @@ public class ChunkDialectFactory extends DialectFactory {
 	protected boolean onTalk(Cellet cellet, String targetTag, Dialect dialect) {
 		ChunkDialect chunk = (ChunkDialect) dialect;
 
-		if (chunk.getChunkIndex() == 0 || chunk.infectant || chunk.ack) {
-			// 直接发送
-
-			// 回调已处理
-			chunk.fireProgress(targetTag);
+		if (chunk.infectant || chunk.ack) {
+			// 直接发送，窗口发送的块由窗口在首次发送时回调进度，重传时不回调
+			if (chunk.ack) {
+				chunk.fireProgress(targetTag);
+			}
 
 			return true;
 		}
 		else {
-			Queue queue = this.queueMap.get(chunk.getSign());
-			if (null != queue) {
-				// 写入队列
-				queue.enqueue(chunk);
-				// 劫持，由队列发送
-				return false;
+			Window window = this.windowMap.get(chunk.getSign());
+			if (null == window) {
+				window = new Window(cellet, targetTag, chunk.getChunkNum());
+				Window old = this.windowMap.putIfAbsent(chunk.getSign(), window);
+				if (null != old) {
+					window = old;
+				}
+				else {
+					this.startTimer();
+				}
 			}
-			else {
-				queue = new Queue(targetTag.toString(), chunk.getChunkNum());
-				queue.enqueue(chunk);
-				this.queueMap.put(chunk.getSign(), queue);
-				// 劫持，由队列发送
+
+			// 写入窗口
+			if (!window.enqueue(chunk)) {
+				if (window.isFailed()) {
+					// 传输已失败，块不再发送
+					this.fireFailure(null, targetTag, chunk);
+				}
 				return false;
 			}
+			// 发送窗口内的块
+			window.pump();
+
+			// 劫持，由窗口发送
+			return false;
 		}
 	}
 
@@ -138,21 +302,17 @@ public class ChunkDialectFactory extends DialectFactory {
 			return true;
 		}
 		else {
-			// 收到 ACK ，发送下一个
+			// 收到 ACK ，滑动窗口
 			String sign = chunk.getSign();
-			Queue queue = this.queueMap.get(sign);
-			if (null != queue) {
-				// 更新应答索引
-				queue.ackIndex = chunk.getChunkIndex();
-				// 发送下一条数据
-				ChunkDialect response = queue.dequeue();
-				if (null != response) {
-					cellet.talk(queue.target, response);
+			Window window = this.windowMap.get(sign);
+			if (null != window) {
+				if (window.acknowledge(chunk.getChunkIndex())) {
+					// 全部确认
+					this.windowMap.remove(sign);
+					Logger.i(this.getClass(), "Clear chunk factory window: " + sign);
 				}
-
-				// 检查
-				if (queue.ackIndex == chunk.getChunkNum() - 1) {
-					this.checkAndClearQueue();
+				else {
+					window.pump();
 				}
 			}
 
@@ -161,38 +321,63 @@ public class ChunkDialectFactory extends DialectFactory {
 		}
 	}
 
-	protected synchronized void write(ChunkDialect chunk) {
-		String tag = chunk.getOwnerTag();
-		if (this.cacheMap.containsKey(tag)) {
-			Cache cache = this.cacheMap.get(tag);
-			cache.offer(chunk);
+	protected void write(ChunkDialect chunk) {
+		if (!this.checkChunk(chunk)) {
+			Logger.w(ChunkDialectFactory.class, "Illegal chunk: " + chunk.sign + " total length " + chunk.totalLength
+					+ ", chunk " + chunk.chunkIndex + "/" + chunk.chunkNum + ", length " + chunk.length);
+			return;
 		}
-		else {
-			Cache cache = new Cache(tag);
-			cache.offer(chunk);
-			this.cacheMap.put(tag, cache);
+
+		String tag = chunk.getOwnerTag();
+		Cache cache = this.cacheMap.get(tag);
+		if (null == cache) {
+			cache = new Cache(tag);
+			Cache old = this.cacheMap.putIfAbsent(tag, cache);
+			if (null != old) {
+				cache = old;
+			}
 		}
 
-		// 更新内存大小
-		this.cacheMemorySize += chunk.length;
+		ChunkStore store = cache.open(chunk);
+		if (null == store || !store.write(chunk)) {
+			// 重传的块已写入缓存
+			return;
+		}
 
-		if (this.cacheMemorySize > 1024) {
-			Logger.i(ChunkDialectFactory.class, "Cache memory size: " + (long)(this.cacheMemorySize / 1024) + " KB");
+		long memory = this.cacheMemorySize.get();
+		if (memory > 1024) {
+			Logger.i(ChunkDialectFactory.class, "Cache memory size: " + (memory / 1024) + " KB, disk size: "
+					+ (this.cacheDiskSize.get() / 1024) + " KB");
 		}
 		else {
-			Logger.i(ChunkDialectFactory.class, "Cache memory size: " + this.cacheMemorySize + " Bytes");
+			Logger.i(ChunkDialectFactory.class, "Cache memory size: " + memory + " Bytes, disk size: "
+					+ (this.cacheDiskSize.get() / 1024) + " KB");
 		}
 
-		if (this.cacheMemorySize > this.clearThreshold) {
-			synchronized (this.mutex) {
-				if (!this.clearRunning) {
-					this.clearRunning = true;
-					(new Thread(new ClearTask())).start();
-				}
+		if (memory > this.clearThreshold || this.cacheDiskSize.get() > this.maxCacheDiskSize) {
+			if (this.clearRunning.compareAndSet(false, true)) {
+				(new Thread(new ClearTask())).start();
 			}
 		}
 	}
 
+	/** 检查块的总长度、块数量及块长度。
+	 * 总长度不超过单次传输的最大总长度，块数量与总长度一致，块长度不超过标准块大小。
+	 */
+	private boolean checkChunk(ChunkDialect chunk) {
+		if (null == chunk.sign || chunk.totalLength < 0 || chunk.totalLength > this.maxTransferSize) {
+			return false;
+		}
+
+		// 与发送端一致，空数据按一个块计算
+		long chunkNum = Math.max(1, (chunk.totalLength + ChunkDialect.CHUNK_SIZE - 1) / ChunkDialect.CHUNK_SIZE);
+		if (chunk.chunkNum != chunkNum) {
+			return false;
+		}
+
+		return (chunk.length >= 0 && chunk.length <= ChunkDialect.CHUNK_SIZE);
+	}
+
 	protected int read(String tag, String sign, int index, byte[] out) {
 		if (index < 0) {
 			return -1;
@@ -200,11 +385,10 @@ public class ChunkDialectFactory extends DialectFactory {
 
 		Cache cache = this.cacheMap.get(tag);
 		if (null != cache) {
-			ChunkDialect cd = cache.get(sign, index);
-			byte[] buf = cd.data;
-			int len = cd.length;
-			System.arraycopy(buf, 0, out, 0, len);
-			return len;
+			ChunkStore store = cache.get(sign);
+			if (null != store) {
+				return store.read(index, out);
+			}
 		}
 
 		return -1;
@@ -213,7 +397,10 @@ public class ChunkDialectFactory extends DialectFactory {
 	protected boolean checkCompleted(String tag, String sign) {
 		Cache cache = this.cacheMap.get(tag);
 		if (null != cache) {
-			return cache.checkCompleted(sign);
+			ChunkStore store = cache.get(sign);
+			if (null != store) {
+				return store.isCompleted();
+			}
 		}
 
 		return false;
@@ -222,12 +409,8 @@ public class ChunkDialectFactory extends DialectFactory {
 	protected void clear(String tag, String sign) {
 		Cache cache = this.cacheMap.get(tag);
 		if (null != cache) {
-			// 计算缓存大小变化差值
-			long size = cache.dataSize;
 			// 进行缓存清理
 			cache.clear(sign);
-			long ds = size - cache.dataSize;
-			this.cacheMemorySize -= ds;
 
 			// 移除空缓存
 			if (cache.isEmpty()) {
@@ -236,28 +419,90 @@ public class ChunkDialectFactory extends DialectFactory {
 		}
 	}
 
-	private void checkAndClearQueue() {
-		LinkedList<String> deleteList = new LinkedList<String>();
-
-		for (Map.Entry<String, Queue> entry : this.queueMap.entrySet()) {
-			Queue queue = entry.getValue();
-			if (queue.ackIndex >= 0 && queue.chunkNum - 1 == queue.ackIndex) {
-				// 删除
-				deleteList.add(entry.getKey());
+	/** 启动重传检查定时器。
+	 */
+	private void startTimer() {
+		synchronized (this.windowMap) {
+			if (null != this.timer) {
+				return;
 			}
+
+			this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ChunkDialectFactory-Timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.timer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					checkTimeout();
+				}
+			}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
 		}
+	}
 
-		if (!deleteList.isEmpty()) {
-			for (String sign : deleteList) {
-				this.queueMap.remove(sign);
+	/** 检查所有窗口的超时块并重传。没有窗口时停止定时器。
+	 */
+	private void checkTimeout() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Window>> iter = this.windowMap.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, Window> entry = iter.next();
+			Window window = entry.getValue();
+			try {
+				if (window.isFailed()) {
+					// 失败的窗口保留一段时间，拒绝后续写入的同一数据的块
+					if (now - window.failedTime >= MAX_RTO) {
+						iter.remove();
+					}
+					continue;
+				}
 
-				Logger.i(this.getClass(), "Clear chunk factory queue: " + sign);
+				ChunkDialect failed = window.retransmit(now);
+				if (null != failed) {
+					Logger.w(this.getClass(), "Chunk transmission timeout, discard window: " + entry.getKey());
+					this.fireFailure(window.cellet, window.target, failed);
+				}
+			} catch (Exception e) {
+				Logger.log(ChunkDialectFactory.class, e, LogLevel.ERROR);
 			}
+		}
 
-			deleteList.clear();
+		if (this.windowMap.isEmpty()) {
+			synchronized (this.windowMap) {
+				// 加锁后再次检查，新窗口在加入后才启动定时器
+				if (this.windowMap.isEmpty() && null != this.timer) {
+					this.timer.shutdown();
+					this.timer = null;
+				}
+			}
 		}
+	}
+
+	/** 异步回调块传输失败，避免阻塞定时器线程。
+	 * @param cellet 不为 null 时同时回调 Cellet 。
+	 */
+	private void fireFailure(final Cellet cellet, final String target, final ChunkDialect chunk) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				chunk.fireFailure(target);
+				if (null != cellet) {
+					cellet.failed(target, chunk);
+				}
+			}
+		};
 
-		deleteList = null;
+		TalkService service = TalkService.getInstance();
+		if (null != service && null != service.getExecutor()) {
+			service.getExecutor().execute(task);
+		}
+		else {
+			task.run();
+		}
 	}
 
 	/**
@@ -265,72 +510,47 @@ public class ChunkDialectFactory extends DialectFactory {
 	 */
 	private class Cache {
 		protected String tag;
-		private ConcurrentHashMap<String, Vector<ChunkDialect>> data;
+		private ConcurrentHashMap<String, ChunkStore> data;
 		private Vector<String> signQueue;
 		private Vector<Long> signTimeQueue;
-		protected long dataSize;
 
 		private Cache(String tag) {
 			this.tag = tag;
-			this.data = new ConcurrentHashMap<String, Vector<ChunkDialect>>();
+			this.data = new ConcurrentHashMap<String, ChunkStore>();
 			this.signQueue = new Vector<String>();
 			this.signTimeQueue = new Vector<Long>();
-			this.dataSize = 0;
 		}
 
-		public void offer(ChunkDialect dialect) {
-			Vector<ChunkDialect> list = this.data.get(dialect.sign);
-			if (null != list) {
-				synchronized (list) {
-					list.add(dialect);
-					// 更新数据大小
-					this.dataSize += dialect.length;
-				}
+		/** 返回块所属的存储，不存在时创建。
+		 */
+		public ChunkStore open(ChunkDialect dialect) {
+			ChunkStore store = this.data.get(dialect.sign);
+			if (null != store) {
+				return store;
 			}
-			else {
-				list = new Vector<ChunkDialect>();
-				list.add(dialect);
-				// 更新数据大小
-				this.dataSize += dialect.length;
-
-				this.data.put(dialect.sign, list);
 
-				synchronized (this.signQueue) {
-					this.signQueue.add(dialect.sign);
-					this.signTimeQueue.add(System.currentTimeMillis());
-				}
+			store = new ChunkStore(dialect.chunkNum, dialect.totalLength > spillThreshold);
+			ChunkStore old = this.data.putIfAbsent(dialect.sign, store);
+			if (null != old) {
+				store.close();
+				return old;
 			}
-		}
 
-		public ChunkDialect get(String sign, int index) {
-			Vector<ChunkDialect> list = this.data.get(sign);
-			synchronized (list) {
-				return list.get(index);
+			synchronized (this.signQueue) {
+				this.signQueue.add(dialect.sign);
+				this.signTimeQueue.add(System.currentTimeMillis());
 			}
+			return store;
 		}
 
-		public boolean checkCompleted(String sign) {
-			Vector<ChunkDialect> list = this.data.get(sign);
-			if (null != list) {
-				ChunkDialect cd = list.get(0);
-				if (cd.chunkNum == list.size()) {
-					return true;
-				}
-			}
-
-			return false;
+		public ChunkStore get(String sign) {
+			return this.data.get(sign);
 		}
 
-		public long clear(String sign) {
-			long size = 0;
-			Vector<ChunkDialect> list = this.data.remove(sign);
-			if (null != list) {
-				synchronized (list) {
-					for (ChunkDialect chunk : list) {
-						this.dataSize -= chunk.length;
-						size += chunk.length;
-					}
-				}
+		public void clear(String sign) {
+			ChunkStore store = this.data.remove(sign);
+			if (null != store) {
+				store.close();
 			}
 
 			synchronized (this.signQueue) {
@@ -340,8 +560,18 @@ public class ChunkDialectFactory extends DialectFactory {
 					this.signTimeQueue.remove(index);
 				}
 			}
+		}
+
+		public void clearAll() {
+			for (ChunkStore store : this.data.values()) {
+				store.close();
+			}
+			this.data.clear();
 
-			return size;
+			synchronized (this.signQueue) {
+				this.signQueue.clear();
+				this.signTimeQueue.clear();
+			}
 		}
 
 		public boolean isEmpty() {
@@ -350,59 +580,401 @@ public class ChunkDialectFactory extends DialectFactory {
 
 		public long getFirstTime() {
 			synchronized (this.signQueue) {
-				return this.signTimeQueue.get(0).longValue();
+				return this.signTimeQueue.isEmpty() ? Long.MAX_VALUE : this.signTimeQueue.get(0).longValue();
 			}
 		}
 
-		public long clearFirst() {
+		public void clearFirst() {
 			String sign = null;
 			synchronized (this.signQueue) {
+				if (this.signQueue.isEmpty()) {
+					return;
+				}
 				sign = this.signQueue.get(0);
 			}
-			return this.clear(sign);
+			this.clear(sign);
 		}
 	}
 
-	private class Queue {
+	/**
+	 * 块数据的重组存储。
+	 * 
+	 * 内存存储按索引保存块；文件存储将块数据写入临时文件中块索引对应的偏移位置，
+	 * 内存中只保留块长度索引和已接收位图，读取时直接从文件读取。
+	 */
+	private final class ChunkStore {
+		private int chunkNum;
+		private BitSet received;
+		private int count;
+		private int[] lengths;
+
+		// 内存存储
+		private ChunkDialect[] slots;
+
+		// 文件存储
+		private File file;
+		private RandomAccessFile raf;
+		private FileChannel channel;
+
+		private long memorySize;
+		private long diskSize;
+		private boolean closed;
+
+		private ChunkStore(int chunkNum, boolean spill) {
+			this.chunkNum = Math.max(chunkNum, 0);
+			this.received = new BitSet(this.chunkNum);
+			this.count = 0;
+			this.lengths = new int[this.chunkNum];
+			this.memorySize = 0;
+			this.diskSize = 0;
+			this.closed = false;
+
+			if (spill) {
+				try {
+					this.file = (null != spillDirectory) ? File.createTempFile("chunk", ".tmp", spillDirectory)
+							: File.createTempFile("chunk", ".tmp");
+					this.file.deleteOnExit();
+					this.raf = new RandomAccessFile(this.file, "rw");
+					this.channel = this.raf.getChannel();
+				} catch (IOException e) {
+					Logger.log(ChunkDialectFactory.class, e, LogLevel.WARNING);
+					this.closeFile();
+				}
+			}
+
+			if (null == this.channel) {
+				this.slots = new ChunkDialect[this.chunkNum];
+			}
+		}
+
+		/** 写入块，重复的块及与存储不符的块不写入并返回 false 。
+		 */
+		public boolean write(ChunkDialect dialect) {
+			int index = dialect.chunkIndex;
+			int length = dialect.length;
+			if (index < 0 || index >= this.chunkNum || dialect.chunkNum != this.chunkNum
+				|| length > ChunkDialect.CHUNK_SIZE || null == dialect.data || dialect.data.length < length) {
+				return false;
+			}
+
+			synchronized (this) {
+				if (this.closed || this.received.get(index)) {
+					return false;
+				}
+
+				if (null != this.slots) {
+					this.slots[index] = dialect;
+					this.memorySize += length;
+					cacheMemorySize.addAndGet(length);
+				}
+				else {
+					long position = (long) index * ChunkDialect.CHUNK_SIZE;
+					try {
+						ByteBuffer buf = ByteBuffer.wrap(dialect.data, 0, length);
+						while (buf.hasRemaining()) {
+							this.channel.write(buf, position + buf.position());
+						}
+					} catch (IOException e) {
+						Logger.log(ChunkDialectFactory.class, e, LogLevel.ERROR);
+						return false;
+					}
+
+					this.diskSize += length;
+					cacheDiskSize.addAndGet(length);
+				}
+
+				this.lengths[index] = length;
+				this.received.set(index);
+				++this.count;
+			}
+
+			return true;
+		}
+
+		/** 读取块数据。
+		 */
+		public int read(int index, byte[] out) {
+			if (index < 0 || index >= this.chunkNum) {
+				return -1;
+			}
+
+			synchronized (this) {
+				if (this.closed || !this.received.get(index)) {
+					return -1;
+				}
+
+				int length = this.lengths[index];
+				if (out.length < length) {
+					return -1;
+				}
+
+				if (null != this.slots) {
+					System.arraycopy(this.slots[index].data, 0, out, 0, length);
+					return length;
+				}
+
+				long position = (long) index * ChunkDialect.CHUNK_SIZE;
+				try {
+					ByteBuffer buf = ByteBuffer.wrap(out, 0, length);
+					while (buf.hasRemaining()) {
+						if (this.channel.read(buf, position + buf.position()) < 0) {
+							return -1;
+						}
+					}
+				} catch (IOException e) {
+					Logger.log(ChunkDialectFactory.class, e, LogLevel.ERROR);
+					return -1;
+				}
+				return length;
+			}
+		}
+
+		public synchronized boolean isCompleted() {
+			return this.count == this.chunkNum;
+		}
+
+		/** 关闭存储，释放内存并删除临时文件。
+		 */
+		public synchronized void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+
+			cacheMemorySize.addAndGet(-this.memorySize);
+			cacheDiskSize.addAndGet(-this.diskSize);
+			this.memorySize = 0;
+			this.diskSize = 0;
+			this.slots = null;
+
+			this.closeFile();
+		}
+
+		private void closeFile() {
+			if (null != this.raf) {
+				try {
+					this.raf.close();
+				} catch (IOException e) {
+					// Nothing
+				}
+				this.raf = null;
+				this.channel = null;
+			}
+
+			if (null != this.file) {
+				if (!this.file.delete()) {
+					Logger.w(ChunkDialectFactory.class, "Can not delete chunk file: " + this.file.getAbsolutePath());
+				}
+				this.file = null;
+			}
+		}
+	}
+
+	/**
+	 * 发送窗口。
+	 * 
+	 * 按块索引记录每个块的发送时间和确认状态，确认是逐块的选择确认。
+	 * 窗口大小以块为单位，按慢启动和加性增、乘性减方式调整：
+	 * 每次确认增大窗口，超时重传时窗口减半。
+	 * 重传超时时间按平滑往返时间及其偏差计算。
+	 */
+	private final class Window {
+		private Cellet cellet;
 		private String target;
-		private Vector<ChunkDialect> queue;
+		private int chunkNum;
+
+		private ChunkDialect[] chunks;
+		private long[] sendTime;
+		private byte[] retransmission;
+		private boolean[] acked;
+
+		// 最小的未确认块索引
+		private int base = 0;
+		// 下一个待首次发送的块索引
+		private int next = 0;
+		private int ackedNum = 0;
 
-		protected int ackIndex = -1;
+		private int inflight = 0;
+		private long inflightBytes = 0;
 
-		protected int chunkNum = 0;
+		// 拥塞窗口及慢启动阈值，单位：块
+		private double cwnd = INITIAL_WINDOW;
+		private double ssthresh = Double.MAX_VALUE;
 
-		private Queue(String target, int chunkNum) {
+		// 平滑往返时间、往返时间偏差及重传超时时间，单位：毫秒
+		private double srtt = -1;
+		private double rttvar = 0;
+		private long rto = 1000;
+
+		// 传输是否已失败及失败时间
+		private volatile boolean failed = false;
+		private long failedTime = 0;
+
+		private Window(Cellet cellet, String target, int chunkNum) {
+			this.cellet = cellet;
 			this.target = target;
 			this.chunkNum = chunkNum;
-			this.queue = new Vector<ChunkDialect>();
+			this.chunks = new ChunkDialect[chunkNum];
+			this.sendTime = new long[chunkNum];
+			this.retransmission = new byte[chunkNum];
+			this.acked = new boolean[chunkNum];
 		}
 
-		protected void enqueue(ChunkDialect chunk) {
+		/** 写入待发送的块。
+		 * @return 块无效、已确认或传输已失败时返回 false 。
+		 */
+		private synchronized boolean enqueue(ChunkDialect chunk) {
+			int index = chunk.getChunkIndex();
+			if (this.failed || index < 0 || index >= this.chunkNum || this.acked[index]) {
+				return false;
+			}
+
 			// 标识为已污染
 			chunk.infectant = true;
+			this.chunks[index] = chunk;
+			return true;
+		}
+
+		private boolean isFailed() {
+			return this.failed;
+		}
+
+		/** 在窗口允许范围内发送未发送的块。
+		 */
+		private void pump() {
+			List<ChunkDialect> list = null;
 
 			synchronized (this) {
-				this.queue.add(chunk);
+				int window = Math.max(1, Math.min((int) this.cwnd, maxWindow));
+				while (this.next < this.chunkNum
+						&& null != this.chunks[this.next]
+						&& this.inflight < window
+						&& (this.inflight == 0 || this.inflightBytes + this.chunks[this.next].length <= maxWindowBytes)) {
+					ChunkDialect chunk = this.chunks[this.next];
+					this.sendTime[this.next] = System.currentTimeMillis();
+					++this.inflight;
+					this.inflightBytes += chunk.length;
+					++this.next;
+
+					if (null == list) {
+						list = new ArrayList<ChunkDialect>(window);
+					}
+					list.add(chunk);
+				}
+			}
+
+			if (null != list) {
+				for (int i = 0, size = list.size(); i < size; ++i) {
+					ChunkDialect chunk = list.get(i);
+					this.cellet.talk(this.target, chunk);
+					// 仅首次发送时回调进度
+					chunk.fireProgress(this.target);
+				}
 			}
 		}
 
-		protected ChunkDialect dequeue() {
+		/** 确认块。
+		 * @return 所有块都已确认时返回 true 。
+		 */
+		private synchronized boolean acknowledge(int index) {
+			if (this.failed) {
+				return false;
+			}
+
+			if (index < 0 || index >= this.chunkNum || this.acked[index] || 0 == this.sendTime[index]) {
+				return this.ackedNum == this.chunkNum;
+			}
+
+			this.acked[index] = true;
+			++this.ackedNum;
+			--this.inflight;
+			this.inflightBytes -= this.chunks[index].length;
+			this.chunks[index] = null;
+
+			// 仅使用未重传块的往返时间
+			if (0 == this.retransmission[index]) {
+				this.updateRTT(System.currentTimeMillis() - this.sendTime[index]);
+			}
+
+			// 调整窗口
+			if (this.cwnd < this.ssthresh) {
+				this.cwnd += 1;
+			}
+			else {
+				this.cwnd += 1 / this.cwnd;
+			}
+
+			while (this.base < this.chunkNum && this.acked[this.base]) {
+				++this.base;
+			}
+
+			return this.ackedNum == this.chunkNum;
+		}
+
+		private void updateRTT(long rtt) {
+			if (this.srtt < 0) {
+				this.srtt = rtt;
+				this.rttvar = rtt / 2.0;
+			}
+			else {
+				this.rttvar = 0.75 * this.rttvar + 0.25 * Math.abs(this.srtt - rtt);
+				this.srtt = 0.875 * this.srtt + 0.125 * rtt;
+			}
+
+			this.rto = Math.min(MAX_RTO, Math.max(MIN_RTO, (long) (this.srtt + 4 * this.rttvar)));
+		}
+
+		/** 重传超时的块。
+		 * @return 块重传次数超过上限时标记传输失败并返回该块，否则返回 null 。
+		 */
+		private ChunkDialect retransmit(long now) {
+			List<ChunkDialect> list = null;
+
 			synchronized (this) {
-				if (this.queue.isEmpty()) {
-					return null;
+				for (int i = this.base; i < this.next; ++i) {
+					if (this.acked[i] || now - this.sendTime[i] < this.rto) {
+						continue;
+					}
+
+					if (this.retransmission[i] >= maxRetransmission) {
+						ChunkDialect chunk = this.chunks[i];
+						this.failed = true;
+						this.failedTime = now;
+						// 释放未发送的块
+						Arrays.fill(this.chunks, null);
+						return chunk;
+					}
+
+					++this.retransmission[i];
+					this.sendTime[i] = now;
+
+					if (null == list) {
+						list = new LinkedList<ChunkDialect>();
+					}
+					list.add(this.chunks[i]);
 				}
 
-				ChunkDialect first = this.queue.get(0);
-				if (null != first) {
-					this.queue.remove(0);
+				if (null != list) {
+					// 超时，窗口减半并退避重传超时时间
+					this.ssthresh = Math.max(this.cwnd / 2, 2);
+					this.cwnd = this.ssthresh;
+					this.rto = Math.min(MAX_RTO, this.rto * 2);
 				}
-				return first;
 			}
+
+			if (null != list) {
+				for (ChunkDialect chunk : list) {
+					this.cellet.talk(this.target, chunk);
+				}
+			}
+
+			return null;
 		}
 	}
 
 	/**
-	 *
+	 * 缓存清理任务。
+	 * 按接收时间清理最早的块数据，直到缓存占用的内存及磁盘大小均不超过上限。
 	 */
 	private class ClearTask implements Runnable {
 		private ClearTask() {
@@ -410,37 +982,45 @@ public class ChunkDialectFactory extends DialectFactory {
 
 		@Override
 		public void run() {
-			long time = Long.MAX_VALUE;
-			Cache selected = null;
 			LinkedList<Cache> emptyList = new LinkedList<Cache>();
 
-			for (Cache cache : cacheMap.values()) {
-				if (cache.isEmpty()) {
-					emptyList.add(cache);
-					continue;
-				}
+			try {
+				while (cacheMemorySize.get() > clearThreshold || cacheDiskSize.get() > maxCacheDiskSize) {
+					long time = Long.MAX_VALUE;
+					Cache selected = null;
+
+					for (Cache cache : cacheMap.values()) {
+						long ft = cache.getFirstTime();
+						if (ft < time) {
+							time = ft;
+							selected = cache;
+						}
+					}
 
-				long ft = cache.getFirstTime();
-				if (ft < time) {
-					time = ft;
-					selected = cache;
-				}
-			}
+					if (null == selected) {
+						break;
+					}
 
-			if (null != selected) {
-				long size = selected.clearFirst();
-				cacheMemorySize -= size;
+					selected.clearFirst();
 
-				Logger.i(ChunkDialectFactory.class, "Cache memory size: " + (long)(cacheMemorySize / 1024) + " KB");
-			}
+					Logger.i(ChunkDialectFactory.class, "Cache memory size: " + (cacheMemorySize.get() / 1024)
+							+ " KB, disk size: " + (cacheDiskSize.get() / 1024) + " KB");
+				}
 
-			if (!emptyList.isEmpty()) {
-				for (Cache cache : emptyList) {
-					cacheMap.remove(cache.tag);
+				for (Cache cache : cacheMap.values()) {
+					if (cache.isEmpty()) {
+						emptyList.add(cache);
+					}
 				}
-			}
 
-			clearRunning = false;
+				if (!emptyList.isEmpty()) {
+					for (Cache cache : emptyList) {
+						cacheMap.remove(cache.tag);
+					}
+				}
+			} finally {
+				clearRunning.set(false);
+			}
 		}
 	}
 }
@@ -37,4 +37,11 @@ public interface ChunkListener {
 	 * \param chunkDialect
 	 */
 	public void onProgress(String target, ChunkDialect chunkDialect);
+
+	/*!
+	 * 块重传次数超过上限，放弃传输时回调。
+	 * \param target
+	 * \param chunkDialect 传输失败的块。
+	 */
+	public void onFailure(String target, ChunkDialect chunkDialect);
 }
@@ -41,6 +41,11 @@ public abstract class Dialect {
 	private String celletIdentifier;
 	private Cellet cellet;
 
+	// 翻译结果缓存，仅在方言声明可缓存或已冻结时使用，方言修改时失效
+	private volatile Primitive translation;
+	// 方言是否已冻结
+	private volatile boolean frozen = false;
+
 	/**
 	 * 构造函数。
 	 * @param name
@@ -112,6 +117,48 @@ public abstract class Dialect {
 	 */
 	abstract public Primitive translate();
 
+	/** 返回方言翻译的原语。
+	 * 方言可缓存或已冻结时复用上次的翻译结果，发送给多个目标时共享原语的序列化数据；
+	 * 否则每次调用 {@link #translate()} 。
+	 */
+	public final Primitive getTranslation() {
+		if (!this.frozen && !this.isTranslationCacheable()) {
+			return this.translate();
+		}
+
+		Primitive primitive = this.translation;
+		if (null == primitive) {
+			primitive = this.translate();
+			this.translation = primitive;
+		}
+		return primitive;
+	}
+
+	/** 冻结方言，调用者保证此后不再修改方言数据，翻译结果被缓存复用。
+	 */
+	public final void freeze() {
+		this.frozen = true;
+	}
+
+	/** 返回方言是否已冻结。
+	 */
+	public final boolean isFrozen() {
+		return this.frozen;
+	}
+
+	/** 返回翻译结果是否可缓存。
+	 * 默认不缓存。子类在所有修改方言数据的方法中调用 {@link #invalidateTranslation()} 时，可覆盖此方法声明可缓存。
+	 */
+	protected boolean isTranslationCacheable() {
+		return false;
+	}
+
+	/** 方言数据修改时使翻译结果缓存失效。
+	 */
+	protected final void invalidateTranslation() {
+		this.translation = null;
+	}
+
 	/** 从原语构建方言。
 	 */
 	abstract public void build(Primitive primitive);
@@ -0,0 +1,218 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cellcloud.common.LogLevel;
+import net.cellcloud.common.Logger;
+import net.cellcloud.util.LaneExecutor;
+
+/** 分道动作执行器。
+ * 
+ * 动作按所属端标签散列到分道执行，同一端的动作按提交顺序串行执行。
+ * 等待执行的动作总数有上限，超过上限时按拒绝策略处理。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class LaneActionExecutor implements ActionExecutor {
+
+	/** 超出统计数量上限的动作合并统计的名称。 */
+	public final static String OTHER_ACTIONS = "*";
+
+	// 单独统计的动作名数量上限，动作名来自对端，避免统计数据无限增长
+	private final static int MAX_STATISTICS = 256;
+
+	/** 拒绝策略。 */
+	public enum RejectionPolicy {
+		/** 丢弃新提交的动作。 */
+		DISCARD,
+		/** 在提交线程中直接执行动作，该动作不保证与同一端的其他动作有序。 */
+		CALLER_RUNS
+	}
+
+	private LaneExecutor executor;
+	private int capacity;
+	private RejectionPolicy policy;
+
+	// 等待执行的动作数量
+	private AtomicInteger pending;
+	// 被拒绝的动作数量
+	private AtomicLong rejected;
+	// 按动作名记录的统计数据
+	private ConcurrentHashMap<String, ActionStatistics> statistics;
+
+	/**
+	 * 构造函数。
+	 * @param numLanes 分道数量，即最大并行线程数。
+	 * @param capacity 等待执行的动作数量上限。
+	 * @param policy 拒绝策略。
+	 */
+	public LaneActionExecutor(int numLanes, int capacity, RejectionPolicy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be greater than zero.");
+		}
+
+		this.executor = new LaneExecutor(numLanes);
+		this.capacity = capacity;
+		this.policy = policy;
+		this.pending = new AtomicInteger(0);
+		this.rejected = new AtomicLong(0);
+		this.statistics = new ConcurrentHashMap<String, ActionStatistics>();
+	}
+
+	@Override
+	public boolean execute(ActionDialect dialect, ActionDelegate delegate) {
+		if (this.pending.incrementAndGet() > this.capacity) {
+			this.pending.decrementAndGet();
+			long num = this.rejected.incrementAndGet();
+
+			if (this.policy == RejectionPolicy.CALLER_RUNS) {
+				new ActionTask(dialect, delegate, false).run();
+				return true;
+			}
+
+			// 避免过载时大量输出日志
+			if (num % 1000 == 1) {
+				Logger.w(LaneActionExecutor.class, "Action queue is full, discard action: " + dialect.getAction()
+						+ " (rejected: " + num + ")");
+			}
+			return false;
+		}
+
+		String tag = dialect.getOwnerTag();
+		long key = (null != tag) ? tag.hashCode() : System.identityHashCode(dialect);
+		if (!this.executor.execute(key, new ActionTask(dialect, delegate, true))) {
+			// 执行器已关闭
+			this.pending.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/** 返回等待执行的动作数量上限。
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/** 返回拒绝策略。
+	 */
+	public RejectionPolicy getRejectionPolicy() {
+		return this.policy;
+	}
+
+	/** 返回等待执行的动作数量。
+	 */
+	public int getPendingNum() {
+		return this.pending.get();
+	}
+
+	/** 返回被拒绝的动作数量。
+	 */
+	public long getRejectedNum() {
+		return this.rejected.get();
+	}
+
+	/** 返回指定动作的统计数据。
+	 * 单独统计的动作名数量超过上限后，新出现的动作合并统计在 {@link #OTHER_ACTIONS} 名下。
+	 */
+	public ActionStatistics getStatistics(String action) {
+		return this.statistics.get(action);
+	}
+
+	/** 返回所有动作的统计数据。
+	 */
+	public Collection<ActionStatistics> getStatistics() {
+		return Collections.unmodifiableCollection(this.statistics.values());
+	}
+
+	private ActionStatistics statisticsOf(String action) {
+		String name = (null != action) ? action : "";
+		ActionStatistics stat = this.statistics.get(name);
+		if (null == stat) {
+			if (this.statistics.size() >= MAX_STATISTICS) {
+				// 数量上限为近似值，并发添加时可能略微超出
+				name = OTHER_ACTIONS;
+				stat = this.statistics.get(name);
+				if (null != stat) {
+					return stat;
+				}
+			}
+
+			stat = new ActionStatistics(name);
+			ActionStatistics old = this.statistics.putIfAbsent(name, stat);
+			if (null != old) {
+				stat = old;
+			}
+		}
+		return stat;
+	}
+
+	/**
+	 * 动作任务。
+	 */
+	private final class ActionTask implements Runnable {
+		private ActionDialect dialect;
+		private ActionDelegate delegate;
+		private boolean queued;
+		private long submitTime;
+
+		private ActionTask(ActionDialect dialect, ActionDelegate delegate, boolean queued) {
+			this.dialect = dialect;
+			this.delegate = delegate;
+			this.queued = queued;
+			this.submitTime = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			if (this.queued) {
+				pending.decrementAndGet();
+			}
+
+			long start = System.nanoTime();
+			try {
+				this.delegate.doAction(this.dialect);
+			} catch (Exception e) {
+				Logger.log(LaneActionExecutor.class, e, LogLevel.ERROR);
+			}
+			long end = System.nanoTime();
+
+			statisticsOf(this.dialect.getAction()).record(start - this.submitTime, end - start);
+		}
+	}
+}
@@ -73,6 +73,11 @@ public final class AdverbialStuff extends Stuff {
 		super(StuffType.ADVERBIAL, value);
 	}
 
+	/** 构造函数。 */
+	public AdverbialStuff(byte[] value) {
+		super(StuffType.ADVERBIAL, value);
+	}
+
 	/** 构造函数。 */
 	public AdverbialStuff(JSONObject value) {
 		super(StuffType.ADVERBIAL, value);
@@ -89,8 +94,7 @@ public final class AdverbialStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.ADVERBIAL) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
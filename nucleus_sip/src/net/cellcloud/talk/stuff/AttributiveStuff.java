@@ -73,6 +73,11 @@ public final class AttributiveStuff extends Stuff {
 		super(StuffType.ATTRIBUTIVE, value);
 	}
 
+	/** 构造函数。 */
+	public AttributiveStuff(byte[] value) {
+		super(StuffType.ATTRIBUTIVE, value);
+	}
+
 	/** 构造函数。 */
 	public AttributiveStuff(JSONObject value) {
 		super(StuffType.ATTRIBUTIVE, value);
@@ -89,8 +94,7 @@ public final class AttributiveStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.ATTRIBUTIVE) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
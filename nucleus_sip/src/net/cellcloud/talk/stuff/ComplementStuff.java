@@ -73,6 +73,11 @@ public final class ComplementStuff extends Stuff {
 		super(StuffType.COMPLEMENT, value);
 	}
 
+	/** 构造函数。 */
+	public ComplementStuff(byte[] value) {
+		super(StuffType.COMPLEMENT, value);
+	}
+
 	/** 构造函数。 */
 	public ComplementStuff(JSONObject value) {
 		super(StuffType.COMPLEMENT, value);
@@ -89,8 +94,7 @@ public final class ComplementStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.COMPLEMENT) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
@@ -73,6 +73,11 @@ public final class ObjectiveStuff extends Stuff {
 		super(StuffType.OBJECTIVE, value);
 	}
 
+	/** 构造函数。 */
+	public ObjectiveStuff(byte[] value) {
+		super(StuffType.OBJECTIVE, value);
+	}
+
 	/** 构造函数。 */
 	public ObjectiveStuff(JSONObject value) {
 		super(StuffType.OBJECTIVE, value);
@@ -89,8 +94,7 @@ public final class ObjectiveStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.OBJECTIVE) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
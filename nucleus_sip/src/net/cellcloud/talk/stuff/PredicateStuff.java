@@ -73,6 +73,11 @@ public final class PredicateStuff extends Stuff {
 		super(StuffType.PREDICATE, value);
 	}
 
+	/** 构造函数。 */
+	public PredicateStuff(byte[] value) {
+		super(StuffType.PREDICATE, value);
+	}
+
 	/** 构造函数。 */
 	public PredicateStuff(JSONObject value) {
 		super(StuffType.PREDICATE, value);
@@ -89,8 +94,7 @@ public final class PredicateStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.PREDICATE) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
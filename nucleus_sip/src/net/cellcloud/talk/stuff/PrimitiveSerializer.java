@@ -26,11 +26,18 @@ THE SOFTWARE.
 
 package net.cellcloud.talk.stuff;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Iterator;
 import java.util.List;
 
@@ -43,6 +50,8 @@ import net.cellcloud.talk.dialect.DialectEnumerator;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.json.JSONWriter;
 
 /** 原语序列化器。
  * 
@@ -113,7 +122,50 @@ public final class PrimitiveSerializer {
 	private static final String JSONKEY_NAME = "name";
 	private static final String JSONKEY_TRACKER = "tracker";
 
-	private static final int BLOCK = 65536;
+	private static final byte[] VERSION_BYTES = {TOKEN_OPEN_BRACKET, '0', '1', TOKEN_POINT, '0', '0', TOKEN_CLOSE_BRACKET};
+
+	// 暂存区初始容量
+	private static final int SCRATCH_CAPACITY = 4096;
+	// 归还时暂存区可保留的最大容量，超过时释放，避免大原语长期占用线程内存
+	private static final int SCRATCH_RETAINED_CAPACITY = 262144;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// 每个线程复用的序列化暂存区
+	private static final ThreadLocal<Scratch> threadScratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	// 二进制格式版本
+	private static final byte BINARY_VERSION = 1;
+	// 带附件的二进制格式版本
+	private static final byte BINARY_VERSION_ATTACHMENT = 2;
+
+	// 二进制格式的语素类型
+	private static final byte BINARY_STUFFTYPE_SUBJECT = 1;
+	private static final byte BINARY_STUFFTYPE_PREDICATE = 2;
+	private static final byte BINARY_STUFFTYPE_OBJECTIVE = 3;
+	private static final byte BINARY_STUFFTYPE_ADVERBIAL = 4;
+	private static final byte BINARY_STUFFTYPE_ATTRIBUTIVE = 5;
+	private static final byte BINARY_STUFFTYPE_COMPLEMENT = 6;
+
+	// 二进制格式的字面义，数值无法按原生类型编码时置位文本标记
+	private static final byte BINARY_LITERAL_STRING = 1;
+	private static final byte BINARY_LITERAL_INT = 2;
+	private static final byte BINARY_LITERAL_UINT = 3;
+	private static final byte BINARY_LITERAL_LONG = 4;
+	private static final byte BINARY_LITERAL_ULONG = 5;
+	private static final byte BINARY_LITERAL_FLOAT = 6;
+	private static final byte BINARY_LITERAL_DOUBLE = 7;
+	private static final byte BINARY_LITERAL_BOOL = 8;
+	private static final byte BINARY_LITERAL_JSON = 9;
+	private static final byte BINARY_LITERAL_XML = 10;
+	private static final byte BINARY_LITERAL_TEXT = (byte) 0x80;
+	// 数值为二进制数据，数据不在原语中，按顺序存放在附件中
+	private static final byte BINARY_LITERAL_ATTACHMENT = 0x40;
 
 	private PrimitiveSerializer() {
 	}
@@ -121,6 +173,35 @@ public final class PrimitiveSerializer {
 	/** 将原语写入数据流。
 	 */
 	public static void write(OutputStream stream, Primitive primitive) {
+		Scratch scratch = acquire();
+		try {
+			serialize(scratch, primitive);
+			stream.write(scratch.bytes, 0, scratch.length);
+			stream.flush();
+		} catch (IOException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		} finally {
+			release(scratch);
+		}
+	}
+
+	/** 将原语序列化为字节数组。
+	 */
+	public static byte[] write(Primitive primitive) {
+		Scratch scratch = acquire();
+		try {
+			serialize(scratch, primitive);
+			byte[] data = new byte[scratch.length];
+			System.arraycopy(scratch.bytes, 0, data, 0, scratch.length);
+			return data;
+		} finally {
+			release(scratch);
+		}
+	}
+
+	/** 将原语序列化到暂存区。
+	 */
+	private static void serialize(Scratch scratch, Primitive primitive) {
 		/*
 		原语序列化格式：
 		[version]{sutff}...{stuff}[dialect@tracker]
@@ -128,157 +209,48 @@ public final class PrimitiveSerializer {
 		[01.00]{sub=cloud:string}{pre=add:string}[Action@Ambrose]
 		*/
 
-		try {
-			// 版本
-			stream.write((int)TOKEN_OPEN_BRACKET);
-			byte[] version = {'0', '1', TOKEN_POINT, '0', '0'};
-			stream.write(version);
-			stream.write((int)TOKEN_CLOSE_BRACKET);
+		// 版本
+		scratch.put(VERSION_BYTES);
 
-			ByteBuffer buf = ByteBuffer.allocate(BLOCK);
-			int bufLength = 0;
+		// 语素
+		serializeStuffs(scratch, STUFFTYPE_SUBJECT_BYTES, primitive.subjects());
+		serializeStuffs(scratch, STUFFTYPE_PREDICATE_BYTES, primitive.predicates());
+		serializeStuffs(scratch, STUFFTYPE_OBJECTIVE_BYTES, primitive.objectives());
+		serializeStuffs(scratch, STUFFTYPE_ADVERBIAL_BYTES, primitive.adverbials());
+		serializeStuffs(scratch, STUFFTYPE_ATTRIBUTIVE_BYTES, primitive.attributives());
+		serializeStuffs(scratch, STUFFTYPE_COMPLEMENT_BYTES, primitive.complements());
 
-			// 语素
-			List<SubjectStuff> subjects = primitive.subjects();
-			if (null != subjects) {
-				Iterator<SubjectStuff> iter = subjects.iterator();
-				while (iter.hasNext()) {
-					SubjectStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_SUBJECT_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
-			List<PredicateStuff> predicates = primitive.predicates();
-			if (null != predicates) {
-				Iterator<PredicateStuff> iter = predicates.iterator();
-				while (iter.hasNext()) {
-					PredicateStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_PREDICATE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
-			List<ObjectiveStuff> objectives = primitive.objectives();
-			if (null != objectives) {
-				Iterator<ObjectiveStuff> iter = objectives.iterator();
-				while (iter.hasNext()) {
-					ObjectiveStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_OBJECTIVE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
-			List<AdverbialStuff> adverbials = primitive.adverbials();
-			if (null != adverbials) {
-				Iterator<AdverbialStuff> iter = adverbials.iterator();
-				while (iter.hasNext()) {
-					AdverbialStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_ADVERBIAL_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
-			List<AttributiveStuff> attributives = primitive.attributives();
-			if (null != attributives) {
-				Iterator<AttributiveStuff> iter = attributives.iterator();
-				while (iter.hasNext()) {
-					AttributiveStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_ATTRIBUTIVE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
-			List<ComplementStuff> complements = primitive.complements();
-			if (null != complements) {
-				Iterator<ComplementStuff> iter = complements.iterator();
-				while (iter.hasNext()) {
-					ComplementStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_COMPLEMENT_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF-8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
-			}
+		// 方言
+		Dialect dialect = primitive.getDialect();
+		if (null != dialect) {
+			scratch.put(TOKEN_OPEN_BRACKET);
+			scratch.putString(dialect.getName(), false);
+			scratch.put(TOKEN_AT);
+			scratch.putString(dialect.getTracker(), false);
+			scratch.put(TOKEN_CLOSE_BRACKET);
+		}
+	}
 
-			// 方言
-			Dialect dialect = primitive.getDialect();
-			if (null != dialect) {
-				stream.write(TOKEN_OPEN_BRACKET);
-				stream.write(dialect.getName().getBytes(Charset.forName("UTF-8")));
-				stream.write(TOKEN_AT);
-				stream.write(dialect.getTracker().getBytes(Charset.forName("UTF-8")));
-				stream.write(TOKEN_CLOSE_BRACKET);
-			}
+	private static void serializeStuffs(Scratch scratch, byte[] type, List<? extends Stuff> list) {
+		if (null == list) {
+			return;
+		}
 
-			stream.flush();
-		} catch (IOException e) {
-			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		for (int i = 0, size = list.size(); i < size; ++i) {
+			Stuff stuff = list.get(i);
+			scratch.put(TOKEN_OPEN_BRACE);
+			scratch.put(type);
+			scratch.put(TOKEN_OPERATE_ASSIGN);
+			if (null == stuff.value && stuff.valueType == Stuff.VALUE_LONG) {
+				// 整数直接写入数字，不生成字符串
+				scratch.putLong(stuff.longValue);
+			}
+			else {
+				scratch.putString(stuff.getValueAsString(), true);
+			}
+			scratch.put(TOKEN_OPERATE_DECLARE);
+			scratch.put(parseLiteralBase(stuff.literalBase));
+			scratch.put(TOKEN_CLOSE_BRACE);
 		}
 	}
 
@@ -292,215 +264,208 @@ public final class PrimitiveSerializer {
 		[01.00]{sub=cloud:string}{pre=add:string}[Action@Ambrose]
 		*/
 
+		Scratch scratch = acquire();
 		try {
 			byte phase = PARSE_PHASE_UNKNOWN;
+			byte type = 0;
+			int valueLength = 0;
+			boolean escaped = false;
+
+			byte[] input = scratch.input;
 			int read = 0;
 
-			ByteBuffer buf = ByteBuffer.allocate(BLOCK);
-			byte[] type = new byte[3];
-			byte[] value = null;
-			byte[] literal = null;
-			int length = 0;
-
-			while ((read = stream.read()) >= 0) {
-
-				// 判断处理阶段
-				switch (phase) {
-
-				case PARSE_PHASE_VALUE:
-					// 判断转义
-					if (read == '\\') {
-						// 读取下一个字符
-						int next = stream.read();
-						if (next == TOKEN_OPEN_BRACE
-							|| next == TOKEN_CLOSE_BRACE
-							|| next == TOKEN_OPERATE_ASSIGN
-							|| next == TOKEN_OPERATE_DECLARE) {
-							buf.put((byte)next);
-							++length;
+			while ((read = stream.read(input, 0, input.length)) >= 0) {
+				for (int i = 0; i < read; ++i) {
+					byte b = input[i];
+
+					// 判断处理阶段
+					switch (phase) {
+
+					case PARSE_PHASE_VALUE:
+						// 判断转义
+						if (escaped) {
+							escaped = false;
+							if (b != TOKEN_OPEN_BRACE
+								&& b != TOKEN_CLOSE_BRACE
+								&& b != TOKEN_OPERATE_ASSIGN
+								&& b != TOKEN_OPERATE_DECLARE) {
+								scratch.put((byte) '\\');
+							}
+							scratch.put(b);
+						}
+						else if (b == '\\') {
+							// 处理下一个字符
+							escaped = true;
+						}
+						else if (b == TOKEN_OPERATE_DECLARE) {
+							// 数值结束，字面义紧随数值写入暂存区
+							valueLength = scratch.length;
+							phase = PARSE_PHASE_LITERAL;
 						}
 						else {
-							buf.put((byte)read);
-							buf.put((byte)next);
-							length += 2;
+							scratch.put(b);
 						}
+						break;
+
+					case PARSE_PHASE_TYPE:
+						if (b == TOKEN_OPERATE_ASSIGN) {
+							// 类型结束
+							type = parseStuffType(scratch.bytes, scratch.length);
+							scratch.length = 0;
+							phase = PARSE_PHASE_VALUE;
+						}
+						else {
+							// 写入语素类型
+							scratch.put(b);
+						}
+						break;
 
-						// 继续下一个字节
-						continue;
-					}
-
-					if (read == TOKEN_OPERATE_DECLARE) {
-						// 数值结束
-						buf.flip();
-						value = new byte[length];
-						buf.get(value, 0, length);
-						buf.clear();
-
-						phase = PARSE_PHASE_LITERAL;
-						length = 0;
-						continue;
-					}
-
-					buf.put((byte)read);
-					++length;
-					break;
-
-				case PARSE_PHASE_TYPE:
-					if (read == TOKEN_OPERATE_ASSIGN) {
-						// 类型结束
-						buf.flip();
-						buf.get(type);
-						buf.clear();
-
-						phase = PARSE_PHASE_VALUE;
-						length = 0;
-						continue;
-					}
-					// 写入语素类型
-					buf.put((byte)read);
-					break;
-
-				case PARSE_PHASE_LITERAL:
-					if (read == TOKEN_CLOSE_BRACE) {
-						// 字面义结束
-						buf.flip();
-						literal = new byte[length];
-						buf.get(literal, 0, length);
-						buf.clear();
-
-						// 注入语素
-						injectStuff(primitive, type, value, literal);
+					case PARSE_PHASE_LITERAL:
+						if (b == TOKEN_CLOSE_BRACE) {
+							// 字面义结束，注入语素
+							injectStuff(primitive, type, scratch.bytes, valueLength, scratch.length - valueLength);
 
-						phase = PARSE_PHASE_DIALECT;
-						length = 0;
-						continue;
-					}
-					buf.put((byte)read);
-					++length;
-					break;
+							scratch.length = 0;
+							phase = PARSE_PHASE_DIALECT;
+						}
+						else {
+							scratch.put(b);
+						}
+						break;
 
-				case PARSE_PHASE_STUFF:
-					if (read == TOKEN_OPEN_BRACE) {
-						// 进入解析语素阶段
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
-					break;
+					case PARSE_PHASE_STUFF:
+						if (b == TOKEN_OPEN_BRACE) {
+							// 进入解析语素阶段
+							phase = PARSE_PHASE_TYPE;
+							scratch.length = 0;
+						}
+						break;
 
-				case PARSE_PHASE_VERSION:
-					if (read == TOKEN_CLOSE_BRACKET) {
-						// 解析版本结束
-						phase = PARSE_PHASE_STUFF;
-						continue;
-					}
-					buf.put((byte)read);
-					break;
+					case PARSE_PHASE_VERSION:
+						if (b == TOKEN_CLOSE_BRACKET) {
+							// 解析版本结束
+							phase = PARSE_PHASE_STUFF;
+						}
+						break;
 
-				case PARSE_PHASE_DIALECT:
-					if (read == TOKEN_OPEN_BRACE) {
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
-					else if (read == TOKEN_OPEN_BRACKET) {
-						// 解析方言开始
-						buf.clear();
-					}
-					else if (read == TOKEN_CLOSE_BRACKET) {
-						// 解析方言结束
-						deserializeDialect(primitive, new String(buf.array(), 0, length, Charset.forName("UTF-8")));
-					}
-					else {
-						// 记录数据
-						buf.put((byte)read);
-						++length;
-					}
-					break;
+					case PARSE_PHASE_DIALECT:
+						if (b == TOKEN_OPEN_BRACE) {
+							phase = PARSE_PHASE_TYPE;
+							scratch.length = 0;
+						}
+						else if (b == TOKEN_OPEN_BRACKET) {
+							// 解析方言开始
+							scratch.length = 0;
+						}
+						else if (b == TOKEN_CLOSE_BRACKET) {
+							// 解析方言结束
+							deserializeDialect(primitive, new String(scratch.bytes, 0, scratch.length, UTF8));
+						}
+						else {
+							// 记录数据
+							scratch.put(b);
+						}
+						break;
 
-				default:
-					if (read == TOKEN_OPEN_BRACE) {
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
-					else if (read == TOKEN_OPEN_BRACKET) {
-						phase = PARSE_PHASE_VERSION;
-						buf.clear();
+					default:
+						if (b == TOKEN_OPEN_BRACE) {
+							phase = PARSE_PHASE_TYPE;
+							scratch.length = 0;
+						}
+						else if (b == TOKEN_OPEN_BRACKET) {
+							phase = PARSE_PHASE_VERSION;
+							scratch.length = 0;
+						}
+						break;
 					}
-					break;
 				}
 			}
-
-			buf.clear();
-
 		} catch (IOException e) {
 			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		} finally {
+			release(scratch);
 		}
 	}
 
 	/** 将数据数组解析为语素，并注入原语。
 	 */
-	private static void injectStuff(Primitive primitive, byte[] type, byte[] value, byte[] literal) {
+	private static void injectStuff(Primitive primitive, byte type, byte[] data, int valueLength, int literalLength) {
 		// 字面义
-		LiteralBase lb = parseLiteralBase(literal);
+		LiteralBase lb = parseLiteralBase(data, valueLength, literalLength);
 		if (lb == null) {
 			return;
 		}
 
-		// 类型
-		String typeString = new String(type);
+		String value = new String(data, 0, valueLength, UTF8);
 
-		if (typeString.equals(STUFFTYPE_SUBJECT)) {
-			SubjectStuff subject = new SubjectStuff(new String(value, Charset.forName("UTF-8")));
-			subject.literalBase = lb;
+		switch (type) {
+		case BINARY_STUFFTYPE_SUBJECT:
+			SubjectStuff subject = new SubjectStuff();
+			subject.setValue(value, lb);
 			primitive.commit(subject);
-		}
-		else if (typeString.equals(STUFFTYPE_PREDICATE)) {
-			PredicateStuff predicate = new PredicateStuff(new String(value, Charset.forName("UTF-8")));
-			predicate.literalBase = lb;
+			break;
+		case BINARY_STUFFTYPE_PREDICATE:
+			PredicateStuff predicate = new PredicateStuff();
+			predicate.setValue(value, lb);
 			primitive.commit(predicate);
-		}
-		else if (typeString.equals(STUFFTYPE_OBJECTIVE)) {
-			ObjectiveStuff objective = new ObjectiveStuff(new String(value, Charset.forName("UTF-8")));
-			objective.literalBase = lb;
+			break;
+		case BINARY_STUFFTYPE_OBJECTIVE:
+			ObjectiveStuff objective = new ObjectiveStuff();
+			objective.setValue(value, lb);
 			primitive.commit(objective);
-		}
-		else if (typeString.equals(STUFFTYPE_ADVERBIAL)) {
-			AdverbialStuff adverbial = new AdverbialStuff(new String(value, Charset.forName("UTF-8")));
-			adverbial.literalBase = lb;
+			break;
+		case BINARY_STUFFTYPE_ADVERBIAL:
+			AdverbialStuff adverbial = new AdverbialStuff();
+			adverbial.setValue(value, lb);
 			primitive.commit(adverbial);
-		}
-		else if (typeString.equals(STUFFTYPE_ATTRIBUTIVE)) {
-			AttributiveStuff attributive = new AttributiveStuff(new String(value, Charset.forName("UTF-8")));
-			attributive.literalBase = lb;
+			break;
+		case BINARY_STUFFTYPE_ATTRIBUTIVE:
+			AttributiveStuff attributive = new AttributiveStuff();
+			attributive.setValue(value, lb);
 			primitive.commit(attributive);
-		}
-		else if (typeString.equals(STUFFTYPE_COMPLEMENT)) {
-			ComplementStuff complement = new ComplementStuff(new String(value, Charset.forName("UTF-8")));
-			complement.literalBase = lb;
+			break;
+		case BINARY_STUFFTYPE_COMPLEMENT:
+			ComplementStuff complement = new ComplementStuff();
+			complement.setValue(value, lb);
 			primitive.commit(complement);
+			break;
+		default:
+			break;
 		}
 	}
 
-	/** 进行数据内容转义。
+	/** 解析文本格式的语素类型，返回对应的二进制格式类型，无法识别时返回 0 。
 	 */
-	private static int reviseValue(ByteBuffer buf, byte[] input) {
-		int length = 0;
-		int inputLength = input.length;
-
-		for (int i = 0; i < inputLength; ++i) {
-			byte b = input[i];
-			if (b == TOKEN_OPEN_BRACE
-				|| b == TOKEN_CLOSE_BRACE
-				|| b == TOKEN_OPERATE_ASSIGN
-				|| b == TOKEN_OPERATE_DECLARE) {
-				buf.put((byte) '\\');
-				++length;
-			}
+	private static byte parseStuffType(byte[] data, int length) {
+		if (length < 3) {
+			return 0;
+		}
 
-			buf.put(b);
-			++length;
+		if (matches(data, STUFFTYPE_SUBJECT_BYTES)) {
+			return BINARY_STUFFTYPE_SUBJECT;
+		}
+		else if (matches(data, STUFFTYPE_PREDICATE_BYTES)) {
+			return BINARY_STUFFTYPE_PREDICATE;
+		}
+		else if (matches(data, STUFFTYPE_OBJECTIVE_BYTES)) {
+			return BINARY_STUFFTYPE_OBJECTIVE;
+		}
+		else if (matches(data, STUFFTYPE_ADVERBIAL_BYTES)) {
+			return BINARY_STUFFTYPE_ADVERBIAL;
+		}
+		else if (matches(data, STUFFTYPE_ATTRIBUTIVE_BYTES)) {
+			return BINARY_STUFFTYPE_ATTRIBUTIVE;
+		}
+		else if (matches(data, STUFFTYPE_COMPLEMENT_BYTES)) {
+			return BINARY_STUFFTYPE_COMPLEMENT;
+		}
+		else {
+			return 0;
 		}
+	}
 
-		return length;
+	private static boolean matches(byte[] data, byte[] type) {
+		return data[0] == type[0] && data[1] == type[1] && data[2] == type[2];
 	}
 
 	/** 解析字面义。
@@ -543,35 +508,42 @@ public final class PrimitiveSerializer {
 
 	/** 解析字面义。
 	 */
-	private static LiteralBase parseLiteralBase(byte[] literal) {
-		if (literal[0] == LITERALBASE_STRING_BYTES[0] && literal[1] == LITERALBASE_STRING_BYTES[1]) {
+	private static LiteralBase parseLiteralBase(byte[] data, int offset, int length) {
+		if (length < 2) {
+			return null;
+		}
+
+		byte b0 = data[offset];
+		byte b1 = data[offset + 1];
+
+		if (b0 == LITERALBASE_STRING_BYTES[0] && b1 == LITERALBASE_STRING_BYTES[1]) {
 			return LiteralBase.STRING;
 		}
-		else if (literal[0] == LITERALBASE_JSON_BYTES[0] && literal[1] == LITERALBASE_JSON_BYTES[1]) {
+		else if (b0 == LITERALBASE_JSON_BYTES[0] && b1 == LITERALBASE_JSON_BYTES[1]) {
 			return LiteralBase.JSON;
 		}
-		else if (literal[0] == LITERALBASE_INT_BYTES[0] && literal[1] == LITERALBASE_INT_BYTES[1]) {
+		else if (b0 == LITERALBASE_INT_BYTES[0] && b1 == LITERALBASE_INT_BYTES[1]) {
 			return LiteralBase.INT;
 		}
-		else if (literal[0] == LITERALBASE_LONG_BYTES[0] && literal[1] == LITERALBASE_LONG_BYTES[1]) {
+		else if (b0 == LITERALBASE_LONG_BYTES[0] && b1 == LITERALBASE_LONG_BYTES[1]) {
 			return LiteralBase.LONG;
 		}
-		else if (literal[0] == LITERALBASE_BOOL_BYTES[0] && literal[1] == LITERALBASE_BOOL_BYTES[1]) {
+		else if (b0 == LITERALBASE_BOOL_BYTES[0] && b1 == LITERALBASE_BOOL_BYTES[1]) {
 			return LiteralBase.BOOL;
 		}
-		else if (literal[0] == LITERALBASE_FLOAT_BYTES[0] && literal[1] == LITERALBASE_FLOAT_BYTES[1]) {
+		else if (b0 == LITERALBASE_FLOAT_BYTES[0] && b1 == LITERALBASE_FLOAT_BYTES[1]) {
 			return LiteralBase.FLOAT;
 		}
-		else if (literal[0] == LITERALBASE_DOUBLE_BYTES[0] && literal[1] == LITERALBASE_DOUBLE_BYTES[1]) {
+		else if (b0 == LITERALBASE_DOUBLE_BYTES[0] && b1 == LITERALBASE_DOUBLE_BYTES[1]) {
 			return LiteralBase.DOUBLE;
 		}
-		else if ((literal[0] == LITERALBASE_UINT_BYTES[0] && literal[1] == LITERALBASE_UINT_BYTES[1])) {
+		else if (b0 == LITERALBASE_UINT_BYTES[0] && b1 == LITERALBASE_UINT_BYTES[1]) {
 			return LiteralBase.UINT;
 		}
-		else if (literal[0] == LITERALBASE_ULONG_BYTES[0] && literal[1] == LITERALBASE_ULONG_BYTES[1]) {
+		else if (b0 == LITERALBASE_ULONG_BYTES[0] && b1 == LITERALBASE_ULONG_BYTES[1]) {
 			return LiteralBase.ULONG;
 		}
-		else if (literal[0] == LITERALBASE_XML_BYTES[0] && literal[1] == LITERALBASE_XML_BYTES[1]) {
+		else if (b0 == LITERALBASE_XML_BYTES[0] && b1 == LITERALBASE_XML_BYTES[1]) {
 			return LiteralBase.XML;
 		}
 		else {
@@ -604,6 +576,443 @@ public final class PrimitiveSerializer {
 		dialect.build(primitive);
 	}
 
+	/** 将原语按二进制格式写入数据流。
+	 */
+	public static void writeBinary(OutputStream stream, Primitive primitive) {
+		writeBinary(stream, primitive, false);
+	}
+
+	/** 将原语按二进制格式写入数据流。
+	 * @param attachment 是否将二进制数据的语素值作为附件单独传输，附件由 {@link #collectAttachments(Primitive, List)} 获取。
+	 */
+	public static void writeBinary(OutputStream stream, Primitive primitive, boolean attachment) {
+		/*
+		原语二进制序列化格式：
+		VER(1)|[ATTACHMENTS(4)|]COUNT(4)|{TYPE(1)|LITERAL(1)|VALUE}...|DIALECT(1)[|NAME|TRACKER]
+		字符串、JSON 和 XML 数值为 LEN(4)|UTF-8 数据，
+		INT/UINT 为 4 字节，LONG/ULONG 为 8 字节，FLOAT/DOUBLE 为 IEEE 754 位，BOOL 为 1 字节，
+		方言名和跟踪器为 LEN(4)|UTF-8 数据。
+		存在附件时版本为 2 并写入附件数量，附件语素的字面义置位附件标记且不写入数值。
+		*/
+
+		try {
+			DataOutputStream out = new DataOutputStream(stream);
+
+			int attachments = attachment ? collectAttachments(primitive, null) : 0;
+			if (attachments > 0) {
+				out.writeByte(BINARY_VERSION_ATTACHMENT);
+				out.writeInt(attachments);
+			}
+			else {
+				out.writeByte(BINARY_VERSION);
+			}
+
+			int count = sizeOf(primitive.subjects()) + sizeOf(primitive.predicates())
+					+ sizeOf(primitive.objectives()) + sizeOf(primitive.adverbials())
+					+ sizeOf(primitive.attributives()) + sizeOf(primitive.complements());
+			out.writeInt(count);
+
+			// 语素
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_SUBJECT, attachments > 0, primitive.subjects());
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_PREDICATE, attachments > 0, primitive.predicates());
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_OBJECTIVE, attachments > 0, primitive.objectives());
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_ADVERBIAL, attachments > 0, primitive.adverbials());
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_ATTRIBUTIVE, attachments > 0, primitive.attributives());
+			writeBinaryStuffs(out, BINARY_STUFFTYPE_COMPLEMENT, attachments > 0, primitive.complements());
+
+			// 方言
+			Dialect dialect = primitive.getDialect();
+			if (null != dialect) {
+				out.writeByte(1);
+				writeBinaryString(out, dialect.getName());
+				writeBinaryString(out, dialect.getTracker());
+			}
+			else {
+				out.writeByte(0);
+			}
+
+			out.flush();
+		} catch (IOException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		}
+	}
+
+	/** 从二进制格式的数据流中读取原语。
+	 */
+	public static void readBinary(Primitive primitive, InputStream stream) {
+		readBinary(primitive, stream, null);
+	}
+
+	/** 从二进制格式的数据流中读取原语。
+	 * @param attachments 原语附件，附件语素直接引用附件数据。
+	 */
+	public static void readBinary(Primitive primitive, InputStream stream, byte[][] attachments) {
+		try {
+			DataInputStream in = new DataInputStream(stream);
+			byte version = in.readByte();
+			Attachments reader = null;
+			if (version == BINARY_VERSION_ATTACHMENT) {
+				int num = in.readInt();
+				if (null == attachments || attachments.length < num) {
+					Logger.w(PrimitiveSerializer.class, "Missing binary primitive attachments: " + num);
+					return;
+				}
+				reader = new Attachments(attachments);
+			}
+			else if (version != BINARY_VERSION) {
+				Logger.w(PrimitiveSerializer.class, "Unsupported binary primitive version: " + version);
+				return;
+			}
+
+			// 每个语素至少占用两个字节，数量由输入数据约束
+			int count = in.readInt();
+			if (count < 0) {
+				Logger.w(PrimitiveSerializer.class, "Illegal binary stuff count: " + count);
+				return;
+			}
+
+			for (int i = 0; i < count; ++i) {
+				byte type = in.readByte();
+				byte literal = in.readByte();
+
+				switch (type) {
+				case BINARY_STUFFTYPE_SUBJECT:
+					SubjectStuff subject = new SubjectStuff();
+					readBinaryValue(subject, literal, in, reader);
+					primitive.commit(subject);
+					break;
+				case BINARY_STUFFTYPE_PREDICATE:
+					PredicateStuff predicate = new PredicateStuff();
+					readBinaryValue(predicate, literal, in, reader);
+					primitive.commit(predicate);
+					break;
+				case BINARY_STUFFTYPE_OBJECTIVE:
+					ObjectiveStuff objective = new ObjectiveStuff();
+					readBinaryValue(objective, literal, in, reader);
+					primitive.commit(objective);
+					break;
+				case BINARY_STUFFTYPE_ADVERBIAL:
+					AdverbialStuff adverbial = new AdverbialStuff();
+					readBinaryValue(adverbial, literal, in, reader);
+					primitive.commit(adverbial);
+					break;
+				case BINARY_STUFFTYPE_ATTRIBUTIVE:
+					AttributiveStuff attributive = new AttributiveStuff();
+					readBinaryValue(attributive, literal, in, reader);
+					primitive.commit(attributive);
+					break;
+				case BINARY_STUFFTYPE_COMPLEMENT:
+					ComplementStuff complement = new ComplementStuff();
+					readBinaryValue(complement, literal, in, reader);
+					primitive.commit(complement);
+					break;
+				default:
+					Logger.w(PrimitiveSerializer.class, "Unknown binary stuff type: " + type);
+					return;
+				}
+			}
+
+			// 方言
+			if (in.readByte() != 0) {
+				String dialectName = readBinaryString(in);
+				String tracker = readBinaryString(in);
+
+				// 创建方言
+				Dialect dialect = DialectEnumerator.getInstance().createDialect(dialectName, tracker);
+				if (null != dialect) {
+					// 关联
+					primitive.capture(dialect);
+
+					// 构建数据
+					dialect.build(primitive);
+				}
+				else {
+					Logger.w(PrimitiveSerializer.class, "Can't create '" +  dialectName + "' dialect.");
+				}
+			}
+		} catch (IOException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		}
+	}
+
+	/** 返回二进制格式数据中的附件数量。
+	 */
+	public static int getAttachmentCount(byte[] data, int offset, int length) {
+		if (length < 5 || data[offset] != BINARY_VERSION_ATTACHMENT) {
+			return 0;
+		}
+
+		return ((data[offset + 1] & 0xFF) << 24) | ((data[offset + 2] & 0xFF) << 16)
+				| ((data[offset + 3] & 0xFF) << 8) | (data[offset + 4] & 0xFF);
+	}
+
+	/** 按二进制格式写入顺序收集原语的附件。
+	 * @param output 附件输出列表，为 null 时仅计数。
+	 * @return 返回附件数量。
+	 */
+	public static int collectAttachments(Primitive primitive, List<byte[]> output) {
+		return collectAttachments(primitive.subjects(), output)
+				+ collectAttachments(primitive.predicates(), output)
+				+ collectAttachments(primitive.objectives(), output)
+				+ collectAttachments(primitive.adverbials(), output)
+				+ collectAttachments(primitive.attributives(), output)
+				+ collectAttachments(primitive.complements(), output);
+	}
+
+	private static int collectAttachments(List<? extends Stuff> list, List<byte[]> output) {
+		if (null == list) {
+			return 0;
+		}
+
+		int num = 0;
+		for (int i = 0, size = list.size(); i < size; ++i) {
+			Stuff stuff = list.get(i);
+			if (stuff.valueType == Stuff.VALUE_BYTES && stuff.literalBase == LiteralBase.STRING) {
+				if (null != output) {
+					output.add(stuff.bytesValue);
+				}
+				++num;
+			}
+		}
+		return num;
+	}
+
+	private static int sizeOf(List<? extends Stuff> list) {
+		return (null != list) ? list.size() : 0;
+	}
+
+	/** 按二进制格式写入语素列表。
+	 */
+	private static void writeBinaryStuffs(DataOutputStream out, byte type, boolean attachment, List<? extends Stuff> list)
+			throws IOException {
+		if (null == list) {
+			return;
+		}
+
+		for (int i = 0, size = list.size(); i < size; ++i) {
+			Stuff stuff = list.get(i);
+			out.writeByte(type);
+			if (attachment && stuff.valueType == Stuff.VALUE_BYTES && stuff.literalBase == LiteralBase.STRING) {
+				// 数据由附件传输
+				out.writeByte(BINARY_LITERAL_STRING | BINARY_LITERAL_ATTACHMENT);
+			}
+			else {
+				writeBinaryValue(out, stuff);
+			}
+		}
+	}
+
+	/** 按二进制格式写入语素字面义及数值。
+	 */
+	private static void writeBinaryValue(DataOutputStream out, Stuff stuff) throws IOException {
+		LiteralBase lb = stuff.literalBase;
+		byte literal = toBinaryLiteral(lb);
+
+		try {
+			switch (literal) {
+			case BINARY_LITERAL_INT:
+			case BINARY_LITERAL_UINT:
+				int iv = stuff.getValueAsInt();
+				out.writeByte(literal);
+				out.writeInt(iv);
+				return;
+			case BINARY_LITERAL_LONG:
+			case BINARY_LITERAL_ULONG:
+				long lv = stuff.getValueAsLong();
+				out.writeByte(literal);
+				out.writeLong(lv);
+				return;
+			case BINARY_LITERAL_FLOAT:
+				float fv = stuff.getValueAsFloat();
+				out.writeByte(literal);
+				out.writeInt(Float.floatToIntBits(fv));
+				return;
+			case BINARY_LITERAL_DOUBLE:
+				double dv = stuff.getValueAsDouble();
+				out.writeByte(literal);
+				out.writeLong(Double.doubleToLongBits(dv));
+				return;
+			case BINARY_LITERAL_BOOL:
+				if (stuff.valueType == Stuff.VALUE_BOOL
+					|| Boolean.toString(true).equals(stuff.value) || Boolean.toString(false).equals(stuff.value)) {
+					out.writeByte(literal);
+					out.writeByte(stuff.getValueAsBool() ? 1 : 0);
+					return;
+				}
+				break;
+			case BINARY_LITERAL_STRING:
+			case BINARY_LITERAL_JSON:
+			case BINARY_LITERAL_XML:
+				out.writeByte(literal);
+				writeBinaryString(out, stuff.getValueAsString());
+				return;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			// 数值与字面义不符，按文本写入
+		}
+
+		// 保持原始文本，避免数值转换丢失信息
+		out.writeByte(literal | BINARY_LITERAL_TEXT);
+		writeBinaryString(out, stuff.getValueAsString());
+	}
+
+	/** 读取二进制格式的语素数值。
+	 */
+	private static void readBinaryValue(Stuff stuff, byte literal, DataInputStream in, Attachments attachments)
+			throws IOException {
+		LiteralBase lb = toLiteralBase((byte) (literal & ~(BINARY_LITERAL_TEXT | BINARY_LITERAL_ATTACHMENT)));
+		if (null == lb) {
+			throw new IOException("Unknown binary literal: " + literal);
+		}
+		stuff.setLiteralBase(lb);
+
+		if ((literal & BINARY_LITERAL_ATTACHMENT) != 0) {
+			if (null == attachments || attachments.next >= attachments.data.length) {
+				throw new IOException("Missing binary primitive attachment");
+			}
+			stuff.setValue(attachments.data[attachments.next++]);
+			return;
+		}
+
+		if ((literal & BINARY_LITERAL_TEXT) != 0) {
+			stuff.setValue(readBinaryString(in));
+			return;
+		}
+
+		switch (literal) {
+		case BINARY_LITERAL_INT:
+		case BINARY_LITERAL_UINT:
+			stuff.setValue(in.readInt());
+			break;
+		case BINARY_LITERAL_LONG:
+		case BINARY_LITERAL_ULONG:
+			stuff.setValue(in.readLong());
+			break;
+		case BINARY_LITERAL_FLOAT:
+			stuff.setValue(Float.intBitsToFloat(in.readInt()));
+			break;
+		case BINARY_LITERAL_DOUBLE:
+			stuff.setValue(Double.longBitsToDouble(in.readLong()));
+			break;
+		case BINARY_LITERAL_BOOL:
+			stuff.setValue(in.readByte() != 0);
+			break;
+		default:
+			stuff.setValue(readBinaryString(in));
+			break;
+		}
+	}
+
+	private static void writeBinaryString(DataOutputStream out, String value) throws IOException {
+		if (null == value) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readBinaryString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		return new String(readBinaryBytes(in, length), UTF8);
+	}
+
+	/** 读取指定长度的数据。
+	 * 长度超过输入中的可用数据时按块读取，分配的内存不超过实际读取的数据量，
+	 * 输入不足时抛出 EOFException 。
+	 */
+	private static byte[] readBinaryBytes(DataInputStream in, int length) throws IOException {
+		if (length <= in.available()) {
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+		}
+
+		byte[] block = new byte[Math.min(length, 8192)];
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(block.length);
+		int remaining = length;
+		while (remaining > 0) {
+			int n = in.read(block, 0, Math.min(remaining, block.length));
+			if (n < 0) {
+				throw new EOFException("Binary value length " + length + " exceeds the input");
+			}
+			buf.write(block, 0, n);
+			remaining -= n;
+		}
+		return buf.toByteArray();
+	}
+
+	private static byte toBinaryLiteral(LiteralBase literal) {
+		if (literal == LiteralBase.STRING) {
+			return BINARY_LITERAL_STRING;
+		}
+		else if (literal == LiteralBase.INT) {
+			return BINARY_LITERAL_INT;
+		}
+		else if (literal == LiteralBase.UINT) {
+			return BINARY_LITERAL_UINT;
+		}
+		else if (literal == LiteralBase.LONG) {
+			return BINARY_LITERAL_LONG;
+		}
+		else if (literal == LiteralBase.ULONG) {
+			return BINARY_LITERAL_ULONG;
+		}
+		else if (literal == LiteralBase.FLOAT) {
+			return BINARY_LITERAL_FLOAT;
+		}
+		else if (literal == LiteralBase.DOUBLE) {
+			return BINARY_LITERAL_DOUBLE;
+		}
+		else if (literal == LiteralBase.BOOL) {
+			return BINARY_LITERAL_BOOL;
+		}
+		else if (literal == LiteralBase.JSON) {
+			return BINARY_LITERAL_JSON;
+		}
+		else if (literal == LiteralBase.XML) {
+			return BINARY_LITERAL_XML;
+		}
+		else {
+			return BINARY_LITERAL_STRING;
+		}
+	}
+
+	private static LiteralBase toLiteralBase(byte literal) {
+		switch (literal) {
+		case BINARY_LITERAL_STRING:
+			return LiteralBase.STRING;
+		case BINARY_LITERAL_INT:
+			return LiteralBase.INT;
+		case BINARY_LITERAL_UINT:
+			return LiteralBase.UINT;
+		case BINARY_LITERAL_LONG:
+			return LiteralBase.LONG;
+		case BINARY_LITERAL_ULONG:
+			return LiteralBase.ULONG;
+		case BINARY_LITERAL_FLOAT:
+			return LiteralBase.FLOAT;
+		case BINARY_LITERAL_DOUBLE:
+			return LiteralBase.DOUBLE;
+		case BINARY_LITERAL_BOOL:
+			return LiteralBase.BOOL;
+		case BINARY_LITERAL_JSON:
+			return LiteralBase.JSON;
+		case BINARY_LITERAL_XML:
+			return LiteralBase.XML;
+		default:
+			return null;
+		}
+	}
+
 	/**
 	 * 将原语序列化为 JSON 格式。
 	 * @param output
@@ -820,45 +1229,534 @@ public final class PrimitiveSerializer {
 	 * @throws JSONException
 	 */
 	private static void readValue(Stuff output, JSONObject json) throws JSONException {
-		String literal = json.getString(JSONKEY_LITERALBASE);
-		if (literal.equals(LITERALBASE_STRING)) {
-			output.setValue(json.getString(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.STRING);
+		readValue(output, json.getString(JSONKEY_LITERALBASE), json.get(JSONKEY_STUFFVALUE));
+	}
+
+	/**
+	 * 按照字面义读取语素对应的值。
+	 * @param output
+	 * @param literal
+	 * @param value
+	 * @throws JSONException
+	 */
+	private static void readValue(Stuff output, String literal, Object value) throws JSONException {
+		try {
+			if (literal.equals(LITERALBASE_STRING)) {
+				if (!(value instanceof String)) {
+					throw new JSONException("Stuff value is not a string.");
+				}
+				output.setValue((String) value);
+				output.setLiteralBase(LiteralBase.STRING);
+			}
+			else if (literal.equals(LITERALBASE_JSON)) {
+				if (!(value instanceof JSONObject)) {
+					throw new JSONException("Stuff value is not a JSONObject.");
+				}
+				output.setValue((JSONObject) value);
+				output.setLiteralBase(LiteralBase.JSON);
+			}
+			else if (literal.equals(LITERALBASE_INT)) {
+				output.setValue((value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt((String) value));
+				output.setLiteralBase(LiteralBase.INT);
+			}
+			else if (literal.equals(LITERALBASE_LONG)) {
+				output.setValue((value instanceof Number) ? ((Number) value).longValue() : Long.parseLong((String) value));
+				output.setLiteralBase(LiteralBase.LONG);
+			}
+			else if (literal.equals(LITERALBASE_BOOL)) {
+				output.setValue(toBoolean(value));
+				output.setLiteralBase(LiteralBase.BOOL);
+			}
+			else if (literal.equals(LITERALBASE_FLOAT)) {
+				output.setValue((float) toDouble(value));
+				output.setLiteralBase(LiteralBase.FLOAT);
+			}
+			else if (literal.equals(LITERALBASE_DOUBLE)) {
+				output.setValue(toDouble(value));
+				output.setLiteralBase(LiteralBase.DOUBLE);
+			}
+			else if (literal.equals(LITERALBASE_UINT)) {
+				output.setValue((value instanceof Number) ? ((Number) value).intValue() : Integer.parseInt((String) value));
+				output.setLiteralBase(LiteralBase.UINT);
+			}
+			else if (literal.equals(LITERALBASE_ULONG)) {
+				output.setValue((value instanceof Number) ? ((Number) value).longValue() : Long.parseLong((String) value));
+				output.setLiteralBase(LiteralBase.ULONG);
+			}
+			else if (literal.equals(LITERALBASE_XML)) {
+				Logger.e(PrimitiveSerializer.class, "Don't support XML literal in JSON format.");
+			}
+		} catch (JSONException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new JSONException("Stuff value is not a " + literal + ".");
 		}
-		else if (literal.equals(LITERALBASE_JSON)) {
-			output.setValue(json.getJSONObject(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.JSON);
+	}
+
+	private static double toDouble(Object value) {
+		return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble((String) value);
+	}
+
+	private static boolean toBoolean(Object value) throws JSONException {
+		if (value.equals(Boolean.FALSE)
+			|| (value instanceof String && ((String) value).equalsIgnoreCase("false"))) {
+			return false;
 		}
-		else if (literal.equals(LITERALBASE_INT)) {
-			output.setValue(json.getInt(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.INT);
+		else if (value.equals(Boolean.TRUE)
+			|| (value instanceof String && ((String) value).equalsIgnoreCase("true"))) {
+			return true;
 		}
-		else if (literal.equals(LITERALBASE_LONG)) {
-			output.setValue(json.getLong(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.LONG);
+		throw new JSONException("Stuff value is not a boolean.");
+	}
+
+	/**
+	 * 将原语以 JSON 格式流式写入，不构建中间 JSON 对象。
+	 * @param writer
+	 * @param primitive
+	 */
+	public static void write(JSONWriter writer, Primitive primitive) throws JSONException {
+		writer.object();
+
+		// 版本
+		writer.key(JSONKEY_VERSION).value("1.0");
+
+		// 所有语素
+		writer.key(JSONKEY_STUFFS).array();
+		writeStuffs(writer, STUFFTYPE_SUBJECT, primitive.subjects());
+		writeStuffs(writer, STUFFTYPE_PREDICATE, primitive.predicates());
+		writeStuffs(writer, STUFFTYPE_OBJECTIVE, primitive.objectives());
+		writeStuffs(writer, STUFFTYPE_ADVERBIAL, primitive.adverbials());
+		writeStuffs(writer, STUFFTYPE_ATTRIBUTIVE, primitive.attributives());
+		writeStuffs(writer, STUFFTYPE_COMPLEMENT, primitive.complements());
+		writer.endArray();
+
+		// 方言
+		Dialect dialect = primitive.getDialect();
+		if (null != dialect) {
+			writer.key(JSONKEY_DIALECT).object();
+			writer.key(JSONKEY_NAME).value(dialect.getName());
+			writer.key(JSONKEY_TRACKER).value(dialect.getTracker());
+			writer.endObject();
 		}
-		else if (literal.equals(LITERALBASE_BOOL)) {
-			output.setValue(json.getBoolean(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.BOOL);
+
+		writer.endObject();
+	}
+
+	private static void writeStuffs(JSONWriter writer, String type, List<? extends Stuff> list) throws JSONException {
+		if (null == list) {
+			return;
 		}
-		else if (literal.equals(LITERALBASE_FLOAT)) {
-			output.setValue(json.getDouble(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.FLOAT);
+
+		for (int i = 0, size = list.size(); i < size; ++i) {
+			Stuff stuff = list.get(i);
+			LiteralBase lb = stuff.literalBase;
+			if (lb == LiteralBase.XML) {
+				Logger.e(PrimitiveSerializer.class, "Don't support XML literal in JSON format.");
+				continue;
+			}
+
+			writer.object();
+			writer.key(JSONKEY_STUFFTYPE).value(type);
+			writer.key(JSONKEY_STUFFVALUE);
+			if (lb == LiteralBase.STRING) {
+				writer.value(stuff.getValueAsString());
+			}
+			else if (lb == LiteralBase.JSON) {
+				writer.value(stuff.getValueAsJSON());
+			}
+			else if (lb == LiteralBase.INT || lb == LiteralBase.UINT) {
+				writer.value(stuff.getValueAsInt());
+			}
+			else if (lb == LiteralBase.LONG || lb == LiteralBase.ULONG) {
+				writer.value(stuff.getValueAsLong());
+			}
+			else if (lb == LiteralBase.BOOL) {
+				writer.value(stuff.getValueAsBool());
+			}
+			else if (lb == LiteralBase.FLOAT) {
+				writer.value(stuff.getValueAsFloat());
+			}
+			else {
+				writer.value(stuff.getValueAsDouble());
+			}
+			writer.key(JSONKEY_LITERALBASE).value(new String(parseLiteralBase(lb)));
+			writer.endObject();
 		}
-		else if (literal.equals(LITERALBASE_DOUBLE)) {
-			output.setValue(json.getDouble(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.DOUBLE);
+	}
+
+	/**
+	 * 从 JSON 解析器中流式读取原语，解析器位于原语对象起始位置。
+	 * @param primitive
+	 * @param tokener
+	 */
+	public static void read(Primitive primitive, JSONTokener tokener) throws JSONException {
+		String dialectName = null;
+		String tracker = null;
+
+		if (tokener.nextClean() != '{') {
+			throw tokener.syntaxError("A primitive must begin with '{'");
 		}
-		else if (literal.equals(LITERALBASE_UINT)) {
-			output.setValue(json.getInt(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.UINT);
+
+		String key = null;
+		while (null != (key = nextKey(tokener))) {
+			if (key.equals(JSONKEY_STUFFS)) {
+				if (tokener.nextClean() != '[') {
+					throw tokener.syntaxError("Stuffs must begin with '['");
+				}
+				if (tokener.nextClean() != ']') {
+					tokener.back();
+					do {
+						readStuff(primitive, tokener);
+					} while (nextElement(tokener, ']'));
+				}
+			}
+			else if (key.equals(JSONKEY_DIALECT)) {
+				if (tokener.nextClean() != '{') {
+					throw tokener.syntaxError("A dialect must begin with '{'");
+				}
+				String dk = null;
+				while (null != (dk = nextKey(tokener))) {
+					Object value = tokener.nextValue();
+					if (dk.equals(JSONKEY_NAME)) {
+						dialectName = value.toString();
+					}
+					else if (dk.equals(JSONKEY_TRACKER)) {
+						tracker = value.toString();
+					}
+				}
+			}
+			else {
+				// 跳过版本等其他字段
+				tokener.nextValue();
+			}
 		}
-		else if (literal.equals(LITERALBASE_ULONG)) {
-			output.setValue(json.getLong(JSONKEY_STUFFVALUE));
-			output.setLiteralBase(LiteralBase.ULONG);
+
+		// 语素读取完成后构建方言
+		if (null != dialectName && null != tracker) {
+			Dialect dialect = DialectEnumerator.getInstance().createDialect(dialectName, tracker);
+			if (null != dialect) {
+				// 关联
+				primitive.capture(dialect);
+
+				// 构建数据
+				dialect.build(primitive);
+			}
+			else {
+				Logger.w(PrimitiveSerializer.class, "Can't create '" +  dialectName + "' dialect.");
+			}
 		}
-		else if (literal.equals(LITERALBASE_XML)) {
-			Logger.e(PrimitiveSerializer.class, "Don't support XML literal in JSON format.");
+	}
+
+	private static void readStuff(Primitive primitive, JSONTokener tokener) throws JSONException {
+		if (tokener.nextClean() != '{') {
+			throw tokener.syntaxError("A stuff must begin with '{'");
+		}
+
+		String type = null;
+		String literal = null;
+		Object value = null;
+
+		String key = null;
+		while (null != (key = nextKey(tokener))) {
+			Object v = tokener.nextValue();
+			if (key.equals(JSONKEY_STUFFTYPE)) {
+				type = v.toString();
+			}
+			else if (key.equals(JSONKEY_LITERALBASE)) {
+				literal = v.toString();
+			}
+			else if (key.equals(JSONKEY_STUFFVALUE)) {
+				value = v;
+			}
+		}
+
+		if (null == type || null == literal || null == value) {
+			throw new JSONException("Stuff format error.");
+		}
+
+		if (type.equals(STUFFTYPE_SUBJECT)) {
+			SubjectStuff subject = new SubjectStuff();
+			readValue(subject, literal, value);
+			primitive.commit(subject);
+		}
+		else if (type.equals(STUFFTYPE_PREDICATE)) {
+			PredicateStuff predicate = new PredicateStuff();
+			readValue(predicate, literal, value);
+			primitive.commit(predicate);
+		}
+		else if (type.equals(STUFFTYPE_OBJECTIVE)) {
+			ObjectiveStuff objective = new ObjectiveStuff();
+			readValue(objective, literal, value);
+			primitive.commit(objective);
+		}
+		else if (type.equals(STUFFTYPE_ATTRIBUTIVE)) {
+			AttributiveStuff attributive = new AttributiveStuff();
+			readValue(attributive, literal, value);
+			primitive.commit(attributive);
+		}
+		else if (type.equals(STUFFTYPE_ADVERBIAL)) {
+			AdverbialStuff adverbial = new AdverbialStuff();
+			readValue(adverbial, literal, value);
+			primitive.commit(adverbial);
+		}
+		else if (type.equals(STUFFTYPE_COMPLEMENT)) {
+			ComplementStuff complement = new ComplementStuff();
+			readValue(complement, literal, value);
+			primitive.commit(complement);
+		}
+	}
+
+	/**
+	 * 读取对象的下一个键，对象结束时返回 null 。
+	 * 读取键之后解析器位于对应值的起始位置。
+	 */
+	public static String nextKey(JSONTokener tokener) throws JSONException {
+		char c = tokener.nextClean();
+		if (c == ',') {
+			c = tokener.nextClean();
+		}
+
+		switch (c) {
+		case '}':
+			return null;
+		case '"':
+		case '\'':
+			String key = tokener.nextString(c);
+			if (tokener.nextClean() != ':') {
+				throw tokener.syntaxError("Expected a ':' after a key");
+			}
+			return key;
+		default:
+			throw tokener.syntaxError("Expected a key");
+		}
+	}
+
+	/**
+	 * 判断数组是否还有下一个元素。
+	 */
+	private static boolean nextElement(JSONTokener tokener, char close) throws JSONException {
+		char c = tokener.nextClean();
+		if (c == ',') {
+			return true;
+		}
+		else if (c == close) {
+			return false;
+		}
+		throw tokener.syntaxError("Expected a ',' or '" + close + "'");
+	}
+
+	/** 获取当前线程的暂存区，暂存区正被使用时（例如方言构建过程中重入）创建临时暂存区。
+	 */
+	private static Scratch acquire() {
+		Scratch scratch = threadScratch.get();
+		if (scratch.busy) {
+			return new Scratch();
+		}
+
+		scratch.busy = true;
+		scratch.length = 0;
+		return scratch;
+	}
+
+	/** 归还暂存区。
+	 */
+	private static void release(Scratch scratch) {
+		scratch.busy = false;
+		scratch.length = 0;
+		if (scratch.bytes.length > SCRATCH_RETAINED_CAPACITY) {
+			scratch.bytes = new byte[SCRATCH_CAPACITY];
+			scratch.byteBuffer = ByteBuffer.wrap(scratch.bytes);
+		}
+	}
+
+	/** 序列化暂存区。
+	 * 
+	 * 缓存字节数组、字符数组及 UTF-8 编码器，避免每次序列化分配缓存。
+	 */
+	private static final class Scratch {
+
+		protected byte[] bytes;
+		protected int length;
+		protected ByteBuffer byteBuffer;
+
+		protected char[] chars;
+		protected CharBuffer charBuffer;
+
+		protected final byte[] input;
+
+		protected final CharsetEncoder encoder;
+
+		protected boolean busy;
+
+		protected Scratch() {
+			this.bytes = new byte[SCRATCH_CAPACITY];
+			this.length = 0;
+			this.byteBuffer = ByteBuffer.wrap(this.bytes);
+			this.chars = new char[256];
+			this.charBuffer = CharBuffer.wrap(this.chars);
+			this.input = new byte[SCRATCH_CAPACITY];
+			// 与 String.getBytes 一致，无法编码的字符替换为 '?'
+			this.encoder = UTF8.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.busy = false;
+		}
+
+		protected void ensure(int extra) {
+			if (this.length + extra <= this.bytes.length) {
+				return;
+			}
+
+			int capacity = Math.max(this.bytes.length << 1, this.length + extra);
+			byte[] newBytes = new byte[capacity];
+			System.arraycopy(this.bytes, 0, newBytes, 0, this.length);
+			this.bytes = newBytes;
+			this.byteBuffer = ByteBuffer.wrap(newBytes);
+		}
+
+		protected void put(byte b) {
+			if (this.length == this.bytes.length) {
+				this.ensure(1);
+			}
+			this.bytes[this.length++] = b;
+		}
+
+		protected void put(byte[] b) {
+			this.ensure(b.length);
+			System.arraycopy(b, 0, this.bytes, this.length, b.length);
+			this.length += b.length;
+		}
+
+		/** 写入整数的十进制文本。
+		 */
+		protected void putLong(long value) {
+			if (value == Long.MIN_VALUE) {
+				this.putString(Long.toString(value), false);
+				return;
+			}
+
+			// 最多 19 位数字及符号位
+			this.ensure(20);
+
+			if (value < 0) {
+				this.bytes[this.length++] = '-';
+				value = -value;
+			}
+
+			int digits = 1;
+			for (long v = value / 10; v != 0; v /= 10) {
+				++digits;
+			}
+
+			int pos = this.length + digits;
+			this.length = pos;
+			do {
+				this.bytes[--pos] = (byte) ('0' + (value % 10));
+				value /= 10;
+			} while (value != 0);
+		}
+
+		/** 按 UTF-8 编码写入字符串，并按需进行数据内容转义。
+		 */
+		protected void putString(String value, boolean escape) {
+			if (null == value) {
+				return;
+			}
+
+			int n = value.length();
+			int begin = this.length;
+			// 每个字符最多编码为 3 个字节
+			this.ensure(n * 3);
+
+			byte[] data = this.bytes;
+			int pos = begin;
+			int i = 0;
+
+			// ASCII 字符直接写入
+			for (; i < n; ++i) {
+				char ch = value.charAt(i);
+				if (ch >= 0x80) {
+					break;
+				}
+				data[pos++] = (byte) ch;
+			}
+
+			if (i < n) {
+				// 其余字符使用编码器
+				int remaining = n - i;
+				if (this.chars.length < remaining) {
+					this.chars = new char[Math.max(this.chars.length << 1, remaining)];
+					this.charBuffer = CharBuffer.wrap(this.chars);
+				}
+				value.getChars(i, n, this.chars, 0);
+				this.charBuffer.clear();
+				this.charBuffer.limit(remaining);
+
+				this.byteBuffer.clear();
+				this.byteBuffer.position(pos);
+
+				this.encoder.reset();
+				this.encoder.encode(this.charBuffer, this.byteBuffer, true);
+				this.encoder.flush(this.byteBuffer);
+				pos = this.byteBuffer.position();
+			}
+
+			this.length = pos;
+
+			if (escape) {
+				this.escape(begin);
+			}
+		}
+
+		/** 对指定位置之后的数据进行转义。
+		 */
+		private void escape(int begin) {
+			int count = 0;
+			for (int i = begin; i < this.length; ++i) {
+				if (isToken(this.bytes[i])) {
+					++count;
+				}
+			}
+
+			if (count == 0) {
+				return;
+			}
+
+			this.ensure(count);
+
+			// 从尾部向前移动数据，原地插入转义符
+			byte[] data = this.bytes;
+			int src = this.length - 1;
+			int dest = src + count;
+			while (src >= begin) {
+				byte b = data[src--];
+				data[dest--] = b;
+				if (isToken(b)) {
+					data[dest--] = '\\';
+				}
+			}
+
+			this.length += count;
+		}
+
+		private boolean isToken(byte b) {
+			return (b == TOKEN_OPEN_BRACE
+				|| b == TOKEN_CLOSE_BRACE
+				|| b == TOKEN_OPERATE_ASSIGN
+				|| b == TOKEN_OPERATE_DECLARE);
+		}
+	}
+
+	/**
+	 * 按顺序读取的原语附件。
+	 */
+	private static final class Attachments {
+		private byte[][] data;
+		private int next;
+
+		private Attachments(byte[][] data) {
+			this.data = data;
+			this.next = 0;
 		}
 	}
 }
@@ -31,6 +31,8 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -41,6 +43,8 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import net.cellcloud.common.Base64;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
@@ -48,68 +52,106 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /** 原语语素。
+ * 
+ * 数值类型的值按原生类型存储，仅在需要文本形式时转换为字符串。
  * 
  * @author Jiangwei Xu
  */
 public abstract class Stuff {
 
-	private static final DecimalFormat DF = new DecimalFormat("#0.0000");
+	// 浮点数的文本形式保持定点格式，与只支持文本格式的终端兼容。DecimalFormat 非线程安全，每个线程使用各自的实例
+	private static final ThreadLocal<DecimalFormat> DF = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat("#0.0000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		}
+	};
+
+	// 值的存储类型
+	protected static final byte VALUE_TEXT = 0;
+	protected static final byte VALUE_LONG = 1;
+	protected static final byte VALUE_FLOAT = 2;
+	protected static final byte VALUE_DOUBLE = 3;
+	protected static final byte VALUE_BOOL = 4;
+	protected static final byte VALUE_BYTES = 5;
 
 	private StuffType type;
+	// 文本形式的值，原生类型的值在需要时生成
 	protected String value;
 	protected LiteralBase literalBase;
 
+	// 值的存储类型
+	protected byte valueType;
+	// 整数及布尔值的原生值
+	protected long longValue;
+	// 浮点数的原生值
+	protected double doubleValue;
+	// 单精度浮点数是否由文本解析，此时文本为精确值
+	protected boolean floatText;
+	// 二进制数据的原始值，文本形式为 Base64 编码
+	protected byte[] bytesValue;
+
 	/** 构造函数。 */
 	public Stuff(StuffType type) {
 		this.type = type;
+		this.valueType = VALUE_TEXT;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, String value) {
 		this.type = type;
-		this.value = value;
+		this.setValue(value);
 		this.literalBase = LiteralBase.STRING;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, int value) {
 		this.type = type;
-		this.value = Integer.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.INT;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, long value) {
 		this.type = type;
-		this.value = Long.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.LONG;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, float value) {
 		this.type = type;
-		this.value = DF.format(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.FLOAT;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, double value) {
 		this.type = type;
-		this.value = DF.format(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.DOUBLE;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, boolean value) {
 		this.type = type;
-		this.value = Boolean.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.BOOL;
 	}
 
+	/** 构造函数。
+	 * 二进制数据的字面义为字符串，文本格式中按 Base64 编码传输。
+	 */
+	public Stuff(StuffType type, byte[] value) {
+		this.type = type;
+		this.setValue(value);
+		this.literalBase = LiteralBase.STRING;
+	}
+
 	/** 构造函数。 */
 	public Stuff(StuffType type, JSONObject json) {
 		this.type = type;
-		this.value = json.toString();
+		this.setValue(json);
 		this.literalBase = LiteralBase.JSON;
 	}
 
@@ -121,7 +163,7 @@ public abstract class Stuff {
 		t.setOutputProperty("encoding", "UTF-8");
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		t.transform(new DOMSource(doc), new StreamResult(bos));
-		this.value = bos.toString();
+		this.setValue(bos.toString());
 		this.type = type;
 		this.literalBase = LiteralBase.XML;
 	}
@@ -138,50 +180,157 @@ public abstract class Stuff {
 	/** 按照字符串形式返回值。
 	*/
 	public String getValueAsString() {
-		return this.value;
+		String text = this.value;
+		if (null == text) {
+			// 原生值按需生成文本，浮点数的精确值由二进制格式传输
+			switch (this.valueType) {
+			case VALUE_LONG:
+				text = Long.toString(this.longValue);
+				break;
+			case VALUE_FLOAT:
+			case VALUE_DOUBLE:
+				text = formatDecimal(this.doubleValue);
+				break;
+			case VALUE_BOOL:
+				text = (this.longValue != 0) ? "true" : "false";
+				break;
+			case VALUE_BYTES:
+				text = Base64.encodeBytes(this.bytesValue);
+				break;
+			default:
+				return null;
+			}
+			this.value = text;
+		}
+		return text;
 	}
 
 	/** 按照整数形式返回值。
+	 * @throws NumberFormatException 值超出整数范围或不是整数时抛出。
 	*/
 	public int getValueAsInt() {
-		return Integer.parseInt(this.value);
+		switch (this.valueType) {
+		case VALUE_LONG:
+			if (this.longValue < Integer.MIN_VALUE || this.longValue > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Value out of int range: " + this.longValue);
+			}
+			return (int) this.longValue;
+		case VALUE_FLOAT:
+		case VALUE_DOUBLE:
+			if (this.doubleValue != Math.rint(this.doubleValue)
+				|| this.doubleValue < Integer.MIN_VALUE || this.doubleValue > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Value is not an int: " + this.getValueAsString());
+			}
+			return (int) this.doubleValue;
+		default:
+			return Integer.parseInt(this.value);
+		}
 	}
 
 	/** 按照长整数形式返回值。
+	 * @throws NumberFormatException 值超出长整数范围或不是整数时抛出。
 	*/
 	public long getValueAsLong() {
-		return Long.parseLong(this.value);
+		switch (this.valueType) {
+		case VALUE_LONG:
+			return this.longValue;
+		case VALUE_FLOAT:
+		case VALUE_DOUBLE:
+			// Long.MAX_VALUE 转换为浮点数后为 2^63 ，已超出长整数范围
+			if (this.doubleValue != Math.rint(this.doubleValue)
+				|| this.doubleValue < Long.MIN_VALUE || this.doubleValue >= Long.MAX_VALUE) {
+				throw new NumberFormatException("Value is not a long: " + this.getValueAsString());
+			}
+			return (long) this.doubleValue;
+		default:
+			return Long.parseLong(this.value);
+		}
+	}
+
+	/** 按定点格式生成浮点数的文本形式，非数及无穷大使用 Java 的文本表示。
+	 */
+	private static String formatDecimal(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return Double.toString(value);
+		}
+		return DF.get().format(value);
 	}
 
 	/** 按照浮点数形式返回值。
 	 */
 	public float getValueAsFloat() {
-		return Float.parseFloat(this.value);
+		switch (this.valueType) {
+		case VALUE_LONG:
+			return (float) this.longValue;
+		case VALUE_FLOAT:
+		case VALUE_DOUBLE:
+			return (float) this.doubleValue;
+		default:
+			return Float.parseFloat(this.value);
+		}
 	}
 
 	/** 按照双精浮点数形式返回值。
 	 */
 	public double getValueAsDouble() {
-		return Double.parseDouble(this.value);
+		switch (this.valueType) {
+		case VALUE_LONG:
+			return (double) this.longValue;
+		case VALUE_FLOAT:
+			// 由文本解析的值按原始文本返回，避免单精度值扩展后引入的误差
+			if (this.floatText) {
+				return Double.parseDouble(this.value);
+			}
+			return this.doubleValue;
+		case VALUE_DOUBLE:
+			return this.doubleValue;
+		default:
+			return Double.parseDouble(this.value);
+		}
 	}
 
 	/** 按照布尔值形式返回值。
 	*/
 	public boolean getValueAsBool() {
-		if (this.value.equalsIgnoreCase("true")
-			|| this.value.equalsIgnoreCase("yes")
-			|| this.value.equalsIgnoreCase("1"))
+		if (this.valueType == VALUE_BOOL) {
+			return (this.longValue != 0);
+		}
+
+		String text = this.getValueAsString();
+		if (text.equalsIgnoreCase("true")
+			|| text.equalsIgnoreCase("yes")
+			|| text.equalsIgnoreCase("1"))
 			return true;
 		else
 			return false;
 	}
 
+	/** 按照二进制数据形式返回值。
+	 * 值为二进制数据时直接返回原始数据，否则将文本形式按 Base64 解码。
+	 */
+	public byte[] getValueAsBytes() {
+		if (this.valueType == VALUE_BYTES) {
+			return this.bytesValue;
+		}
+
+		String text = this.getValueAsString();
+		if (null == text) {
+			return null;
+		}
+
+		try {
+			return Base64.decode(text);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	/** 按照 JSON 格式返回值。
 	 * @throws JSONException 
 	 */
 	public JSONObject getValueAsJSON()
 			throws JSONException {
-		return new JSONObject(this.value);
+		return new JSONObject(this.getValueAsString());
 	}
 
 	/** 按照 XML 格式返回值。
@@ -191,7 +340,7 @@ public abstract class Stuff {
 	 */
 	public Document getValueAsXML()
 			throws ParserConfigurationException, SAXException, IOException {
-		String xmlStr = new String(this.value.getBytes(), Charset.forName("UTF-8"));
+		String xmlStr = new String(this.getValueAsString().getBytes(), Charset.forName("UTF-8"));
 		StringReader sr = new StringReader(xmlStr);
 		InputSource is = new InputSource(sr);
 		DocumentBuilderFactory factory =  DocumentBuilderFactory.newInstance();
@@ -210,36 +359,85 @@ public abstract class Stuff {
 	 */
 	protected void setValue(String value) {
 		this.value = value;
+		this.valueType = VALUE_TEXT;
 	}
 	/** @private
 	 */
 	protected void setValue(int value) {
-		this.value = Integer.toString(value);
+		this.setValue((long) value);
 	}
 	/** @private
 	 */
 	protected void setValue(long value) {
-		this.value = Long.toString(value);
+		this.value = null;
+		this.valueType = VALUE_LONG;
+		this.longValue = value;
 	}
 	/** @private
 	 */
 	protected void setValue(boolean value) {
-		this.value = Boolean.toString(value);
+		this.value = null;
+		this.valueType = VALUE_BOOL;
+		this.longValue = value ? 1 : 0;
 	}
 	/** @private
 	 */
 	protected void setValue(float value) {
-		this.value = DF.format(value);
+		this.value = null;
+		this.valueType = VALUE_FLOAT;
+		this.doubleValue = value;
+		this.floatText = false;
 	}
 	/** @private
 	 */
 	protected void setValue(double value) {
-		this.value = DF.format(value);
+		this.value = null;
+		this.valueType = VALUE_DOUBLE;
+		this.doubleValue = value;
+	}
+	/** @private
+	 */
+	protected void setValue(byte[] value) {
+		this.value = null;
+		this.valueType = VALUE_BYTES;
+		this.bytesValue = value;
 	}
 	/** @private
 	 */
 	protected void setValue(JSONObject json) {
-		this.value = json.toString();
+		this.setValue(json.toString());
+	}
+
+	/** @private
+	 * 设置文本形式的值及字面义，数值字面义的值同时解析为原生值，并保留原始文本。
+	 */
+	protected void setValue(String value, LiteralBase literalBase) {
+		this.value = value;
+		this.valueType = VALUE_TEXT;
+		this.literalBase = literalBase;
+
+		if (null == value) {
+			return;
+		}
+
+		try {
+			if (literalBase == LiteralBase.INT || literalBase == LiteralBase.UINT
+				|| literalBase == LiteralBase.LONG || literalBase == LiteralBase.ULONG) {
+				this.longValue = Long.parseLong(value);
+				this.valueType = VALUE_LONG;
+			}
+			else if (literalBase == LiteralBase.FLOAT) {
+				this.doubleValue = Float.parseFloat(value);
+				this.valueType = VALUE_FLOAT;
+				this.floatText = true;
+			}
+			else if (literalBase == LiteralBase.DOUBLE) {
+				this.doubleValue = Double.parseDouble(value);
+				this.valueType = VALUE_DOUBLE;
+			}
+		} catch (NumberFormatException e) {
+			// 值与字面义不符，按文本处理
+		}
 	}
 
 	/** @private
@@ -247,4 +445,17 @@ public abstract class Stuff {
 	protected void setLiteralBase(LiteralBase literalBase) {
 		this.literalBase = literalBase;
 	}
+
+	/** @private
+	 * 将值及字面义复制给目标语素。
+	 */
+	protected void copyValue(Stuff target) {
+		target.value = this.value;
+		target.valueType = this.valueType;
+		target.longValue = this.longValue;
+		target.doubleValue = this.doubleValue;
+		target.floatText = this.floatText;
+		target.bytesValue = this.bytesValue;
+		target.literalBase = this.literalBase;
+	}
 }
@@ -73,6 +73,11 @@ public final class SubjectStuff extends Stuff {
 		super(StuffType.SUBJECT, value);
 	}
 
+	/** 构造函数。 */
+	public SubjectStuff(byte[] value) {
+		super(StuffType.SUBJECT, value);
+	}
+
 	/** 构造函数。 */
 	public SubjectStuff(JSONObject value) {
 		super(StuffType.SUBJECT, value);
@@ -89,8 +94,7 @@ public final class SubjectStuff extends Stuff {
 	@Override
 	public void clone(Stuff target) {
 		if (target.getType() == StuffType.SUBJECT) {
-			target.setValue(this.value);
-			target.setLiteralBase(this.literalBase);
+			this.copyValue(target);
 		}
 	}
 }
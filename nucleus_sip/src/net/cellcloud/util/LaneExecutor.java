@@ -0,0 +1,200 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+package net.cellcloud.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.cellcloud.common.LogLevel;
+import net.cellcloud.common.Logger;
+
+/**
+ * 分道执行器。
+ * 
+ * 任务按键散列到固定数量的分道，同一分道内的任务按提交顺序串行执行，不同分道的任务并行执行。
+ * 分道不独占线程，有任务时从线程池借用线程执行。
+ * 
+ * @author Jiangwei Xu
+ *
+ */
+public final class LaneExecutor {
+
+	private ExecutorService executor;
+	private Lane[] lanes;
+
+	/**
+	 * 构造函数。
+	 * @param numLanes 分道数量，即最大并行线程数。
+	 */
+	public LaneExecutor(int numLanes) {
+		if (numLanes <= 0) {
+			throw new IllegalArgumentException("Lane number must be greater than zero.");
+		}
+
+		this.executor = Executors.newCachedThreadPool();
+		this.lanes = new Lane[numLanes];
+		for (int i = 0; i < numLanes; ++i) {
+			this.lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * 执行任务。相同键的任务按提交顺序串行执行。
+	 * @param key
+	 * @param command
+	 * @return 如果执行器已关闭，任务不被执行，返回 false 。
+	 */
+	public boolean execute(long key, Runnable command) {
+		if (this.executor.isShutdown()) {
+			return false;
+		}
+
+		Lane lane = this.lanes[this.laneOf(key)];
+		lane.queue.offer(command);
+		lane.depth.incrementAndGet();
+
+		if (!this.schedule(lane)) {
+			// 执行器已关闭，撤回任务
+			if (lane.queue.remove(command)) {
+				lane.depth.decrementAndGet();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * 将分道提交到线程池。
+	 * @param lane
+	 * @return 如果线程池拒绝执行返回 false 。
+	 */
+	private boolean schedule(Lane lane) {
+		if (lane.scheduled.compareAndSet(false, true)) {
+			try {
+				this.executor.execute(lane);
+			} catch (RejectedExecutionException e) {
+				lane.scheduled.set(false);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * 返回指定键所在的分道索引。
+	 * @param key
+	 * @return
+	 */
+	public int laneOf(long key) {
+		int h = (int) (key ^ (key >>> 32));
+		h ^= (h >>> 16);
+		return (h & 0x7FFFFFFF) % this.lanes.length;
+	}
+
+	/**
+	 * 返回分道数量。
+	 * @return
+	 */
+	public int getLaneNum() {
+		return this.lanes.length;
+	}
+
+	/**
+	 * 返回指定分道中等待执行的任务数量。
+	 * @param lane
+	 * @return
+	 */
+	public int getQueueDepth(int lane) {
+		return this.lanes[lane].depth.get();
+	}
+
+	/**
+	 * 返回所有分道中等待执行的任务数量。
+	 * @return
+	 */
+	public int[] getQueueDepths() {
+		int[] depths = new int[this.lanes.length];
+		for (int i = 0; i < depths.length; ++i) {
+			depths[i] = this.lanes[i].depth.get();
+		}
+		return depths;
+	}
+
+	/**
+	 * 关闭执行器。已提交的任务继续执行。
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * 分道。
+	 */
+	private final class Lane implements Runnable {
+		private ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+		private AtomicInteger depth = new AtomicInteger(0);
+		// 是否已提交到线程池
+		private AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		@Override
+		public void run() {
+			boolean completed = false;
+			try {
+				do {
+					Runnable task = null;
+					while (null != (task = this.queue.poll())) {
+						this.depth.decrementAndGet();
+						try {
+							task.run();
+						} catch (Exception e) {
+							Logger.log(LaneExecutor.class, e, LogLevel.ERROR);
+						}
+					}
+
+					this.scheduled.set(false);
+
+					// 清除标记后再次检查，避免遗漏清除前提交的任务
+				} while (!this.queue.isEmpty() && this.scheduled.compareAndSet(false, true));
+
+				completed = true;
+			} finally {
+				if (!completed) {
+					// 任务抛出 Error ，清除标记并由新线程继续执行剩余任务
+					this.scheduled.set(false);
+					if (!this.queue.isEmpty()) {
+						schedule(this);
+					}
+				}
+			}
+		}
+	}
+}
@@ -119,6 +119,11 @@ public final class Utils {
 	public static String bytes2String(byte[] bytes) {
 		return new String(bytes, Charset.forName("UTF-8"));
 	}
+	/** 指定区间的 UTF-8 Byte 数组转字符串。
+	 */
+	public static String bytes2String(byte[] bytes, int offset, int length) {
+		return new String(bytes, offset, length, Charset.forName("UTF-8"));
+	}
 	/** 字符串转 UTF-8 Byte 数组。 
 	 */
 	public static byte[] string2Bytes(String string) {
@@ -0,0 +1,65 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud;
+
+/** 测试断言。
+ * 
+ * 测试类以 main 方法运行，断言失败时抛出 AssertionError ，进程以非零状态退出。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class Assert {
+
+	private Assert() {
+	}
+
+	public static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void assertFalse(boolean condition, String message) {
+		assertTrue(!condition, message);
+	}
+
+	public static void assertEquals(Object expected, Object actual, String message) {
+		if (null == expected ? null != actual : !expected.equals(actual)) {
+			throw new AssertionError(message + " - expected: <" + expected + "> but was: <" + actual + ">");
+		}
+	}
+
+	public static void assertEquals(long expected, long actual, String message) {
+		if (expected != actual) {
+			throw new AssertionError(message + " - expected: <" + expected + "> but was: <" + actual + ">");
+		}
+	}
+
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+
+package net.cellcloud.common;
+
+/** 数据包编解码性能基准。
+ * 
+ * 比较文本格式（v1）与二进制格式（v2）的打包、解包耗时。解包时读取全部子段。
+ * 依赖库中没有 JMH ，基准以 main 方法运行：每项先预热，再按多轮测量取最小的单次耗时。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PacketBenchmark {
+
+	private static final int WARMUP = 100000;
+	private static final int ITERATIONS = 500000;
+	private static final int ROUNDS = 5;
+
+	private static final byte[] TAG = new byte[] { 'D', 'L', 'G', 'E' };
+
+	// 防止结果被优化掉
+	private static long sink = 0;
+
+	private PacketBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		for (int major : new int[] { 1, Packet.VERSION_MAJOR_BINARY }) {
+			final Packet packet = createPacket(major);
+			final byte[] data = Packet.pack(packet);
+
+			System.out.println("Packet v" + major + " size: " + data.length + " bytes");
+
+			run("v" + major + " pack", new Task() {
+				@Override
+				public void run() {
+					sink += Packet.pack(packet).length;
+				}
+			});
+			run("v" + major + " unpack", new Task() {
+				@Override
+				public void run() {
+					Packet output = Packet.unpack(data);
+					for (int i = 0, size = output.getSubsegmentCount(); i < size; ++i) {
+						sink += output.getSubsegment(i).length;
+					}
+				}
+			});
+		}
+
+		System.out.println("(" + sink + ")");
+	}
+
+	private static void run(String name, Task task) {
+		for (int i = 0; i < WARMUP; ++i) {
+			task.run();
+		}
+
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; ++r) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; ++i) {
+				task.run();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		double nsPerOp = (double) best / ITERATIONS;
+		System.out.println(String.format("%-14s %10.1f ns/op %12.0f ops/s", name, nsPerOp, 1.0e9 / nsPerOp));
+	}
+
+	/** 创建典型的对话数据包：标签、会话标识及原语数据子段。
+	 */
+	private static Packet createPacket(int major) {
+		Packet packet = new Packet(TAG, 1024, major, 0);
+		packet.appendSubsegment("DummyCellet".getBytes());
+		packet.appendSubsegment("c0ffee00-1234-5678-9abc-def012345678".getBytes());
+		byte[] primitive = new byte[512];
+		for (int i = 0; i < primitive.length; ++i) {
+			primitive[i] = (byte) ('a' + (i % 26));
+		}
+		packet.appendSubsegment(primitive);
+		return packet;
+	}
+
+	private interface Task {
+		void run();
+	}
+}
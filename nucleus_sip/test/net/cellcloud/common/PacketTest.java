@@ -0,0 +1,210 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+
+package net.cellcloud.common;
+
+import java.util.Arrays;
+
+import net.cellcloud.Assert;
+
+/** 数据包编解码测试。
+ * 
+ * 覆盖文本格式（v1）与二进制格式（v2）的往返编解码，以及伪造子段数量、
+ * 非数字长度字段、负数长度等非法数据的校验。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PacketTest {
+
+	private static final byte[] TAG = new byte[] { 'T', 'E', 'S', 'T' };
+
+	// 文本格式各字段偏移
+	private static final int V1_SN = 8;
+	private static final int V1_LEN = 12;
+	private static final int V1_SMN = 20;
+	private static final int V1_SML = 24;
+
+	// 二进制格式各字段偏移
+	private static final int V2_LEN = 12;
+	private static final int V2_SMN = 16;
+	private static final int V2_SML = 20;
+
+	private PacketTest() {
+	}
+
+	public static void main(String[] args) {
+		testRoundTrip(1);
+		testRoundTrip(Packet.VERSION_MAJOR_BINARY);
+		testTextFields();
+		testTextSubsegmentNum();
+		testBinaryLengths();
+		testBinarySubsegmentNum();
+		System.out.println("PacketTest passed");
+	}
+
+	/** 测试子段及未分段包体的往返编解码。
+	 */
+	private static void testRoundTrip(int major) {
+		byte[][] segments = new byte[][] { "hello".getBytes(), new byte[0], createData(1024) };
+
+		Packet packet = new Packet(TAG, 37, major, 1);
+		for (byte[] segment : segments) {
+			packet.appendSubsegment(segment);
+		}
+		byte[] data = Packet.pack(packet);
+		Assert.assertEquals(packet.encodedLength(), data.length, "encoded length v" + major);
+
+		Packet output = Packet.unpack(data);
+		Assert.assertTrue(null != output, "unpack v" + major);
+		Assert.assertTrue(Arrays.equals(TAG, output.getTag()), "tag v" + major);
+		Assert.assertEquals(37, output.getSequenceNumber(), "sn v" + major);
+		Assert.assertEquals(major, output.getMajorVersion(), "major v" + major);
+		Assert.assertEquals(1, output.getMinorVersion(), "minor v" + major);
+		Assert.assertEquals(segments.length, output.getSubsegmentCount(), "subsegment count v" + major);
+		for (int i = 0; i < segments.length; ++i) {
+			Assert.assertTrue(Arrays.equals(segments[i], output.getSubsegment(i)), "subsegment " + i + " v" + major);
+		}
+
+		// 未分段包体，文本格式下首字节不是数字时作为包体解析
+		Packet raw = new Packet(TAG, 38, major, 1);
+		byte[] body = "body-data".getBytes();
+		raw.setBody(body);
+		output = Packet.unpack(Packet.pack(raw));
+		Assert.assertTrue(null != output, "unpack body v" + major);
+		Assert.assertEquals(0, output.getSubsegmentCount(), "body subsegment count v" + major);
+		Assert.assertTrue(Arrays.equals(body, output.getBody()), "body v" + major);
+	}
+
+	/** 测试文本格式中的非数字字段。
+	 */
+	private static void testTextFields() {
+		byte[] data = createPacket(1);
+		data[4] = 'x';
+		Assert.assertTrue(null == Packet.unpack(data), "non-digit version");
+
+		data = createPacket(1);
+		data[V1_SN + 1] = '-';
+		Assert.assertTrue(null == Packet.unpack(data), "non-digit sn");
+
+		data = createPacket(1);
+		data[V1_LEN + 3] = ' ';
+		Assert.assertTrue(null == Packet.unpack(data), "non-digit body length");
+
+		data = createPacket(1);
+		data[V1_SML + 7] = 'a';
+		Assert.assertTrue(null == Packet.unpack(data), "non-digit subsegment length");
+
+		// 子段长度超出数据范围
+		data = createPacket(1);
+		putDigits(data, V1_SML, 8, 99999999);
+		Assert.assertTrue(null == Packet.unpack(data), "subsegment length overflow");
+
+		// 过短的数据
+		Assert.assertTrue(null == Packet.unpack(Arrays.copyOf(createPacket(1), 15)), "truncated header");
+	}
+
+	/** 测试文本格式中伪造的子段数量。
+	 */
+	private static void testTextSubsegmentNum() {
+		byte[] data = createPacket(1);
+		putDigits(data, V1_SMN, 4, 9999);
+		Assert.assertTrue(null == Packet.unpack(data), "forged subsegment num");
+
+		// 子段数量恰好超出子段长度字段可容纳的数量
+		data = createPacket(1);
+		int capacity = (data.length - (V1_SMN + 4)) / 8;
+		putDigits(data, V1_SMN, 4, capacity + 1);
+		Assert.assertTrue(null == Packet.unpack(data), "subsegment num over capacity");
+	}
+
+	/** 测试二进制格式中的负数及超出范围的长度。
+	 */
+	private static void testBinaryLengths() {
+		byte[] data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_LEN, -1);
+		Assert.assertTrue(null == Packet.unpack(data), "negative body length");
+
+		data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_LEN, Integer.MIN_VALUE);
+		Assert.assertTrue(null == Packet.unpack(data), "min body length");
+
+		data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_LEN, data.length);
+		Assert.assertTrue(null == Packet.unpack(data), "body length overflow");
+
+		data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_SML, -5);
+		Assert.assertTrue(null == Packet.unpack(data), "negative subsegment length");
+
+		data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_SML, Integer.MAX_VALUE);
+		Assert.assertTrue(null == Packet.unpack(data), "subsegment length overflow");
+	}
+
+	/** 测试二进制格式中伪造的子段数量。
+	 */
+	private static void testBinarySubsegmentNum() {
+		byte[] data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_SMN, Integer.MAX_VALUE);
+		Assert.assertTrue(null == Packet.unpack(data), "forged subsegment num");
+
+		data = createPacket(Packet.VERSION_MAJOR_BINARY);
+		putInt(data, V2_SMN, -2);
+		Assert.assertTrue(null == Packet.unpack(data), "negative subsegment num");
+	}
+
+	/** 创建含两个子段的合法数据包。
+	 */
+	private static byte[] createPacket(int major) {
+		Packet packet = new Packet(TAG, 1, major, 0);
+		packet.appendSubsegment("first".getBytes());
+		packet.appendSubsegment(createData(64));
+		return Packet.pack(packet);
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			data[i] = (byte) i;
+		}
+		return data;
+	}
+
+	private static void putDigits(byte[] data, int offset, int width, int number) {
+		for (int i = offset + width - 1; i >= offset; --i) {
+			data[i] = (byte) ('0' + (number % 10));
+			number /= 10;
+		}
+	}
+
+	private static void putInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,276 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+
+package net.cellcloud.common;
+
+import java.net.InetSocketAddress;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 接收器工作线程任务队列性能基准。
+ * 
+ * 比较工作器当前使用的去重 ConcurrentLinkedQueue 与原 Vector 列表的入队、出队吞吐量：
+ * 单线程测量每次入队加出队的耗时，多线程测量多个生产者向一个消费者推送 Session 的吞吐量。
+ * 依赖库中没有 JMH ，基准以 main 方法运行。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class WorkerQueueBenchmark {
+
+	private static final int WARMUP = 200000;
+	private static final int ITERATIONS = 1000000;
+	private static final int ROUNDS = 5;
+
+	private static final int PRODUCERS = 4;
+	private static final int PUSHES = 50000;
+	private static final int SESSIONS = 64;
+
+	// 防止结果被优化掉
+	private static long sink = 0;
+
+	private WorkerQueueBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		NonblockingAcceptor acceptor = new NonblockingAcceptor();
+		final NonblockingAcceptorSession[] sessions = new NonblockingAcceptorSession[SESSIONS];
+		for (int i = 0; i < SESSIONS; ++i) {
+			sessions[i] = new NonblockingAcceptorSession(acceptor, new InetSocketAddress("127.0.0.1", 7000 + i), 8192);
+		}
+
+		final Vector<NonblockingAcceptorSession> vector = new Vector<NonblockingAcceptorSession>();
+		run("vector push/poll", new Task() {
+			@Override
+			public void run(int i) {
+				vector.add(sessions[i & (SESSIONS - 1)]);
+				if (!vector.isEmpty()) {
+					sink += vector.remove(0).hashCode();
+				}
+			}
+		});
+
+		final ConcurrentLinkedQueue<NonblockingAcceptorSession> queue = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+		run("queue push/poll", new Task() {
+			@Override
+			public void run(int i) {
+				NonblockingAcceptorSession session = sessions[i & (SESSIONS - 1)];
+				if (session.scheduleSend()) {
+					queue.offer(session);
+				}
+				session = queue.poll();
+				if (null != session) {
+					session.unscheduleSend();
+					sink += session.hashCode();
+				}
+			}
+		});
+
+		for (int r = 0; r < 3; ++r) {
+			contend("vector contended", new VectorChannel(), sessions);
+			contend("queue contended", new QueueChannel(false), sessions);
+			contend("queue+dedup", new QueueChannel(true), sessions);
+		}
+
+		System.out.println("(" + sink + ")");
+	}
+
+	private static void run(String name, Task task) {
+		for (int i = 0; i < WARMUP; ++i) {
+			task.run(i);
+		}
+
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; ++r) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; ++i) {
+				task.run(i);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		double nsPerOp = (double) best / ITERATIONS;
+		System.out.println(String.format("%-18s %10.1f ns/op %12.0f ops/s", name, nsPerOp, 1.0e9 / nsPerOp));
+	}
+
+	/** 多个生产者线程推送 Session ，一个消费者线程按工作器的方式等待并取出任务。
+	 */
+	private static void contend(String name, final Channel channel, final NonblockingAcceptorSession[] sessions)
+			throws InterruptedException {
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				channel.consume();
+			}
+		};
+		consumer.start();
+
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; ++p) {
+			final int offset = p;
+			producers[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < PUSHES; ++i) {
+						channel.push(sessions[(i + offset) & (SESSIONS - 1)]);
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (Thread producer : producers) {
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		channel.stop();
+		consumer.join();
+		long elapsed = Math.max(1, System.nanoTime() - start);
+
+		long pushes = (long) PRODUCERS * PUSHES;
+		System.out.println(String.format("%-18s %8d ms %12.0f pushes/s %10d polls",
+				name, elapsed / 1000000, pushes * 1.0e9 / elapsed, channel.polled()));
+	}
+
+	private interface Task {
+		void run(int i);
+	}
+
+	/** 工作器任务队列的抽象。
+	 */
+	private static abstract class Channel {
+		protected final byte[] mutex = new byte[0];
+		protected volatile boolean spinning = true;
+		protected final AtomicLong polled = new AtomicLong(0);
+
+		abstract void push(NonblockingAcceptorSession session);
+
+		abstract void consume();
+
+		void stop() {
+			this.spinning = false;
+			synchronized (this.mutex) {
+				this.mutex.notifyAll();
+			}
+		}
+
+		long polled() {
+			return this.polled.get();
+		}
+	}
+
+	/** 原实现：Vector 列表，每次入队都唤醒线程，每次循环取出一个 Session 。
+	 */
+	private static final class VectorChannel extends Channel {
+		private final Vector<NonblockingAcceptorSession> sessions = new Vector<NonblockingAcceptorSession>();
+
+		@Override
+		void push(NonblockingAcceptorSession session) {
+			this.sessions.add(session);
+
+			synchronized (this.mutex) {
+				this.mutex.notifyAll();
+			}
+		}
+
+		@Override
+		void consume() {
+			while (this.spinning || !this.sessions.isEmpty()) {
+				synchronized (this.mutex) {
+					if (this.sessions.isEmpty() && this.spinning) {
+						try {
+							this.mutex.wait();
+						} catch (InterruptedException e) {
+							// Nothing
+						}
+					}
+				}
+
+				if (!this.sessions.isEmpty()) {
+					sink += this.sessions.remove(0).hashCode();
+					this.polled.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/** 当前实现：ConcurrentLinkedQueue ，仅在消费者等待时唤醒，每次循环取空队列。
+	 * 去重时每个 Session 在队列中至多出现一次，不去重时与原实现的入队次数相同。
+	 */
+	private static final class QueueChannel extends Channel {
+		private final ConcurrentLinkedQueue<NonblockingAcceptorSession> sessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+		private volatile boolean waiting = false;
+		private final boolean dedup;
+
+		QueueChannel(boolean dedup) {
+			this.dedup = dedup;
+		}
+
+		@Override
+		void push(NonblockingAcceptorSession session) {
+			if (this.dedup && !session.scheduleSend()) {
+				return;
+			}
+
+			this.sessions.offer(session);
+
+			if (this.waiting) {
+				synchronized (this.mutex) {
+					this.mutex.notify();
+				}
+			}
+		}
+
+		@Override
+		void consume() {
+			while (this.spinning || !this.sessions.isEmpty()) {
+				synchronized (this.mutex) {
+					this.waiting = true;
+					if (this.sessions.isEmpty() && this.spinning) {
+						try {
+							this.mutex.wait();
+						} catch (InterruptedException e) {
+							// Nothing
+						}
+					}
+					this.waiting = false;
+				}
+
+				NonblockingAcceptorSession session = null;
+				while (null != (session = this.sessions.poll())) {
+					if (this.dedup) {
+						session.unscheduleSend();
+					}
+					sink += session.hashCode();
+					this.polled.incrementAndGet();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import net.cellcloud.talk.Primitive;
+
+/** 动作方言参数性能基准。
+ * 
+ * 依赖库中没有 JMH ，基准以 main 方法运行：分别测量追加 1 至 20 个参数并翻译为原语的单次耗时，
+ * 每项先预热，再按多轮测量取最小值。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ActionDialectBenchmark {
+
+	private static final int MAX_PARAMS = 20;
+	private static final int WARMUP = 20000;
+	private static final int ITERATIONS = 100000;
+	private static final int ROUNDS = 5;
+
+	private static final String[] NAMES = new String[MAX_PARAMS];
+
+	// 防止结果被优化掉
+	private static long sink = 0;
+
+	private ActionDialectBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		for (int i = 0; i < MAX_PARAMS; ++i) {
+			NAMES[i] = "param" + i;
+		}
+
+		System.out.println(String.format("%-8s %14s %14s", "params", "append ns/op", "translate ns/op"));
+		for (int n = 1; n <= MAX_PARAMS; ++n) {
+			for (int i = 0; i < WARMUP; ++i) {
+				sink += append(n).getParamAsInt(NAMES[n - 1]);
+				sink += translate(n);
+			}
+
+			long appendBest = Long.MAX_VALUE;
+			long translateBest = Long.MAX_VALUE;
+			for (int r = 0; r < ROUNDS; ++r) {
+				long start = System.nanoTime();
+				for (int i = 0; i < ITERATIONS; ++i) {
+					sink += append(n).getParamAsInt(NAMES[n - 1]);
+				}
+				appendBest = Math.min(appendBest, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for (int i = 0; i < ITERATIONS; ++i) {
+					sink += translate(n);
+				}
+				translateBest = Math.min(translateBest, System.nanoTime() - start);
+			}
+
+			System.out.println(String.format("%-8d %14.1f %14.1f", n,
+					(double) appendBest / ITERATIONS, (double) translateBest / ITERATIONS));
+		}
+
+		System.out.println("(" + sink + ")");
+	}
+
+	/** 创建方言并追加指定数量的参数。
+	 */
+	private static ActionDialect append(int n) {
+		ActionDialect dialect = new ActionDialect("bench", "action");
+		for (int i = 0; i < n; ++i) {
+			dialect.appendParam(NAMES[i], i);
+		}
+		return dialect;
+	}
+
+	/** 创建方言、追加参数并翻译为原语。
+	 */
+	private static int translate(int n) {
+		Primitive primitive = append(n).getTranslation();
+		return primitive.subjects().size();
+	}
+}
@@ -0,0 +1,260 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.cellcloud.Assert;
+
+/** 块数据发送窗口测试。
+ * 
+ * 覆盖丢包重传时每个块只回调一次进度、重传超过上限时回调失败，以及窗口清空后停止定时器；
+ * 接收端覆盖非法块的校验、文件存储的重组及磁盘上限清理。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ChunkDialectFactoryTest {
+
+	private ChunkDialectFactoryTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		testProgressOnce();
+		testFailure();
+		testIllegalChunks();
+		testSpill();
+		testDiskQuota();
+		System.out.println("ChunkDialectFactoryTest passed");
+	}
+
+	/** 丢包时重传块，每个块只回调一次进度；传输完成后定时器停止。
+	 */
+	private static void testProgressOnce() throws InterruptedException {
+		final int num = 64;
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		LoopbackCellet cellet = new LoopbackCellet(factory, num, 5, 0.1, 7);
+
+		final AtomicIntegerArray progress = new AtomicIntegerArray(num);
+		final AtomicInteger failures = new AtomicInteger(0);
+		ChunkListener listener = new ChunkListener() {
+			@Override
+			public void onProgress(String target, ChunkDialect chunkDialect) {
+				progress.incrementAndGet(chunkDialect.getChunkIndex());
+			}
+
+			@Override
+			public void onFailure(String target, ChunkDialect chunkDialect) {
+				failures.incrementAndGet();
+			}
+		};
+
+		send(cellet, "progress", num, num, listener);
+		Assert.assertTrue(waitFor(cellet.received, num, 30000), "all chunks received: " + cellet.received.get());
+		Assert.assertTrue(cellet.sent.get() > num, "chunks retransmitted: " + cellet.sent.get());
+
+		for (int i = 0; i < num; ++i) {
+			Assert.assertEquals(1, progress.get(i), "progress of chunk " + i);
+		}
+		Assert.assertEquals(0, failures.get(), "failures");
+
+		// 全部确认后窗口移除，定时器停止
+		long deadline = System.currentTimeMillis() + 5000;
+		while (LoopbackCellet.isTimerAlive() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertFalse(LoopbackCellet.isTimerAlive(), "timer stopped");
+
+		cellet.close();
+		factory.shutdown();
+	}
+
+	/** 块重传次数超过上限时回调监听器及 Cellet ，之后写入的块直接回调失败。
+	 */
+	private static void testFailure() throws InterruptedException {
+		final int num = 8;
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		factory.setMaxRetransmission(1);
+		LoopbackCellet cellet = new LoopbackCellet(factory, num, 1, 0, 11);
+		cellet.dropAll = true;
+
+		final AtomicInteger progress = new AtomicInteger(0);
+		final AtomicInteger failures = new AtomicInteger(0);
+		ChunkListener listener = new ChunkListener() {
+			@Override
+			public void onProgress(String target, ChunkDialect chunkDialect) {
+				progress.incrementAndGet();
+			}
+
+			@Override
+			public void onFailure(String target, ChunkDialect chunkDialect) {
+				failures.incrementAndGet();
+			}
+		};
+
+		// 保留最后一个块在传输失败后写入
+		send(cellet, "failure", num, num - 1, listener);
+		Assert.assertTrue(waitFor(cellet.failed, 1, 10000), "cellet failure callback");
+		Assert.assertEquals(1, failures.get(), "listener failure callback");
+		Assert.assertEquals(1, cellet.failed.get(), "cellet failure callback once");
+		// 初始窗口内的块已发送
+		Assert.assertEquals(4, progress.get(), "progress of sent chunks");
+
+		// 传输失败后写入的块不再发送
+		int sent = cellet.sent.get();
+		byte[] data = new byte[ChunkDialect.CHUNK_SIZE];
+		ChunkDialect late = new ChunkDialect("failure", (long) num * data.length, num - 1, num, data, data.length);
+		late.setListener(listener);
+		cellet.talk("peer", late);
+		Assert.assertEquals(2, failures.get(), "late chunk failure callback");
+		Assert.assertEquals(sent, cellet.sent.get(), "late chunk not sent");
+
+		cellet.close();
+		factory.shutdown();
+	}
+
+	/** 块数量、总长度及块长度不符或超过限制的块被丢弃。
+	 */
+	private static void testIllegalChunks() {
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		factory.setMaxTransferSize(64 * ChunkDialect.CHUNK_SIZE);
+		byte[] data = new byte[ChunkDialect.CHUNK_SIZE * 2];
+		long total = 2 * ChunkDialect.CHUNK_SIZE;
+
+		// 块数量与总长度不符
+		factory.write(chunk("tag", "count", total, 0, 1000000, data, ChunkDialect.CHUNK_SIZE));
+		Assert.assertEquals(-1, factory.read("tag", "count", 0, data), "forged chunk num");
+
+		// 总长度超过上限
+		long huge = 65L * ChunkDialect.CHUNK_SIZE;
+		factory.write(chunk("tag", "huge", huge, 0, 65, data, ChunkDialect.CHUNK_SIZE));
+		Assert.assertEquals(-1, factory.read("tag", "huge", 0, data), "transfer too large");
+
+		// 块长度超过标准块大小
+		factory.write(chunk("tag", "oversize", total, 0, 2, data, ChunkDialect.CHUNK_SIZE + 1));
+		Assert.assertEquals(-1, factory.read("tag", "oversize", 0, data), "oversize chunk");
+
+		// 同一数据的块数量不一致
+		factory.write(chunk("tag", "mixed", total, 0, 2, data, ChunkDialect.CHUNK_SIZE));
+		factory.write(chunk("tag", "mixed", 3 * ChunkDialect.CHUNK_SIZE, 1, 3, data, ChunkDialect.CHUNK_SIZE));
+		Assert.assertEquals(ChunkDialect.CHUNK_SIZE, factory.read("tag", "mixed", 0, data), "valid chunk");
+		Assert.assertEquals(-1, factory.read("tag", "mixed", 1, data), "mismatched chunk num");
+
+		Assert.assertEquals(ChunkDialect.CHUNK_SIZE, factory.getCacheMemorySize(), "cache memory size");
+		factory.shutdown();
+		Assert.assertEquals(0, factory.getCacheMemorySize(), "cache memory released");
+	}
+
+	/** 总长度超过阈值的数据写入临时文件，按块索引读取。
+	 */
+	private static void testSpill() {
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		factory.setSpillThreshold(0);
+
+		int num = 3;
+		long total = 2 * ChunkDialect.CHUNK_SIZE + 100;
+		byte[][] blocks = new byte[num][];
+		for (int i = 0; i < num; ++i) {
+			blocks[i] = new byte[(i < num - 1) ? ChunkDialect.CHUNK_SIZE : 100];
+			Arrays.fill(blocks[i], (byte) (i + 1));
+		}
+
+		// 乱序写入
+		for (int i = num - 1; i >= 0; --i) {
+			factory.write(chunk("tag", "spill", total, i, num, blocks[i], blocks[i].length));
+		}
+		Assert.assertTrue(factory.checkCompleted("tag", "spill"), "spill completed");
+		Assert.assertEquals(total, factory.getCacheDiskSize(), "cache disk size");
+
+		byte[] out = new byte[ChunkDialect.CHUNK_SIZE];
+		for (int i = 0; i < num; ++i) {
+			int length = factory.read("tag", "spill", i, out);
+			Assert.assertEquals(blocks[i].length, length, "chunk length " + i);
+			Assert.assertTrue(Arrays.equals(blocks[i], Arrays.copyOf(out, length)), "chunk data " + i);
+		}
+
+		factory.clear("tag", "spill");
+		Assert.assertEquals(0, factory.getCacheDiskSize(), "cache disk released");
+		factory.shutdown();
+	}
+
+	/** 磁盘占用超过上限时清理最早接收的数据。
+	 */
+	private static void testDiskQuota() throws InterruptedException {
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		factory.setSpillThreshold(0);
+		factory.setMaxCacheDiskSize(3 * ChunkDialect.CHUNK_SIZE);
+
+		byte[] data = new byte[ChunkDialect.CHUNK_SIZE];
+		long total = 2 * ChunkDialect.CHUNK_SIZE;
+		for (int i = 0; i < 2; ++i) {
+			factory.write(chunk("tag", "first", total, i, 2, data, data.length));
+		}
+		Thread.sleep(5);
+		for (int i = 0; i < 2; ++i) {
+			factory.write(chunk("tag", "second", total, i, 2, data, data.length));
+		}
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (factory.getCacheDiskSize() > factory.getMaxCacheDiskSize() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(factory.getCacheDiskSize() <= factory.getMaxCacheDiskSize(), "disk quota");
+		Assert.assertFalse(factory.checkCompleted("tag", "first"), "oldest data cleared");
+		Assert.assertTrue(factory.checkCompleted("tag", "second"), "newest data kept");
+		factory.shutdown();
+	}
+
+	private static ChunkDialect chunk(String tag, String sign, long total, int index, int num, byte[] data, int length) {
+		ChunkDialect chunk = new ChunkDialect(sign, total, index, num, data, length);
+		chunk.setOwnerTag(tag);
+		return chunk;
+	}
+
+	/** 发送数据的前 count 个块。
+	 */
+	private static void send(LoopbackCellet cellet, String sign, int num, int count, ChunkListener listener) {
+		byte[] data = new byte[ChunkDialect.CHUNK_SIZE];
+		for (int i = 0; i < count; ++i) {
+			ChunkDialect chunk = new ChunkDialect(sign, (long) num * data.length, i, num, data, data.length);
+			chunk.setListener(listener);
+			cellet.talk("peer", chunk);
+		}
+	}
+
+	private static boolean waitFor(AtomicInteger counter, int value, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (counter.get() < value) {
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+}
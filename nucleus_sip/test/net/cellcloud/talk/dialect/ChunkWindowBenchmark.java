@@ -0,0 +1,77 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+/** 块数据发送窗口性能基准。
+ * 
+ * 通过回环 Cellet 模拟往返延迟及丢包，测量不同最大窗口下传输固定数量块的耗时和吞吐量。
+ * 依赖库中没有 JMH ，基准以 main 方法运行。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ChunkWindowBenchmark {
+
+	private static final int CHUNK_NUM = 256;
+	private static final long ONE_WAY_DELAY = 50;
+
+	private ChunkWindowBenchmark() {
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		for (int window : new int[] { 1, 8, 64 }) {
+			for (double loss : new double[] { 0, 0.02 }) {
+				run(window, loss);
+			}
+		}
+	}
+
+	private static void run(int window, double loss) throws InterruptedException {
+		ChunkDialectFactory factory = new ChunkDialectFactory();
+		factory.setMaxWindow(window);
+		LoopbackCellet cellet = new LoopbackCellet(factory, CHUNK_NUM, ONE_WAY_DELAY, loss, 1);
+
+		byte[] data = new byte[ChunkDialect.CHUNK_SIZE];
+		String sign = "bench-" + window + "-" + loss;
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < CHUNK_NUM; ++i) {
+			cellet.talk("peer", new ChunkDialect(sign, (long) CHUNK_NUM * data.length, i, CHUNK_NUM, data, data.length));
+		}
+
+		long deadline = start + 300000;
+		while (cellet.received.get() < CHUNK_NUM && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+		System.out.println(String.format("window=%-3d loss=%.2f rtt=%dms chunks=%d/%d sends=%d time=%dms throughput=%d KB/s",
+				window, loss, 2 * ONE_WAY_DELAY, cellet.received.get(), CHUNK_NUM, cellet.sent.get(), elapsed,
+				(long) CHUNK_NUM * ChunkDialect.CHUNK_SIZE / 1024 * 1000 / elapsed));
+
+		cellet.close();
+		factory.shutdown();
+	}
+}
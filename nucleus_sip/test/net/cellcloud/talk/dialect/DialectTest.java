@@ -0,0 +1,116 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import net.cellcloud.Assert;
+import net.cellcloud.talk.Primitive;
+import net.cellcloud.talk.stuff.SubjectStuff;
+
+/** 方言翻译缓存测试。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class DialectTest {
+
+	private DialectTest() {
+	}
+
+	public static void main(String[] args) {
+		testUncached();
+		testFrozen();
+		testActionDialect();
+		System.out.println("DialectTest passed");
+	}
+
+	/** 未声明可缓存的方言每次重新翻译。
+	 */
+	private static void testUncached() {
+		CounterDialect dialect = new CounterDialect();
+		dialect.value = 1;
+		Assert.assertEquals(1, valueOf(dialect.getTranslation()), "first translation");
+		dialect.value = 2;
+		Assert.assertEquals(2, valueOf(dialect.getTranslation()), "modified translation");
+		Assert.assertEquals(2, dialect.translations, "translate calls");
+	}
+
+	/** 冻结的方言复用翻译结果。
+	 */
+	private static void testFrozen() {
+		CounterDialect dialect = new CounterDialect();
+		dialect.value = 3;
+		dialect.freeze();
+		Primitive first = dialect.getTranslation();
+		Assert.assertTrue(first == dialect.getTranslation(), "frozen translation reused");
+		Assert.assertEquals(1, dialect.translations, "translate calls");
+	}
+
+	/** 动作方言可缓存，修改时缓存失效；子类默认不缓存。
+	 */
+	private static void testActionDialect() {
+		ActionDialect dialect = new ActionDialect("test", "action");
+		Primitive first = dialect.getTranslation();
+		Assert.assertTrue(first == dialect.getTranslation(), "action translation reused");
+
+		dialect.appendParam("name", 1);
+		Primitive second = dialect.getTranslation();
+		Assert.assertTrue(first != second, "action translation invalidated");
+		Assert.assertEquals(1, second.subjects().size(), "param translated");
+
+		ActionDialect sub = new ActionDialect("test", "action") {
+		};
+		Assert.assertTrue(sub.getTranslation() != sub.getTranslation(), "subclass translation not cached");
+	}
+
+	private static int valueOf(Primitive primitive) {
+		return primitive.subjects().get(0).getValueAsInt();
+	}
+
+	/** 修改数据时不使缓存失效的方言。
+	 */
+	private static final class CounterDialect extends Dialect {
+
+		private int value = 0;
+		private int translations = 0;
+
+		private CounterDialect() {
+			super("CounterDialect");
+		}
+
+		@Override
+		public Primitive translate() {
+			++this.translations;
+			Primitive primitive = new Primitive(this);
+			primitive.commit(new SubjectStuff(this.value));
+			return primitive;
+		}
+
+		@Override
+		public void build(Primitive primitive) {
+			this.value = primitive.subjects().get(0).getValueAsInt();
+		}
+	}
+}
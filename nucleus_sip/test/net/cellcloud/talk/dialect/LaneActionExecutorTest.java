@@ -0,0 +1,120 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.cellcloud.Assert;
+
+/** 分道动作执行器测试。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class LaneActionExecutorTest {
+
+	private LaneActionExecutorTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		testStatisticsBound();
+		testDiscard();
+		System.out.println("LaneActionExecutorTest passed");
+	}
+
+	/** 动作名数量超过上限后合并统计。
+	 */
+	private static void testStatisticsBound() throws InterruptedException {
+		LaneActionExecutor executor = new LaneActionExecutor(4, 10000, LaneActionExecutor.RejectionPolicy.DISCARD);
+		final int num = 2000;
+		final CountDownLatch done = new CountDownLatch(num);
+		ActionDelegate delegate = new ActionDelegate() {
+			@Override
+			public void doAction(ActionDialect dialect) {
+				done.countDown();
+			}
+		};
+
+		for (int i = 0; i < num; ++i) {
+			ActionDialect dialect = new ActionDialect("test", "action" + i);
+			dialect.setOwnerTag("tag" + (i % 8));
+			Assert.assertTrue(executor.execute(dialect, delegate), "execute");
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS), "actions done");
+		// 统计在动作执行后记录
+		Thread.sleep(100);
+
+		int size = executor.getStatistics().size();
+		Assert.assertTrue(size <= 256 + 8, "statistics bounded: " + size);
+
+		long total = 0;
+		for (ActionStatistics stat : executor.getStatistics()) {
+			total += stat.getCount();
+		}
+		Assert.assertEquals(num, total, "statistics count");
+		Assert.assertTrue(executor.getStatistics(LaneActionExecutor.OTHER_ACTIONS).getCount() > 0, "other actions");
+
+		executor.shutdown();
+	}
+
+	/** 等待执行的动作已满时拒绝新动作，关闭后拒绝所有动作。
+	 */
+	private static void testDiscard() throws InterruptedException {
+		LaneActionExecutor executor = new LaneActionExecutor(1, 1, LaneActionExecutor.RejectionPolicy.DISCARD);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ActionDelegate blocking = new ActionDelegate() {
+			@Override
+			public void doAction(ActionDialect dialect) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// Nothing
+				}
+			}
+		};
+		ActionDelegate empty = new ActionDelegate() {
+			@Override
+			public void doAction(ActionDialect dialect) {
+			}
+		};
+
+		ActionDialect dialect = new ActionDialect("test", "block");
+		dialect.setOwnerTag("tag");
+		Assert.assertTrue(executor.execute(dialect, blocking), "first action");
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS), "first action started");
+
+		Assert.assertTrue(executor.execute(dialect, empty), "queued action");
+		Assert.assertFalse(executor.execute(dialect, empty), "discarded action");
+		Assert.assertEquals(1, executor.getRejectedNum(), "rejected num");
+
+		release.countDown();
+		executor.shutdown();
+		Assert.assertFalse(executor.execute(dialect, empty), "action after shutdown");
+	}
+}
@@ -0,0 +1,142 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.dialect;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.cellcloud.core.Cellet;
+import net.cellcloud.talk.Primitive;
+
+/** 回环传输的 Cellet 。
+ * 
+ * 块数据经过模拟的单向延迟到达对端，对端按同样的延迟回送确认，可按比例随机丢弃块。
+ * 
+ * @author Jiangwei Xu
+ */
+class LoopbackCellet extends Cellet {
+
+	private final ChunkDialectFactory factory;
+	private final long oneWayDelay;
+	private final double loss;
+	private final Random random;
+	private final ScheduledExecutorService network;
+
+	// 是否丢弃所有块
+	protected volatile boolean dropAll = false;
+
+	// 实际发送的块数量，包括重传
+	protected final AtomicInteger sent = new AtomicInteger(0);
+	// 对端收到的不重复的块数量
+	protected final AtomicInteger received = new AtomicInteger(0);
+	private final AtomicIntegerArray receivedFlags;
+	// 发送失败的回调次数
+	protected final AtomicInteger failed = new AtomicInteger(0);
+
+	protected LoopbackCellet(ChunkDialectFactory factory, int chunkNum, long oneWayDelay, double loss, long seed) {
+		this.factory = factory;
+		this.oneWayDelay = oneWayDelay;
+		this.loss = loss;
+		this.random = new Random(seed);
+		this.network = Executors.newScheduledThreadPool(2);
+		this.receivedFlags = new AtomicIntegerArray(chunkNum);
+	}
+
+	@Override
+	public boolean talk(final String targetTag, final Dialect dialect) {
+		final ChunkDialect chunk = (ChunkDialect) dialect;
+		if (!this.factory.onTalk(this, targetTag, chunk)) {
+			// 由窗口发送
+			return true;
+		}
+
+		this.sent.incrementAndGet();
+		synchronized (this.random) {
+			if (this.dropAll || this.random.nextDouble() < this.loss) {
+				return true;
+			}
+		}
+
+		final Cellet self = this;
+		this.network.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (receivedFlags.compareAndSet(chunk.getChunkIndex(), 0, 1)) {
+					received.incrementAndGet();
+				}
+
+				final ChunkDialect ack = new ChunkDialect();
+				ack.setAck(chunk.getSign(), chunk.getChunkIndex(), chunk.getChunkNum());
+				network.schedule(new Runnable() {
+					@Override
+					public void run() {
+						factory.onDialogue(self, targetTag, ack);
+					}
+				}, oneWayDelay, TimeUnit.MILLISECONDS);
+			}
+		}, this.oneWayDelay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	@Override
+	public void failed(final String tag, final Dialect dialect) {
+		this.failed.incrementAndGet();
+	}
+
+	@Override
+	public void activate() {
+	}
+
+	@Override
+	public void deactivate() {
+	}
+
+	@Override
+	public void dialogue(final String tag, final Primitive primitive) {
+	}
+
+	protected void close() {
+		this.network.shutdownNow();
+	}
+
+	/** 返回块重传定时器线程是否存在。
+	 */
+	protected static boolean isTimerAlive() {
+		Thread[] threads = new Thread[Thread.activeCount() * 2 + 16];
+		int num = Thread.enumerate(threads);
+		for (int i = 0; i < num; ++i) {
+			if ("ChunkDialectFactory-Timer".equals(threads[i].getName()) && threads[i].isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+
+package net.cellcloud.talk.stuff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+
+import net.cellcloud.talk.Primitive;
+
+/** 文本格式原语序列化内存分配基准。
+ * 
+ * 通过 ThreadMXBean 统计当前线程分配的字节数，比较文本格式读写与改用线程局部缓存之前的实现
+ * 每次调用分配的内存及耗时。依赖库中没有 JMH ，基准以 main 方法运行。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PrimitiveSerializerAllocationBenchmark {
+
+	private static final int WARMUP = 20000;
+	private static final int ITERATIONS = 50000;
+	private static final int ROUNDS = 5;
+
+	// 防止结果被优化掉
+	private static long sink = 0;
+
+	private PrimitiveSerializerAllocationBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("Thread allocated bytes is not supported by this JVM");
+			return;
+		}
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			System.out.println("Thread allocated bytes is not supported by this JVM");
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		final Primitive primitive = PrimitiveSerializerBenchmark.createPrimitive();
+		final byte[] text = PrimitiveSerializer.write(primitive);
+
+		System.out.println("Primitive size: text " + text.length + " bytes");
+
+		run(threadBean, "legacy write", new Task() {
+			@Override
+			public void run() throws Exception {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				LegacyTextSerializer.write(output, primitive);
+				sink += output.toByteArray().length;
+			}
+		});
+		run(threadBean, "text write", new Task() {
+			@Override
+			public void run() throws Exception {
+				sink += PrimitiveSerializer.write(primitive).length;
+			}
+		});
+		run(threadBean, "legacy read", new Task() {
+			@Override
+			public void run() throws Exception {
+				Primitive output = new Primitive();
+				LegacyTextSerializer.read(output, new ByteArrayInputStream(text));
+				sink += output.subjects().size();
+			}
+		});
+		run(threadBean, "text read", new Task() {
+			@Override
+			public void run() throws Exception {
+				Primitive output = new Primitive();
+				PrimitiveSerializer.read(output, new ByteArrayInputStream(text));
+				sink += output.subjects().size();
+			}
+		});
+
+		System.out.println("(" + sink + ")");
+	}
+
+	private static void run(com.sun.management.ThreadMXBean bean, String name, Task task) throws Exception {
+		for (int i = 0; i < WARMUP; ++i) {
+			task.run();
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long best = Long.MAX_VALUE;
+		long bytes = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; ++r) {
+			long allocated = bean.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; ++i) {
+				task.run();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			bytes = Math.min(bytes, bean.getThreadAllocatedBytes(threadId) - allocated);
+		}
+
+		System.out.println(String.format("%-14s %10.1f ns/op %10.1f B/op",
+				name, (double) best / ITERATIONS, (double) bytes / ITERATIONS));
+	}
+
+	private interface Task {
+		void run() throws Exception;
+	}
+}
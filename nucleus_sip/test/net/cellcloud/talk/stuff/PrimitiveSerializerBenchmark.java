@@ -0,0 +1,162 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.stuff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import net.cellcloud.talk.Primitive;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.json.JSONTokener;
+
+/** 原语序列化性能基准。
+ * 
+ * 依赖库中没有 JMH ，基准以 main 方法运行：每项先预热，再按多轮测量取最小的单次耗时。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PrimitiveSerializerBenchmark {
+
+	private static final int WARMUP = 20000;
+	private static final int ITERATIONS = 50000;
+	private static final int ROUNDS = 5;
+
+	// 防止结果被优化掉
+	private static long sink = 0;
+
+	private PrimitiveSerializerBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		final Primitive primitive = createPrimitive();
+
+		final byte[] text = PrimitiveSerializer.write(primitive);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PrimitiveSerializer.writeBinary(stream, primitive);
+		final byte[] binary = stream.toByteArray();
+		JSONStringer stringer = new JSONStringer();
+		PrimitiveSerializer.write(stringer, primitive);
+		final String json = stringer.toString();
+
+		System.out.println("Primitive size: text " + text.length + " bytes, binary " + binary.length
+				+ " bytes, json " + json.length() + " chars");
+
+		run("text write", new Task() {
+			@Override
+			public void run() throws Exception {
+				sink += PrimitiveSerializer.write(primitive).length;
+			}
+		});
+		run("text read", new Task() {
+			@Override
+			public void run() throws Exception {
+				Primitive output = new Primitive();
+				PrimitiveSerializer.read(output, new ByteArrayInputStream(text));
+				sink += output.subjects().size();
+			}
+		});
+		run("binary write", new Task() {
+			@Override
+			public void run() throws Exception {
+				ByteArrayOutputStream output = new ByteArrayOutputStream(binary.length);
+				PrimitiveSerializer.writeBinary(output, primitive);
+				sink += output.size();
+			}
+		});
+		run("binary read", new Task() {
+			@Override
+			public void run() throws Exception {
+				Primitive output = new Primitive();
+				PrimitiveSerializer.readBinary(output, new ByteArrayInputStream(binary));
+				sink += output.subjects().size();
+			}
+		});
+		run("json write", new Task() {
+			@Override
+			public void run() throws Exception {
+				JSONObject output = new JSONObject();
+				PrimitiveSerializer.write(output, primitive);
+				sink += output.length();
+			}
+		});
+		run("json read", new Task() {
+			@Override
+			public void run() throws Exception {
+				Primitive output = new Primitive();
+				PrimitiveSerializer.read(output, new JSONTokener(json));
+				sink += output.subjects().size();
+			}
+		});
+
+		System.out.println("(" + sink + ")");
+	}
+
+	private static void run(String name, Task task) throws Exception {
+		for (int i = 0; i < WARMUP; ++i) {
+			task.run();
+		}
+
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < ROUNDS; ++r) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; ++i) {
+				task.run();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		double nsPerOp = (double) best / ITERATIONS;
+		System.out.println(String.format("%-14s %10.1f ns/op %12.0f ops/s", name, nsPerOp, 1.0e9 / nsPerOp));
+	}
+
+	/** 创建典型的业务原语，包含各类字面义的数值。
+	 */
+	static Primitive createPrimitive() throws JSONException {
+		Primitive primitive = new Primitive();
+		primitive.commit(new SubjectStuff("user"));
+		primitive.commit(new SubjectStuff("中文昵称"));
+		primitive.commit(new SubjectStuff(1024));
+		primitive.commit(new SubjectStuff(System.currentTimeMillis()));
+		primitive.commit(new SubjectStuff(3.1415926f));
+		primitive.commit(new SubjectStuff(-123456.789));
+		primitive.commit(new SubjectStuff(true));
+		primitive.commit(new SubjectStuff(new JSONObject("{\"id\":1,\"name\":\"cell\"}")));
+		primitive.commit(new PredicateStuff("update"));
+		primitive.commit(new ObjectiveStuff("profile"));
+		primitive.commit(new AttributiveStuff(42L));
+		primitive.commit(new AdverbialStuff(0.5));
+		primitive.commit(new ComplementStuff("{escape}=:"));
+		return primitive;
+	}
+
+	private interface Task {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,469 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.stuff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.cellcloud.Assert;
+import net.cellcloud.talk.Primitive;
+import net.cellcloud.talk.dialect.ActionDialect;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.json.JSONTokener;
+
+/** 原语序列化往返测试。
+ * 
+ * 覆盖文本、二进制（含附件）及 JSON 格式之间的往返，全部字面义，
+ * 以及 NaN 、正负零、极值、非 ASCII 字符与文本格式转义符等边界值。
+ * 文本格式的输出与改用线程局部缓存之前的实现逐字节比较。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PrimitiveSerializerTest {
+
+	private PrimitiveSerializerTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		testText();
+		testBinary();
+		testBinaryAttachment();
+		testJSON();
+		testChain();
+		testForgedBinary();
+		testLegacyText();
+		System.out.println("PrimitiveSerializerTest passed");
+	}
+
+	/** 测试文本格式往返，文本格式传输值的文本形式。
+	 */
+	private static void testText() {
+		Primitive source = createPrimitive(true, true);
+		Primitive target = text(source);
+		assertTextEquals(source, target, "text");
+	}
+
+	/** 测试二进制格式往返，数值按位精确还原。
+	 */
+	private static void testBinary() {
+		Primitive source = createPrimitive(true, true);
+		Primitive target = binary(source, false);
+		assertExactEquals(source, target, "binary");
+	}
+
+	/** 测试二进制数据以附件形式传输。
+	 */
+	private static void testBinaryAttachment() {
+		Primitive source = createPrimitive(true, true);
+		Primitive target = binary(source, true);
+		assertExactEquals(source, target, "attachment");
+	}
+
+	/** 测试 JSON 格式往返，JSON 数值不区分正负零，且不支持 NaN 、无穷大、与字面义不符的数值及 XML 字面义。
+	 */
+	private static void testJSON() throws JSONException {
+		Primitive source = createPrimitive(false, false);
+
+		JSONObject object = new JSONObject();
+		PrimitiveSerializer.write(object, source);
+		Primitive target = new Primitive();
+		PrimitiveSerializer.read(target, new JSONObject(object.toString()));
+		assertNumericEquals(source, target, "json");
+
+		JSONStringer writer = new JSONStringer();
+		PrimitiveSerializer.write(writer, source);
+		target = new Primitive();
+		PrimitiveSerializer.read(target, new JSONTokener(writer.toString()));
+		assertNumericEquals(source, target, "json stream");
+	}
+
+	/** 测试文本、二进制与 JSON 格式间的连续转换。
+	 */
+	private static void testChain() throws JSONException {
+		Primitive source = text(createPrimitive(false, false));
+
+		Primitive binary = binary(source, true);
+		assertExactEquals(source, binary, "text -> binary");
+
+		JSONObject object = new JSONObject();
+		PrimitiveSerializer.write(object, binary);
+		Primitive json = new Primitive();
+		PrimitiveSerializer.read(json, new JSONObject(object.toString()));
+		assertNumericEquals(binary, json, "binary -> json");
+
+		Primitive text = text(json);
+		assertTextEquals(json, text, "json -> text");
+		Assert.assertEquals(new String(PrimitiveSerializer.write(json)), new String(PrimitiveSerializer.write(text)),
+				"json -> text stable");
+	}
+
+	/** 测试伪造长度的二进制数据，不按声明的长度分配内存。
+	 */
+	private static void testForgedBinary() {
+		// 字符串长度远超输入数据
+		byte[] data = new byte[] { 1, 0, 0, 0, 1, 1, 1, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 'a', 'b', 'c' };
+		Primitive primitive = new Primitive();
+		PrimitiveSerializer.readBinary(primitive, new ByteArrayInputStream(data));
+		Assert.assertTrue(null == primitive.subjects() || primitive.subjects().isEmpty(), "forged string length");
+
+		// 语素数量为负数
+		data = new byte[] { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0 };
+		primitive = new Primitive();
+		PrimitiveSerializer.readBinary(primitive, new ByteArrayInputStream(data));
+		Assert.assertTrue(null == primitive.subjects() || primitive.subjects().isEmpty(), "negative stuff count");
+
+		// 语素数量远超输入数据
+		data = new byte[] { 1, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1, 2, 0, 0, 0, 7 };
+		primitive = new Primitive();
+		PrimitiveSerializer.readBinary(primitive, new ByteArrayInputStream(data));
+		Assert.assertEquals(1, primitive.subjects().size(), "forged stuff count");
+
+		// 附件数量与实际不符
+		data = new byte[] { 2, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0, 0 };
+		primitive = new Primitive();
+		PrimitiveSerializer.readBinary(primitive, new ByteArrayInputStream(data), new byte[][] { new byte[1] });
+		Assert.assertTrue(null == primitive.subjects() || primitive.subjects().isEmpty(), "forged attachment count");
+	}
+
+	/** 测试文本格式的输出与原实现逐字节一致，并且两者读取相同数据得到相同的语素。
+	 */
+	private static void testLegacyText() {
+		Random random = new Random(20141017L);
+
+		List<Primitive> list = new ArrayList<Primitive>();
+		list.add(createPrimitive(true, true));
+		for (int i = 0; i < 3000; ++i) {
+			list.add(createRandomPrimitive(random));
+		}
+
+		for (int i = 0, size = list.size(); i < size; ++i) {
+			Primitive source = list.get(i);
+			String m = "legacy #" + i;
+
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			LegacyTextSerializer.write(stream, source);
+			byte[] expected = stream.toByteArray();
+
+			Assert.assertTrue(Arrays.equals(expected, PrimitiveSerializer.write(source)), m + " write");
+			stream = new ByteArrayOutputStream();
+			PrimitiveSerializer.write(stream, source);
+			Assert.assertTrue(Arrays.equals(expected, stream.toByteArray()), m + " write stream");
+
+			Primitive legacy = new Primitive();
+			LegacyTextSerializer.read(legacy, new ByteArrayInputStream(expected));
+			Primitive current = new Primitive();
+			PrimitiveSerializer.read(current, new ByteArrayInputStream(expected));
+			assertTextEquals(legacy, current, m + " read");
+
+			stream = new ByteArrayOutputStream();
+			LegacyTextSerializer.write(stream, legacy);
+			Assert.assertTrue(Arrays.equals(stream.toByteArray(), PrimitiveSerializer.write(current)), m + " rewrite");
+		}
+
+		// 方言仅比较输出，读取时需要注册方言工厂
+		Primitive source = createRandomPrimitive(random);
+		source.capture(new ActionDialect("中文 tracker"));
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		LegacyTextSerializer.write(stream, source);
+		Assert.assertTrue(Arrays.equals(stream.toByteArray(), PrimitiveSerializer.write(source)), "legacy dialect");
+	}
+
+	private static Primitive text(Primitive source) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PrimitiveSerializer.write(stream, source);
+		Primitive target = new Primitive();
+		PrimitiveSerializer.read(target, new ByteArrayInputStream(stream.toByteArray()));
+		return target;
+	}
+
+	private static Primitive binary(Primitive source, boolean attachment) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PrimitiveSerializer.writeBinary(stream, source, attachment);
+		byte[] data = stream.toByteArray();
+
+		byte[][] attachments = null;
+		if (attachment) {
+			List<byte[]> list = new ArrayList<byte[]>();
+			PrimitiveSerializer.collectAttachments(source, list);
+			Assert.assertEquals(list.size(), PrimitiveSerializer.getAttachmentCount(data, 0, data.length), "attachment count");
+			attachments = list.toArray(new byte[list.size()][]);
+		}
+
+		Primitive target = new Primitive();
+		PrimitiveSerializer.readBinary(target, new ByteArrayInputStream(data), attachments);
+		return target;
+	}
+
+	/** 创建包含全部字面义及边界值的原语。
+	 * @param special 是否包含 NaN 、无穷大及与字面义不符的数值。
+	 * @param xml 是否包含 XML 字面义。
+	 */
+	private static Primitive createPrimitive(boolean special, boolean xml) {
+		Primitive primitive = new Primitive();
+
+		// 字符串
+		primitive.commit(new SubjectStuff("Cell Cloud"));
+		primitive.commit(new SubjectStuff(""));
+		primitive.commit(new SubjectStuff("中文字符 \uD83D\uDE00"));
+		primitive.commit(new SubjectStuff("{a}=b:c{}=:"));
+		primitive.commit(new SubjectStuff("a\\b"));
+
+		// 整数
+		primitive.commit(new SubjectStuff(0));
+		primitive.commit(new SubjectStuff(Integer.MIN_VALUE));
+		primitive.commit(new SubjectStuff(Integer.MAX_VALUE));
+		primitive.commit(create(LiteralBase.UINT, "123456"));
+		primitive.commit(new SubjectStuff(Long.MIN_VALUE));
+		primitive.commit(new SubjectStuff(Long.MAX_VALUE));
+		primitive.commit(create(LiteralBase.ULONG, "9007199254740993"));
+
+		// 浮点数
+		primitive.commit(new SubjectStuff(0.0f));
+		primitive.commit(new SubjectStuff(-0.0f));
+		primitive.commit(new SubjectStuff(3.1415926f));
+		primitive.commit(new SubjectStuff(-1024.5f));
+		primitive.commit(new SubjectStuff(Float.MAX_VALUE));
+		primitive.commit(new SubjectStuff(0.0));
+		primitive.commit(new SubjectStuff(-0.0));
+		primitive.commit(new SubjectStuff(Math.PI));
+		primitive.commit(new SubjectStuff(-123456.789));
+		primitive.commit(new SubjectStuff(Double.MAX_VALUE));
+		if (special) {
+			primitive.commit(new SubjectStuff(Float.NaN));
+			primitive.commit(new SubjectStuff(Float.NEGATIVE_INFINITY));
+			primitive.commit(new SubjectStuff(Float.MIN_VALUE));
+			primitive.commit(new SubjectStuff(Double.NaN));
+			primitive.commit(new SubjectStuff(Double.POSITIVE_INFINITY));
+			primitive.commit(new SubjectStuff(Double.MIN_VALUE));
+		}
+
+		// 布尔值
+		primitive.commit(new SubjectStuff(true));
+		primitive.commit(new SubjectStuff(false));
+
+		// 二进制数据
+		primitive.commit(new SubjectStuff(new byte[] { 0, 1, (byte) 0x7F, (byte) 0x80, (byte) 0xFF }));
+		primitive.commit(new SubjectStuff(new byte[0]));
+
+		// JSON 及 XML
+		primitive.commit(create(LiteralBase.JSON, "{\"name\":\"中文\"}"));
+		if (xml) {
+			primitive.commit(create(LiteralBase.XML, "<cell name=\"中文\">{text}</cell>"));
+		}
+
+		if (special) {
+			// 与字面义不符的数值保持原始文本
+			primitive.commit(create(LiteralBase.INT, "12abc"));
+		}
+
+		// 其他语素类型
+		primitive.commit(new PredicateStuff("predicate"));
+		primitive.commit(new ObjectiveStuff(7L));
+		primitive.commit(new AttributiveStuff(2.5f));
+		primitive.commit(new AdverbialStuff(true));
+		primitive.commit(new ComplementStuff(-2.25));
+
+		return primitive;
+	}
+
+	/** 创建随机原语，字符串包含转义符、中文、表情符号及不成对的代理字符。
+	 */
+	private static Primitive createRandomPrimitive(Random random) {
+		Primitive primitive = new Primitive();
+
+		int num = 1 + random.nextInt(12);
+		for (int i = 0; i < num; ++i) {
+			Stuff stuff = null;
+			switch (random.nextInt(9)) {
+			case 0:
+				stuff = new SubjectStuff(random.nextInt());
+				break;
+			case 1:
+				stuff = new SubjectStuff(random.nextLong());
+				break;
+			case 2:
+				stuff = new SubjectStuff((random.nextFloat() - 0.5f) * random.nextInt(100000));
+				break;
+			case 3:
+				stuff = new SubjectStuff((random.nextDouble() - 0.5) * random.nextInt(100000000));
+				break;
+			case 4:
+				stuff = new SubjectStuff(random.nextBoolean());
+				break;
+			case 5:
+				stuff = create(LiteralBase.JSON, "{\"k\":\"" + randomString(random, 16) + "\"}");
+				break;
+			case 6:
+				// 较长的字符串
+				stuff = new SubjectStuff(randomString(random, random.nextInt(8) == 0 ? 4096 : 64));
+				break;
+			default:
+				stuff = new SubjectStuff(randomString(random, 32));
+				break;
+			}
+
+			// 分散到各类语素
+			switch (random.nextInt(6)) {
+			case 0:
+				primitive.commit((SubjectStuff) stuff);
+				break;
+			case 1:
+				primitive.commit(new PredicateStuff(stuff.getValueAsString()));
+				primitive.predicates().get(primitive.predicates().size() - 1).literalBase = stuff.getLiteralBase();
+				break;
+			case 2:
+				primitive.commit(new ObjectiveStuff(stuff.getValueAsString()));
+				primitive.objectives().get(primitive.objectives().size() - 1).literalBase = stuff.getLiteralBase();
+				break;
+			case 3:
+				primitive.commit(new AdverbialStuff(stuff.getValueAsString()));
+				primitive.adverbials().get(primitive.adverbials().size() - 1).literalBase = stuff.getLiteralBase();
+				break;
+			case 4:
+				primitive.commit(new AttributiveStuff(stuff.getValueAsString()));
+				primitive.attributives().get(primitive.attributives().size() - 1).literalBase = stuff.getLiteralBase();
+				break;
+			default:
+				primitive.commit(new ComplementStuff(stuff.getValueAsString()));
+				primitive.complements().get(primitive.complements().size() - 1).literalBase = stuff.getLiteralBase();
+				break;
+			}
+		}
+
+		return primitive;
+	}
+
+	private static String randomString(Random random, int maxLength) {
+		// 文本格式不转义反斜杠本身，位于值末尾的反斜杠无法还原，因此不随机生成
+		String[] parts = new String[] { "a", "Z", "9", " ", "{", "}", "=", ":", "[", "]", "@", ".",
+				"中", "文", "\uD83D\uDE00", "\uD800", "\uDC00", "\u00E9" };
+		StringBuilder buf = new StringBuilder();
+		int length = random.nextInt(maxLength + 1);
+		for (int i = 0; i < length; ++i) {
+			buf.append(parts[random.nextInt(parts.length)]);
+		}
+		return buf.toString();
+	}
+
+	private static SubjectStuff create(LiteralBase literal, String value) {
+		SubjectStuff stuff = new SubjectStuff();
+		stuff.setValue(value, literal);
+		return stuff;
+	}
+
+	/** 比较两个原语的字面义及文本形式的值。
+	 */
+	private static void assertTextEquals(Primitive expected, Primitive actual, String message) {
+		List<Stuff> e = stuffs(expected);
+		List<Stuff> a = stuffs(actual);
+		Assert.assertEquals(e.size(), a.size(), message + " stuff count");
+
+		for (int i = 0; i < e.size(); ++i) {
+			String m = message + " #" + i;
+			Assert.assertEquals(e.get(i).getType(), a.get(i).getType(), m + " type");
+			Assert.assertEquals(e.get(i).getLiteralBase(), a.get(i).getLiteralBase(), m + " literal");
+			Assert.assertEquals(e.get(i).getValueAsString(), a.get(i).getValueAsString(), m + " value");
+		}
+	}
+
+	/** 比较两个原语的字面义及值，浮点数按位比较，二进制数据按字节比较。
+	 */
+	private static void assertExactEquals(Primitive expected, Primitive actual, String message) {
+		assertValueEquals(expected, actual, true, message);
+	}
+
+	/** 比较两个原语的字面义及值，JSON 数值不区分正负零，浮点数按数值比较。
+	 */
+	private static void assertNumericEquals(Primitive expected, Primitive actual, String message) {
+		assertValueEquals(expected, actual, false, message);
+	}
+
+	private static void assertValueEquals(Primitive expected, Primitive actual, boolean bits, String message) {
+		List<Stuff> e = stuffs(expected);
+		List<Stuff> a = stuffs(actual);
+		Assert.assertEquals(e.size(), a.size(), message + " stuff count");
+
+		for (int i = 0; i < e.size(); ++i) {
+			String m = message + " #" + i;
+			Stuff es = e.get(i);
+			Stuff as = a.get(i);
+			Assert.assertEquals(es.getType(), as.getType(), m + " type");
+			Assert.assertEquals(es.getLiteralBase(), as.getLiteralBase(), m + " literal");
+
+			switch (es.valueType) {
+			case Stuff.VALUE_FLOAT:
+				if (bits) {
+					Assert.assertEquals(Float.floatToIntBits(es.getValueAsFloat()),
+							Float.floatToIntBits(as.getValueAsFloat()), m + " float bits");
+				}
+				else {
+					Assert.assertTrue(es.getValueAsFloat() == as.getValueAsFloat(), m + " float");
+				}
+				break;
+			case Stuff.VALUE_DOUBLE:
+				if (bits) {
+					Assert.assertEquals(Double.doubleToLongBits(es.getValueAsDouble()),
+							Double.doubleToLongBits(as.getValueAsDouble()), m + " double bits");
+				}
+				else {
+					Assert.assertTrue(es.getValueAsDouble() == as.getValueAsDouble(), m + " double");
+				}
+				break;
+			case Stuff.VALUE_LONG:
+				Assert.assertEquals(es.getValueAsLong(), as.getValueAsLong(), m + " long");
+				break;
+			case Stuff.VALUE_BOOL:
+				Assert.assertEquals(es.getValueAsBool(), as.getValueAsBool(), m + " bool");
+				break;
+			case Stuff.VALUE_BYTES:
+				Assert.assertTrue(Arrays.equals(es.getValueAsBytes(), as.getValueAsBytes()), m + " bytes");
+				break;
+			default:
+				Assert.assertEquals(es.getValueAsString(), as.getValueAsString(), m + " value");
+				break;
+			}
+		}
+	}
+
+	private static List<Stuff> stuffs(Primitive primitive) {
+		ArrayList<Stuff> list = new ArrayList<Stuff>();
+		if (null != primitive.subjects()) list.addAll(primitive.subjects());
+		if (null != primitive.predicates()) list.addAll(primitive.predicates());
+		if (null != primitive.objectives()) list.addAll(primitive.objectives());
+		if (null != primitive.adverbials()) list.addAll(primitive.adverbials());
+		if (null != primitive.attributives()) list.addAll(primitive.attributives());
+		if (null != primitive.complements()) list.addAll(primitive.complements());
+		return list;
+	}
+}
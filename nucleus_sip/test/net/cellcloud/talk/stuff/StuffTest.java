@@ -0,0 +1,197 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2014 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.stuff;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.cellcloud.Assert;
+
+/** 语素数值测试。
+ * 
+ * 覆盖浮点数文本格式、由文本解析的浮点数精度、整数转换的范围检查，以及多线程并发生成浮点数文本。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class StuffTest {
+
+	private StuffTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		testDecimalText();
+		testFloatText();
+		testIntConversion();
+		testLongConversion();
+		testConcurrentFormat();
+		System.out.println("StuffTest passed");
+	}
+
+	/** 测试浮点数文本保持定点格式。
+	 */
+	private static void testDecimalText() {
+		Assert.assertEquals("3.1416", new SubjectStuff(3.1415926f).getValueAsString(), "float");
+		Assert.assertEquals("-2.5000", new SubjectStuff(-2.5).getValueAsString(), "double");
+		Assert.assertEquals("0.0000", new SubjectStuff(0.0f).getValueAsString(), "zero");
+		Assert.assertEquals("-0.0000", new SubjectStuff(-0.0).getValueAsString(), "negative zero");
+		Assert.assertEquals("0.0000", new SubjectStuff(Double.MIN_VALUE).getValueAsString(), "min value");
+		Assert.assertEquals("NaN", new SubjectStuff(Float.NaN).getValueAsString(), "nan");
+		Assert.assertEquals("-Infinity", new SubjectStuff(Double.NEGATIVE_INFINITY).getValueAsString(), "infinity");
+
+		// 原生值不受文本格式影响
+		SubjectStuff stuff = new SubjectStuff(3.1415926f);
+		stuff.getValueAsString();
+		Assert.assertTrue(3.1415926f == stuff.getValueAsFloat(), "float value");
+	}
+
+	/** 测试由文本解析的单精度浮点数按原始文本返回双精度值。
+	 */
+	private static void testFloatText() {
+		SubjectStuff stuff = new SubjectStuff();
+		stuff.setValue("1.2346", LiteralBase.FLOAT);
+		Assert.assertTrue(1.2346 == stuff.getValueAsDouble(), "text double");
+		Assert.assertTrue(1.2346f == stuff.getValueAsFloat(), "text float");
+		Assert.assertEquals("1.2346", stuff.getValueAsString(), "text string");
+
+		SubjectStuff copy = new SubjectStuff();
+		stuff.copyValue(copy);
+		Assert.assertTrue(1.2346 == copy.getValueAsDouble(), "copy double");
+
+		// 原生值不受已生成的文本影响
+		stuff = new SubjectStuff(1.2346f);
+		Assert.assertTrue((double) 1.2346f == stuff.getValueAsDouble(), "native double");
+		stuff.getValueAsString();
+		Assert.assertTrue((double) 1.2346f == stuff.getValueAsDouble(), "native double after text");
+
+		stuff.setValue("1.2346", LiteralBase.FLOAT);
+		stuff.setValue(2.5f);
+		Assert.assertTrue(2.5 == stuff.getValueAsDouble(), "native after text");
+	}
+
+	/** 测试整数转换，超出范围或非整数时抛出异常。
+	 */
+	private static void testIntConversion() {
+		Assert.assertEquals(Integer.MAX_VALUE, new SubjectStuff((long) Integer.MAX_VALUE).getValueAsInt(), "max int");
+		Assert.assertEquals(Integer.MIN_VALUE, new SubjectStuff((long) Integer.MIN_VALUE).getValueAsInt(), "min int");
+		Assert.assertEquals(-3, new SubjectStuff(-3.0f).getValueAsInt(), "integral float");
+		Assert.assertEquals(0, new SubjectStuff(-0.0).getValueAsInt(), "negative zero");
+
+		assertIntFails(new SubjectStuff((long) Integer.MAX_VALUE + 1), "long overflow");
+		assertIntFails(new SubjectStuff((long) Integer.MIN_VALUE - 1), "long underflow");
+		assertIntFails(new SubjectStuff(Long.MAX_VALUE), "long max");
+		assertIntFails(new SubjectStuff(1.5f), "fraction");
+		assertIntFails(new SubjectStuff(-0.25), "negative fraction");
+		assertIntFails(new SubjectStuff(3.0e9), "double overflow");
+		assertIntFails(new SubjectStuff(Float.NaN), "nan");
+		assertIntFails(new SubjectStuff(Double.POSITIVE_INFINITY), "infinity");
+		assertIntFails(new SubjectStuff("12.5"), "text");
+	}
+
+	/** 测试长整数转换，超出范围或非整数时抛出异常。
+	 */
+	private static void testLongConversion() {
+		Assert.assertEquals(Long.MIN_VALUE, new SubjectStuff(Long.MIN_VALUE).getValueAsLong(), "min long");
+		Assert.assertEquals(1L << 53, new SubjectStuff((double) (1L << 53)).getValueAsLong(), "integral double");
+		Assert.assertEquals(Long.MIN_VALUE, new SubjectStuff((double) Long.MIN_VALUE).getValueAsLong(), "min double");
+
+		assertLongFails(new SubjectStuff(0.5), "fraction");
+		assertLongFails(new SubjectStuff(-1.75f), "negative fraction");
+		assertLongFails(new SubjectStuff((double) Long.MAX_VALUE), "double overflow");
+		assertLongFails(new SubjectStuff(-1.0e19), "double underflow");
+		assertLongFails(new SubjectStuff(Double.NaN), "nan");
+		assertLongFails(new SubjectStuff(Float.NEGATIVE_INFINITY), "infinity");
+	}
+
+	/** 测试多线程并发生成浮点数文本，结果与单线程格式化一致。
+	 */
+	private static void testConcurrentFormat() throws InterruptedException {
+		final int threadNum = 8;
+		final int count = 50000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger mismatches = new AtomicInteger(0);
+		final AtomicReference<String> sample = new AtomicReference<String>();
+
+		Thread[] threads = new Thread[threadNum];
+		for (int t = 0; t < threadNum; ++t) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					DecimalFormat reference = new DecimalFormat("#0.0000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+					Random random = new Random(seed);
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					for (int i = 0; i < count; ++i) {
+						double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12));
+						Stuff stuff = ((i & 1) == 0) ? new SubjectStuff(value) : new SubjectStuff((float) value);
+						String expected = reference.format(((i & 1) == 0) ? value : (double) (float) value);
+						String actual = stuff.getValueAsString();
+						if (!expected.equals(actual)) {
+							mismatches.incrementAndGet();
+							sample.compareAndSet(null, expected + " != " + actual);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(0, mismatches.get(), "concurrent format mismatches, first: " + sample.get());
+	}
+
+	private static void assertIntFails(Stuff stuff, String message) {
+		try {
+			stuff.getValueAsInt();
+			Assert.fail(message + " - expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			// 预期异常
+		}
+	}
+
+	private static void assertLongFails(Stuff stuff, String message) {
+		try {
+			stuff.getValueAsLong();
+			Assert.fail(message + " - expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			// 预期异常
+		}
+	}
+}